@@ -1,6 +1,5 @@
 package org.fao.geonet.utils;
 
-import com.google.common.base.Function;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
@@ -8,6 +7,7 @@ import org.apache.http.NameValuePair;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.AuthCache;
+import org.apache.http.client.CookieStore;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
@@ -18,9 +18,8 @@ import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.LaxRedirectStrategy;
 import org.apache.http.message.BasicNameValuePair;
 import org.fao.geonet.exceptions.BadSoapResponseEx;
 import org.jdom.Document;
@@ -28,8 +27,6 @@ import org.jdom.Element;
 import org.jdom.Namespace;
 import org.springframework.http.client.ClientHttpResponse;
 
-import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -62,6 +59,8 @@ public class AbstractHttpRequest {
     private String postData;
     private boolean preemptiveBasicAuth;
     private HttpClientContext httpClientContext;
+    /** the cookies of this request object, the shared client must not keep the session of a server for other requests */
+    private final CookieStore cookieStore = new BasicCookieStore();
     private UsernamePasswordCredentials credentials;
     private UsernamePasswordCredentials proxyCredentials;
     private String fragment;
@@ -216,50 +215,49 @@ public class AbstractHttpRequest {
         this.credentials = new UsernamePasswordCredentials(username, password);
     }
 
+    /**
+     * Execute the request with the shared client of the request factory.  Credentials and proxy are configured per request
+     * (in the client context and the request config) so that the pooled connections are reused between requests.  Cookies
+     * are kept per request object, not in the shared client.
+     */
     protected ClientHttpResponse doExecute(final HttpRequestBase httpMethod) throws IOException {
-        return requestFactory.execute(httpMethod, new Function<HttpClientBuilder, Void>() {
-            @Nullable
-            @Override
-            public Void apply(@Nonnull HttpClientBuilder input) {
-                final BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-                if (credentials != null) {
-                    final URI uri = httpMethod.getURI();
-                    HttpHost hh = new HttpHost(
-                            uri.getHost(),
-                            uri.getPort(),
-                            uri.getScheme());
-                    credentialsProvider.setCredentials(new AuthScope(hh), credentials);
-
-                    // Preemptive authentication
-                    if (isPreemptiveBasicAuth()) {
-                        // Create AuthCache instance
-                        AuthCache authCache = new BasicAuthCache();
-                        // Generate BASIC scheme object and add it to the local auth cache
-                        BasicScheme basicAuth = new BasicScheme();
-                        authCache.put(hh, basicAuth);
-
-                        // Add AuthCache to the execution context
-                        httpClientContext = HttpClientContext.create();
-                        httpClientContext.setCredentialsProvider(credentialsProvider);
-                        httpClientContext.setAuthCache(authCache);
-                    } else {
-                        input.setDefaultCredentialsProvider(credentialsProvider);
-                    }
-                } else {
-                    input.setDefaultCredentialsProvider(credentialsProvider);
-                }
+        final HttpClientContext clientContext = HttpClientContext.create();
+        final BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        if (credentials != null) {
+            final URI uri = httpMethod.getURI();
+            HttpHost hh = new HttpHost(
+                    uri.getHost(),
+                    uri.getPort(),
+                    uri.getScheme());
+            credentialsProvider.setCredentials(new AuthScope(hh), credentials);
+
+            // Preemptive authentication
+            if (isPreemptiveBasicAuth()) {
+                // Create AuthCache instance
+                AuthCache authCache = new BasicAuthCache();
+                // Generate BASIC scheme object and add it to the local auth cache
+                BasicScheme basicAuth = new BasicScheme();
+                authCache.put(hh, basicAuth);
+
+                // Add AuthCache to the execution context
+                clientContext.setAuthCache(authCache);
+            }
+        }
 
-                if (useProxy) {
-                    final HttpHost proxy = new HttpHost(proxyHost, proxyPort);
-                    input.setProxy(proxy);
-                    if (proxyCredentials != null) {
-                        credentialsProvider.setCredentials(new AuthScope(proxy), proxyCredentials);
-                    }
-                }
-                input.setRedirectStrategy(new LaxRedirectStrategy());
-                return null;
+        if (useProxy) {
+            final HttpHost proxy = new HttpHost(proxyHost, proxyPort);
+            final RequestConfig config = httpMethod.getConfig();
+            final RequestConfig.Builder builder = config == null ? RequestConfig.custom() : RequestConfig.copy(config);
+            httpMethod.setConfig(builder.setProxy(proxy).build());
+            if (proxyCredentials != null) {
+                credentialsProvider.setCredentials(new AuthScope(proxy), proxyCredentials);
             }
-        }, this);
+        }
+        clientContext.setCredentialsProvider(credentialsProvider);
+        clientContext.setCookieStore(cookieStore);
+        httpClientContext = clientContext;
+
+        return requestFactory.execute(httpMethod, clientContext);
     }
 
     protected HttpRequestBase setupHttpMethod() throws IOException {
@@ -0,0 +1,201 @@
+//=============================================================================
+//===	Copyright (C) 2001-2005 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This library is free software; you can redistribute it and/or
+//===	modify it under the terms of the GNU Lesser General Public
+//===	License as published by the Free Software Foundation; either
+//===	version 2.1 of the License, or (at your option) any later version.
+//===
+//===	This library is distributed in the hope that it will be useful,
+//===	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//===	Lesser General Public License for more details.
+//===
+//===	You should have received a copy of the GNU Lesser General Public
+//===	License along with this library; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: GeoNetwork@fao.org
+//==============================================================================
+
+package org.fao.geonet.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the number of bytes per second read by all the streams it wraps.
+ * <p/>
+ * The bucket holds at most one second of tokens.  A read is never refused: the bytes read are taken from the bucket,
+ * which may go in debt, and the reading thread sleeps until the debt is paid back.
+ * <p/>
+ * A limiter can be bound to a thread with {@link #bind(BandwidthLimiter)}, the responses of the
+ * {@link GeonetHttpRequestFactory} executed by this thread are then read through the limiter.  The limiter is not
+ * inherited by the threads it creates (pooled threads would keep it), the tasks run by other threads must be wrapped
+ * with {@link #wrap(BandwidthLimiter, Runnable)}.
+ */
+public class BandwidthLimiter {
+    private static final ThreadLocal<BandwidthLimiter> CURRENT = new ThreadLocal<BandwidthLimiter>();
+
+    private final long bytesPerSecond;
+    private long tokens;
+    private long lastRefill;
+
+    /**
+     * @param bytesPerSecond the maximum number of bytes read per second, must be positive.
+     */
+    public BandwidthLimiter(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("bytesPerSecond must be positive: " + bytesPerSecond);
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = bytesPerSecond;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Take the bytes from the bucket and wait until the bucket is not in debt anymore.
+     *
+     * @param bytes the number of bytes read.
+     * @throws InterruptedIOException if the thread is interrupted while waiting.
+     */
+    public void consume(long bytes) throws InterruptedIOException {
+        if (bytes <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            tokens -= bytes;
+            waitNanos = tokens < 0 ? -tokens * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond : 0;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+            }
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRefill;
+        long newTokens = elapsed * bytesPerSecond / TimeUnit.SECONDS.toNanos(1);
+        if (newTokens > 0) {
+            tokens = Math.min(bytesPerSecond, tokens + newTokens);
+            lastRefill = now;
+        }
+    }
+
+    /**
+     * Wrap a stream so that the bytes read from it are taken from this limiter.
+     */
+    public InputStream limit(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    consume(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    consume(read);
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                consume(skipped);
+                return skipped;
+            }
+        };
+    }
+
+    /**
+     * Bind a limiter to the current thread.
+     *
+     * @param limiter the limiter, null to remove the limit.
+     */
+    public static void bind(BandwidthLimiter limiter) {
+        if (limiter == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(limiter);
+        }
+    }
+
+    /**
+     * Remove the limiter bound to the current thread.
+     */
+    public static void unbind() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Get the limiter bound to the current thread.
+     *
+     * @return the limiter or null if the reads of this thread are not limited.
+     */
+    public static BandwidthLimiter getCurrent() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Wrap a task so that the limiter is bound to the thread running it, and unbound when it ends.
+     *
+     * @param limiter the limiter, null to run the task without limit.
+     */
+    public static Runnable wrap(final BandwidthLimiter limiter, final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                bind(limiter);
+                try {
+                    task.run();
+                } finally {
+                    unbind();
+                }
+            }
+        };
+    }
+
+    /**
+     * Wrap a task so that the limiter is bound to the thread running it, and unbound when it ends.
+     *
+     * @param limiter the limiter, null to run the task without limit.
+     */
+    public static <T> Callable<T> wrap(final BandwidthLimiter limiter, final Callable<T> task) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                bind(limiter);
+                try {
+                    return task.call();
+                } finally {
+                    unbind();
+                }
+            }
+        };
+    }
+}
@@ -185,10 +185,28 @@ public final class BinaryFile
 
 	//---------------------------------------------------------------------------
 
+	/**
+	 * Encode a response whose content is written by the writer straight to the
+	 * output stream of the response, without an intermediate file.
+	 *
+	 * @param name        the file name proposed to the user
+	 * @param contentType the content type of the response
+	 */
+	public static Element encode(int responseCode, StreamWriter writer, String name, String contentType)
+	{
+		Element response = new StreamedResponse(writer);
+		response.setAttribute("responseCode", responseCode + "");
+		response.setAttribute("name", name);
+		response.setAttribute("contentType", contentType);
+		return response;
+	}
+
+	//---------------------------------------------------------------------------
+
 	public static String getContentType(Element response)
 	{
 		String path = response.getAttributeValue("path");
-		if (path == null) return null;
+		if (path == null) return response.getAttributeValue("contentType");
 		return getContentType(path);
 	}
 
@@ -248,6 +266,11 @@ public final class BinaryFile
 
 	public static void write(Element response, OutputStream output) throws IOException
 	{
+		if (response instanceof StreamedResponse) {
+			((StreamedResponse) response).writer.write(output);
+			return;
+		}
+
 		//----------------------------------------------------------------------
 		// Local class required by jsch for scp
 		class MyUserInfo implements UserInfo {
@@ -570,6 +593,31 @@ public final class BinaryFile
             IO.delete(inFile, false, "org.fao.geonet");
         }
     }
+
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Writes the content of a response encoded by
+	 * {@link BinaryFile#encode(int, StreamWriter, String, String)}.
+	 */
+	public interface StreamWriter
+	{
+		void write(OutputStream output) throws IOException;
+	}
+
+	//---------------------------------------------------------------------------
+
+	private static final class StreamedResponse extends Element
+	{
+		private static final long serialVersionUID = 1L;
+		private final transient StreamWriter writer;
+
+		private StreamedResponse(StreamWriter writer)
+		{
+			super("response");
+			this.writer = writer;
+		}
+	}
 }
 
 //=============================================================================
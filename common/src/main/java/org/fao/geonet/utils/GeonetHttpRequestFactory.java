@@ -3,21 +3,24 @@ package org.fao.geonet.utils;
 import com.google.common.base.Function;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.Header;
-import org.apache.http.HeaderElement;
 import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.config.SocketConfig;
 import org.apache.http.conn.ConnectionRequest;
 import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.LaxRedirectStrategy;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.HttpContext;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.client.AbstractClientHttpResponse;
@@ -26,7 +29,15 @@ import org.springframework.http.client.ClientHttpResponse;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.PreDestroy;
@@ -40,11 +51,26 @@ import javax.annotation.PreDestroy;
  */
 public class GeonetHttpRequestFactory {
     private int numberOfConcurrentRequests = 20;
+    private int maxConnectionsPerRoute = 10;
+    private Map<String, Integer> maxConnectionsPerHost = new HashMap<String, Integer>();
+    private int socketTimeout = (int) TimeUnit.MINUTES.toMillis(3);
+    private long idleConnectionTimeout = TimeUnit.SECONDS.toMillis(30);
     private PoolingHttpClientConnectionManager connectionManager;
     private volatile HttpClientConnectionManager nonShutdownableConnectionManager;
+    private volatile CloseableHttpClient sharedClient;
+    private ScheduledExecutorService idleConnectionEvictor;
+
+    private final AtomicLong executedRequests = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
 
     @PreDestroy
     public synchronized void shutdown() {
+        if (idleConnectionEvictor != null) {
+            idleConnectionEvictor.shutdownNow();
+        }
+        idleConnectionEvictor = null;
+        IOUtils.closeQuietly(sharedClient);
+        sharedClient = null;
         if (connectionManager != null) {
             connectionManager.shutdown();
         }
@@ -55,6 +81,39 @@ public class GeonetHttpRequestFactory {
         this.numberOfConcurrentRequests = numberOfConcurrentRequests;
     }
 
+    /**
+     * Set the maximum number of concurrent connections to a single host (unless specified in {@link #setMaxConnectionsPerHost(java.util.Map)}).
+     */
+    public synchronized void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        shutdown();
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    /**
+     * Set the maximum number of concurrent connections for specific hosts.  The keys are of the form <code>host</code> or
+     * <code>host:port</code>.
+     */
+    public synchronized void setMaxConnectionsPerHost(Map<String, Integer> maxConnectionsPerHost) {
+        shutdown();
+        this.maxConnectionsPerHost = new HashMap<String, Integer>(maxConnectionsPerHost);
+    }
+
+    /**
+     * Set the socket read timeout in milliseconds.
+     */
+    public synchronized void setSocketTimeout(int socketTimeout) {
+        shutdown();
+        this.socketTimeout = socketTimeout;
+    }
+
+    /**
+     * Set the time in milliseconds after which idle pooled connections are closed.  0 or less disables the eviction.
+     */
+    public synchronized void setIdleConnectionTimeout(long idleConnectionTimeout) {
+        shutdown();
+        this.idleConnectionTimeout = idleConnectionTimeout;
+    }
+
     /**
      * Create a default XmlRequest.
      *
@@ -113,15 +172,62 @@ public class GeonetHttpRequestFactory {
         return request;
     }
 
+    /**
+     * Execute the request with the client shared by all requests of this factory.  The body of the returned response is read
+     * directly from the connection, closing the response releases the connection back to the pool.
+     */
     public ClientHttpResponse execute(HttpUriRequest request) throws IOException {
-        final Function<HttpClientBuilder, Void> noop = new Function<HttpClientBuilder, Void>() {
-            @Nullable
-            @Override
-            public Void apply(@Nullable HttpClientBuilder input) {
-                return null;
+        return execute(request, (HttpClientContext) null);
+    }
+
+    /**
+     * Execute the request with the client shared by all requests of this factory.  Request specific configuration like
+     * credentials should be set in the context and the proxy in the {@link org.apache.http.client.config.RequestConfig} of the
+     * request.
+     * <p/>
+     * The body of the returned response is read directly from the connection, closing the response releases the connection
+     * back to the pool.
+     *
+     * @param request the request to execute.
+     * @param context the context of the request, may be null.  Without a cookie store in the context the cookies of the
+     *                response are dropped.
+     */
+    public ClientHttpResponse execute(HttpUriRequest request, @Nullable HttpClientContext context) throws IOException {
+        final CloseableHttpClient client = getSharedClient();
+        final HttpClientContext clientContext = context == null ? HttpClientContext.create() : context;
+        if (clientContext.getCookieStore() == null) {
+            // never fall back to the cookie store of the shared client: the cookies would leak to all requests
+            clientContext.setCookieStore(new BasicCookieStore());
+        }
+        final CloseableHttpResponse response;
+        try {
+            response = client.execute(request, clientContext);
+        } catch (IOException e) {
+            failedRequests.incrementAndGet();
+            throw e;
+        } catch (RuntimeException e) {
+            failedRequests.incrementAndGet();
+            throw e;
+        }
+        executedRequests.incrementAndGet();
+        return new AdaptingResponse(null, response);
+    }
+
+    /**
+     * Get the client shared by all the requests that don't need to configure the client itself.
+     */
+    protected CloseableHttpClient getSharedClient() {
+        CloseableHttpClient client = sharedClient;
+        if (client == null) {
+            synchronized (this) {
+                client = sharedClient;
+                if (client == null) {
+                    client = getDefaultHttpClientBuilder().build();
+                    sharedClient = client;
+                }
             }
-        };
-        return execute(request, noop);
+        }
+        return client;
     }
 
     public ClientHttpResponse execute(HttpUriRequest request,
@@ -141,13 +247,18 @@ public class GeonetHttpRequestFactory {
         };
         return execute(request, setCredentials);
     }
+    /**
+     * Execute the request with a client configured by the configurator.  The client still uses the connection pool of the
+     * factory but is created for this request, so prefer {@link #execute(HttpUriRequest, HttpClientContext)} when the
+     * configuration can be expressed in the request context.
+     */
     public ClientHttpResponse execute(HttpUriRequest request,
                                       Function<HttpClientBuilder, Void> configurator) throws IOException {
         final HttpClientBuilder clientBuilder = getDefaultHttpClientBuilder();
         configurator.apply(clientBuilder);
         CloseableHttpClient httpClient = clientBuilder.build();
 
-        return new AdaptingResponse(httpClient, httpClient.execute(request));
+        return new AdaptingResponse(httpClient, countRequest(httpClient, request, null));
     }
 
     public ClientHttpResponse execute(HttpUriRequest request,
@@ -157,11 +268,55 @@ public class GeonetHttpRequestFactory {
         configurator.apply(clientBuilder);
         CloseableHttpClient httpClient = clientBuilder.build();
         if (r.isPreemptiveBasicAuth()) {
-            return new AdaptingResponse(httpClient, httpClient.execute(request, r.getHttpClientContext()));
+            return new AdaptingResponse(httpClient, countRequest(httpClient, request, r.getHttpClientContext()));
         } else {
-            return new AdaptingResponse(httpClient, httpClient.execute(request));
+            return new AdaptingResponse(httpClient, countRequest(httpClient, request, null));
+        }
+
+    }
+
+    private CloseableHttpResponse countRequest(CloseableHttpClient httpClient, HttpUriRequest request,
+                                               HttpClientContext context) throws IOException {
+        try {
+            final CloseableHttpResponse response;
+            if (context == null) {
+                response = httpClient.execute(request);
+            } else {
+                response = httpClient.execute(request, context);
+            }
+            executedRequests.incrementAndGet();
+            return response;
+        } catch (IOException e) {
+            failedRequests.incrementAndGet();
+            IOUtils.closeQuietly(httpClient);
+            throw e;
         }
+    }
+
+    /**
+     * @return the number of requests executed by this factory.
+     */
+    public long getExecutedRequests() {
+        return executedRequests.get();
+    }
+
+    /**
+     * @return the number of requests that failed with an exception (not with an http error status).
+     */
+    public long getFailedRequests() {
+        return failedRequests.get();
+    }
 
+    /**
+     * @return the statistics of the connection pool (leased, pending and available connections) or null if no request has
+     * been made yet.
+     */
+    @Nullable
+    public synchronized PoolStats getConnectionPoolStats() {
+        if (connectionManager == null) {
+            return null;
+        }
+        return connectionManager.getTotalStats();
     }
     public HttpClientBuilder getDefaultHttpClientBuilder() {
         final HttpClientBuilder builder = HttpClientBuilder.create();
@@ -172,6 +327,13 @@ public class GeonetHttpRequestFactory {
             if (connectionManager == null) {
                 connectionManager = new PoolingHttpClientConnectionManager();
                 connectionManager.setMaxTotal(this.numberOfConcurrentRequests);
+                connectionManager.setDefaultMaxPerRoute(Math.min(this.maxConnectionsPerRoute, this.numberOfConcurrentRequests));
+                for (Map.Entry<String, Integer> entry : maxConnectionsPerHost.entrySet()) {
+                    for (HttpRoute route : createRoutes(entry.getKey())) {
+                        connectionManager.setMaxPerRoute(route, entry.getValue());
+                    }
+                }
+                startIdleConnectionEvictor();
                 nonShutdownableConnectionManager = new HttpClientConnectionManager() {
                     public void closeExpiredConnections() {
                         connectionManager.closeExpiredConnections();
@@ -206,7 +368,7 @@ public class GeonetHttpRequestFactory {
                     }
                 };
             }
-            connectionManager.setDefaultSocketConfig(SocketConfig.custom().setSoTimeout((int) TimeUnit.MINUTES.toMillis(3)).build());
+            connectionManager.setDefaultSocketConfig(SocketConfig.custom().setSoTimeout(socketTimeout).build());
             builder.setConnectionManager(nonShutdownableConnectionManager);
         }
 
@@ -214,14 +376,60 @@ public class GeonetHttpRequestFactory {
         return builder;
     }
 
+    /**
+     * Create the http and https routes to a host, used to set per host connection limits on a pooling connection manager.
+     *
+     * @param hostAndPort host[:port], without port the default ports of http and https are used.
+     */
+    public static List<HttpRoute> createRoutes(String hostAndPort) {
+        List<HttpRoute> routes = new ArrayList<HttpRoute>(2);
+        int index = hostAndPort.lastIndexOf(':');
+        if (index > 0) {
+            String host = hostAndPort.substring(0, index);
+            int port = Integer.parseInt(hostAndPort.substring(index + 1));
+            routes.add(new HttpRoute(new HttpHost(host, port, "http")));
+            routes.add(new HttpRoute(new HttpHost(host, port, "https"), null, true));
+        } else {
+            routes.add(new HttpRoute(new HttpHost(hostAndPort, 80, "http")));
+            routes.add(new HttpRoute(new HttpHost(hostAndPort, 443, "https"), null, true));
+        }
+        return routes;
+    }
+
+    private void startIdleConnectionEvictor() {
+        if (idleConnectionTimeout <= 0 || idleConnectionEvictor != null) {
+            return;
+        }
+        final PoolingHttpClientConnectionManager manager = connectionManager;
+        idleConnectionEvictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "http-request-factory-idle-connection-evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        idleConnectionEvictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                manager.closeExpiredConnections();
+                manager.closeIdleConnections(idleConnectionTimeout, TimeUnit.MILLISECONDS);
+            }
+        }, idleConnectionTimeout, idleConnectionTimeout, TimeUnit.MILLISECONDS);
+    }
+
     private static class AdaptingResponse extends AbstractClientHttpResponse {
 
         private final CloseableHttpResponse _response;
+        // null when the response was obtained from the shared client, which must not be closed
         private final CloseableHttpClient _client;
+        // the limiter of the thread which executed the request, null if the body is not limited
+        private final BandwidthLimiter _limiter;
 
-        public AdaptingResponse(CloseableHttpClient client, CloseableHttpResponse response) {
+        public AdaptingResponse(@Nullable CloseableHttpClient client, CloseableHttpResponse response) {
             this._response = response;
             this._client = client;
+            this._limiter = BandwidthLimiter.getCurrent();
         }
 
         @Override
@@ -237,12 +445,18 @@ public class GeonetHttpRequestFactory {
         @Override
         public void close() {
             IOUtils.closeQuietly(_response);
-            IOUtils.closeQuietly(_client);
+            if (_client != null) {
+                IOUtils.closeQuietly(_client);
+            }
         }
 
         @Override
         public InputStream getBody() throws IOException {
-            return _response.getEntity().getContent();
+            final InputStream content = _response.getEntity().getContent();
+            if (_limiter == null || content == null) {
+                return content;
+            }
+            return _limiter.limit(content);
         }
 
         @Override
@@ -251,11 +465,9 @@ public class GeonetHttpRequestFactory {
 
             final Header[] headers = _response.getAllHeaders();
 
+            // the raw values: parsing them as header elements loses the ETag, dates and media types
             for (Header header : headers) {
-                final HeaderElement[] elements = header.getElements();
-                for (HeaderElement element : elements) {
-                    httpHeaders.add(header.getName(), element.getValue());
-                }
+                httpHeaders.add(header.getName(), header.getValue());
             }
             return httpHeaders;
         }
@@ -62,6 +62,9 @@ public class XmlElementReader implements Iterator<Element> {
 	private XMLEventReader reader;
 	private XMLEvent currentEvent;
 	private Stack<QName> elementNameStack;
+	private Stack<Element> ancestorStack;
+	private Element parentOfLastElement;
+	private Element rootElement;
 	private MatchExpression matchExpression;
 	
 	//---------------------------------------------------------------------------
@@ -70,13 +73,15 @@ public class XmlElementReader implements Iterator<Element> {
     //  
     // @param source		XML document as an input stream
     // @param path 			simple path expression for matching element paths (e.g gml:featureMembers/*) (not an XPath!) 
+    //						alternative paths can be separated by | (e.g gml:featureMembers/*|wfs:member/*)
 	// @param namespaces	namespace prefixes used in path
     //
 
 	public XmlElementReader(InputStream source, String path, List<org.jdom.Namespace> namespaces) throws XMLStreamException, FactoryConfigurationError  {
-		this.reader = XMLInputFactory.newInstance().createXMLEventReader(source);
+		this.reader = createInputFactory().createXMLEventReader(source);
 		this.matchExpression = new MatchExpression(path, namespaces);
 		this.elementNameStack = new Stack<QName>();
+		this.ancestorStack = new Stack<Element>();
 		
 		// find the first element with matching path
 		findNext();
@@ -100,11 +105,67 @@ public class XmlElementReader implements Iterator<Element> {
 	    if (!hasNext()) throw new NoSuchElementException();
 	    
 	    Element result = readElement();
+	    parentOfLastElement = ancestorStack.isEmpty() ? null : ancestorStack.peek();
+	    addInScopeNamespaces(result);
 	    findNext();
 	    
 	    return result;
     }
 
+	//---------------------------------------------------------------------------
+	/**
+	 * Get the parent of the last element returned by {@link #next()}, without its content (only the attributes and namespace 
+	 * declarations). For example the csw:SearchResults element of a csw:Record, from which the number of matching records 
+	 * can be read.
+	 * 
+	 * @return the parent element or null if next has not been called yet or if the last element is the root element.
+	 */
+
+	public Element getParentElement() {
+		return parentOfLastElement;
+	}
+
+	//---------------------------------------------------------------------------
+	/**
+	 * Get the root element of the document, without its content (only the attributes and namespace declarations). Can be 
+	 * used to check the type of the document (for example an exception report) when there are no matching elements.
+	 * 
+	 * @return the root element or null if the document is empty or the root element is the matched element.
+	 */
+
+	public Element getRootElement() {
+		return ancestorStack.isEmpty() ? rootElement : ancestorStack.get(0);
+	}
+
+	//---------------------------------------------------------------------------
+	/**
+	 * Declare on the element the namespaces declared on its ancestors so that prefixes used in attribute values 
+	 * (xsi:type="gco:..." ) still resolve once the element is detached from the document.
+	 */
+	
+	private void addInScopeNamespaces(Element element) {
+		for (int i = ancestorStack.size() - 1; i >= 0; i--) {
+			Element ancestor = ancestorStack.get(i);
+			addNamespace(element, ancestor.getNamespace());
+			@SuppressWarnings("unchecked")
+			List<org.jdom.Namespace> additional = ancestor.getAdditionalNamespaces();
+			for (org.jdom.Namespace namespace : additional) {
+				addNamespace(element, namespace);
+			}
+		}
+	}
+
+	private void addNamespace(Element element, org.jdom.Namespace namespace) {
+		if (namespace.getPrefix().length() == 0 || element.getNamespace(namespace.getPrefix()) != null) {
+			return;
+		}
+		try {
+			element.addNamespaceDeclaration(namespace);
+		} catch (org.jdom.IllegalAddException e) {
+			// an attribute of the element uses the prefix for another namespace, keep the one of the element
+		}
+	}
+
 	//---------------------------------------------------------------------------
 	/**
 	 * Remove element for the stream is not implemented
@@ -122,25 +183,48 @@ public class XmlElementReader implements Iterator<Element> {
 	
     private void findNext() {
 		while (reader.hasNext()) {
-			currentEvent = (XMLEvent) reader.next();
+			currentEvent = nextEvent();
 			
 			// update element path
         	if (currentEvent.getEventType() == XMLStreamConstants.START_ELEMENT) {
         		elementNameStack.push(currentEvent.asStartElement().getName());
 	        } else if (currentEvent.getEventType() == XMLStreamConstants.END_ELEMENT) {
 	        	elementNameStack.pop();
+	        	ancestorStack.pop();
 	        }
         	
 			// check for match
-			if (currentEvent.getEventType() == XMLEvent.START_ELEMENT && matchExpression.matches(elementNameStack.toArray(new QName[0]))) { 
-	        	elementNameStack.pop();
-				return;
+			if (currentEvent.getEventType() == XMLEvent.START_ELEMENT) {
+				if (matchExpression.matches(elementNameStack.toArray(new QName[0]))) { 
+					elementNameStack.pop();
+					return;
+				}
+				// keep the ancestors of the matched elements (without content) for getParentElement and getRootElement
+				Element ancestor = createElement(currentEvent);
+				if (ancestorStack.isEmpty()) {
+					rootElement = ancestor;
+				}
+				ancestorStack.push(ancestor);
 			}
 		}
     }
 
 	//---------------------------------------------------------------------------
     /**
+     * Read the next event from the stream.  Parse errors are thrown as an IllegalStateException caused by the
+     * XMLStreamException.
+     */
+
+    private XMLEvent nextEvent() {
+    	try {
+    		return reader.nextEvent();
+    	} catch (XMLStreamException e) {
+    		throw new IllegalStateException("Error reading XML stream: " + e.getMessage(), e);
+    	}
+    }
+
+	//---------------------------------------------------------------------------
+    /**
      * Read an element from the stream processing all events for the element
      */
     
@@ -149,7 +233,7 @@ public class XmlElementReader implements Iterator<Element> {
     	Element element = createElement(currentEvent);
     	
     	// Add element content
-    	currentEvent = (XMLEvent) reader.next();
+    	currentEvent = nextEvent();
     	
     	while (currentEvent.getEventType() != XMLEvent.END_ELEMENT) {
         	
@@ -185,7 +269,7 @@ public class XmlElementReader implements Iterator<Element> {
 	                throw new IllegalStateException("Not a recognized value");
             }
 	
-        	currentEvent = (XMLEvent) reader.next();
+        	currentEvent = nextEvent();
         }
     	
         return element;
@@ -239,7 +323,8 @@ public class XmlElementReader implements Iterator<Element> {
 	    	if (prefix == null || prefix.length() == 0) {
 	    		ns = org.jdom.Namespace.NO_NAMESPACE;
 	    	} else {
-	    		ns = result.getNamespace(prefix);
+	    		// the prefix may be declared on an ancestor of the element
+	    		ns = org.jdom.Namespace.getNamespace(prefix, att.getName().getNamespaceURI());
 	    	}
 	    	
 	    	org.jdom.Attribute attr = new org.jdom.Attribute(att.getName().getLocalPart(), att.getValue(), resolveAttrType(att.getDTDType()), ns);
@@ -251,6 +336,18 @@ public class XmlElementReader implements Iterator<Element> {
 
 	//---------------------------------------------------------------------------
     /**
+     * Create the StAX input factory. External entities are not resolved since the documents read are often 
+     * remote responses.
+     */
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+
+	//---------------------------------------------------------------------------
+    /**
      * Translate a StAX attribute type into a JDOM attribute type
      */
 	
@@ -305,6 +402,7 @@ public class XmlElementReader implements Iterator<Element> {
 	private static class MatchExpression {
 		private boolean absolute;
 		private NameTest[] tests;
+		private MatchExpression alternative;
 
 		//---------------------------------------------------------------------------
 	    /**
@@ -312,6 +410,12 @@ public class XmlElementReader implements Iterator<Element> {
 	     */
 		
 		public MatchExpression(String path, List<org.jdom.Namespace> namespaces) {
+			int union = path.indexOf('|');
+			if (union >= 0) {
+				alternative = new MatchExpression(path.substring(union + 1), namespaces);
+				path = path.substring(0, union);
+			}
+
 			if (path.startsWith("/")) {
 				absolute = true;
 				path = path.replaceFirst("/", "");
@@ -330,6 +434,10 @@ public class XmlElementReader implements Iterator<Element> {
 	    }
 		
 		public boolean matches(QName[] names) {
+			return matchesPath(names) || (alternative != null && alternative.matches(names));
+		}
+
+		private boolean matchesPath(QName[] names) {
 			if (absolute && names.length != tests.length) {
 				return false;
 			}
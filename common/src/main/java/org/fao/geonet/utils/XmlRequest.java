@@ -9,16 +9,19 @@ import org.fao.geonet.exceptions.BadXmlResponseEx;
 import org.apache.commons.io.IOUtils;
 import org.jdom.Element;
 import org.jdom.JDOMException;
+import org.jdom.Namespace;
 import org.springframework.http.client.ClientHttpResponse;
 
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import javax.xml.stream.XMLStreamException;
 
 //=============================================================================
 
@@ -72,6 +75,58 @@ public class XmlRequest extends AbstractHttpRequest {
 		return response;
 	}
 
+	//---------------------------------------------------------------------------
+	/** Sends a request and streams the elements of the response matching the path
+	  * to the handler, one element at a time, while the response is still being
+	  * downloaded. Only the current element is held in memory so this should be
+	  * used for large responses like CSW GetRecords or OAI-PMH ListRecords pages.
+	  *
+	  * @param path       simple path expression of the elements to read (see {@link XmlElementReader})
+	  * @param namespaces namespaces of the prefixes used in the path
+	  * @param handler    reads the elements from the reader, the connection is released when it returns
+	  * @return the value returned by the handler
+	  */
+
+	public final <T> T executeStreaming(String path, List<Namespace> namespaces, ElementStreamHandler<T> handler) throws Exception
+	{
+        HttpRequestBase httpMethod = setupHttpMethod();
+
+        final ClientHttpResponse httpResponse = doExecute(httpMethod);
+
+        try {
+            if (httpResponse.getRawStatusCode() > 399) {
+                throw new BadServerResponseEx(httpResponse.getStatusText() +
+                        " -- URI: " + httpMethod.getURI() +
+                        " -- Response Code: " + httpResponse.getRawStatusCode());
+            }
+
+            return handler.handle(new XmlElementReader(httpResponse.getBody(), path, namespaces));
+        }
+
+        catch (XMLStreamException e)
+        {
+            throw new BadXmlResponseEx("Response could not be parsed: " + e.getMessage() + " (from URI " + httpMethod.getURI() + ")");
+        }
+
+        catch (IllegalStateException e)
+        {
+            if (e.getCause() instanceof XMLStreamException) {
+                throw new BadXmlResponseEx("Response could not be parsed: " + e.getCause().getMessage()
+                                           + " (from URI " + httpMethod.getURI() + ")");
+            }
+            throw e;
+        }
+
+        finally
+        {
+            // if the handler stopped before the end of the response the connection is closed instead of being reused
+            httpResponse.close();
+            httpMethod.releaseConnection();
+
+            sentData = getSentData(httpMethod);
+        }
+	}
+
 	//---------------------------------------------------------------------------
 	/** Sends a request (using GET or POST) and save the content to a file. This
 	  * method does not store received data.
@@ -85,6 +140,42 @@ public class XmlRequest extends AbstractHttpRequest {
 	}
 
 	//---------------------------------------------------------------------------
+	/** Sends a request (using GET or POST) and passes the content of the response
+	  * to the handler while it is downloaded. Like {@link #executeLarge(File)} this
+	  * is meant for large binary responses (eg. MEF files) but nothing is written
+	  * to disk.
+	  *
+	  * @param handler reads the response, the connection is released when it returns
+	  * @return the value returned by the handler
+	  */
+
+	public final <T> T executeLarge(InputStreamHandler<T> handler) throws Exception
+	{
+        HttpRequestBase httpMethod = setupHttpMethod();
+
+        final ClientHttpResponse httpResponse = doExecute(httpMethod);
+
+        try {
+            if (httpResponse.getRawStatusCode() > 399) {
+                throw new BadServerResponseEx(httpResponse.getStatusText() +
+                        " -- URI: " + httpMethod.getURI() +
+                        " -- Response Code: " + httpResponse.getRawStatusCode());
+            }
+
+            return handler.handle(httpResponse.getBody());
+        }
+
+        finally
+        {
+            // if the handler stopped before the end of the response the connection is closed instead of being reused
+            httpResponse.close();
+            httpMethod.releaseConnection();
+
+            sentData = getSentData(httpMethod);
+        }
+	}
+
+	//---------------------------------------------------------------------------
 
     //---------------------------------------------------------------------------
 	//---
@@ -98,26 +189,30 @@ public class XmlRequest extends AbstractHttpRequest {
 
         final ClientHttpResponse httpResponse = doExecute(httpMethod);
 
-        if (httpResponse.getRawStatusCode() > 399) {
-            throw new BadServerResponseEx(httpResponse.getStatusText() + 
-                    " -- URI: " + httpMethod.getURI() +
-                    " -- Response Code: " + httpResponse.getRawStatusCode());
-        }
-
-        byte[] data = null;
+        // the response is parsed directly from the connection, only its beginning is kept for error messages
+        ResponseHeadInputStream in = null;
 
 		try {
-		    data = IOUtils.toByteArray(httpResponse.getBody());
-			return Xml.loadStream(new ByteArrayInputStream(data));
+            if (httpResponse.getRawStatusCode() > 399) {
+                throw new BadServerResponseEx(httpResponse.getStatusText() +
+                        " -- URI: " + httpMethod.getURI() +
+                        " -- Response Code: " + httpResponse.getRawStatusCode());
+            }
+
+		    in = new ResponseHeadInputStream(httpResponse.getBody());
+			Element response = Xml.loadStream(in);
+            in.consume();
+            return response;
 		}
 
 		catch(JDOMException e)
 		{
-			throw new BadXmlResponseEx("Response: '" + new String(data, "UTF8") + "' (from URI " + httpMethod.getURI() + ")");
+			throw new BadXmlResponseEx("Response: '" + in.getHead() + "' (from URI " + httpMethod.getURI() + ")");
 		}
 
 		finally
 		{
+            httpResponse.close();
 			httpMethod.releaseConnection();
 
 			sentData     = getSentData(httpMethod);
@@ -131,10 +226,11 @@ public class XmlRequest extends AbstractHttpRequest {
 
 		InputStream  is = null;
 		OutputStream os = null;
+        ClientHttpResponse httpResponse = null;
 
 		try
 		{
-            final ClientHttpResponse httpResponse = doExecute(httpMethod);
+            httpResponse = doExecute(httpMethod);
 
 			is = httpResponse.getBody();
 			os = new FileOutputStream(outFile);
@@ -147,6 +243,9 @@ public class XmlRequest extends AbstractHttpRequest {
 		{
 		    IOUtils.closeQuietly(is);
 		    IOUtils.closeQuietly(os);
+            if (httpResponse != null) {
+                httpResponse.close();
+            }
 			httpMethod.releaseConnection();
 
 			sentData = getSentData(httpMethod);
@@ -155,6 +254,88 @@ public class XmlRequest extends AbstractHttpRequest {
 		}
 	}
 
+    //---------------------------------------------------------------------------
+
+    /**
+     * Reads the elements of a response streamed by {@link XmlRequest#executeStreaming(String, java.util.List,
+     * ElementStreamHandler)}.
+     */
+    public interface ElementStreamHandler<T> {
+        /**
+         * Read the elements from the reader. Each call to {@link XmlElementReader#next()} parses the next matching element
+         * from the connection.
+         *
+         * @param reader the reader of the matching elements.
+         * @return the result of the processing.
+         */
+        T handle(XmlElementReader reader) throws Exception;
+    }
+
+    //---------------------------------------------------------------------------
+
+    /**
+     * Reads the response of a request executed by {@link XmlRequest#executeLarge(InputStreamHandler)}.
+     */
+    public interface InputStreamHandler<T> {
+        /**
+         * Read the response.
+         *
+         * @param in the content of the response, read from the connection.
+         * @return the result of the processing.
+         */
+        T handle(InputStream in) throws Exception;
+    }
+
+    //---------------------------------------------------------------------------
+
+    /**
+     * Stream that keeps the first bytes read so that they can be reported if the response is not valid xml.
+     */
+    private static final class ResponseHeadInputStream extends FilterInputStream {
+        private static final int MAX_HEAD_SIZE = 4096;
+        private final ByteArrayOutputStream head = new ByteArrayOutputStream();
+
+        ResponseHeadInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1 && head.size() < MAX_HEAD_SIZE) {
+                head.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0 && head.size() < MAX_HEAD_SIZE) {
+                head.write(b, off, Math.min(read, MAX_HEAD_SIZE - head.size()));
+            }
+            return read;
+        }
+
+        /**
+         * Read what the parser left in the stream (trailing whitespace...) so that the connection can be reused.
+         */
+        void consume() {
+            byte[] buffer = new byte[1024];
+            try {
+                while (in.read(buffer) != -1) {
+                    // skip
+                }
+            } catch (IOException e) {
+                // the parser may already have closed the stream, which also consumes and releases the connection
+            }
+        }
+
+        String getHead() throws IOException {
+            String text = head.toString("UTF8");
+            return head.size() < MAX_HEAD_SIZE ? text : text + "...";
+        }
+    }
 }
 
 //=============================================================================
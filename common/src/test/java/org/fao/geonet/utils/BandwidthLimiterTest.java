@@ -0,0 +1,82 @@
+package org.fao.geonet.utils;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test {@link BandwidthLimiter}.
+ */
+public class BandwidthLimiterTest {
+
+    @Test
+    public void testLimit() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter(10000);
+        InputStream in = limiter.limit(new ByteArrayInputStream(new byte[25000]));
+
+        long start = System.currentTimeMillis();
+        assertEquals(25000, IOUtils.toByteArray(in).length);
+        long elapsed = System.currentTimeMillis() - start;
+
+        // the first second is in the bucket, the other 15000 bytes take 1.5 seconds
+        assertTrue("Read too fast: " + elapsed + "ms", elapsed >= 1000);
+    }
+
+    @Test
+    public void testBind() throws Exception {
+        final BandwidthLimiter limiter = new BandwidthLimiter(10000);
+        assertNull(BandwidthLimiter.getCurrent());
+
+        BandwidthLimiter.bind(limiter);
+        try {
+            assertSame(limiter, BandwidthLimiter.getCurrent());
+
+            // the threads created by the bound thread don't inherit the limiter
+            final AtomicReference<BandwidthLimiter> inherited = new AtomicReference<BandwidthLimiter>(limiter);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    inherited.set(BandwidthLimiter.getCurrent());
+                }
+            });
+            thread.start();
+            thread.join();
+            assertNull(inherited.get());
+
+            // a wrapped task runs with the limiter, which is removed from the pooled thread when the task ends
+            final AtomicReference<BandwidthLimiter> during = new AtomicReference<BandwidthLimiter>();
+            ExecutorService pool = Executors.newSingleThreadExecutor();
+            try {
+                pool.submit(BandwidthLimiter.wrap(limiter, new Runnable() {
+                    @Override
+                    public void run() {
+                        during.set(BandwidthLimiter.getCurrent());
+                    }
+                })).get();
+                assertSame(limiter, during.get());
+                assertNull(pool.submit(new Callable<BandwidthLimiter>() {
+                    @Override
+                    public BandwidthLimiter call() throws Exception {
+                        return BandwidthLimiter.getCurrent();
+                    }
+                }).get());
+            } finally {
+                pool.shutdown();
+            }
+        } finally {
+            BandwidthLimiter.unbind();
+        }
+        assertNull(BandwidthLimiter.getCurrent());
+    }
+}
@@ -5,17 +5,28 @@ import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.fao.geonet.exceptions.BadXmlResponseEx;
 import org.jdom.Element;
+import org.jdom.Namespace;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.ClientHttpResponse;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Test creating requests.
@@ -54,6 +65,154 @@ public class GeonetHttpRequestFactoryTest {
         }
     }
 
+    @Test
+    public void testConnectionsAreReused() throws Exception {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        final Element expectedResponse = new Element("resource").addContent(new Element("id").setText("test"));
+        final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+        httpServer.createContext("/reuse.xml", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                byte[] response = (Xml.getString(expectedResponse) + "\n\n").getBytes();
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        final GeonetHttpRequestFactory requestFactory = new GeonetHttpRequestFactory();
+        try {
+            httpServer.start();
+            final URL url = new URL("http://localhost:" + httpServer.getAddress().getPort() + "/reuse.xml");
+            for (int i = 0; i < 20; i++) {
+                final Element response = requestFactory.createXmlRequest(url).execute();
+                assertEquals(Xml.getString(expectedResponse), Xml.getString(response));
+            }
+
+            assertEquals(1, clientPorts.size());
+            assertEquals(20, requestFactory.getExecutedRequests());
+            assertEquals(0, requestFactory.getFailedRequests());
+            assertEquals(0, requestFactory.getConnectionPoolStats().getLeased());
+        } finally {
+            requestFactory.shutdown();
+            httpServer.stop(0);
+        }
+    }
+
+    @Test
+    public void testInvalidXmlResponse() throws Exception {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/invalid.xml", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] response = "<resource><id>test</resource>".getBytes();
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        final GeonetHttpRequestFactory requestFactory = new GeonetHttpRequestFactory();
+        try {
+            httpServer.start();
+            final URL url = new URL("http://localhost:" + httpServer.getAddress().getPort() + "/invalid.xml");
+            try {
+                requestFactory.createXmlRequest(url).execute();
+                fail("Expected a BadXmlResponseEx");
+            } catch (BadXmlResponseEx e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("<resource><id>test</resource>"));
+            }
+            assertEquals(0, requestFactory.getConnectionPoolStats().getLeased());
+        } finally {
+            requestFactory.shutdown();
+            httpServer.stop(0);
+        }
+    }
+
+    @Test
+    public void testResponseHeaders() throws Exception {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/headers.xml", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] response = "<headers/>".getBytes("UTF-8");
+                exchange.getResponseHeaders().add("ETag", "\"1-a\"");
+                exchange.getResponseHeaders().add("Last-Modified", "Thu, 23 Jan 2014 20:01:22 GMT");
+                exchange.getResponseHeaders().add("Content-Type", "text/xml; charset=UTF-8");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        final GeonetHttpRequestFactory requestFactory = new GeonetHttpRequestFactory();
+        ClientHttpResponse response = null;
+        try {
+            httpServer.start();
+            response = requestFactory.execute(new HttpGet("http://localhost:" + httpServer.getAddress().getPort() + "/headers.xml"));
+
+            final HttpHeaders headers = response.getHeaders();
+            assertEquals("\"1-a\"", headers.getETag());
+            assertEquals("Thu, 23 Jan 2014 20:01:22 GMT", headers.getFirst("Last-Modified"));
+            assertEquals("text/xml; charset=UTF-8", headers.getFirst("Content-Type"));
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+            requestFactory.shutdown();
+            httpServer.stop(0);
+        }
+    }
+
+    @Test
+    public void testStreamingResponse() throws Exception {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/csw", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                StringBuilder xml = new StringBuilder("<csw:GetRecordsResponse xmlns:csw=\"http://www.opengis.net/cat/csw/2.0.2\" ")
+                        .append("xmlns:dc=\"http://purl.org/dc/elements/1.1/\">")
+                        .append("<csw:SearchResults numberOfRecordsMatched=\"25\" nextRecord=\"4\">");
+                for (int i = 1; i < 4; i++) {
+                    xml.append("<csw:Record><dc:identifier>record-").append(i).append("</dc:identifier></csw:Record>");
+                }
+                xml.append("</csw:SearchResults></csw:GetRecordsResponse>");
+                byte[] response = xml.toString().getBytes("UTF-8");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        final GeonetHttpRequestFactory requestFactory = new GeonetHttpRequestFactory();
+        try {
+            httpServer.start();
+            final URL url = new URL("http://localhost:" + httpServer.getAddress().getPort() + "/csw");
+            final Namespace csw = Namespace.getNamespace("csw", "http://www.opengis.net/cat/csw/2.0.2");
+            final Namespace dc = Namespace.getNamespace("dc", "http://purl.org/dc/elements/1.1/");
+
+            final List<String> ids = requestFactory.createXmlRequest(url).executeStreaming(
+                    "/csw:GetRecordsResponse/csw:SearchResults/csw:Record", Collections.singletonList(csw),
+                    new XmlRequest.ElementStreamHandler<List<String>>() {
+                        @Override
+                        public List<String> handle(XmlElementReader reader) throws Exception {
+                            List<String> ids = new ArrayList<String>();
+                            while (reader.hasNext()) {
+                                Element record = reader.next();
+                                // the namespaces declared on the ancestors are in scope of the record
+                                ids.add(record.getChildText("identifier", dc));
+                                assertEquals("25", reader.getParentElement().getAttributeValue("numberOfRecordsMatched"));
+                            }
+                            assertEquals("GetRecordsResponse", reader.getRootElement().getName());
+                            return ids;
+                        }
+                    });
+
+            assertEquals(Arrays.asList("record-1", "record-2", "record-3"), ids);
+            assertEquals(0, requestFactory.getConnectionPoolStats().getLeased());
+        } finally {
+            requestFactory.shutdown();
+            httpServer.stop(0);
+        }
+    }
+
     @Test
     @Ignore // Ignore because it requires a running instance
     public void testBasicAuthenticationWithPreemptiveMode() throws Exception {
@@ -264,4 +423,42 @@ public class GeonetHttpRequestFactoryTest {
         assertEquals(null, xmlRequest.getFragment());
 
     }
+
+    @Test
+    public void testCookiesAreNotSharedBetweenRequests() throws Exception {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        final List<String> receivedCookies = Collections.synchronizedList(new ArrayList<String>());
+        httpServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                receivedCookies.add(String.valueOf(exchange.getRequestHeaders().getFirst("Cookie")));
+                if (exchange.getRequestURI().getPath().equals("/login.xml")) {
+                    exchange.getResponseHeaders().add("Set-Cookie", "JSESSIONID=secret; Path=/");
+                }
+                byte[] response = "<resource/>".getBytes();
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        final GeonetHttpRequestFactory requestFactory = new GeonetHttpRequestFactory();
+        try {
+            httpServer.start();
+            final String baseUrl = "http://localhost:" + httpServer.getAddress().getPort();
+            final XmlRequest loggedIn = requestFactory.createXmlRequest(new URL(baseUrl + "/login.xml"));
+            loggedIn.execute();
+
+            // another request of the same factory must not send the session of the first one
+            requestFactory.createXmlRequest(new URL(baseUrl + "/other.xml")).execute();
+            assertEquals("null", receivedCookies.get(1));
+
+            // the request that logged in keeps its session
+            loggedIn.setUrl(new URL(baseUrl + "/other.xml"));
+            loggedIn.execute();
+            assertEquals("JSESSIONID=secret", receivedCookies.get(2));
+        } finally {
+            requestFactory.shutdown();
+            httpServer.stop(0);
+        }
+    }
 }
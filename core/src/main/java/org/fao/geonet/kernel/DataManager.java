@@ -244,6 +244,16 @@ public class DataManager {
      *
      **/
     public synchronized void init(ServiceContext context, Boolean force) throws Exception {
+        init(context);
+        synchronizeIndex(context, force);
+    }
+
+    /**
+     * Init Data manager without checking the index, see {@link #synchronizeIndex(ServiceContext, boolean)}.
+     *
+     * @param context
+     */
+    public synchronized void init(ServiceContext context) throws Exception {
         this.servContext = context;
         appPath = context.getAppPath();
         stylePath = context.getAppPath() + FS + Geonet.Path.STYLESHEETS + FS;
@@ -256,6 +266,16 @@ public class DataManager {
             context.setUserSession(session);
             session.loginAs(new User().setUsername("admin").setId(-1).setProfile(Profile.Administrator));
         }
+    }
+
+    /**
+     * Index the metadata which are not in the index or have changed since they were indexed and remove from the index
+     * the metadata which are not in the database anymore.
+     *
+     * @param context
+     * @param force         Force reindexing all from scratch
+     */
+    public synchronized void synchronizeIndex(ServiceContext context, boolean force) throws Exception {
         // get lastchangedate of all metadata in index
         Map<String,String> docs = searchMan.getDocsChangeDate();
 
@@ -475,6 +495,19 @@ public class DataManager {
         }
     }
 
+    /**
+     * Get the indexing load of the node: the number of metadata being indexed one by one plus the number of batch
+     * indexing tasks running.
+     */
+    public int getIndexingCount() {
+        indexLock.lock();
+        try {
+            return indexing.size() + batchIndex.size();
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
     public void indexMetadata(final List<String> metadataIds) throws Exception {
         for (String metadataId : metadataIds) {
             indexMetadata(metadataId, false);
@@ -0,0 +1,305 @@
+package org.fao.geonet.kernel;
+
+import org.apache.commons.lang.StringUtils;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.schema.MetadataSchema;
+import org.fao.geonet.utils.Log;
+import org.jdom.Attribute;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.filter.ElementFilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable index of the autodetect elements of the schemas used by {@link SchemaManager#autodetectSchema(Element)}.
+ * <p/>
+ * The root elements are looked up in a map and the other rules are only evaluated against a summary of the record
+ * (descendant elements by name, namespaces and attributes) built in a single pass, instead of walking the record for
+ * every rule of every schema.  A new index is built each time the schemas change, so the lookups do not need a lock.
+ */
+final class SchemaDetectionIndex {
+    static final SchemaDetectionIndex EMPTY = build(Collections.<String, Schema>emptyMap());
+
+    private final Map<String, Set<String>> rootElements;
+    private final List<Rule> needles;
+    private final List<Rule> needlesWithValue;
+    private final List<Rule> attributes;
+    private final List<Rule> namespaces;
+    private final Map<String, String> primeNamespaces;
+    private final Map<String, String> dependencies;
+
+    private SchemaDetectionIndex(Map<String, Set<String>> rootElements, List<Rule> needles, List<Rule> needlesWithValue,
+                                 List<Rule> attributes, List<Rule> namespaces, Map<String, String> primeNamespaces,
+                                 Map<String, String> dependencies) {
+        this.rootElements = rootElements;
+        this.needles = needles;
+        this.needlesWithValue = needlesWithValue;
+        this.attributes = attributes;
+        this.namespaces = namespaces;
+        this.primeNamespaces = primeNamespaces;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * Build the index of the autodetect elements of the schemas.
+     *
+     * @param schemas the schemas by name
+     */
+    static SchemaDetectionIndex build(Map<String, Schema> schemas) {
+        Map<String, Set<String>> rootElements = new HashMap<String, Set<String>>();
+        List<Rule> needles = new ArrayList<Rule>();
+        List<Rule> needlesWithValue = new ArrayList<Rule>();
+        List<Rule> attributes = new ArrayList<Rule>();
+        List<Rule> namespaces = new ArrayList<Rule>();
+        Map<String, String> primeNamespaces = new HashMap<String, String>();
+        Map<String, String> dependencies = new HashMap<String, String>();
+
+        for (Map.Entry<String, Schema> entry : schemas.entrySet()) {
+            String schemaName = entry.getKey();
+            Schema schema = entry.getValue();
+
+            for (Element elem : schema.getAutodetectElements()) {
+                if ("attributes".equals(elem.getName())) {
+                    Rule rule = new Rule(schemaName);
+                    @SuppressWarnings("unchecked")
+                    List<Attribute> atts = elem.getAttributes();
+                    for (Attribute att : atts) {
+                        rule.keys.add(attributeKey(att));
+                    }
+                    attributes.add(rule);
+                } else if ("namespaces".equals(elem.getName())) {
+                    Rule rule = new Rule(schemaName);
+                    @SuppressWarnings("unchecked")
+                    List<Namespace> nss = elem.getAdditionalNamespaces();
+                    for (Namespace ns : nss) {
+                        rule.keys.add(ns.getURI());
+                    }
+                    namespaces.add(rule);
+                }
+
+                // the children of all the other autodetect elements are looked for (with their value) in the
+                // record, those of the "root" and "search" elements are also looked for as root or without value
+                String type = elem.getAttributeValue("type");
+                Rule needle = new Rule(schemaName);
+                Rule needleWithValue = new Rule(schemaName);
+                @SuppressWarnings("unchecked")
+                List<Element> kids = elem.getChildren();
+                for (Element kid : kids) {
+                    String key = elementKey(kid);
+                    if ("root".equals(type)) {
+                        Set<String> rootSchemas = rootElements.get(key);
+                        if (rootSchemas == null) {
+                            rootSchemas = new LinkedHashSet<String>();
+                            rootElements.put(key, rootSchemas);
+                        }
+                        rootSchemas.add(schemaName);
+                    }
+                    needle.keys.add(key);
+                    needleWithValue.keys.add(key);
+                    String value = StringUtils.deleteWhitespace(kid.getValue());
+                    try {
+                        needleWithValue.values.add(Pattern.compile(value));
+                    } catch (PatternSyntaxException e) {
+                        Log.warning(Geonet.SCHEMA_MANAGER, "Invalid autodetect value " + value + " in schema " + schemaName
+                                                           + ", the element will never match: " + e.getMessage());
+                        needleWithValue.values.add(null);
+                    }
+                }
+                if ("search".equals(type)) {
+                    needles.add(needle);
+                }
+                if (!kids.isEmpty()) {
+                    needlesWithValue.add(needleWithValue);
+                }
+            }
+
+            MetadataSchema mds = schema.getMetadataSchema();
+            if (mds != null) {
+                primeNamespaces.put(schemaName, mds.getPrimeNS());
+            }
+            List<Element> dependElements = schema.getDependElements();
+            if (dependElements != null && !dependElements.isEmpty()) {
+                dependencies.put(schemaName, dependElements.get(0).getText());
+            }
+        }
+
+        return new SchemaDetectionIndex(rootElements, needles, needlesWithValue, attributes, namespaces,
+                primeNamespaces, dependencies);
+    }
+
+    /**
+     * Read the elements, namespaces and attributes of the record once, for all the rules.
+     */
+    Record summarize(Element md) {
+        return new Record(md, !attributes.isEmpty());
+    }
+
+    /**
+     * @return the schemas having the root element of the record as one of their "root" autodetect elements.
+     */
+    List<String> matchRoot(Element md) {
+        Set<String> schemas = rootElements.get(elementKey(md));
+        return schemas == null ? Collections.<String>emptyList() : new ArrayList<String>(schemas);
+    }
+
+    /**
+     * @return the schemas having "search" autodetect elements which are all in the record.
+     */
+    List<String> matchNeedles(Record record) {
+        Set<String> matches = new LinkedHashSet<String>();
+        for (Rule rule : needles) {
+            if (!matches.contains(rule.schema) && !rule.keys.isEmpty() && record.elements.keySet().containsAll(rule.keys)) {
+                matches.add(rule.schema);
+            }
+        }
+        return new ArrayList<String>(matches);
+    }
+
+    /**
+     * @return the schemas having autodetect elements which are all in the record with a value matching the value of
+     * the autodetect element.
+     */
+    List<String> matchNeedlesWithValue(Record record) {
+        Set<String> matches = new LinkedHashSet<String>();
+        for (Rule rule : needlesWithValue) {
+            if (matches.contains(rule.schema) || !record.elements.keySet().containsAll(rule.keys)) {
+                continue;
+            }
+            boolean match = true;
+            for (int i = 0; i < rule.keys.size() && match; i++) {
+                match = record.hasValue(rule.keys.get(i), rule.values.get(i));
+            }
+            if (match) {
+                matches.add(rule.schema);
+            }
+        }
+        return new ArrayList<String>(matches);
+    }
+
+    /**
+     * @return the schemas having autodetect attributes which are all in the record.
+     */
+    List<String> matchAttributes(Record record) {
+        return matchAll(attributes, record.attributes);
+    }
+
+    /**
+     * @return the schemas having autodetect namespaces which are all used in the record.
+     */
+    List<String> matchNamespaces(Record record) {
+        return matchAll(namespaces, record.namespaces);
+    }
+
+    /**
+     * @return the prime namespace of the schema or null if the schema is unknown.
+     */
+    String getPrimeNamespace(String schema) {
+        return primeNamespaces.get(schema);
+    }
+
+    /**
+     * @return the first schema the schema depends on or null if it does not depend on another schema.
+     */
+    String getDependency(String schema) {
+        return dependencies.get(schema);
+    }
+
+    private static List<String> matchAll(List<Rule> rules, Set<String> found) {
+        Set<String> matches = new LinkedHashSet<String>();
+        for (Rule rule : rules) {
+            if (!rule.keys.isEmpty() && found.containsAll(rule.keys)) {
+                matches.add(rule.schema);
+            }
+        }
+        return new ArrayList<String>(matches);
+    }
+
+    private static String elementKey(Element element) {
+        return "{" + element.getNamespaceURI() + "}" + element.getName();
+    }
+
+    private static String attributeKey(Attribute attribute) {
+        return "{" + attribute.getNamespaceURI() + "}" + attribute.getName() + "=" + attribute.getValue();
+    }
+
+    /**
+     * The autodetect elements, attributes or namespaces of a schema which must all be found in the record.
+     */
+    private static final class Rule {
+        private final String schema;
+        private final List<String> keys = new ArrayList<String>();
+        private final List<Pattern> values = new ArrayList<Pattern>();
+
+        private Rule(String schema) {
+            this.schema = schema;
+        }
+    }
+
+    /**
+     * The descendant elements (by name), namespaces and attributes of a record.
+     */
+    static final class Record {
+        private final Map<String, List<Element>> elements = new HashMap<String, List<Element>>();
+        private final Set<String> namespaces = new HashSet<String>();
+        private final Set<String> attributes = new HashSet<String>();
+
+        private Record(Element md, boolean readAttributes) {
+            addNamespaces(md);
+            @SuppressWarnings("unchecked")
+            Iterator<Element> descendants = md.getDescendants(new ElementFilter());
+            while (descendants.hasNext()) {
+                Element element = descendants.next();
+                String key = elementKey(element);
+                List<Element> sameName = elements.get(key);
+                if (sameName == null) {
+                    sameName = new ArrayList<Element>(1);
+                    elements.put(key, sameName);
+                }
+                sameName.add(element);
+                addNamespaces(element);
+                if (readAttributes) {
+                    @SuppressWarnings("unchecked")
+                    List<Attribute> atts = element.getAttributes();
+                    for (Attribute att : atts) {
+                        attributes.add(attributeKey(att));
+                    }
+                }
+            }
+        }
+
+        private void addNamespaces(Element element) {
+            namespaces.add(element.getNamespaceURI());
+            @SuppressWarnings("unchecked")
+            List<Namespace> nss = element.getAdditionalNamespaces();
+            for (Namespace ns : nss) {
+                namespaces.add(ns.getURI());
+            }
+        }
+
+        private boolean hasValue(String key, Pattern value) {
+            if (value == null) {
+                return false;
+            }
+            List<Element> candidates = elements.get(key);
+            if (candidates != null) {
+                for (Element element : candidates) {
+                    if (value.matcher(StringUtils.deleteWhitespace(element.getValue())).matches()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
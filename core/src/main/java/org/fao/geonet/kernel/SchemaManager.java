@@ -57,7 +57,6 @@ import org.jdom.Content;
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.Namespace;
-import org.jdom.filter.ElementFilter;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
@@ -70,11 +69,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -101,6 +98,7 @@ public class SchemaManager {
     private static final Namespace GEONET_SCHEMA_NS = Namespace.getNamespace(GEONET_SCHEMA_URI);
 
     private Map<String, Schema> hmSchemas = new HashMap<String, Schema>();
+    private volatile SchemaDetectionIndex detectionIndex = SchemaDetectionIndex.EMPTY;
 	private String[] fnames = { "labels.xml", "codelists.xml", "strings.xml" };
     private String   schemaPluginsDir;
 	private String   schemaPluginsCat;
@@ -189,6 +187,7 @@ public class SchemaManager {
 
 		writeSchemaPluginCatalog(schemaPluginCatRoot);
 
+		publishDetectionIndex();
 	}
 
     /**
@@ -263,6 +262,7 @@ public class SchemaManager {
 		try {
 			realAddPluginSchema(applicationContext, name, in);
 		} finally {
+			publishDetectionIndex();
 			afterWrite();
 		}
 	}
@@ -293,6 +293,7 @@ public class SchemaManager {
 			// -- add the new one
 			realAddPluginSchema(applicationContext, name, in);
 		} finally {
+			publishDetectionIndex();
 			afterWrite();
 		}
 	}
@@ -550,6 +551,7 @@ public class SchemaManager {
 			realDeletePluginSchema(name, doDependencies);
 
 		} finally {
+			publishDetectionIndex();
 			afterWrite();
 		}
 	}
@@ -648,73 +650,73 @@ public class SchemaManager {
      * @throws SchemaMatchConflictException
      * @throws NoSchemaMatchesException
      */
-	public String autodetectSchema(Element md, String defaultSchema) throws SchemaMatchConflictException, NoSchemaMatchesException {			
-
-		beforeRead();
-		try {
-			String schema = null;
+	public String autodetectSchema(Element md, String defaultSchema) throws SchemaMatchConflictException, NoSchemaMatchesException {
+		// -- the index is replaced when the schemas change so no lock is needed
+		SchemaDetectionIndex index = detectionIndex;
+		SchemaDetectionIndex.Record record = index.summarize(md);
+		String schema = null;
+
+		if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
+			Log.debug(Geonet.SCHEMA_MANAGER, "Schema autodetection starting on "+md.getName()+" (Namespace: "+md.getNamespace()+")...");
+
+		// -- check the autodetect elements for all schemas with the most
+		// -- specific test first, then in order of increasing generality, 
+		// -- first match wins
+		schema = singleMatch(md, index.matchAttributes(record), MODE_ATTRIBUTEWITHVALUE);
+		if (schema != null) {
+			if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
+				Log.debug(Geonet.SCHEMA_MANAGER,"  => Found schema "+schema+" using AUTODETECT(attributes) examination");
+		}
 
-			// -- check the autodetect elements for all schemas with the most
-			// -- specific test first, then in order of increasing generality, 
-			// -- first match wins
-			schema = compareElementsAndAttributes(md, MODE_ATTRIBUTEWITHVALUE);
+		if (schema == null) {
+			schema = singleMatch(md, index.matchNeedlesWithValue(record), MODE_NEEDLEWITHVALUE);
 			if (schema != null) {
-                if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                    Log.debug(Geonet.SCHEMA_MANAGER,"  => Found schema "+schema+" using AUTODETECT(attributes) examination");
-			}
-				
-			if (schema == null) {
-				schema = compareElementsAndAttributes(md, MODE_NEEDLEWITHVALUE);
-				if (schema != null) {
-                    if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                        Log.debug(Geonet.SCHEMA_MANAGER,"  => Found schema "+schema+" using AUTODETECT(elements with value) examination");
-				}
+				if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
+					Log.debug(Geonet.SCHEMA_MANAGER,"  => Found schema "+schema+" using AUTODETECT(elements with value) examination");
 			}
+		}
 
-			if (schema == null) {
-				schema  = compareElementsAndAttributes(md, MODE_NEEDLE);
-				if (schema != null) {
-                    if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                        Log.debug(Geonet.SCHEMA_MANAGER,"  => Found schema "+schema+" using AUTODETECT(elements) examination");
-				}
-			}
-		
-			if (schema == null) {
-				schema = compareElementsAndAttributes(md, MODE_ROOT);
-				if (schema != null) {
-                    if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                        Log.debug(Geonet.SCHEMA_MANAGER,"  => Found schema "+schema+" using AUTODETECT(elements with root) examination");
-				}
+		if (schema == null) {
+			schema = singleMatch(md, index.matchNeedles(record), MODE_NEEDLE);
+			if (schema != null) {
+				if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
+					Log.debug(Geonet.SCHEMA_MANAGER,"  => Found schema "+schema+" using AUTODETECT(elements) examination");
 			}
+		}
 
-			if (schema == null) {
-				schema = compareElementsAndAttributes(md, MODE_NAMESPACE);
-				if (schema != null) {
-                    if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                        Log.debug(Geonet.SCHEMA_MANAGER,"  => Found schema "+schema+" using AUTODETECT(namespaces) examination");
-				}
+		if (schema == null) {
+			schema = singleMatch(md, index.matchRoot(md), MODE_ROOT);
+			if (schema != null) {
+				if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
+					Log.debug(Geonet.SCHEMA_MANAGER,"  => Found schema "+schema+" using AUTODETECT(elements with root) examination");
 			}
+		}
 
-			// -- If nothing has matched by this point choose defaultSchema supplied
-			// -- as argument to this method as long as its reasonable
-			if (schema == null && defaultSchema != null) {
-				String defaultSchemaOrDependencySchema = checkNamespace(md, defaultSchema);
-				if (defaultSchemaOrDependencySchema != null) {
-					Log.warning(Geonet.SCHEMA_MANAGER, "  Autodetecting schema failed for " + md.getName() + " in namespace " + md.getNamespace()
-							+ ". Using default schema or one of its dependency: " + defaultSchemaOrDependencySchema);
-					schema = defaultSchemaOrDependencySchema;
-				}
+		if (schema == null) {
+			schema = singleMatch(md, index.matchNamespaces(record), MODE_NAMESPACE);
+			if (schema != null) {
+				if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
+					Log.debug(Geonet.SCHEMA_MANAGER,"  => Found schema "+schema+" using AUTODETECT(namespaces) examination");
 			}
+		}
 
-			// -- if the default schema failed then throw an exception
-			if (schema == null) {
-				throw new NoSchemaMatchesException("Autodetecting schema failed for metadata record with root element "+md.getName()+" in namespace "+md.getNamespace()+".");
+		// -- If nothing has matched by this point choose defaultSchema supplied
+		// -- as argument to this method as long as its reasonable
+		if (schema == null && defaultSchema != null) {
+			String defaultSchemaOrDependencySchema = checkNamespace(index, md, defaultSchema);
+			if (defaultSchemaOrDependencySchema != null) {
+				Log.warning(Geonet.SCHEMA_MANAGER, "  Autodetecting schema failed for " + md.getName() + " in namespace " + md.getNamespace()
+						+ ". Using default schema or one of its dependency: " + defaultSchemaOrDependencySchema);
+				schema = defaultSchemaOrDependencySchema;
 			}
+		}
 
-			return schema;
-		} finally {
-			afterRead();
+		// -- if the default schema failed then throw an exception
+		if (schema == null) {
+			throw new NoSchemaMatchesException("Autodetecting schema failed for metadata record with root element "+md.getName()+" in namespace "+md.getNamespace()+".");
 		}
+
+		return schema;
 	}
 
 	//--------------------------------------------------------------------------
@@ -726,42 +728,55 @@ public class SchemaManager {
 	 * to it - namespace of metadata schema is compared with prime namespace
 	 * of metadata record.
 	 *
+	 * @param index the detection index holding the prime namespaces and dependencies of the schemas
 	 * @param md the metadata record being checked for prime namespace equality
 	 * @param schema the name of the metadata schema we want to test
      * @return
 	 */
-	private String checkNamespace(Element md, String schema) {
-		String result = null;
-
-		try {
-			MetadataSchema mds = getSchema(schema);
-			if (mds != null) {
-				String primeNs = mds.getPrimeNS();
-                if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                    Log.debug(Geonet.SCHEMA_MANAGER,"  primeNs "+primeNs+" for schema "+schema);
-				if (md.getNamespace().getURI().equals(primeNs)) {
-					result = schema;
-				} else {
-					// Check if the metadata could match a schema dependency 
-					// (If preferredSchema is an ISO profil a fragment or subtemplate
-					// may match ISO core schema and should not be rejected).
-					Schema sch = hmSchemas.get(schema);
-					List<Element> dependsList = sch.getDependElements();
-					for (Element depends : dependsList) {
-						if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-		                    Log.debug(Geonet.SCHEMA_MANAGER,"  checkNamespace for dependency: " + depends.getText());
-						return checkNamespace(md, depends.getText());
-					}
-				}
-			}
-		} catch (Exception e) {
+	private String checkNamespace(SchemaDetectionIndex index, Element md, String schema) {
+		String primeNs = index.getPrimeNamespace(schema);
+		if (primeNs == null) {
 			Log.warning(Geonet.SCHEMA_MANAGER, "Schema "+schema+" not registered?");
+			return null;
+		}
+		if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
+			Log.debug(Geonet.SCHEMA_MANAGER,"  primeNs "+primeNs+" for schema "+schema);
+		if (md.getNamespace().getURI().equals(primeNs)) {
+			return schema;
+		}
+		// Check if the metadata could match a schema dependency 
+		// (If preferredSchema is an ISO profil a fragment or subtemplate
+		// may match ISO core schema and should not be rejected).
+		String dependency = index.getDependency(schema);
+		if (dependency != null) {
+			if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
+				Log.debug(Geonet.SCHEMA_MANAGER,"  checkNamespace for dependency: " + dependency);
+			return checkNamespace(index, md, dependency);
 		}
+		return null;
+	}
 
-		return result;
+	/**
+	 * @return the schema if there is only one match, null if there is no match.
+	 * @throws SchemaMatchConflictException if the record matches more than one schema.
+	 */
+	private String singleMatch(Element md, List<String> matches, int mode) throws SchemaMatchConflictException {
+		if (matches.size() > 1) {
+			throw new SchemaMatchConflictException("Metadata record with "+md.getName()+" (Namespace "+md.getNamespace()+" matches more than one schema - namely: "+matches.toString()+" - during schema autodetection mode "+mode);
+		} else if (matches.size() == 1) {
+			return matches.get(0);
+		}
+		return null;
 	}
-	
-	
+
+	/**
+	 * Publish a new detection index for the current schemas.  Called with the write lock held (or during
+	 * configuration) so the schemas do not change while the index is built.
+	 */
+	private void publishDetectionIndex() {
+		detectionIndex = SchemaDetectionIndex.build(hmSchemas);
+	}
+
   /**
    * Invoked just before reading, waits until reading is allowed.
    */
@@ -1529,232 +1544,6 @@ public class SchemaManager {
 		return schemaLocElem.getText();
 	}
 
-	/**
-     * Search all available schemas for one which contains the element(s) or attributes specified in the autodetect
-     * info.
-	 *
-	 * @param md the XML record whose schema we are trying to find
-     * @param mode
-     * @return
-     * @throws org.fao.geonet.exceptions.SchemaMatchConflictException
- 	 */
-	private String compareElementsAndAttributes(Element md, int mode) throws SchemaMatchConflictException {
-		String returnVal = null;	
-		Set<String> allSchemas = getSchemas();
-		List<String> matches = new ArrayList<String>();
-
-        if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-            Log.debug(Geonet.SCHEMA_MANAGER, "Schema autodetection starting on "+md.getName()+" (Namespace: "+md.getNamespace()+") using mode: "+mode+"...");
-		
-		for (String schemaName : allSchemas) {
-            if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                Log.debug(Geonet.SCHEMA_MANAGER, "	Doing schema "+schemaName);
-			Schema schema = hmSchemas.get(schemaName);
-			List<Element> adElems = schema.getAutodetectElements();
- 			
-			for (Element elem : adElems) {
-                if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                    Log.debug(Geonet.SCHEMA_MANAGER, "		Checking autodetect element "+Xml.getString(elem)+" with name "+elem.getName());
-
-				@SuppressWarnings("unchecked")
-                List<Element> elemKids = elem.getChildren();
-				boolean match = false;
-
-				Attribute type = elem.getAttribute("type");
- 					
-				// --- try and find the attribute and value in md 
-				if (mode==MODE_ATTRIBUTEWITHVALUE && elem.getName() == "attributes") {
-					@SuppressWarnings("unchecked")
-                    List<Attribute> atts = elem.getAttributes();
-					for (Attribute searchAtt : atts) {
-                        if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                            Log.debug(Geonet.SCHEMA_MANAGER, "				Finding attribute "+searchAtt.toString());
-
-						if (isMatchingAttributeInMetadata(searchAtt, md)) {
-							match = true;
-						} else {
-							match = false;
-							break;
-						}
-					}
-
-				// --- try and find the namespace in md 
-				} else if (mode==MODE_NAMESPACE && elem.getName() == "namespaces") {
-					@SuppressWarnings("unchecked")
-                    List<Namespace> nss = elem.getAdditionalNamespaces();
-					for (Namespace ns : nss) {
-                        if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                            Log.debug(Geonet.SCHEMA_MANAGER, "				Finding namespace "+ns.toString());
-
-						if (isMatchingNamespaceInMetadata(ns, md)) {
-							match = true;
-						} else {
-							match = false;
-							break;
-						}
-					}
-				} else {
-					for (Element kid : elemKids) {
-
-						// --- is the kid the same as the root of the md
-						if (mode==MODE_ROOT && type != null && "root".equals(type.getValue())) {
-                            if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                                Log.debug(Geonet.SCHEMA_MANAGER, "				Comparing "+Xml.getString(kid)+" with "+md.getName()+" with namespace "+md.getNamespace()+" : "+(kid.getName().equals(md.getName()) && kid.getNamespace().equals(md.getNamespace())));
-							if (kid.getName().equals(md.getName()) && 
-								kid.getNamespace().equals(md.getNamespace())) {
-									match = true;
-									break;
-							} else {
-									match = false;
-							}
-						// --- try and find the kid in the md (kid only, not value)
-						} else if (mode==MODE_NEEDLE && type != null  && "search".equals(type.getValue())) {
-                            if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                                Log.debug(Geonet.SCHEMA_MANAGER, "				Comparing "+Xml.getString(kid)+" with "+md.getName()+" with namespace "+md.getNamespace()+" : "+(kid.getName().equals(md.getName()) && kid.getNamespace().equals(md.getNamespace())));
-
-							if (isMatchingElementInMetadata(kid, md, false)) {
-								match = true;
-							} else {
-								match = false;
-								break;
-							}
-						// --- try and find the kid in the md (kid + value)
-						} else if (mode==MODE_NEEDLEWITHVALUE) {
-							if (isMatchingElementInMetadata(kid, md, true)) {
-								match = true;
-							} else {
-								match = false;
-								break;							
-							}
- 						}
-					}
-				}
-				if (match && (!matches.contains(schemaName))) matches.add(schemaName);
-			}
-		}
-
-		if (matches.size() > 1) {
-			throw new SchemaMatchConflictException("Metadata record with "+md.getName()+" (Namespace "+md.getNamespace()+" matches more than one schema - namely: "+matches.toString()+" - during schema autodetection mode "+mode);
-		} else if (matches.size() == 1) {
-			returnVal = matches.get(0);
-		}
-
-		return returnVal;
-	}
-	
-	/**
-     * This method searches an entire metadata file for an attribute that matches the "needle" metadata attribute
-     * arg - A matching attribute has the same name and value.
-	 *
-	 * @param needle the XML attribute we are trying to find
-	 * @param haystack the XML metadata record we are searching
-     * @return
- 	 */
-	private boolean isMatchingAttributeInMetadata(Attribute needle, Element haystack) {
-		boolean returnVal = false;
-		@SuppressWarnings("unchecked")
-        Iterator<Element> haystackIterator = haystack.getDescendants(new ElementFilter());
-
-        if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-            Log.debug(Geonet.SCHEMA_MANAGER, "Matching " + needle.toString());
-
-		while(haystackIterator.hasNext()){
-			Element tempElement = haystackIterator.next();
-			Attribute tempAtt = tempElement.getAttribute(needle.getName());
-			if (tempAtt.equals(needle)) {
-				returnVal = true;
-				break;
-			}
-		}
-		return returnVal;
-	}
-			
-	/**
-     * This method searches all elements of a metadata for a namespace that matches the "needle" namespace arg. (Note:
-     * matching namespaces have the same URI, prefix is ignored).
-	 *
-	 * @param needle the XML namespace we are trying to find
-	 * @param haystack the XML metadata record we are searching
-     * @return
- 	 */
-	private boolean isMatchingNamespaceInMetadata(Namespace needle, Element haystack) {
-        if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-            Log.debug(Geonet.SCHEMA_MANAGER, "Matching " + needle.toString());
-
-		if (checkNamespacesOnElement(needle,haystack)) return true;
-
-		@SuppressWarnings("unchecked")
-        Iterator<Element> haystackIterator = haystack.getDescendants(new ElementFilter());
-		while(haystackIterator.hasNext()){
-			Element tempElement = haystackIterator.next();
-			if (checkNamespacesOnElement(needle,tempElement)) return true;
-		}
- 		
-		return false;
-	}
-
-	/**
-     * This method searches an elements and its namespaces for a match with an input namespace.
-	 *
-	 * @param ns the XML namespace we are trying to find
-	 * @param elem the XML metadata element whose namespaces are to be searched
-     * @return
- 	 */
-	private boolean checkNamespacesOnElement(Namespace ns, Element elem) {
-		if (elem.getNamespace().equals(ns)) return true;
-		@SuppressWarnings("unchecked")
-        List<Namespace> nss = elem.getAdditionalNamespaces();
-		for (Namespace ans : nss) {
-			if (ans.equals(ns)) return true;
-		}
-		return false;
-	}
-
-	/**
-     * This method searches an entire metadata file for an element that matches the "needle" metadata element arg - A
-     * matching element has the same name, namespace and value.
-	 *
-	 * @param needle the XML element we are trying to find
-	 * @param haystack the XML metadata record we are searching
-	 * @param checkValue compare the value of the needle with the value of the element we find in the md
-     * @return
- 	 */
-	private boolean isMatchingElementInMetadata(Element needle, Element haystack, boolean checkValue) {
-		boolean returnVal = false;
-		@SuppressWarnings("unchecked")
-        Iterator<Element> haystackIterator = haystack.getDescendants(new ElementFilter());
-		
-		String needleName = needle.getName();
-		Namespace needleNS = needle.getNamespace();
-        if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-            Log.debug(Geonet.SCHEMA_MANAGER, "Matching " + Xml.getString(needle));
-
-		while(haystackIterator.hasNext()){
-			Element tempElement = haystackIterator.next();
-			
-			if(tempElement.getName().equals(needleName) && tempElement.getNamespace().equals(needleNS)){
-				if (checkValue) {
-                    if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER))
-                        Log.debug(Geonet.SCHEMA_MANAGER, "  Searching value for element: " + tempElement.getName());
-		            
-                    String needleVal = StringUtils.deleteWhitespace(needle.getValue());
-                    String tempVal = StringUtils.deleteWhitespace(tempElement.getValue());
-                    returnVal = Pattern.matches(needleVal, tempVal);
-                    if(Log.isDebugEnabled(Geonet.SCHEMA_MANAGER)) {
-                        Log.debug(Geonet.SCHEMA_MANAGER, "    Pattern " + needleVal + " applied to value " + tempVal + " match: " + returnVal);
-                    }
-                    if (returnVal) {
-                        break;
-                    }
-				} else {
-					returnVal = true;
-					break;
-				}
- 			}
- 		}
-		return returnVal;
-	}
-	
 	/**
      * This method deletes all the files and directories inside another the schema dir and then the schema dir itself.
 	 *
@@ -0,0 +1,573 @@
+//=============================================================================
+//===	Copyright (C) 2001-2014 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel;
+
+import org.apache.commons.io.IOUtils;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.utils.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable queue of metadata ids waiting to have their history committed to the subversion repository.
+ * <p/>
+ * Each queued id is journaled as a small file in the queue directory before {@link #enqueue(Iterable, String)} returns
+ * so that pending changes survive a restart. A background thread drains the queue and hands the ids to the {@link Committer} in
+ * batches of at most <code>maxBatchSize</code>, so that a bulk operation produces a few multi-record subversion commits instead of
+ * one commit per record. An id queued several times before it is drained is only committed once.
+ * <p/>
+ * When a batch can't be committed its ids are retried one by one so that a single metadata which can't be committed
+ * (deleted, corrupt...) does not block the others. A metadata which fails <code>MAX_FAILED_ATTEMPTS</code> flushes in a row
+ * while other metadata could be committed is parked: its journal entry is renamed to <code>&lt;id&gt;.failed</code> and it
+ * is only queued again by its next change.
+ */
+public class SvnCommitQueue {
+    private static final String PENDING_EXTENSION = ".pending";
+    private static final String TMP_EXTENSION = ".tmp";
+    private static final String FAILED_EXTENSION = ".failed";
+    private static final String PROP_ID = "id";
+    private static final String PROP_MESSAGE = "message";
+    private static final String PROP_QUEUED = "queued";
+    private static final int MAX_MESSAGES_IN_LOG = 5;
+    static final int MAX_FAILED_ATTEMPTS = 3;
+
+    /**
+     * Performs the actual subversion commit of a batch of metadata ids.
+     */
+    public interface Committer {
+        /**
+         * Commit the current state of all the metadata in a single subversion revision.
+         *
+         * @param ids        the metadata ids to commit.
+         * @param logMessage the log message of the revision.
+         */
+        void commit(Set<String> ids, String logMessage) throws Exception;
+    }
+
+    private static class PendingCommit {
+        final String id;
+        final String message;
+        final long queued;
+
+        PendingCommit(String id, String message, long queued) {
+            this.id = id;
+            this.message = message;
+            this.queued = queued;
+        }
+    }
+
+    private final File _queueDir;
+    private final Committer _committer;
+    private final int _maxBatchSize;
+    private final long _flushInterval;
+
+    private final Map<String, PendingCommit> _pending = new LinkedHashMap<String, PendingCommit>();
+    /** number of flushes in a row each pending id failed to be committed */
+    private final Map<String, Integer> _failures = new ConcurrentHashMap<String, Integer>();
+    private final Object _drainLock = new Object();
+    private final AtomicLong _committedRecords = new AtomicLong();
+    private final AtomicLong _commits = new AtomicLong();
+    private final AtomicLong _failedCommits = new AtomicLong();
+    private final AtomicLong _parkedRecords = new AtomicLong();
+    private volatile long _lastCommitDuration = 0;
+    private ScheduledExecutorService _executor;
+
+    /**
+     * Constructor.
+     *
+     * @param queueDir      directory used to journal the pending commits.
+     * @param committer     the object that commits the batches to subversion.
+     * @param maxBatchSize  the maximum number of metadata committed in a single revision.
+     * @param flushInterval the delay (in milliseconds) between two drains of the queue.
+     */
+    public SvnCommitQueue(File queueDir, Committer committer, int maxBatchSize, long flushInterval) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1: " + maxBatchSize);
+        }
+        this._queueDir = queueDir;
+        this._committer = committer;
+        this._maxBatchSize = maxBatchSize;
+        this._flushInterval = flushInterval;
+    }
+
+    /**
+     * Load the commits left pending by a previous run and start the background thread that drains the queue.
+     */
+    public synchronized void start() throws IOException {
+        if (!_queueDir.exists() && !_queueDir.mkdirs()) {
+            throw new IOException("Unable to create subversion commit queue directory: " + _queueDir);
+        }
+        recover();
+
+        if (_executor == null) {
+            _executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "svn-commit-queue");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            _executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (Throwable t) {
+                        Log.error(Geonet.SVN_MANAGER, "Unexpected error while draining subversion commit queue", t);
+                    }
+                }
+            }, _flushInterval, _flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop the background thread and try to commit whatever is still pending. Changes which can't be committed stay in the
+     * journal and will be committed on next start.
+     */
+    public void shutdown() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = _executor;
+            _executor = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(_flushInterval + 60000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Add metadata ids to the queue. The ids are journaled before this method returns.
+     *
+     * @param ids     the ids of the modified metadata.
+     * @param message the log message describing the change.
+     */
+    public void enqueue(Iterable<String> ids, String message) {
+        long now = System.currentTimeMillis();
+        for (String id : ids) {
+            // the journal file is written under the lock so that a commit or remove of the previous entry can't
+            // delete it after it has been written
+            synchronized (_pending) {
+                PendingCommit previous = _pending.get(id);
+                // keep the oldest queue time so that the lag reflects how long a change has been waiting
+                PendingCommit commit = new PendingCommit(id, message, previous == null ? now : previous.queued);
+                _pending.put(id, commit);
+                try {
+                    write(commit);
+                    deleteParked(id);
+                } catch (IOException e) {
+                    Log.error(Geonet.SVN_MANAGER, "Failed to journal subversion commit for metadata " + id
+                                                  + ", the change will be lost if the server stops before it is committed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a metadata from the queue, for example because it has been deleted.
+     *
+     * @param id the metadata id.
+     */
+    public void remove(String id) {
+        synchronized (_pending) {
+            _pending.remove(id);
+            delete(id);
+        }
+        _failures.remove(id);
+    }
+
+    /**
+     * Check if changes to a metadata are waiting to be committed.
+     */
+    public boolean isPending(String id) {
+        synchronized (_pending) {
+            return _pending.containsKey(id);
+        }
+    }
+
+    /**
+     * Commit all the pending changes, in batches of at most <code>maxBatchSize</code> metadata. The ids of a failed batch are
+     * retried one by one. Stops when nothing of a batch could be committed (subversion is probably unavailable): the failed
+     * ids are moved to the end of the queue and retried on the next flush.
+     *
+     * @return the number of metadata committed.
+     */
+    public int flush() {
+        synchronized (_drainLock) {
+            int committed = 0;
+            List<PendingCommit> failed = new ArrayList<PendingCommit>();
+            Set<String> failedIds = new HashSet<String>();
+            List<PendingCommit> batch;
+            while (!(batch = nextBatch(failedIds)).isEmpty()) {
+                int batchCommitted = 0;
+                if (commit(batch)) {
+                    batchCommitted = batch.size();
+                } else {
+                    for (PendingCommit commit : batch) {
+                        // a batch of one has just been tried
+                        if (batch.size() > 1 && commit(Collections.singletonList(commit))) {
+                            batchCommitted++;
+                        } else {
+                            failed.add(commit);
+                            failedIds.add(commit.id);
+                        }
+                    }
+                }
+                committed += batchCommitted;
+                if (batchCommitted == 0) {
+                    break;
+                }
+            }
+            handleFailures(failed, committed > 0);
+            return committed;
+        }
+    }
+
+    /**
+     * Commit a batch in a single revision.
+     *
+     * @return false if the commit failed.
+     */
+    private boolean commit(List<PendingCommit> batch) {
+        Set<String> ids = new LinkedHashSet<String>();
+        for (PendingCommit commit : batch) {
+            ids.add(commit.id);
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            _committer.commit(ids, createLogMessage(batch));
+        } catch (Throwable e) {
+            _failedCommits.incrementAndGet();
+            if (batch.size() > 1) {
+                Log.warning(Geonet.SVN_MANAGER, "Failed to commit changes to subversion repository for metadata ids " + ids
+                                                + ", retrying them one by one: " + e);
+            } else {
+                Log.error(Geonet.SVN_MANAGER, "Failed to commit changes to subversion repository for metadata id " + ids
+                                              + ". Will retry later.", e);
+            }
+            return false;
+        } finally {
+            _lastCommitDuration = System.currentTimeMillis() - start;
+        }
+
+        _commits.incrementAndGet();
+        _committedRecords.addAndGet(batch.size());
+        for (PendingCommit commit : batch) {
+            _failures.remove(commit.id);
+            release(commit);
+        }
+
+        if (Log.isDebugEnabled(Geonet.SVN_MANAGER)) {
+            Log.debug(Geonet.SVN_MANAGER, "Committed changes to subversion repository for metadata ids " + ids + " in "
+                                          + _lastCommitDuration + "ms");
+        }
+        return true;
+    }
+
+    /**
+     * Move the failed ids to the end of the queue and park the ids which keep failing.
+     *
+     * @param failed    the commits which failed during the last flush.
+     * @param available true if other metadata could be committed, so that the failures are caused by the metadata
+     *                  themselves rather than by subversion being unavailable.
+     */
+    private void handleFailures(List<PendingCommit> failed, boolean available) {
+        for (PendingCommit commit : failed) {
+            synchronized (_pending) {
+                if (_pending.get(commit.id) != commit) {
+                    // removed or queued again meanwhile
+                    continue;
+                }
+                _pending.remove(commit.id);
+                _pending.put(commit.id, commit);
+            }
+            if (!available) {
+                continue;
+            }
+
+            Integer previous = _failures.get(commit.id);
+            int failures = previous == null ? 1 : previous + 1;
+            if (failures < MAX_FAILED_ATTEMPTS) {
+                _failures.put(commit.id, failures);
+            } else {
+                _failures.remove(commit.id);
+                park(commit);
+            }
+        }
+    }
+
+    /**
+     * Stop retrying a metadata which can't be committed, keeping its journal entry aside.
+     */
+    private void park(PendingCommit commit) {
+        File parked;
+        synchronized (_pending) {
+            if (_pending.get(commit.id) != commit) {
+                return;
+            }
+            _pending.remove(commit.id);
+
+            File journal = journalFile(commit.id);
+            parked = new File(_queueDir, commit.id + FAILED_EXTENSION);
+            deleteParked(commit.id);
+            if (!journal.renameTo(parked)) {
+                delete(commit.id);
+            }
+        }
+        _parkedRecords.incrementAndGet();
+        Log.error(Geonet.SVN_MANAGER, "Giving up committing changes to subversion repository for metadata id " + commit.id
+                                      + " after " + MAX_FAILED_ATTEMPTS + " failed attempts, it will be committed again on its"
+                                      + " next change. Parked in " + parked);
+    }
+
+    private List<PendingCommit> nextBatch(Set<String> skip) {
+        List<PendingCommit> batch = new ArrayList<PendingCommit>(Math.min(_maxBatchSize, 64));
+        synchronized (_pending) {
+            Iterator<PendingCommit> iter = _pending.values().iterator();
+            while (iter.hasNext() && batch.size() < _maxBatchSize) {
+                PendingCommit commit = iter.next();
+                if (!skip.contains(commit.id)) {
+                    batch.add(commit);
+                }
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Remove a committed entry from the queue unless it has been queued again while it was being committed.
+     */
+    private void release(PendingCommit commit) {
+        synchronized (_pending) {
+            if (_pending.get(commit.id) != commit) {
+                return;
+            }
+            _pending.remove(commit.id);
+            delete(commit.id);
+        }
+    }
+
+    private String createLogMessage(List<PendingCommit> batch) {
+        Set<String> messages = new LinkedHashSet<String>();
+        for (PendingCommit commit : batch) {
+            messages.add(commit.message);
+        }
+        StringBuilder log = new StringBuilder();
+        log.append("Changes to ").append(batch.size()).append(" metadata");
+        int i = 0;
+        for (String message : messages) {
+            if (i++ == MAX_MESSAGES_IN_LOG) {
+                log.append("\n...");
+                break;
+            }
+            log.append('\n').append(message);
+        }
+        return log.toString();
+    }
+
+    private void recover() {
+        File[] files = _queueDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<PendingCommit> recovered = new ArrayList<PendingCommit>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TMP_EXTENSION)) {
+                // a journal entry that was never completely written
+                if (!file.delete()) {
+                    Log.warning(Geonet.SVN_MANAGER, "Unable to delete incomplete subversion queue file: " + file);
+                }
+            } else if (name.endsWith(PENDING_EXTENSION)) {
+                try {
+                    recovered.add(read(file));
+                } catch (Exception e) {
+                    Log.error(Geonet.SVN_MANAGER, "Unable to read subversion queue file: " + file, e);
+                }
+            }
+        }
+
+        Collections.sort(recovered, new Comparator<PendingCommit>() {
+            @Override
+            public int compare(PendingCommit o1, PendingCommit o2) {
+                return o1.queued < o2.queued ? -1 : (o1.queued == o2.queued ? 0 : 1);
+            }
+        });
+        synchronized (_pending) {
+            for (PendingCommit commit : recovered) {
+                if (!_pending.containsKey(commit.id)) {
+                    _pending.put(commit.id, commit);
+                }
+            }
+        }
+        if (!recovered.isEmpty()) {
+            Log.info(Geonet.SVN_MANAGER, "Recovered " + recovered.size() + " pending subversion commits from " + _queueDir);
+        }
+    }
+
+    private File journalFile(String id) {
+        return new File(_queueDir, id + PENDING_EXTENSION);
+    }
+
+    private void write(PendingCommit commit) throws IOException {
+        Properties props = new Properties();
+        props.setProperty(PROP_ID, commit.id);
+        props.setProperty(PROP_MESSAGE, commit.message);
+        props.setProperty(PROP_QUEUED, Long.toString(commit.queued));
+
+        File tmp = new File(_queueDir, commit.id + TMP_EXTENSION);
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            props.store(out, null);
+            out.getFD().sync();
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        File target = journalFile(commit.id);
+        if (!tmp.renameTo(target)) {
+            // renameTo does not replace existing files on all platforms
+            if (!target.delete() || !tmp.renameTo(target)) {
+                throw new IOException("Unable to write subversion queue file: " + target);
+            }
+        }
+    }
+
+    private PendingCommit read(File file) throws IOException {
+        Properties props = new Properties();
+        FileInputStream in = new FileInputStream(file);
+        try {
+            props.load(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        String id = props.getProperty(PROP_ID);
+        if (id == null) {
+            throw new IOException("No metadata id in " + file);
+        }
+        String message = props.getProperty(PROP_MESSAGE, "");
+        long queued = Long.parseLong(props.getProperty(PROP_QUEUED, Long.toString(file.lastModified())));
+        return new PendingCommit(id, message, queued);
+    }
+
+    private void deleteParked(String id) {
+        File file = new File(_queueDir, id + FAILED_EXTENSION);
+        if (file.exists() && !file.delete()) {
+            Log.warning(Geonet.SVN_MANAGER, "Unable to delete parked subversion queue file: " + file);
+        }
+    }
+
+    private void delete(String id) {
+        File file = journalFile(id);
+        if (file.exists() && !file.delete()) {
+            Log.warning(Geonet.SVN_MANAGER, "Unable to delete subversion queue file: " + file);
+        }
+    }
+
+    /**
+     * @return the number of metadata waiting to be committed.
+     */
+    public int getPendingCount() {
+        synchronized (_pending) {
+            return _pending.size();
+        }
+    }
+
+    /**
+     * @return the time (in milliseconds) the oldest pending change has been waiting to be committed, 0 if the queue is empty.
+     */
+    public long getLag() {
+        synchronized (_pending) {
+            if (_pending.isEmpty()) {
+                return 0;
+            }
+            long oldest = Long.MAX_VALUE;
+            for (PendingCommit commit : _pending.values()) {
+                oldest = Math.min(oldest, commit.queued);
+            }
+            return Math.max(0, System.currentTimeMillis() - oldest);
+        }
+    }
+
+    /**
+     * @return the number of metadata committed since the queue was created.
+     */
+    public long getCommittedRecords() {
+        return _committedRecords.get();
+    }
+
+    /**
+     * @return the number of subversion revisions created since the queue was created.
+     */
+    public long getCommits() {
+        return _commits.get();
+    }
+
+    /**
+     * @return the number of subversion commits (batches or single metadata retries) that failed since the queue was created.
+     */
+    public long getFailedCommits() {
+        return _failedCommits.get();
+    }
+
+    /**
+     * @return the number of metadata given up after {@link #MAX_FAILED_ATTEMPTS} failed flushes since the queue was created.
+     */
+    public long getParkedRecords() {
+        return _parkedRecords.get();
+    }
+
+    /**
+     * @return the duration (in milliseconds) of the last subversion commit.
+     */
+    public long getLastCommitDuration() {
+        return _lastCommitDuration;
+    }
+}
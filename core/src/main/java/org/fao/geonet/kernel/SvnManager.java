@@ -83,7 +83,13 @@ public class SvnManager {
     private static String username = "geonetwork";
     private static String password = "geonetwork";
 
+    // configure in spring configuration of bean
+    private String queuePath;
+    private int maxBatchSize = 100;
+    private long flushInterval = 5000;
+
     private Map<TransactionStatus, SvnTask> tasks = new ConcurrentHashMap<TransactionStatus, SvnTask>();
+    private SvnCommitQueue commitQueue;
     private boolean _enabled = false;
 
     // SvnTask holds information used to commit changes to a metadata record
@@ -204,6 +210,31 @@ public class SvnManager {
                                                    + " or specify a different subversion repository");
             }
         }
+
+        // start the queue that commits metadata changes outside of the database transactions
+        File queueDir;
+        if (StringUtils.isEmpty(queuePath)) {
+            queueDir = new File(subFile.getParentFile(), subFile.getName() + "_queue");
+        } else {
+            queueDir = new File(queuePath);
+        }
+        commitQueue = new SvnCommitQueue(queueDir, new SvnCommitQueue.Committer() {
+            @Override
+            public void commit(Set<String> ids, String logMessage) throws Exception {
+                commitBatch(ids, logMessage);
+            }
+        }, maxBatchSize, flushInterval);
+        commitQueue.start();
+    }
+
+    /**
+     * Stop the commit queue, committing the changes that are still pending if possible.  Changes that can't be committed are
+     * kept in the queue directory and committed on next start.
+     */
+    public void shutdown() {
+        if (commitQueue != null) {
+            commitQueue.shutdown();
+        }
     }
 
     /**
@@ -215,36 +246,57 @@ public class SvnManager {
             return;
         }
         TransactionStatus status = (TransactionStatus) joinPoint.getArgs()[0];
-        SvnTask task = tasks.get(status);
-
-        ISVNEditor editor = null;
+        SvnTask task = tasks.remove(status);
 
         if (task != null) {
+            // the subversion commit is done asynchronously by the commit queue so saving metadata doesn't wait on subversion
+            commitQueue.enqueue(task.ids, task.sessionLogMessage);
+            if (Log.isDebugEnabled(Geonet.SVN_MANAGER))
+                Log.debug(Geonet.SVN_MANAGER, "Queued changes to subversion repository for metadata ids " + task.ids
+                                              + " (committed transaction " + status + ")");
+        }
+    }
+
+    /**
+     * Commits the changes made to a set of metadata records in a single subversion revision. Metadata deleted since they were
+     * queued are ignored.
+     *
+     * @param ids        Ids of the metadata records to commit
+     * @param logMessage The log message of the subversion revision
+     * @throws Exception if something goes wrong
+     */
+    private void commitBatch(Set<String> ids, String logMessage) throws Exception {
+        MetadataRepository metadataRepository = context.getBean(MetadataRepository.class);
+        List<String> toCommit = new ArrayList<String>(ids.size());
+        for (String id : ids) {
+            if (exists(id) && metadataRepository.exists(Integer.valueOf(id))) {
+                toCommit.add(id);
+            } else if (Log.isDebugEnabled(Geonet.SVN_MANAGER)) {
+                Log.debug(Geonet.SVN_MANAGER, "Metadata " + id + " is not versioned anymore, its changes are not committed");
+            }
+        }
+        if (toCommit.isEmpty()) {
+            return;
+        }
+
+        ISVNEditor editor = getEditor(logMessage);
+        try {
+            editor.openRoot(-1); // open the root directory.
+            for (String id : toCommit) {
+                commitMetadata(id, editor);
+            }
+            editor.closeDir(); // close the root directory.
+            SVNCommitInfo commitInfo = editor.closeEdit();
+            if (Log.isDebugEnabled(Geonet.SVN_MANAGER))
+                Log.debug(Geonet.SVN_MANAGER, "Committed changes to subversion repository for metadata ids " + toCommit + ": "
+                                              + commitInfo);
+        } catch (Exception e) {
             try {
-                editor = getEditor(task.sessionLogMessage + " (committing transaction " + status + ")");
-                editor.openRoot(-1); // open the root directory.
-                for (Iterator<String> it = task.ids.iterator(); it.hasNext(); ) {
-                    String id = it.next();
-                    commitMetadata(id, editor);
-                    it.remove();
-                }
-                editor.closeDir(); // close the root directory.
-                if (Log.isDebugEnabled(Geonet.SVN_MANAGER))
-                    Log.debug(Geonet.SVN_MANAGER, "Committed changes to subversion repository for metadata ids " + task.ids);
-            } catch (Exception e) {
-                Log.error(Geonet.SVN_MANAGER, "Failed to commit changes to subversion repository for metadata ids " + task.ids);
-                e.printStackTrace();
-                if (editor != null) {
-                    try {
-                        editor.abortEdit();
-                    } catch (Exception ex) {
-                        Log.error(Geonet.SVN_MANAGER, "Failed to abort subversion editor");
-                        ex.printStackTrace();
-                    }
-                }
-            } finally {
-                tasks.remove(status);
+                editor.abortEdit();
+            } catch (Exception ex) {
+                // commitMetadata already aborted the edit
             }
+            throw e;
         }
     }
 
@@ -269,6 +321,35 @@ public class SvnManager {
         this.context = context;
     }
 
+    /**
+     * Set the directory where the metadata changes waiting to be committed are journaled.  Defaults to a
+     * <code>*_queue</code> directory next to the subversion repository.
+     */
+    public void setQueuePath(String queuePath) {
+        this.queuePath = queuePath;
+    }
+
+    /**
+     * Set the maximum number of metadata records committed in a single subversion revision.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Set the delay (in milliseconds) between two commits of the pending metadata changes.
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Get the queue of metadata changes waiting to be committed, null if versioning is not enabled.
+     */
+    public SvnCommitQueue getCommitQueue() {
+        return commitQueue;
+    }
+
     /**
      * Create a string from the user information in the UserSession session.
      *
@@ -442,6 +523,9 @@ public class SvnManager {
             return;
         }
 
+        // nothing left to commit for this metadata
+        commitQueue.remove(id);
+
         if (!exists(id))
             return; // not in repo so exit
 
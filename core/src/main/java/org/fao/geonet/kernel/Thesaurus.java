@@ -29,6 +29,7 @@ import org.fao.geonet.utils.Xml;
 
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.kernel.search.keyword.KeywordLabelIndex;
 import org.fao.geonet.kernel.search.keyword.KeywordRelation;
 import org.fao.geonet.languages.IsoLanguagesMapper;
 import org.jdom.Element;
@@ -77,7 +78,23 @@ public class Thesaurus {
 
 	private File thesaurusFile;
 
-	private LocalRepository repository;
+	/**
+	 * The repository is a memory sail stacked under a sync sail: queries run concurrently and are only excluded while a
+	 * write transaction is committed. The mutations are synchronized on this thesaurus so that the edits do not
+	 * interleave but the queries do not take the lock. The field is volatile so a reloaded repository is published
+	 * to the queries at once.
+	 */
+	private volatile LocalRepository repository;
+
+	/**
+	 * Index of the labels for keyword suggestions, built on first use and updated when the concepts are edited.
+	 */
+	private volatile KeywordLabelIndex keywordIndex;
+
+	/**
+	 * If true the repository is only created (and the thesaurus file parsed) when it is first used.
+	 */
+	private volatile boolean loadOnFirstUse = false;
 
     private String title;
 
@@ -172,6 +189,13 @@ public class Thesaurus {
 		return date;
 	}
 
+    /**
+     * Set the date when it is known without reading the thesaurus file (see {@link ThesaurusInfoCache}).
+     */
+    void setDate(String date) {
+		this.date = date;
+	}
+
   public String getDownloadUrl() {
 		return downloadUrl;
 	}
@@ -213,14 +237,76 @@ public class Thesaurus {
 		// needs to have term/concept id tacked onto the end
 	}
 
-	public synchronized LocalRepository getRepository() {
-		return repository;
+	public LocalRepository getRepository() {
+		LocalRepository current = repository;
+		if (current == null && loadOnFirstUse) {
+			synchronized (this) {
+				if (repository == null) {
+					try {
+						initRepository();
+					} catch (ConfigurationException e) {
+						throw new IllegalStateException("Unable to load thesaurus " + getKey(), e);
+					}
+				}
+				current = repository;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Create the repository when the thesaurus is first used instead of when it is registered, so that thesauri that
+	 * are never used are not parsed.
+	 */
+	public Thesaurus setLoadOnFirstUse(boolean loadOnFirstUse) {
+		this.loadOnFirstUse = loadOnFirstUse;
+		return this;
+	}
+
+	/**
+	 * @return true if the repository of the thesaurus has been created.
+	 */
+	public boolean isLoaded() {
+		return repository != null;
 	}
 
 	public synchronized Thesaurus setRepository(LocalRepository repository) {
 		this.repository = repository;
+		this.keywordIndex = null;
 		return this;
 	}
+
+	/**
+	 * Get the index of the labels of the concepts used for keyword suggestions.  The index is built the first time it
+	 * is requested (or requested again after the repository has been reloaded or cleared).
+	 *
+	 * @return the label index of the thesaurus.
+	 */
+	public KeywordLabelIndex getKeywordIndex() throws AccessDeniedException {
+		KeywordLabelIndex index = keywordIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = keywordIndex;
+				if (index == null) {
+					index = KeywordLabelIndex.build(getIsoLanguageMapper(), getRepository().getGraph());
+					keywordIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Update the label index after a concept has been added, updated or removed.  Must be called while holding the
+	 * lock of the thesaurus.
+	 */
+	private void updateKeywordIndex(String uri) throws AccessDeniedException {
+		KeywordLabelIndex index = keywordIndex;
+		if (index != null) {
+			index.refresh(getRepository().getGraph(), uri);
+		}
+	}
+
 	public synchronized Thesaurus initRepository() throws ConfigurationException {
 	    RepositoryConfig repConfig = new RepositoryConfig(getKey());
 
@@ -238,7 +324,8 @@ public class Thesaurus {
 	}
 
     /**
-     * TODO javadoc.
+     * Execute a SeRQL query on the thesaurus.  Not synchronized so several queries can run at the same time, even when
+     * the thesaurus is being edited.
      *
      * @param query
      * @return
@@ -247,13 +334,14 @@ public class Thesaurus {
      * @throws QueryEvaluationException
      * @throws AccessDeniedException
      */
-	public synchronized QueryResultsTable performRequest(String query) throws IOException, MalformedQueryException,
+	public QueryResultsTable performRequest(String query) throws IOException, MalformedQueryException,
             QueryEvaluationException, AccessDeniedException {
         if(Log.isDebugEnabled(Geonet.THESAURUS))
             Log.debug(Geonet.THESAURUS, "Query : " + query);
 
         //printResultsTable(resultsTable);
-		return repository.performTableQuery(QueryLanguage.SERQL, query);
+        LocalRepository currentRepository = getRepository();
+		return currentRepository.performTableQuery(QueryLanguage.SERQL, query);
 	}
 
 	/**
@@ -348,7 +436,8 @@ public class Thesaurus {
         myGraph.add(gmlNode, predicateUpperCorner, upperCorner);
         myGraph.add(gmlNode, predicateSrsName, srsNameURI);
 
-        repository.addGraph(myGraph);
+        getRepository().addGraph(myGraph);
+        updateKeywordIndex(mySubject.getURI());
         return mySubject;
     }
 	
@@ -377,7 +466,7 @@ public class Thesaurus {
      * @throws AccessDeniedException
      */
     public synchronized Thesaurus removeElement(String namespace, String code) throws AccessDeniedException {
-        Graph myGraph = repository.getGraph();
+        Graph myGraph = getRepository().getGraph();
         ValueFactory myFactory = myGraph.getValueFactory();
         URI subject = myFactory.createURI(namespace, code);
         
@@ -390,7 +479,7 @@ public class Thesaurus {
      * @throws AccessDeniedException
      */
     public synchronized Thesaurus removeElement(String uri) throws AccessDeniedException {
-        Graph myGraph = repository.getGraph();
+        Graph myGraph = getRepository().getGraph();
         ValueFactory myFactory = myGraph.getValueFactory();
         URI subject = myFactory.createURI(uri);
         
@@ -404,10 +493,11 @@ public class Thesaurus {
             AtomicReference<Statement> st = new AtomicReference<Statement>(iter.next());
             if (st.get().getObject() instanceof BNode) {
                 BNode node = (BNode) st.get().getObject();
-                repository.getGraph().remove(node, null, null);
+                getRepository().getGraph().remove(node, null, null);
             }
         }
         int removedItems = myGraph.remove(subject, null, null);
+        updateKeywordIndex(subject.getURI());
         if(Log.isDebugEnabled(Geonet.THESAURUS)) {
         	String msg = "Removed "+removedItems+" elements from thesaurus "+this.title+" with uri: "+subject;
         	Log.debug(Geonet.THESAURUS, msg);
@@ -441,7 +531,7 @@ public class Thesaurus {
 	        MalformedQueryException, QueryEvaluationException, GraphException {
 	    
         // Get thesaurus graph
-        Graph myGraph = repository.getGraph();      
+        Graph myGraph = getRepository().getGraph();      
         
         // Set namespace skos and predicates 
         ValueFactory myFactory = myGraph.getValueFactory();
@@ -522,7 +612,8 @@ public class Thesaurus {
     	        myGraph.add(subjectGml, predicateUpperCorner, upperCorner);
 	        }
 	    }
-        
+
+        updateKeywordIndex(subject.getURI());
         return subject;
 	}
 
@@ -560,7 +651,7 @@ public class Thesaurus {
      */
 	public synchronized boolean isFreeCode(String namespace, String code) throws AccessDeniedException {
 		boolean res = true;				
-		Graph myGraph = repository.getGraph();
+		Graph myGraph = getRepository().getGraph();
 		ValueFactory myFactory = myGraph.getValueFactory();
 		URI obj = namespace == null ? myFactory.createURI(code) : myFactory.createURI(namespace,code);
 		Collection<?> statementsCollection = myGraph.getStatementCollection(obj,null,null);
@@ -590,7 +681,7 @@ public class Thesaurus {
      * @throws IOException
      */
     public synchronized Thesaurus updateCode(String namespace, String oldcode, String newcode) throws AccessDeniedException, IOException {
-    	Graph myGraph = repository.getGraph();
+    	Graph myGraph = getRepository().getGraph();
 		
 		ValueFactory myFactory = myGraph.getValueFactory();
 
@@ -613,7 +704,7 @@ public class Thesaurus {
      * @throws IOException
      */
 	public synchronized Thesaurus updateCodeByURI(String olduri, String newuri) throws AccessDeniedException, IOException {
-		Graph myGraph = repository.getGraph();
+		Graph myGraph = getRepository().getGraph();
 		
 		ValueFactory myFactory = myGraph.getValueFactory();
 		
@@ -623,7 +714,7 @@ public class Thesaurus {
 		return updateElementCode(myGraph, oldobj, newobj);
 	}
 	
-	private Thesaurus updateElementCode(Graph myGraph, URI oldobj, URI newobj) {
+	private Thesaurus updateElementCode(Graph myGraph, URI oldobj, URI newobj) throws AccessDeniedException {
 		StatementIterator iterStSubject = myGraph.getStatements(oldobj,null,null);
 		while(iterStSubject.hasNext()){
 			AtomicReference<Statement> st = new AtomicReference<Statement>(iterStSubject.next());
@@ -637,6 +728,8 @@ public class Thesaurus {
 		}
 		myGraph.remove(oldobj,null,null);
 		myGraph.remove(null,null,oldobj);
+		updateKeywordIndex(oldobj.getURI());
+		updateKeywordIndex(newobj.getURI());
 		return this;
 	}
 
@@ -669,7 +762,7 @@ public class Thesaurus {
       Value valueObj = myFactory.createLiteral(thesaurusTitle);
       myGraph.add(mySubject, titleURI, valueObj );
       
-      repository.addGraph(myGraph);
+      getRepository().addGraph(myGraph);
     }
     
     /**
@@ -809,7 +902,7 @@ public class Thesaurus {
         public synchronized void addRelation(String subject, KeywordRelation related, String relatedSubject) throws AccessDeniedException, IOException,
         MalformedQueryException, QueryEvaluationException, GraphException {
             
-            Graph myGraph = repository.getGraph();      
+            Graph myGraph = getRepository().getGraph();      
             
              // Set namespace skos and predicates 
              ValueFactory myFactory = myGraph.getValueFactory();
@@ -888,7 +981,8 @@ public class Thesaurus {
         }
 		public synchronized void clear() throws IOException, AccessDeniedException {
 			AdminListener listener = new DummyAdminListener();
-			repository.clear(listener);
+			getRepository().clear(listener);
+			keywordIndex = null;
 		}
         public String getDefaultNamespace() {
             return this.defaultNamespace;
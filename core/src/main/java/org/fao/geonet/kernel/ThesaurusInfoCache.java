@@ -0,0 +1,100 @@
+package org.fao.geonet.kernel;
+
+import org.apache.commons.io.IOUtils;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.utils.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Persisted title, namespace and date of the thesaurus files so that thesauri that are loaded on first use can be
+ * registered at startup without parsing their file.  An entry is only used while the size and the modification date
+ * of the file are the ones it was read from.
+ */
+class ThesaurusInfoCache {
+    private static final String SEPARATOR = "|";
+    private static final Pattern SEPARATOR_PATTERN = Pattern.compile(Pattern.quote(SEPARATOR));
+
+    private final File cacheFile;
+    private final Properties entries = new Properties();
+    private boolean changed = false;
+
+    ThesaurusInfoCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+        if (cacheFile.exists()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(cacheFile);
+                entries.load(in);
+            } catch (IOException e) {
+                Log.warning(Geonet.THESAURUS_MAN, "Unable to read thesaurus information cache " + cacheFile + ": " + e.getMessage());
+                entries.clear();
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * Create the thesaurus from the cached information if the file has not changed since it was cached, otherwise read
+     * the information from the file and cache it.
+     */
+    Thesaurus createThesaurus(ThesaurusFactory factory, String fname, String type, String dname, File file) {
+        String key = Thesaurus.buildThesaurusKey(fname, type, dname);
+        String version = file.lastModified() + SEPARATOR + file.length();
+        String entry = entries.getProperty(key);
+        if (entry != null && entry.startsWith(version + SEPARATOR)) {
+            String[] parts = SEPARATOR_PATTERN.split(entry.substring(version.length() + 1), 3);
+            if (parts.length == 3) {
+                Thesaurus thesaurus = factory.create(parts[2], parts[1]);
+                // a thesaurus without date is cached with an empty date
+                thesaurus.setDate(parts[0].length() == 0 ? null : parts[0]);
+                return thesaurus;
+            }
+        }
+
+        Thesaurus thesaurus = factory.create(null, null);
+        if (thesaurus.getDefaultNamespace() != null) {
+            synchronized (this) {
+                String date = thesaurus.getDate() == null ? "" : thesaurus.getDate();
+                entries.setProperty(key, version + SEPARATOR + date + SEPARATOR
+                                         + thesaurus.getDefaultNamespace() + SEPARATOR + thesaurus.getTitle());
+                changed = true;
+            }
+        }
+        return thesaurus;
+    }
+
+    /**
+     * Write the cache if an entry has been added or updated.
+     */
+    synchronized void save() {
+        if (!changed) {
+            return;
+        }
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(cacheFile);
+            entries.store(out, "Thesaurus information, see " + ThesaurusInfoCache.class.getName());
+            changed = false;
+        } catch (IOException e) {
+            Log.warning(Geonet.THESAURUS_MAN, "Unable to write thesaurus information cache " + cacheFile + ": " + e.getMessage());
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Create a thesaurus, reading its information from the file when the title and namespace are null.
+     */
+    interface ThesaurusFactory {
+        Thesaurus create(String title, String namespace);
+    }
+}
@@ -54,20 +54,37 @@ import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 //=============================================================================
 public class ThesaurusManager implements ThesaurusFinder {
 
+	/**
+	 * File of the thesauri directory caching the title, namespace and date of the thesaurus files.
+	 */
+	private static final String INFO_CACHE_FILE = "thesauri-info.properties";
+
+	private static final FilenameFilter RDF_FILTER = new FilenameFilter() {
+		public boolean accept(File dir, String name) {
+			return name.endsWith(".rdf");
+		}
+	};
+
 	private ConcurrentHashMap<String, Thesaurus> thesauriMap = new ConcurrentHashMap<String, Thesaurus>();
 	private LocalService service = null;
 	private String thesauriDirectory = null;
     private boolean initialized = false;
+    private int loadThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private boolean loadOnFirstUse = false;
 
 
     /**
@@ -100,148 +117,202 @@ public class ThesaurusManager implements ThesaurusFinder {
 	}
 	
   /**
-   * Start task to build thesaurus table once the servlet is up. 
+   * Start the tasks building the thesaurus table.  The thesaurus files are loaded right away, by up to loadThreads
+   * threads.  Since thesauri can be metadata records (registers) they can also have xlinks. These may not be
+   * resolveable until the servlet is up. Hence the register thesauri are only loaded once the servlet is initialized.
    *
 	 * @param context ServiceContext used to check when servlet is up only
 	 * @param thesauriDir directory containing thesauri
    */
-	private void batchBuildTable(ServiceContext context, File thesauriDir) {
-		ExecutorService executor = Executors.newFixedThreadPool(1);
+	private void batchBuildTable(final ServiceContext context, final File thesauriDir) {
+		Log.info(Geonet.THESAURUS_MAN, "Scanning " + thesauriDir);
+
+		final ExecutorService executor = Executors.newFixedThreadPool(loadThreads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "thesaurus-loader-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 		try {
-			Runnable worker = new InitThesauriTableTask(context, thesauriDir);
-			executor.execute(worker);
-		} finally {
+			final String siteURL = context.getBean(SettingManager.class).getSiteURL(context);
+			ThesaurusInfoCache infoCache = new ThesaurusInfoCache(new File(thesauriDir, INFO_CACHE_FILE));
+
+			List<LoadThesaurusTask> tasks = new ArrayList<LoadThesaurusTask>();
+			for (String root : new String[]{Geonet.CodeList.EXTERNAL, Geonet.CodeList.LOCAL}) {
+				for (File dir : listThesaurusDirectories(thesauriDir, root)) {
+					for (String aRdfDataFile : dir.list(RDF_FILTER)) {
+						tasks.add(new LoadThesaurusTask(context, root, dir, aRdfDataFile, siteURL, infoCache));
+					}
+				}
+			}
+			AtomicInteger remaining = new AtomicInteger(tasks.size());
+			long start = System.currentTimeMillis();
+			for (LoadThesaurusTask task : tasks) {
+				task.setCompletion(remaining, start);
+				executor.execute(task);
+			}
+
+			context.runWhenServletInitialized(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						executor.execute(new InitRegisterThesauriTask(context, thesauriDir, siteURL));
+					} finally {
+						executor.shutdown();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
 			executor.shutdown();
+			throw e;
+		}
+	}
+
+	/**
+	 * Load a thesaurus file in one of the loader threads.
+	 */
+	final class LoadThesaurusTask implements Runnable {
+		private final ServiceContext context;
+		private final String root;
+		private final File thesauriDirectory;
+		private final String aRdfDataFile;
+		private final String siteURL;
+		private final ThesaurusInfoCache infoCache;
+		private AtomicInteger remaining;
+		private long start;
+
+		LoadThesaurusTask(ServiceContext context, String root, File thesauriDirectory, String aRdfDataFile,
+		                  String siteURL, ThesaurusInfoCache infoCache) {
+			this.context = context;
+			this.root = root;
+			this.thesauriDirectory = thesauriDirectory;
+			this.aRdfDataFile = aRdfDataFile;
+			this.siteURL = siteURL;
+			this.infoCache = infoCache;
+		}
+
+		void setCompletion(AtomicInteger remaining, long start) {
+			this.remaining = remaining;
+			this.start = start;
+		}
+
+		public void run() {
+			try {
+				final File file = new File(thesauriDirectory, aRdfDataFile);
+				Thesaurus gst = infoCache.createThesaurus(new ThesaurusInfoCache.ThesaurusFactory() {
+					@Override
+					public Thesaurus create(String title, String namespace) {
+						return new Thesaurus(context.getApplicationContext(), aRdfDataFile, title, namespace, root,
+								thesauriDirectory.getName(), file, siteURL, false);
+					}
+				}, aRdfDataFile, root, thesauriDirectory.getName(), file);
+				loadThesaurus(gst);
+			} catch (Throwable e) {
+				Log.error(Geonet.THESAURUS_MAN, "Error loading thesaurus " + aRdfDataFile + " : " + e.getMessage(), e);
+				// continue loading
+			} finally {
+				if (remaining.decrementAndGet() == 0) {
+					infoCache.save();
+					Log.info(Geonet.THESAURUS_MAN, "Thesaurus files " + (loadOnFirstUse ? "registered" : "loaded")
+					                               + " in " + (System.currentTimeMillis() - start) + "ms");
+				}
+			}
 		}
 	}
 
   /**
-   * A Task to build the thesaurus table once the servlet is up. 
-	 * Since thesauri can be metadata records (registers) they can also have 
-	 * xlinks. These may not be resolveable until the servlet is up. Hence
-	 * we start a thread that waits until the servlet is up before reading
-	 * the thesauri and creating the thesaurus table.
+   * A Task to load the register thesauri once the servlet is up.
    */
-  final class InitThesauriTableTask implements Runnable {
+  final class InitRegisterThesauriTask implements Runnable {
 
 		private final ServiceContext context;
 		private final File thesauriDir;
+		private final String siteURL;
 
-		InitThesauriTableTask(ServiceContext context, File thesauriDir) {
+		InitRegisterThesauriTask(ServiceContext context, File thesauriDir, String siteURL) {
 			this.context = context;
 			this.thesauriDir = thesauriDir;
+			this.siteURL = siteURL;
 		}
 
 		public void run() {
 			context.setAsThreadLocal();
 			try {
-				// poll context to see whether servlet is up yet
-				while (!context.isServletInitialized()) {
-					if (Log.isDebugEnabled(Geonet.THESAURUS_MAN))
-						Log.debug(Geonet.THESAURUS_MAN, "Waiting for servlet to finish initializing..");
-					Thread.sleep(10000); // sleep 10 seconds
+				for (File dir : listThesaurusDirectories(thesauriDir, Geonet.CodeList.REGISTER)) {
+					loadRegisterRepositories(dir, context, siteURL);
 				}
-				try {
-					initThesauriTable(thesauriDir, context);
-				} catch (Exception e) {
-					Log.error(Geonet.THESAURUS_MAN, "Error rebuilding thesaurus table : "+e.getMessage()+"\n"+ Util.getStackTrace(e));
-				} 
 			} catch (Exception e) {
-				Log.debug(Geonet.THESAURUS_MAN, "Thesaurus table rebuilding thread threw exception");
-				e.printStackTrace();
+				Log.error(Geonet.THESAURUS_MAN, "Error rebuilding thesaurus table : "+e.getMessage()+"\n"+ Util.getStackTrace(e));
 			}
 		}
 	}
 
 	/**
-	 * 
-	 * @param thesauriDirectory
+	 * @return the directories of the thesauri of the given type (external, local or register).
 	 */
-	private void initThesauriTable(File thesauriDirectory, ServiceContext context) {
-
-		thesauriMap = new ConcurrentHashMap<String,Thesaurus>();
-		Log.info(Geonet.THESAURUS_MAN,"Scanning "+thesauriDirectory);
-
-		if (thesauriDirectory.isDirectory()) {
-			// init of external repositories
-			File externalThesauriDirectory = new File(thesauriDirectory,
-					Geonet.CodeList.EXTERNAL + File.separator + Geonet.CodeList.THESAURUS);
-			if (externalThesauriDirectory.isDirectory()) {
-				File[] rdfDataDirectory = externalThesauriDirectory.listFiles();
-                for (File aRdfDataDirectory : rdfDataDirectory) {
-                    if (aRdfDataDirectory.isDirectory()) {
-                        loadRepositories(aRdfDataDirectory, Geonet.CodeList.EXTERNAL, context);
-                    }
-                }
-			}
-
-			// init of local repositories
-			File localThesauriDirectory = new File(thesauriDirectory, Geonet.CodeList.LOCAL
-					+ File.separator + Geonet.CodeList.THESAURUS);
-			if (localThesauriDirectory.isDirectory()) {
-				File[] rdfDataDirectory = localThesauriDirectory.listFiles();
-                for (File aRdfDataDirectory : rdfDataDirectory) {
-                    if (aRdfDataDirectory.isDirectory()) {
-                        loadRepositories(aRdfDataDirectory, Geonet.CodeList.LOCAL, context);
-                    }
-                }
+	private static List<File> listThesaurusDirectories(File thesauriDirectory, String root) {
+		List<File> directories = new ArrayList<File>();
+		File rootDirectory = new File(thesauriDirectory, root + File.separator + Geonet.CodeList.THESAURUS);
+		if (rootDirectory.isDirectory()) {
+			File[] rdfDataDirectory = rootDirectory.listFiles();
+			if (rdfDataDirectory != null) {
+				for (File aRdfDataDirectory : rdfDataDirectory) {
+					if (aRdfDataDirectory.isDirectory()) {
+						directories.add(aRdfDataDirectory);
+					}
+				}
 			}
+		}
+		return directories;
+	}
 
-			// init of register repositories
-			File registerThesauriDirectory = new File(thesauriDirectory, Geonet.CodeList.REGISTER
-					+ File.separator + Geonet.CodeList.THESAURUS);
-			if (registerThesauriDirectory.isDirectory()) {
-				File[] rdfDataDirectory = registerThesauriDirectory.listFiles();
-                for (File aRdfDataDirectory : rdfDataDirectory) {
-                    if (aRdfDataDirectory.isDirectory()) {
-                        loadRepositories(aRdfDataDirectory, Geonet.CodeList.REGISTER, context);
-                    }
-                }
-			}
+	/**
+	 * Register the thesaurus and create its repository, or leave it to the first use in loadOnFirstUse mode.
+	 */
+	private void loadThesaurus(Thesaurus gst) throws Exception {
+		String thesaurusName = gst.getKey();
+		if (existsThesaurus(thesaurusName)) {
+			throw new Exception ("A thesaurus exists with code " + thesaurusName);
 		}
+		if (loadOnFirstUse) {
+			gst.setLoadOnFirstUse(true);
+		} else {
+			// each thesaurus gets its own service so that the files are parsed in parallel
+			gst.initRepository();
+		}
+		thesauriMap.put(thesaurusName, gst);
 	}
 
 	/**
 	 * 
 	 * @param thesauriDirectory
 	 */
-	private void loadRepositories(File thesauriDirectory, String root, ServiceContext context) {
-		
-		FilenameFilter filter = new FilenameFilter() {
-			public boolean accept(File dir, String name) {
-				return name.endsWith(".rdf");
-			}
-		};
-
-		String[] rdfDataFile = thesauriDirectory.list(filter);
-        final String siteURL = context.getBean(SettingManager.class).getSiteURL(context);
+	private void loadRegisterRepositories(File thesauriDirectory, ServiceContext context, String siteURL) {
+		String[] rdfDataFile = thesauriDirectory.list(RDF_FILTER);
 
         for (String aRdfDataFile : rdfDataFile) {
+            if (Log.isDebugEnabled(Geonet.THESAURUS_MAN))
+                Log.debug(Geonet.THESAURUS_MAN, "Creating thesaurus : " + aRdfDataFile);
 
-            Thesaurus gst = null;
-            if (root.equals(Geonet.CodeList.REGISTER)) {
-                if (Log.isDebugEnabled(Geonet.THESAURUS_MAN))
-                    Log.debug(Geonet.THESAURUS_MAN, "Creating thesaurus : " + aRdfDataFile);
-
-                File outputRdf = new File(thesauriDirectory, aRdfDataFile);
-                String uuid = StringUtils.substringBefore(aRdfDataFile, ".rdf");
-                try {
-                    FileOutputStream outputRdfStream = new FileOutputStream(outputRdf);
-                    getRegisterMetadataAsRdf(uuid, outputRdfStream, context);
-                    outputRdfStream.close();
-                } catch (Exception e) {
-                    Log.error(Geonet.THESAURUS_MAN, "Register thesaurus " + aRdfDataFile + " could not be read/converted from ISO19135 "
-                                                    + "record in catalog - skipping");
-                    e.printStackTrace();
-                    continue;
-                }
-
-                gst = new Thesaurus(context.getApplicationContext(), aRdfDataFile, root, thesauriDirectory.getName(), outputRdf, siteURL);
-
-            } else {
-                gst = new Thesaurus(context.getApplicationContext(), aRdfDataFile, root, thesauriDirectory.getName(), new File(thesauriDirectory, aRdfDataFile), siteURL);
+            File outputRdf = new File(thesauriDirectory, aRdfDataFile);
+            String uuid = StringUtils.substringBefore(aRdfDataFile, ".rdf");
+            try {
+                FileOutputStream outputRdfStream = new FileOutputStream(outputRdf);
+                getRegisterMetadataAsRdf(uuid, outputRdfStream, context);
+                outputRdfStream.close();
+            } catch (Exception e) {
+                Log.error(Geonet.THESAURUS_MAN, "Register thesaurus " + aRdfDataFile + " could not be read/converted from ISO19135 "
+                                                + "record in catalog - skipping");
+                e.printStackTrace();
+                continue;
             }
 
+            Thesaurus gst = new Thesaurus(context.getApplicationContext(), aRdfDataFile, Geonet.CodeList.REGISTER, thesauriDirectory.getName(), outputRdf, siteURL);
+
             try {
                 addThesaurus(gst, false);
             } catch (Exception e) {
@@ -353,6 +424,20 @@ public class ThesaurusManager implements ThesaurusFinder {
 		} 			
 	}
 			
+	/**
+	 * Set the maximum number of thesaurus files loaded at the same time at startup.
+	 */
+	public void setLoadThreads(int loadThreads) {
+		this.loadThreads = Math.max(1, loadThreads);
+	}
+
+	/**
+	 * If true the thesaurus files are only registered at startup and parsed when the thesaurus is first used.
+	 */
+	public void setLoadOnFirstUse(boolean loadOnFirstUse) {
+		this.loadOnFirstUse = loadOnFirstUse;
+	}
+
 	// =============================================================================
 	// PUBLIC SERVICES
 
@@ -80,6 +80,8 @@ class InputStreamBridge extends InputStream
 
 	public int read() throws IOException { return is.read(); }
 
+	public int read(byte[] b, int off, int len) throws IOException { return is.read(b, off, len); }
+
 	public int available() throws IOException { return is.available(); }
 
 	// --- this *must* be empty to work with zip files
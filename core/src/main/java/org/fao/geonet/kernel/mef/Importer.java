@@ -237,7 +237,7 @@ public class Importer {
 				"_none_");
 
 				if (!style.equals("_none_"))
-					md.add(index, Xml.transform(md.get(index), stylePath
+					md.set(index, Xml.transform(md.get(index), stylePath
 							+ FS + style));
 				
 				
@@ -333,7 +333,7 @@ public class Importer {
 					// UUID is set as @uuid in root element
 					uuid = UUID.randomUUID().toString();
 
-					fc.add(index, dm.setUUID("iso19110", uuid, fc.get(index)));
+					fc.set(index, dm.setUUID("iso19110", uuid, fc.get(index)));
 
                     //
                     // insert metadata
@@ -409,6 +409,13 @@ public class Importer {
                 IO.mkdirs(new File(priDir), "MEF Importer private resources directory for metadata "+metadataIdMap);
 
                 dm.indexMetadata(metadataIdMap.get(index), false);
+
+				// the record is imported, only keep its id so that memory does
+				// not grow with the number of records in the file
+				md.set(index, null);
+				if (fc.size() > index) {
+					fc.set(index, null);
+				}
 			}
 
 			// --------------------------------------------------------------------
@@ -480,7 +487,7 @@ public class Importer {
 			uuid = newuuid;
 
 			// --- set uuid inside metadata
-			md.add(index, dm.setUUID(schema, uuid, md.get(index)));
+			md.set(index, dm.setUUID(schema, uuid, md.get(index)));
 		} else {
 			if (sourceName == null)
 				sourceName = "???";
@@ -37,9 +37,9 @@ import org.fao.geonet.kernel.mef.MEFLib.Version;
 import org.fao.geonet.lib.Lib;
 import org.fao.geonet.repository.MetadataRelationRepository;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
@@ -66,18 +66,36 @@ class MEF2Exporter {
 
 		File file = File.createTempFile("mef-", ".mef");
 		FileOutputStream fos = new FileOutputStream(file);
-		ZipOutputStream zos = new ZipOutputStream(fos);
+		try {
+			doExport(context, uuids, format, skipUUID, stylePath, resolveXlink, removeXlinkAttribute, fos);
+		} finally {
+			fos.close();
+		}
+
+		return file.getAbsolutePath();
+	}
+
+	/**
+	 * Write a MEF2 file in ZIP format to the output stream, one record after the
+	 * other, without intermediate files.
+	 * 
+	 * @param out
+	 *            Output stream, which is not closed.
+	 * @throws Exception
+	 */
+	public static void doExport(ServiceContext context, Set<String> uuids,
+			Format format, boolean skipUUID, String stylePath, boolean resolveXlink, boolean removeXlinkAttribute,
+			OutputStream out) throws Exception {
 
-        for (Object uuid1 : uuids) {
-            String uuid = (String) uuid1;
+		ZipOutputStream zos = new ZipOutputStream(out);
+
+        for (String uuid : uuids) {
             createMetadataFolder(context, uuid, zos, skipUUID, stylePath,
                     format, resolveXlink, removeXlinkAttribute);
         }
 
 		// --- cleanup and exit
-		zos.close();
-
-		return file.getAbsolutePath();
+		zos.finish();
 	}
 
 	/**
@@ -141,8 +159,7 @@ class MEF2Exporter {
 		byte[] binData = MEFLib.buildInfoFile(context, record, format, pubDir,
 				priDir, skipUUID).getBytes(Constants.ENCODING);
 
-		MEFLib.addFile(zos, uuid + FS + FILE_INFO, new ByteArrayInputStream(
-				binData));
+		MEFLib.addFile(zos, uuid + FS + FILE_INFO, binData);
 
 		// --- save thumbnails and maps
 
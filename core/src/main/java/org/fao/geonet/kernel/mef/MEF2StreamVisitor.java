@@ -0,0 +1,181 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.mef;
+
+import org.fao.geonet.Logger;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.exceptions.BadFormatEx;
+import org.fao.geonet.utils.Log;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.fao.geonet.kernel.mef.MEFConstants.DIR_PRIVATE;
+import static org.fao.geonet.kernel.mef.MEFConstants.DIR_PUBLIC;
+import static org.fao.geonet.kernel.mef.MEFConstants.FILE_INFO;
+import static org.fao.geonet.kernel.mef.MEFConstants.FILE_METADATA;
+import static org.fao.geonet.kernel.mef.MEFConstants.MD_DIR;
+import static org.fao.geonet.kernel.mef.MEFConstants.SCHEMA;
+
+/**
+ * MEF version 2 visitor reading the MEF file from a stream (eg. the response of
+ * a mef.export request), entry by entry, without storing it on disk.
+ * <p/>
+ * For each record the native metadata (metadata/metadata.xml), the feature
+ * catalogue and the info file are handled first, then the public and private
+ * files are handed over while they are read from the stream. This is the order
+ * the entries are written by {@link MEF2Exporter}: a record whose public or
+ * private files come before its metadata or info file cannot be streamed and
+ * makes the visit fail.
+ * <p/>
+ * Unlike {@link MEF2Visitor}, {@link IMEFVisitor#handleMetadataFiles} is not
+ * called, the native metadata is passed to {@link IMEFVisitor#handleMetadata}.
+ */
+public class MEF2StreamVisitor {
+
+	/**
+	 * Visit the records of a MEF file. The stream is not closed.
+	 */
+	public void visit(InputStream mefStream, IMEFVisitor v) throws Exception {
+		Logger log = Log.createLogger(Geonet.MEF);
+
+		ZipInputStream zis = new ZipInputStream(mefStream);
+		InputStreamBridge isb = new InputStreamBridge(zis);
+
+		Record record = null;
+		int nbMetadata = 0;
+
+		ZipEntry entry;
+		while ((entry = zis.getNextEntry()) != null) {
+			if (entry.isDirectory()) {
+				continue;
+			}
+			String recordName = MEF2Visitor.getRecordName(entry.getName());
+			if (recordName == null) {
+				log.debug("Skipping " + entry.getName() + " which is not part of a record.");
+				continue;
+			}
+
+			if (record == null || !record.name.equals(recordName)) {
+				if (record != null) {
+					record.handleXml(v);
+					nbMetadata++;
+				}
+				record = new Record(recordName, nbMetadata);
+			}
+
+			String path = entry.getName().substring(recordName.length() + 1);
+			if (path.equals(MD_DIR + FILE_METADATA)) {
+				record.md = Xml.loadStream(isb);
+			} else if (path.startsWith(SCHEMA)) {
+				if (record.fc == null || path.equals(SCHEMA + FILE_METADATA)) {
+					record.fc = Xml.loadStream(isb);
+				}
+			} else if (path.equals(FILE_INFO)) {
+				record.info = Xml.loadStream(isb);
+			} else if (path.startsWith(DIR_PUBLIC)) {
+				record.handleXml(v);
+				String file = path.substring(DIR_PUBLIC.length());
+				String changeDate = record.getChangeDate("public", file);
+				if (changeDate == null) {
+					log.debug("Skipping public file " + file + " which is not registered in " + FILE_INFO);
+				} else {
+					v.handlePublicFile(file, changeDate, isb, record.index);
+				}
+			} else if (path.startsWith(DIR_PRIVATE)) {
+				record.handleXml(v);
+				String file = path.substring(DIR_PRIVATE.length());
+				String changeDate = record.getChangeDate("private", file);
+				if (changeDate == null) {
+					log.debug("Skipping private file " + file + " which is not registered in " + FILE_INFO);
+				} else {
+					v.handlePrivateFile(file, changeDate, isb, record.index);
+				}
+			}
+
+			zis.closeEntry();
+		}
+
+		if (record != null) {
+			record.handleXml(v);
+		}
+	}
+
+	/**
+	 * The XML documents of the record being read.
+	 */
+	private static class Record {
+		final String name;
+		final int index;
+		Element md;
+		Element fc;
+		Element info;
+		boolean handled;
+
+		Record(String name, int index) {
+			this.name = name;
+			this.index = index;
+		}
+
+		/**
+		 * Hand over the metadata, feature catalogue and info file, once.
+		 */
+		void handleXml(IMEFVisitor v) throws Exception {
+			if (handled) {
+				return;
+			}
+			if (md == null) {
+				throw new BadFormatEx("Missing XML document " + name + "/" + MD_DIR + FILE_METADATA
+						+ " before the files of the record in MEF stream.");
+			}
+			if (info == null) {
+				info = new Element("info");
+			}
+			handled = true;
+
+			v.handleMetadata(md, index);
+			v.handleFeatureCat(fc, index);
+			v.handleInfo(info, index);
+		}
+
+		@SuppressWarnings("unchecked")
+		String getChangeDate(String dir, String file) {
+			Element files = info.getChild(dir);
+			List<Element> list = files == null ? new ArrayList<Element>() : files.getChildren();
+			for (Element f : list) {
+				if (file.equals(f.getAttributeValue("name"))) {
+					return f.getAttributeValue("changeDate");
+				}
+			}
+			return null;
+		}
+	}
+}
+
+// =============================================================================
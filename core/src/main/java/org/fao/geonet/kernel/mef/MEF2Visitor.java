@@ -23,6 +23,8 @@
 
 package org.fao.geonet.kernel.mef;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.fao.geonet.exceptions.BadFormatEx;
 import org.fao.geonet.Logger;
 import org.fao.geonet.utils.Log;
@@ -34,7 +36,15 @@ import org.jdom.Element;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import static org.fao.geonet.kernel.mef.MEFConstants.FILE_INFO;
@@ -43,6 +53,9 @@ import static org.fao.geonet.kernel.mef.MEFConstants.FILE_INFO;
  * MEF version 2 visitor
  */
 public class MEF2Visitor implements IVisitor {
+	private static final Set<String> RECORD_FOLDERS = new HashSet<String>(Arrays.asList(
+			MEFConstants.MD_DIR.replace(MEFConstants.FS, ""), MEFConstants.SCHEMA.replace(MEFConstants.FS, ""),
+			MEFConstants.DIR_PUBLIC.replace(MEFConstants.FS, ""), MEFConstants.DIR_PRIVATE.replace(MEFConstants.FS, "")));
 
 	public void visit(File mefFile, IMEFVisitor v) throws Exception {
 		handleXml(mefFile, v);
@@ -51,6 +64,10 @@ public class MEF2Visitor implements IVisitor {
 	/**
 	 * Read the input MEF file and for each metadata found, check structure for
 	 * metadata.xml, info.xml and optional feature catalogue files.
+	 * <p/>
+	 * The records are extracted and handled one after the other, so only the
+	 * files of one record are on disk at the same time whatever the size of the
+	 * MEF file.
 	 */
 	public Element handleXml(File mefFile, IMEFVisitor v) throws Exception {
 
@@ -61,66 +78,113 @@ public class MEF2Visitor implements IVisitor {
 
 		Element info = new Element("info");
 
-		File unzipDir = new File(mefFile.getParentFile(), "unzipping");
-
-		if (unzipDir.exists())
-            FileCopyMgr.removeDirectoryOrFile(unzipDir);
-
-		ZipUtil.extract(new ZipFile(mefFile), unzipDir);
-
-		// Get the metadata depth
-		File metadata = getMetadataDirectory(unzipDir);
-
-		if (metadata.getParentFile().equals(unzipDir)) {
-			log
-					.debug("Metadata folder is directly under the unzip temporary folder.");
-		} else {
-			File[] lstmdDir = metadata.getParentFile().getParentFile()
-					.listFiles();
-            for (File file : lstmdDir) {
-                if (file != null && file.isDirectory()) {
-                    // Handle metadata file
-                    File metadataDir = new File(file, "metadata");
-
-                    File[] xmlFiles = metadataDir.listFiles();
-
-                    if (xmlFiles == null || xmlFiles.length < 1) {
-                        throw new BadFormatEx(
-                                "Missing XML document in metadata folder " + file.getName() + "/metadata in MEF file "
-                                        + mefFile.getName() + ".");
-                    }
-
-                    // Handle feature catalog
-                    File fcFile = getFeatureCalalogFile(file);
-                    if (fcFile != null) {
-                        fc = Xml.loadFile(fcFile);
-                    } else {
-                        fc = null;
-                    }
-
-                    // Handle info file
-                    File fileInfo = new File(file, FILE_INFO);
-                    if (fileInfo.exists()) {
-                        info = Xml.loadFile(fileInfo);
-                    }
-
-                    v.handleMetadataFiles(xmlFiles, info, nbMetadata);
-                    v.handleFeatureCat(fc, nbMetadata);
-                    v.handleInfo(info, nbMetadata);
-
-                    // Handle binaries
-                    handleBin(file, v, info, nbMetadata);
-
-                    nbMetadata++;
-                }
-            }
-		}
-
+		File unzipDir = File.createTempFile("unzipping", "", mefFile.getParentFile());
 		FileCopyMgr.removeDirectoryOrFile(unzipDir);
 
+		ZipFile zipFile = new ZipFile(mefFile);
+		try {
+			Map<String, List<ZipEntry>> records = getRecordEntries(zipFile);
+			if (records.isEmpty()) {
+				log.debug("No metadata folder in a record folder, nothing to import.");
+			}
+
+			for (Map.Entry<String, List<ZipEntry>> record : records.entrySet()) {
+				for (ZipEntry entry : record.getValue()) {
+					ZipUtil.extract(zipFile, entry, unzipDir);
+				}
+				File file = new File(unzipDir, record.getKey());
+				try {
+					// Handle metadata file
+					File metadataDir = new File(file, "metadata");
+
+					File[] xmlFiles = metadataDir.listFiles();
+
+					if (xmlFiles == null || xmlFiles.length < 1) {
+						throw new BadFormatEx(
+								"Missing XML document in metadata folder " + file.getName() + "/metadata in MEF file "
+										+ mefFile.getName() + ".");
+					}
+
+					// Handle feature catalog
+					File fcFile = getFeatureCalalogFile(file);
+					if (fcFile != null) {
+						fc = Xml.loadFile(fcFile);
+					} else {
+						fc = null;
+					}
+
+					// Handle info file
+					File fileInfo = new File(file, FILE_INFO);
+					if (fileInfo.exists()) {
+						info = Xml.loadFile(fileInfo);
+					} else {
+						info = new Element("info");
+					}
+
+					v.handleMetadataFiles(xmlFiles, info, nbMetadata);
+					v.handleFeatureCat(fc, nbMetadata);
+					v.handleInfo(info, nbMetadata);
+
+					// Handle binaries
+					handleBin(file, v, info, nbMetadata);
+
+					nbMetadata++;
+				} finally {
+					FileCopyMgr.removeDirectoryOrFile(file);
+				}
+			}
+		} finally {
+			zipFile.close();
+			FileCopyMgr.removeDirectoryOrFile(unzipDir);
+		}
+
 		return info;
 	}
 
+	/**
+	 * Group the files of the MEF file by record folder, the record folders being
+	 * the folders containing the metadata, applschema, public or private folders
+	 * or the info file.  The files directly under the root of the MEF file are
+	 * not part of a record.
+	 */
+	private Map<String, List<ZipEntry>> getRecordEntries(ZipFile zipFile) {
+		Map<String, List<ZipEntry>> records = new LinkedHashMap<String, List<ZipEntry>>();
+		Enumeration<? extends ZipEntry> entries = zipFile.entries();
+		while (entries.hasMoreElements()) {
+			ZipEntry entry = entries.nextElement();
+			if (entry.isDirectory()) {
+				continue;
+			}
+			String recordName = getRecordName(entry.getName());
+			if (recordName != null) {
+				List<ZipEntry> recordEntries = records.get(recordName);
+				if (recordEntries == null) {
+					recordEntries = new ArrayList<ZipEntry>();
+					records.put(recordName, recordEntries);
+				}
+				recordEntries.add(entry);
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Get the record folder of a file of a MEF file.
+	 *
+	 * @return the path of the record folder or null if the file is not part of
+	 *         a record.
+	 */
+	static String getRecordName(String entryName) {
+		String[] path = entryName.split(MEFConstants.FS);
+		for (int i = 1; i < path.length; i++) {
+			boolean recordFolder = i < path.length - 1 ? RECORD_FOLDERS.contains(path[i]) : path[i].equals(FILE_INFO);
+			if (recordFolder) {
+				return StringUtils.join(path, MEFConstants.FS, 0, i);
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Check binary files to import.
 	 */
@@ -149,9 +213,14 @@ public class MEF2Visitor implements IVisitor {
 			File[] files = publicFile.listFiles();
 			for (File f : files) {
 				fname = f.getName();
-				v.handlePublicFile(fname,
-						MEFLib.getChangeDate(pubFiles, fname),
-						new FileInputStream(f), index);
+				FileInputStream in = new FileInputStream(f);
+				try {
+					v.handlePublicFile(fname,
+							MEFLib.getChangeDate(pubFiles, fname),
+							in, index);
+				} finally {
+					IOUtils.closeQuietly(in);
+				}
 			}
 		}
 
@@ -160,9 +229,14 @@ public class MEF2Visitor implements IVisitor {
 			File[] files = privateFile.listFiles();
 			for (File f : files) {
 				fname = f.getName();
-				v.handlePrivateFile(fname, MEFLib
-						.getChangeDate(prvFiles, fname),
-						new FileInputStream(f), index);
+				FileInputStream in = new FileInputStream(f);
+				try {
+					v.handlePrivateFile(fname, MEFLib
+							.getChangeDate(prvFiles, fname),
+							in, index);
+				} finally {
+					IOUtils.closeQuietly(in);
+				}
 			}
 		}
 	}
@@ -180,11 +180,33 @@ public class MEFLib {
 
 	// --------------------------------------------------------------------------
 
+	/**
+	 * Write a MEF2 file straight to the output stream, see
+	 * {@link #doMEF2Export(ServiceContext, Set, String, boolean, String, boolean, boolean)}.
+	 */
+	public static void doMEF2Export(ServiceContext context,
+			Set<String> uuids, String format, boolean skipUUID, String stylePath, boolean resolveXlink, boolean removeXlinkAttribute,
+			OutputStream out) throws Exception {
+		MEF2Exporter.doExport(context, uuids, Format.parse(format),
+				skipUUID, stylePath, resolveXlink, removeXlinkAttribute, out);
+	}
+
+	// --------------------------------------------------------------------------
+
 	public static void visit(File mefFile, IVisitor visitor, IMEFVisitor v)
 			throws Exception {
 		visitor.visit(mefFile, v);
 	}
 
+	/**
+	 * Visit a MEF2 file while it is read from a stream, see
+	 * {@link MEF2StreamVisitor}.
+	 */
+	public static void visit(InputStream mefStream, IMEFVisitor v)
+			throws Exception {
+		new MEF2StreamVisitor().visit(mefStream, v);
+	}
+
 	/**
 	 * Return MEF file version according to ZIP file content.
 	 * 
@@ -264,7 +286,15 @@ public class MEFLib {
 	 * @throws IOException
 	 */
 	static void addFile(ZipOutputStream zos, String name, @Nonnull String string) throws IOException {
-        addFile(zos, name, new ByteArrayInputStream(string.getBytes("UTF-8")));
+        addFile(zos, name, string.getBytes("UTF-8"));
+    }
+	static void addFile(ZipOutputStream zos, String name, @Nonnull byte[] data) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        try {
+            zos.write(data);
+        } finally {
+            zos.closeEntry();
+        }
     }
 	static void addFile(ZipOutputStream zos, String name, @Nonnull InputStream in)
 			throws IOException {
@@ -53,6 +53,7 @@ import org.fao.geonet.Util;
 import org.fao.geonet.constants.Edit;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.*;
+import org.fao.geonet.domain.statistic.SearchRequest;
 import org.fao.geonet.exceptions.BadParameterEx;
 import org.fao.geonet.exceptions.UnAuthorizedException;
 import org.fao.geonet.kernel.AccessManager;
@@ -63,6 +64,7 @@ import org.fao.geonet.kernel.search.LuceneConfig.FacetConfig;
 import org.fao.geonet.kernel.search.LuceneConfig.LuceneConfigNumericField;
 import org.fao.geonet.kernel.search.SearchManager.TermFrequency;
 import org.fao.geonet.kernel.search.index.GeonetworkMultiReader;
+import org.fao.geonet.kernel.search.log.SearchRequestQueue;
 import org.fao.geonet.kernel.search.log.SearcherLogger;
 import org.fao.geonet.kernel.search.lucenequeries.DateRangeQuery;
 import org.fao.geonet.kernel.search.spatial.SpatialFilter;
@@ -176,12 +178,19 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
                 // Run asynch
                 if(Log.isDebugEnabled(Geonet.SEARCH_ENGINE))
                     Log.debug(Geonet.SEARCH_ENGINE,"Log search in asynch mode - start.");
-                GeonetContext gc = (GeonetContext) srvContext.getHandlerContext(Geonet.CONTEXT_NAME);
-                SearchLoggerTask logTask = srvContext.getBean(SearchLoggerTask.class);
-                logTask.configure(srvContext, sm.getLogSpatialObject(), sm.getLuceneTermsToExclude(), query, numHits, sort, geomWKT,
-                        config.getValue(Jeeves.Text.GUI_SERVICE,"n"));
-
-                gc.getThreadPool().runTask(logTask);
+                // Only the request is built in the search thread, it is written to the database
+                // in batches by the queue writer thread. If the queue is full the request is dropped.
+                try {
+                    SearcherLogger searchLogger = new SearcherLogger(srvContext, sm.getLogSpatialObject(),
+                            sm.getLuceneTermsToExclude());
+                    SearchRequest request = searchLogger.createSearchRequest(query, numHits, sort, geomWKT,
+                            config.getValue(Jeeves.Text.GUI_SERVICE, "n"));
+                    if (request != null) {
+                        srvContext.getBean(SearchRequestQueue.class).offer(request);
+                    }
+                } catch (Exception e) {
+                    Log.error(Geonet.SEARCH_LOGGER, "Error logging search: " + e.getMessage(), e);
+                }
                 if(Log.isDebugEnabled(Geonet.SEARCH_ENGINE))
                     Log.debug(Geonet.SEARCH_ENGINE,"Log search in asynch mode - end.");
             } else {
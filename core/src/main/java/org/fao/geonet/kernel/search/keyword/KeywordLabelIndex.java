@@ -0,0 +1,358 @@
+package org.fao.geonet.kernel.search.keyword;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.KeywordBean;
+import org.fao.geonet.kernel.Thesaurus;
+import org.fao.geonet.kernel.rdf.Selectors;
+import org.fao.geonet.languages.IsoLanguagesMapper;
+import org.fao.geonet.utils.Log;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Graph;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.sesame.sail.StatementIterator;
+import org.openrdf.vocabulary.RDF;
+
+/**
+ * In memory index of the preferred labels of the concepts of a thesaurus, used for keyword suggestions instead of
+ * running a SeRQL LIKE query over the whole repository for every keystroke.
+ * <p/>
+ * For each language the labels are kept lower cased in a sorted map so that a prefix search is a range lookup.
+ * Contains and fuzzy searches scan the labels of the language, which is still much faster than the SeRQL query as
+ * no RDF has to be evaluated. The labels, notes and bounds of the concepts are kept as well so that the keywords can be
+ * created without querying the repository.
+ * <p/>
+ * The index is updated concept by concept when the thesaurus is edited (see {@link #refresh(Graph, String)}).
+ */
+public class KeywordLabelIndex {
+    private static final String SKOS_NS = Selectors.SKOS_NAMESPACE.getURI();
+    private static final String GML_NS = Selectors.GML_NAMESPACE.getURI();
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final IsoLanguagesMapper mapper;
+    private final ConcurrentMap<String, Concept> concepts = new ConcurrentHashMap<String, Concept>();
+    /** 2 letter language code -> lower cased label + separator + uri -> uri */
+    private final ConcurrentMap<String, ConcurrentNavigableMap<String, String>> labels =
+            new ConcurrentHashMap<String, ConcurrentNavigableMap<String, String>>();
+
+    private KeywordLabelIndex(IsoLanguagesMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Create the index of all the concepts of the graph of a thesaurus.
+     */
+    public static KeywordLabelIndex build(IsoLanguagesMapper mapper, Graph graph) {
+        long start = System.currentTimeMillis();
+        KeywordLabelIndex index = new KeywordLabelIndex(mapper);
+        ValueFactory factory = graph.getValueFactory();
+        StatementIterator iter = graph.getStatements(null, factory.createURI(RDF.TYPE), factory.createURI(SKOS_NS, "Concept"));
+        try {
+            while (iter.hasNext()) {
+                Resource subject = iter.next().getSubject();
+                if (subject instanceof URI) {
+                    index.refresh(graph, ((URI) subject).getURI());
+                }
+            }
+        } finally {
+            iter.close();
+        }
+        if (Log.isDebugEnabled(Geonet.THESAURUS)) {
+            Log.debug(Geonet.THESAURUS, "Indexed the labels of " + index.size() + " concepts in "
+                                        + (System.currentTimeMillis() - start) + "ms");
+        }
+        return index;
+    }
+
+    /**
+     * @return the number of concepts in the index.
+     */
+    public int size() {
+        return concepts.size();
+    }
+
+    /**
+     * Read the concept from the graph and update its entries in the index.  The concept is removed from the index if
+     * it is no longer in the graph.
+     *
+     * @param graph the graph of the thesaurus
+     * @param uri the uri of the concept that was added or updated
+     */
+    public void refresh(Graph graph, String uri) {
+        ValueFactory factory = graph.getValueFactory();
+        URI subject = factory.createURI(uri);
+
+        boolean isConcept = false;
+        Map<String, String> conceptLabels = new HashMap<String, String>();
+        Map<String, String> conceptNotes = new HashMap<String, String>();
+        String lowerCorner = "";
+        String upperCorner = "";
+
+        StatementIterator iter = graph.getStatements(subject, null, null);
+        try {
+            while (iter.hasNext()) {
+                Statement st = iter.next();
+                String predicate = st.getPredicate().getURI();
+                Value object = st.getObject();
+                if (predicate.equals(RDF.TYPE)) {
+                    isConcept |= object instanceof URI && ((URI) object).getURI().equals(SKOS_NS + "Concept");
+                } else if (predicate.equals(SKOS_NS + "prefLabel") && object instanceof Literal) {
+                    putLiteral(conceptLabels, (Literal) object);
+                } else if (predicate.equals(SKOS_NS + "scopeNote") && object instanceof Literal) {
+                    putLiteral(conceptNotes, (Literal) object);
+                } else if (predicate.equals(GML_NS + "BoundedBy") && object instanceof BNode) {
+                    lowerCorner = readCorner(graph, (BNode) object, factory.createURI(GML_NS, "lowerCorner"));
+                    upperCorner = readCorner(graph, (BNode) object, factory.createURI(GML_NS, "upperCorner"));
+                }
+            }
+        } finally {
+            iter.close();
+        }
+
+        remove(uri);
+        if (isConcept) {
+            Concept concept = new Concept(uri, conceptLabels, conceptNotes, lowerCorner, upperCorner);
+            concepts.put(uri, concept);
+            for (Map.Entry<String, String> label : conceptLabels.entrySet()) {
+                labelsOf(label.getKey()).put(key(label.getValue(), uri), uri);
+            }
+        }
+    }
+
+    /**
+     * Remove a concept from the index.
+     *
+     * @param uri the uri of the concept.
+     */
+    public void remove(String uri) {
+        Concept old = concepts.remove(uri);
+        if (old != null) {
+            for (Map.Entry<String, String> label : old.labels.entrySet()) {
+                labelsOf(label.getKey()).remove(key(label.getValue(), uri));
+            }
+        }
+    }
+
+    /**
+     * Find the uris of the concepts with a label matching the search in one of the languages.  The uris are in the
+     * order of the labels in the first language.
+     *
+     * @param searchType how to match the labels
+     * @param text the text to search for (case is ignored)
+     * @param uris the concepts that have one of these uris are also returned
+     * @param languages the 3 letter codes of the languages of the labels to search
+     * @param offset the number of concepts to skip
+     * @param maxResults the maximum number of uris to return, < 1 means all
+     * @return the uris of the matching concepts.
+     */
+    public List<String> search(KeywordSearchType searchType, String text, Collection<String> uris,
+                               Collection<String> languages, int offset, int maxResults) {
+        String lowerText = text.toLowerCase();
+        Set<String> found = new LinkedHashSet<String>();
+        for (String uri : uris) {
+            if (concepts.containsKey(uri)) {
+                found.add(uri);
+            }
+        }
+        for (String lang : languages) {
+            ConcurrentNavigableMap<String, String> langLabels = labels.get(toLiteralLanguage(lang));
+            if (langLabels == null) {
+                continue;
+            }
+            switch (searchType) {
+                case STARTS_WITH:
+                    for (String uri : langLabels.subMap(lowerText, true, lowerText + Character.MAX_VALUE, true).values()) {
+                        found.add(uri);
+                    }
+                    break;
+                case MATCH:
+                    for (String uri : langLabels.subMap(lowerText + KEY_SEPARATOR, true,
+                            lowerText + KEY_SEPARATOR + Character.MAX_VALUE, true).values()) {
+                        found.add(uri);
+                    }
+                    break;
+                case CONTAINS:
+                    for (Map.Entry<String, String> entry : langLabels.entrySet()) {
+                        if (label(entry.getKey()).contains(lowerText)) {
+                            found.add(entry.getValue());
+                        }
+                    }
+                    break;
+                case FUZZY:
+                    int maxEdits = lowerText.length() < 5 ? 1 : 2;
+                    for (Map.Entry<String, String> entry : langLabels.entrySet()) {
+                        String label = label(entry.getKey());
+                        if (label.contains(lowerText) || isPrefixWithinEdits(lowerText, label, maxEdits)) {
+                            found.add(entry.getValue());
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported search type: " + searchType);
+            }
+        }
+
+        List<String> result = new ArrayList<String>(found);
+        int from = Math.min(Math.max(offset, 0), result.size());
+        int to = maxResults < 1 ? result.size() : Math.min(result.size(), from + maxResults);
+        return result.subList(from, to);
+    }
+
+    /**
+     * Create the keyword of a concept of the index in the same way as the keywords created by the keyword queries
+     * (see {@link org.fao.geonet.kernel.rdf.QueryBuilder#keywordQueryBuilder(IsoLanguagesMapper, Collection, boolean)}).
+     *
+     * @return the keyword or null if the concept is not in the index.
+     */
+    public KeywordBean createKeyword(Thesaurus thesaurus, String uri, Collection<String> languages, int id) {
+        Concept concept = concepts.get(uri);
+        if (concept == null) {
+            return null;
+        }
+        String[] lower = splitCorner(concept.lowerCorner);
+        String[] upper = splitCorner(concept.upperCorner);
+        KeywordBean keywordBean = new KeywordBean(thesaurus.getIsoLanguageMapper())
+                .setThesaurusInfo(thesaurus)
+                .setId(id)
+                .setUriCode(uri)
+                .setCoordEast(upper[0])
+                .setCoordNorth(upper[1])
+                .setCoordSouth(lower[1])
+                .setCoordWest(lower[0])
+                .setDownloadUrl(thesaurus.getDownloadUrl())
+                .setKeywordUrl(thesaurus.getKeywordUrl());
+        for (String lang : languages) {
+            String literalLang = toLiteralLanguage(lang);
+            keywordBean.setValue(valueOrEmpty(concept.labels.get(literalLang)), lang);
+            keywordBean.setDefinition(valueOrEmpty(concept.notes.get(literalLang)), lang);
+        }
+        return keywordBean;
+    }
+
+    private ConcurrentNavigableMap<String, String> labelsOf(String literalLang) {
+        ConcurrentNavigableMap<String, String> langLabels = labels.get(literalLang);
+        if (langLabels == null) {
+            langLabels = new ConcurrentSkipListMap<String, String>();
+            ConcurrentNavigableMap<String, String> existing = labels.putIfAbsent(literalLang, langLabels);
+            if (existing != null) {
+                langLabels = existing;
+            }
+        }
+        return langLabels;
+    }
+
+    /**
+     * Same conversion of the language as the one of the label selector of the keyword queries.
+     */
+    private String toLiteralLanguage(String lang) {
+        return mapper.iso639_2_to_iso639_1(lang, lang.substring(0, 2)).toLowerCase();
+    }
+
+    private static void putLiteral(Map<String, String> values, Literal literal) {
+        String lang = literal.getLanguage();
+        if (lang != null && !values.containsKey(lang.toLowerCase())) {
+            values.put(lang.toLowerCase(), literal.getLabel());
+        }
+    }
+
+    private static String readCorner(Graph graph, BNode bounds, URI corner) {
+        StatementIterator iter = graph.getStatements(bounds, corner, null);
+        try {
+            if (iter.hasNext()) {
+                Value value = iter.next().getObject();
+                return value instanceof Literal ? ((Literal) value).getLabel() : value.toString();
+            }
+            return "";
+        } finally {
+            iter.close();
+        }
+    }
+
+    private static String[] splitCorner(String corner) {
+        String[] parts = corner.split(" ");
+        if (parts.length == 2) {
+            return parts;
+        }
+        return new String[]{"", ""};
+    }
+
+    private static String valueOrEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String key(String label, String uri) {
+        return label.toLowerCase() + KEY_SEPARATOR + uri;
+    }
+
+    private static String label(String key) {
+        return key.substring(0, key.lastIndexOf(KEY_SEPARATOR));
+    }
+
+    /**
+     * Check if the start of the label is within maxEdits (insertions, deletions or substitutions) of the text.
+     */
+    static boolean isPrefixWithinEdits(String text, String label, int maxEdits) {
+        int n = text.length();
+        int m = Math.min(label.length(), n + maxEdits);
+        // distance between the text and each prefix of the label, computed row by row
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= m; j++) {
+                int cost = text.charAt(i - 1) == label.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxEdits) {
+                return false;
+            }
+            int[] tmp = previous;
+            previous = current;
+            current = tmp;
+        }
+        for (int j = Math.max(0, n - maxEdits); j <= m; j++) {
+            if (previous[j] <= maxEdits) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Concept {
+        final String uri;
+        final Map<String, String> labels;
+        final Map<String, String> notes;
+        final String lowerCorner;
+        final String upperCorner;
+
+        Concept(String uri, Map<String, String> labels, Map<String, String> notes, String lowerCorner, String upperCorner) {
+            this.uri = uri;
+            this.labels = Collections.unmodifiableMap(labels);
+            this.notes = Collections.unmodifiableMap(notes);
+            this.lowerCorner = lowerCorner;
+            this.upperCorner = upperCorner;
+        }
+    }
+}
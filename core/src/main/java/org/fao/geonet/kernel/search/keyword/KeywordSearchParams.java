@@ -21,6 +21,12 @@ public class KeywordSearchParams {
     private final LinkedHashSet<String> thesauriNames;
     private final String thesauriDomainName;
     private int maxResults;
+    private KeywordSearchType indexSearchType;
+    private String indexSearchText;
+    private List<String> indexSearchUris;
+    private List<String> indexSearchLangs;
+    private int indexSearchOffset;
+
     public KeywordSearchParams(QueryBuilder<KeywordBean> query, Set<String> thesauriNames, String thesauriDomainName, int maxResults) {
         this.queryBuilder = query;
         this.thesauriNames = new LinkedHashSet<String>(thesauriNames);
@@ -28,13 +34,27 @@ public class KeywordSearchParams {
         this.maxResults = maxResults;
     }
     
+    /**
+     * Search the labels with the {@link KeywordLabelIndex} of the thesauri instead of querying the thesauri.  The
+     * search must be equivalent to the query of this object.
+     */
+    void useLabelIndex(KeywordSearchType searchType, String text, List<String> uris, List<String> langs, int offset) {
+        this.indexSearchType = searchType;
+        this.indexSearchText = text;
+        this.indexSearchUris = uris;
+        this.indexSearchLangs = langs;
+        this.indexSearchOffset = offset;
+    }
+
     /**
      * Create the actual Query object for performing the search.
      * 
      * @return the actual Query object for performing the search.
      */
     public List<KeywordBean> search(ThesaurusFinder finder) throws IOException, MalformedQueryException, QueryEvaluationException, AccessDeniedException {
-        if(thesauriNames.isEmpty()) {
+        if(indexSearchType != null) {
+            return searchLabelIndex(finder);
+        } else if(thesauriNames.isEmpty()) {
             return executeAll(queryBuilder, finder);
         } else if(thesauriNames.size() == 1) {
             return executeOne(queryBuilder, finder);
@@ -42,6 +62,43 @@ public class KeywordSearchParams {
             return executeSpecific(queryBuilder, finder);
         }
     }
+    private List<KeywordBean> searchLabelIndex(ThesaurusFinder finder) throws AccessDeniedException {
+        List<KeywordBean> results = new ArrayList<KeywordBean>();
+        List<Thesaurus> thesauri = new ArrayList<Thesaurus>();
+        if(thesauriNames.size() == 1) {
+            String thesaurusName = thesauriNames.iterator().next();
+            Thesaurus thesaurus = finder.getThesaurusByName(thesaurusName);
+            if (thesaurus == null) {
+                throw new IllegalArgumentException("The thesaurus "+thesaurusName+" does not exist, there for the query cannot be excuted" );
+            }
+            thesauri.add(thesaurus);
+        } else {
+            for (Thesaurus thesaurus : finder.getThesauriMap().values()) {
+                if(thesauriNames.isEmpty() ? thesauriDomainName==null || thesauriDomainName.equals(thesaurus.getDname())
+                        : thesauriNames.contains(thesaurus.getKey())) {
+                    thesauri.add(thesaurus);
+                }
+            }
+        }
+
+        int id = 0;
+        for (Thesaurus thesaurus : thesauri) {
+            if(maxResults > 0 && results.size() >= maxResults) {
+                break;
+            }
+            KeywordLabelIndex index = thesaurus.getKeywordIndex();
+            int limit = maxResults > 0 ? maxResults - results.size() : -1;
+            for (String uri : index.search(indexSearchType, indexSearchText, indexSearchUris, indexSearchLangs, indexSearchOffset, limit)) {
+                KeywordBean keywordBean = index.createKeyword(thesaurus, uri, indexSearchLangs, id);
+                if (keywordBean != null) {
+                    results.add(keywordBean);
+                    id++;
+                }
+            }
+        }
+        return results;
+    }
+
     private List<KeywordBean> executeOne(QueryBuilder<KeywordBean> queryBuilder, ThesaurusFinder finder) throws IOException, MalformedQueryException, QueryEvaluationException, AccessDeniedException {
         List<KeywordBean> results = new ArrayList<KeywordBean>();
         int id = 0;
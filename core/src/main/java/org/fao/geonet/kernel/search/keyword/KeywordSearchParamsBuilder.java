@@ -203,7 +203,25 @@ public class KeywordSearchParamsBuilder {
      */
     public KeywordSearchParams build() {
         checkState(false);
-        return new KeywordSearchParams(createQuery(), thesauriNames, thesauriDomainName, maxResults);
+        KeywordSearchParams params = new KeywordSearchParams(createQuery(), thesauriNames, thesauriDomainName, maxResults);
+        KeywordLabelSearchClause labelSearch = null;
+        List<String> uris = new ArrayList<String>();
+        if (selectClauses.isEmpty() && !requireBoundedBy) {
+            for (SearchClause clause : searchClauses) {
+                if (clause instanceof KeywordLabelSearchClause && labelSearch == null) {
+                    labelSearch = (KeywordLabelSearchClause) clause;
+                } else if (clause instanceof URISearchClause && !((URISearchClause) clause).uri.contains("*")) {
+                    uris.add(((URISearchClause) clause).uri);
+                } else {
+                    return params;
+                }
+            }
+        }
+        if (labelSearch != null && labelSearch.ignoreCase && !labelSearch.keyword.contains("*")) {
+            // the search can be done with the label index of the thesauri
+            params.useLabelIndex(labelSearch.searchType, labelSearch.keyword, uris, new ArrayList<String>(langs), offset);
+        }
+        return params;
     }
 
     private QueryBuilder<KeywordBean> createQuery() {
@@ -6,7 +6,12 @@ import org.fao.geonet.kernel.rdf.Where;
 import org.fao.geonet.kernel.rdf.Wheres;
 
 public enum KeywordSearchType {
-    STARTS_WITH("{0}*"), CONTAINS("*{0}*"), MATCH("{0}");
+    STARTS_WITH("{0}*"), CONTAINS("*{0}*"), MATCH("{0}"),
+    /**
+     * Labels starting with a word close to the searched text (or containing it). Only supported by the
+     * {@link KeywordLabelIndex}, a contains query is used when the thesaurus is queried.
+     */
+    FUZZY("*{0}*");
     
     private String template;
     private KeywordSearchType(String template) {
@@ -20,6 +25,8 @@ public enum KeywordSearchType {
             return CONTAINS;
         } else if("2".equals(processed)) {
             return MATCH;
+        } else if("3".equals(processed)) {
+            return FUZZY;
         } else {
             return valueOf(processed);
         }
@@ -13,7 +13,7 @@ import org.jdom.Element;
  */
 public class URISearchClause implements SearchClause {
 
-    private String uri;
+    String uri;
 
     public URISearchClause(String uri) {
         this.uri = uri;
@@ -233,10 +233,19 @@ public class QueryRequest {
 	 */
     public boolean storeToDb(ServiceContext context) {
         SearchRequestRepository requestRepo = context.getBean(SearchRequestRepository.class);
-        // prepares a transaction to log all or nothing into database.
 
-        //Connection con = null;
-        //--- generate a new metadata id
+        requestRepo.save(createSearchRequest());
+        if (Log.isDebugEnabled(Geonet.SEARCH_LOGGER))
+            Log.debug(Geonet.SEARCH_LOGGER, "QueryRequest inserted (id: " + this.requestId + ")");
+        return true;
+    }
+
+    /**
+     * Create the entity (with its parameters) to store in the database for this request.
+     *
+     * @return a new unsaved search request entity.
+     */
+    public SearchRequest createSearchRequest() {
         SearchRequest request = new SearchRequest();
         request.setAutogenerated(this.autoGenQuery);
         request.setHits(this.hits);
@@ -264,11 +273,7 @@ public class QueryRequest {
                 }
             }
         }
-
-        requestRepo.save(request);
-        if (Log.isDebugEnabled(Geonet.SEARCH_LOGGER))
-            Log.debug(Geonet.SEARCH_LOGGER, "QueryRequest inserted (id: " + this.requestId + ")");
-        return true;
+        return request;
     }
 
 }
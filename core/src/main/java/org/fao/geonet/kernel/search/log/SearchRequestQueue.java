@@ -0,0 +1,267 @@
+package org.fao.geonet.kernel.search.log;
+
+import jeeves.TransactionAspect;
+import jeeves.TransactionTask;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.statistic.SearchRequest;
+import org.fao.geonet.domain.statistic.SearchRequestParam;
+import org.fao.geonet.utils.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+/**
+ * Bounded queue of the search requests to log in the database.  The searches only add the request to the queue and a
+ * single background thread writes them to the database in batches (one transaction per batch, the inserts of each
+ * table sent as JDBC batches) so the search time does not depend on the database.
+ * <p/>
+ * When the queue is full the new requests are dropped (or the oldest ones if dropOldest is set) and counted so the
+ * overflow can be monitored.
+ */
+public class SearchRequestQueue {
+    private static final int DEFAULT_CAPACITY = 10000;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    @Autowired
+    private ApplicationContext _applicationContext;
+    @PersistenceContext
+    private EntityManager _entityManager;
+
+    private int _capacity = DEFAULT_CAPACITY;
+    private int _batchSize = DEFAULT_BATCH_SIZE;
+    private long _flushInterval = DEFAULT_FLUSH_INTERVAL;
+    private boolean _dropOldest = false;
+
+    private volatile BlockingQueue<SearchRequest> _queue;
+    private Thread _writer;
+    private volatile boolean _shutdown = false;
+
+    private final AtomicLong _queued = new AtomicLong();
+    private final AtomicLong _dropped = new AtomicLong();
+    private final AtomicLong _written = new AtomicLong();
+    private final AtomicLong _failed = new AtomicLong();
+    private final AtomicLong _batches = new AtomicLong();
+
+    /**
+     * Add a search request to the queue.  Never blocks.
+     *
+     * @param request the request to write to the database.
+     * @return false if the queue is full (or shutdown) and the request has been dropped.
+     */
+    public boolean offer(SearchRequest request) {
+        if (_shutdown) {
+            _dropped.incrementAndGet();
+            return false;
+        }
+        BlockingQueue<SearchRequest> queue = start();
+        while (!queue.offer(request)) {
+            if (!_dropOldest || queue.poll() == null) {
+                _dropped.incrementAndGet();
+                if (Log.isDebugEnabled(Geonet.SEARCH_LOGGER)) {
+                    Log.debug(Geonet.SEARCH_LOGGER, "Search log queue is full, dropping search request");
+                }
+                return false;
+            }
+            _dropped.incrementAndGet();
+        }
+        _queued.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Write all the requests currently in the queue to the database in the calling thread.
+     *
+     * @return the number of requests written.
+     */
+    public int flush() {
+        if (_queue == null) {
+            return 0;
+        }
+        int total = 0;
+        List<SearchRequest> batch = new ArrayList<SearchRequest>(_batchSize);
+        while (_queue.drainTo(batch, _batchSize) > 0) {
+            total += write(batch);
+            batch.clear();
+        }
+        return total;
+    }
+
+    /**
+     * Stop the background writer, writing the requests that are still in the queue.
+     */
+    @PreDestroy
+    public void shutdown() {
+        _shutdown = true;
+        Thread writer;
+        synchronized (this) {
+            writer = _writer;
+            _writer = null;
+        }
+        if (writer != null) {
+            // the writer stops at the latest after the flush interval, once its current batch is written
+            try {
+                writer.join(_flushInterval * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    private synchronized BlockingQueue<SearchRequest> start() {
+        if (_queue == null) {
+            _queue = new LinkedBlockingQueue<SearchRequest>(_capacity);
+        }
+        if (_writer == null && !_shutdown) {
+            _writer = new Thread(new Writer(), "search-log-writer");
+            _writer.setDaemon(true);
+            _writer.start();
+        }
+        return _queue;
+    }
+
+    private int write(final List<SearchRequest> batch) {
+        try {
+            TransactionAspect.runInTransaction("write search request log", _applicationContext,
+                    TransactionAspect.TransactionRequirement.CREATE_NEW, TransactionAspect.CommitBehavior.ALWAYS_COMMIT, false,
+                    new TransactionTask<Object>() {
+                        @Override
+                        public Object doInTransaction(TransactionStatus transaction) throws Throwable {
+                            persist(batch);
+                            return null;
+                        }
+                    });
+            _written.addAndGet(batch.size());
+            _batches.incrementAndGet();
+            return batch.size();
+        } catch (Throwable e) {
+            _failed.addAndGet(batch.size());
+            Log.error(Geonet.SEARCH_LOGGER, "Error writing " + batch.size() + " search requests to the database: " + e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Persist the requests of a batch before their params.  Cascaded from each request, the inserts of the Requests and
+     * Params tables would alternate; grouped by table they are sent as JDBC batches (of hibernate.jdbc.batch_size
+     * statements) when the batch is flushed.
+     */
+    private void persist(List<SearchRequest> batch) {
+        List<List<SearchRequestParam>> params = new ArrayList<List<SearchRequestParam>>(batch.size());
+        for (SearchRequest request : batch) {
+            params.add(request.getParams());
+            request.setParams(new ArrayList<SearchRequestParam>());
+            _entityManager.persist(request);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            SearchRequest request = batch.get(i);
+            for (SearchRequestParam param : params.get(i)) {
+                request.addParam(param);
+                _entityManager.persist(param);
+            }
+        }
+        _entityManager.flush();
+    }
+
+    private class Writer implements Runnable {
+        @Override
+        public void run() {
+            List<SearchRequest> batch = new ArrayList<SearchRequest>(_batchSize);
+            while (!_shutdown) {
+                try {
+                    SearchRequest first = _queue.poll(_flushInterval, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    _queue.drainTo(batch, _batchSize - 1);
+                    write(batch);
+                } catch (InterruptedException e) {
+                    // the remaining requests are written by shutdown()
+                    break;
+                } catch (Throwable e) {
+                    Log.error(Geonet.SEARCH_LOGGER, "Unexpected error in the search log writer", e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    public void setCapacity(int capacity) {
+        this._capacity = capacity;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this._batchSize = batchSize;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        this._flushInterval = flushInterval;
+    }
+
+    /**
+     * If true the oldest requests are dropped when the queue is full, otherwise the new ones are dropped.
+     */
+    public void setDropOldest(boolean dropOldest) {
+        this._dropOldest = dropOldest;
+    }
+
+    public int getCapacity() {
+        return _capacity;
+    }
+
+    /**
+     * @return the number of requests waiting to be written.
+     */
+    public int getSize() {
+        BlockingQueue<SearchRequest> queue = _queue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * @return the number of requests added to the queue since startup.
+     */
+    public long getQueued() {
+        return _queued.get();
+    }
+
+    /**
+     * @return the number of requests dropped because the queue was full.
+     */
+    public long getDropped() {
+        return _dropped.get();
+    }
+
+    /**
+     * @return the number of requests written to the database.
+     */
+    public long getWritten() {
+        return _written.get();
+    }
+
+    /**
+     * @return the number of requests lost because the batch could not be written.
+     */
+    public long getFailed() {
+        return _failed.get();
+    }
+
+    /**
+     * @return the number of batches (transactions) written.
+     */
+    public long getBatches() {
+        return _batches.get();
+    }
+}
@@ -0,0 +1,132 @@
+package org.fao.geonet.kernel.search.log;
+
+import jeeves.TransactionAspect;
+import jeeves.TransactionTask;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.repository.statistic.SearchRequestDayStatRepository;
+import org.fao.geonet.utils.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+
+/**
+ * Background job maintaining the rollups of the search requests log
+ * ({@link org.fao.geonet.domain.statistic.SearchRequestDayStat} and
+ * {@link org.fao.geonet.domain.statistic.SearchTermStat}) read by the statistics services.
+ * <p/>
+ * Every interval the requests logged since the last run are added to the rollups, in batches of batchSize requests
+ * (one transaction per batch), so the cost of a run only depends on the number of new requests.  The requests of the
+ * last settleDelay milliseconds are left for the next run because they may still be written by another transaction.
+ */
+public class SearchStatisticsAggregator {
+    private static final long DEFAULT_INTERVAL = 5 * 60 * 1000;
+    private static final int DEFAULT_BATCH_SIZE = 5000;
+    private static final long DEFAULT_SETTLE_DELAY = 60 * 1000;
+
+    @Autowired
+    private ApplicationContext _applicationContext;
+
+    private long _interval = DEFAULT_INTERVAL;
+    private int _batchSize = DEFAULT_BATCH_SIZE;
+    private long _settleDelay = DEFAULT_SETTLE_DELAY;
+
+    private ScheduledExecutorService _executor;
+
+    /**
+     * Start aggregating the new requests in the background.
+     */
+    public synchronized void start() {
+        if (_executor != null) {
+            return;
+        }
+        _executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "search-statistics-aggregator");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        _executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                // any uncaught exception would cause the scheduled execution to silently stop
+                try {
+                    aggregate();
+                } catch (Throwable e) {
+                    Log.error(Geonet.SEARCH_LOGGER, "Error aggregating the search statistics: " + e.getMessage(), e);
+                }
+            }
+        }, 0, _interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the background aggregation.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (_executor != null) {
+            _executor.shutdownNow();
+            _executor = null;
+        }
+    }
+
+    /**
+     * Add all the settled requests which are not yet in the rollups to the rollups, in the calling thread.
+     *
+     * @return the number of requests added to the rollups.
+     */
+    public synchronized int aggregate() {
+        final SearchRequestDayStatRepository repository = _applicationContext.getBean(SearchRequestDayStatRepository.class);
+        final ISODate settledBefore = new ISODate(System.currentTimeMillis() - _settleDelay, false);
+        long start = System.currentTimeMillis();
+        int total = 0;
+        int aggregated;
+        do {
+            aggregated = TransactionAspect.runInTransaction("aggregate search statistics", _applicationContext,
+                    TransactionAspect.TransactionRequirement.CREATE_NEW, TransactionAspect.CommitBehavior.ALWAYS_COMMIT, false,
+                    new TransactionTask<Integer>() {
+                        @Override
+                        public Integer doInTransaction(TransactionStatus transaction) throws Throwable {
+                            return repository.aggregateNewRequests(_batchSize, settledBefore);
+                        }
+                    });
+            total += aggregated;
+        } while (aggregated == _batchSize && !Thread.currentThread().isInterrupted());
+
+        if (total > 0 && Log.isDebugEnabled(Geonet.SEARCH_LOGGER)) {
+            Log.debug(Geonet.SEARCH_LOGGER, "Added " + total + " search requests to the statistics in "
+                                            + (System.currentTimeMillis() - start) + " ms");
+        }
+        return total;
+    }
+
+    /**
+     * The time between two aggregations, in milliseconds.
+     */
+    public void setInterval(long interval) {
+        this._interval = interval;
+    }
+
+    /**
+     * The number of requests aggregated in one transaction.
+     */
+    public void setBatchSize(int batchSize) {
+        this._batchSize = batchSize;
+    }
+
+    /**
+     * The age (in milliseconds) a request must have to be aggregated.
+     */
+    public void setSettleDelay(long settleDelay) {
+        this._settleDelay = settleDelay;
+    }
+}
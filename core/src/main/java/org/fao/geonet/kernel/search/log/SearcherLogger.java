@@ -11,6 +11,7 @@ import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.statistic.LuceneQueryParamType;
+import org.fao.geonet.domain.statistic.SearchRequest;
 import org.fao.geonet.domain.statistic.SearchRequestParam;
 
 import java.util.*;
@@ -73,27 +74,10 @@ public class SearcherLogger {
             if(Log.isDebugEnabled(Geonet.SEARCH_LOGGER))
                 Log.debug(Geonet.SEARCH_LOGGER,"Opening dbms...");
 
-    		if (query == null) {
-                if(Log.isDebugEnabled(Geonet.SEARCH_LOGGER))
-                    Log.debug(Geonet.SEARCH_LOGGER, "Null Query object. cannot log search operation");
+    		QueryRequest queryRequest = createQueryRequest(query, numHits, sort, geomFilterWKT, guiService);
+    		if (queryRequest == null) {
     			return;
     		}
-    	
-    		QueryRequest queryRequest = new QueryRequest(srvContext.getIpAddress(), (new java.util.Date()).getTime());
-            List<SearchRequestParam>queryInfos = extractQueryTerms(query);
-    		// type is also set when doing this.
-    		queryRequest.setQueryInfos(queryInfos);
-    		queryRequest.setHits(numHits);
-    		queryRequest.setService(this.srvContext.getService());
-    		queryRequest.setLanguage(this.srvContext.getLanguage());
-    		queryRequest.setLuceneQuery(query.toString());
-    		// sortBy, spatial filter ?
-    		if (sort != null) queryRequest.setSortBy(concatSortFields(sort.getSort()));
-    		// todo: use filter to extract geom from
-    		queryRequest.setSpatialFilter(geomFilterWKT);
-    		// sets the simple type through this call...
-    		queryRequest.isSimpleQuery();
-    		queryRequest.setAutoGeneratedQuery(guiService.equals("yes"));
     		
     		if (!queryRequest.storeToDb(srvContext)) {
     			Log.warning(Geonet.SEARCH_LOGGER, "unable to log query into database...");
@@ -119,6 +103,48 @@ public class SearcherLogger {
 		}
 	}
 	
+    /**
+     * Create the entity to store in the database for a search, without storing it.  Used to hand the search over to
+     * the {@link SearchRequestQueue} so that it is written by a background thread.
+     *
+     * @return the search request or null if logging is disabled or the query is null.
+     */
+	public SearchRequest createSearchRequest(Query query, int numHits, Sort sort, String geomFilterWKT, String guiService) {
+		if (!isEnabled) {
+			return null;
+		}
+		QueryRequest queryRequest = createQueryRequest(query, numHits, sort, geomFilterWKT, guiService);
+		if (queryRequest == null) {
+			return null;
+		}
+		return queryRequest.createSearchRequest();
+	}
+
+	private QueryRequest createQueryRequest(Query query, int numHits, Sort sort, String geomFilterWKT, String guiService) {
+		if (query == null) {
+            if(Log.isDebugEnabled(Geonet.SEARCH_LOGGER))
+                Log.debug(Geonet.SEARCH_LOGGER, "Null Query object. cannot log search operation");
+			return null;
+		}
+
+		QueryRequest queryRequest = new QueryRequest(srvContext.getIpAddress(), (new java.util.Date()).getTime());
+        List<SearchRequestParam>queryInfos = extractQueryTerms(query);
+		// type is also set when doing this.
+		queryRequest.setQueryInfos(queryInfos);
+		queryRequest.setHits(numHits);
+		queryRequest.setService(this.srvContext.getService());
+		queryRequest.setLanguage(this.srvContext.getLanguage());
+		queryRequest.setLuceneQuery(query.toString());
+		// sortBy, spatial filter ?
+		if (sort != null) queryRequest.setSortBy(concatSortFields(sort.getSort()));
+		// todo: use filter to extract geom from
+		queryRequest.setSpatialFilter(geomFilterWKT);
+		// sets the simple type through this call...
+		queryRequest.isSimpleQuery();
+		queryRequest.setAutoGeneratedQuery(guiService.equals("yes"));
+		return queryRequest;
+	}
+
 	/**
      * Returns a dictionary containing field/text for the given query.
 	 *  
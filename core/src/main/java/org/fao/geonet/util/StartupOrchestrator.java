@@ -0,0 +1,182 @@
+package org.fao.geonet.util;
+
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.utils.Log;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Run the startup phases of the application, each phase as soon as the phases it depends on are done, so that the
+ * independent phases run in parallel.  The time taken by each phase is logged and kept in {@link #getTimings()}.
+ * <p/>
+ * The phases are started by the thread calling {@link #run()}, so the threads running them inherit its inheritable
+ * thread locals (like the service context).  When the {@link ThreadPool#SEQUENTIAL_EXECUTION} system property is set,
+ * the phases run one after the other in the calling thread.
+ */
+public class StartupOrchestrator {
+    private final String name;
+    private final int threads;
+    private final Map<String, Phase> phases = new LinkedHashMap<String, Phase>();
+    private final Map<String, List<String>> dependencies = new LinkedHashMap<String, List<String>>();
+    private final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+
+    /**
+     * @param name    the name of the stage, used in the logs and as prefix of the thread names
+     * @param threads the maximum number of phases running at the same time
+     */
+    public StartupOrchestrator(String name, int threads) {
+        this.name = name;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Add a phase.
+     *
+     * @param phaseName the name of the phase
+     * @param phase     the phase
+     * @param dependsOn the names of the phases which must be done before this one, they must have been added before
+     */
+    public StartupOrchestrator addPhase(String phaseName, Phase phase, String... dependsOn) {
+        if (phases.containsKey(phaseName)) {
+            throw new IllegalArgumentException("Startup phase " + phaseName + " is already defined");
+        }
+        for (String dependency : dependsOn) {
+            if (!phases.containsKey(dependency)) {
+                throw new IllegalArgumentException("Startup phase " + phaseName + " depends on " + dependency
+                                                   + " which is not defined (yet)");
+            }
+        }
+        phases.put(phaseName, phase);
+        dependencies.put(phaseName, Arrays.asList(dependsOn));
+        return this;
+    }
+
+    /**
+     * Run all the phases and wait for them to be done.  When a phase fails, the phases which have not started yet are
+     * not run and the error of the phase is thrown once the running phases are done.
+     */
+    public void run() throws Exception {
+        long start = System.currentTimeMillis();
+        Log.info(Geonet.GEONETWORK, name + ": starting " + phases.size() + " phases");
+
+        if (Boolean.parseBoolean(System.getProperty(ThreadPool.SEQUENTIAL_EXECUTION, "false")) || threads == 1) {
+            for (String phaseName : phases.keySet()) {
+                new PhaseTask(phaseName).call();
+            }
+        } else {
+            runInParallel();
+        }
+
+        Log.info(Geonet.GEONETWORK, name + ": all phases done in " + (System.currentTimeMillis() - start) + " ms "
+                                    + getTimings());
+    }
+
+    /**
+     * @return the time taken by each phase which is done, in milliseconds, in the order they have finished.
+     */
+    public Map<String, Long> getTimings() {
+        synchronized (timings) {
+            return new LinkedHashMap<String, Long>(timings);
+        }
+    }
+
+    private void runInParallel() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, phases.size() + 1),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            CompletionService<String> completion = new ExecutorCompletionService<String>(executor);
+            Set<String> done = new HashSet<String>();
+            Set<String> started = new HashSet<String>();
+            Exception error = null;
+            int running = 0;
+
+            while (true) {
+                if (error == null) {
+                    for (String phaseName : phases.keySet()) {
+                        if (!started.contains(phaseName) && done.containsAll(dependencies.get(phaseName))) {
+                            started.add(phaseName);
+                            completion.submit(new PhaseTask(phaseName));
+                            running++;
+                        }
+                    }
+                }
+                if (running == 0) {
+                    break;
+                }
+                Future<String> finished = completion.take();
+                running--;
+                try {
+                    done.add(finished.get());
+                } catch (ExecutionException e) {
+                    if (error == null) {
+                        error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                }
+            }
+
+            if (error != null) {
+                throw error;
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Run a phase and record its timing.
+     */
+    private class PhaseTask implements Callable<String> {
+        private final String phaseName;
+
+        private PhaseTask(String phaseName) {
+            this.phaseName = phaseName;
+        }
+
+        @Override
+        public String call() throws Exception {
+            long start = System.currentTimeMillis();
+            Log.info(Geonet.GEONETWORK, "  - " + phaseName + "...");
+            try {
+                phases.get(phaseName).run();
+            } catch (Exception e) {
+                Log.error(Geonet.GEONETWORK, name + ": phase " + phaseName + " failed: " + e.getMessage(), e);
+                throw e;
+            }
+            long time = System.currentTimeMillis() - start;
+            timings.put(phaseName, time);
+            Log.info(Geonet.GEONETWORK, "  - " + phaseName + " done in " + time + " ms");
+            return phaseName;
+        }
+    }
+
+    /**
+     * A startup phase.
+     */
+    public interface Phase {
+        void run() throws Exception;
+    }
+}
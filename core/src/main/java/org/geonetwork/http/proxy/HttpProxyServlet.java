@@ -1,12 +1,18 @@
 package org.geonetwork.http.proxy;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -16,18 +22,20 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.http.*;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
-import org.apache.http.message.BasicNameValuePair;
-import org.fao.geonet.Constants;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
 import org.fao.geonet.utils.Log;
 
 import org.apache.commons.lang.StringUtils;
@@ -53,6 +61,19 @@ public class HttpProxyServlet extends HttpServlet {
     private static final String INIT_PARAM_ALLOWED_HOSTS = "AllowedHosts";
     private static final String INIT_PARAM_ALLOWED_CONTENT_TYPES = "AllowedContentTypes";
     private static final String INIT_PARAM_DEFAULT_PROXY_URL = "DefaultProxyUrl";
+    private static final String INIT_PARAM_MAX_CONNECTIONS = "MaxConnections";
+    private static final String INIT_PARAM_MAX_CONNECTIONS_PER_ROUTE = "MaxConnectionsPerRoute";
+    private static final String INIT_PARAM_MAX_CONNECTIONS_PER_HOST = "MaxConnectionsPerHost";
+    private static final String INIT_PARAM_IDLE_CONNECTION_TIMEOUT = "IdleConnectionTimeout";
+    private static final String INIT_PARAM_SOCKET_TIMEOUT = "SocketTimeout";
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 100;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    // in seconds
+    private static final int DEFAULT_IDLE_CONNECTION_TIMEOUT = 30;
+    private static final int DEFAULT_SOCKET_TIMEOUT = 180;
+
+    private static final String LOGGER = Geonet.GEONETWORK + ".httpproxy";
 
     // Default URL for proxy
     private String defaultProxyUrl;
@@ -63,6 +84,11 @@ public class HttpProxyServlet extends HttpServlet {
     // List of valid content types for request
     private String[] validContentTypes;
 
+    // Pooled http client shared by all requests
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient httpClient;
+    private ScheduledExecutorService idleConnectionEvictor;
+
 
     /**
      * Initializes servlet Content Types allowed and the host to use in the proxy
@@ -91,7 +117,7 @@ public class HttpProxyServlet extends HttpServlet {
                         addresses.add(inetAddress);
                     }
                 } catch (UnknownHostException e) {
-                    Log.error(Geonet.GEONETWORK+".httpproxy", "Error resolving address of host:"+host, e);
+                    Log.error(LOGGER, "Error resolving address of host:"+host, e);
                 }
             }
             if(!addresses.isEmpty()) {
@@ -102,6 +128,108 @@ public class HttpProxyServlet extends HttpServlet {
         // List of allowed content types for request
         if (validContentTypesValues != null)
             validContentTypes = validContentTypesValues.split(",");
+
+        createHttpClient(servletConfig);
+    }
+
+    /**
+     * Creates the http client shared by all the proxied requests.  Connections are pooled and kept alive so
+     * that consecutive requests to the same server (map viewer WMS/WFS requests) don't pay for a new
+     * connection and TLS handshake each time.
+     *
+     * @param servletConfig         Servlet configuration
+     */
+    private void createHttpClient(ServletConfig servletConfig) {
+        int maxConnections = getIntInitParam(servletConfig, INIT_PARAM_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+        int maxConnectionsPerRoute = getIntInitParam(servletConfig, INIT_PARAM_MAX_CONNECTIONS_PER_ROUTE,
+                DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+        final int idleTimeout = getIntInitParam(servletConfig, INIT_PARAM_IDLE_CONNECTION_TIMEOUT, DEFAULT_IDLE_CONNECTION_TIMEOUT);
+        int socketTimeout = getIntInitParam(servletConfig, INIT_PARAM_SOCKET_TIMEOUT, DEFAULT_SOCKET_TIMEOUT);
+
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setDefaultSocketConfig(SocketConfig.custom().setSoTimeout(socketTimeout * 1000).build());
+
+        // Specific limits for some hosts: host[:port]=max,host[:port]=max
+        String maxConnectionsPerHost = ServletConfigUtil.getInitParamValue(servletConfig, INIT_PARAM_MAX_CONNECTIONS_PER_HOST);
+        if (StringUtils.isNotEmpty(maxConnectionsPerHost)) {
+            for (String hostLimit : maxConnectionsPerHost.split(",")) {
+                String[] parts = hostLimit.split("=");
+                if (parts.length != 2) {
+                    Log.error(LOGGER, "Invalid value in " + INIT_PARAM_MAX_CONNECTIONS_PER_HOST + ": " + hostLimit);
+                    continue;
+                }
+                try {
+                    int max = Integer.parseInt(parts[1]);
+                    for (HttpRoute route : GeonetHttpRequestFactory.createRoutes(parts[0])) {
+                        connectionManager.setMaxPerRoute(route, max);
+                    }
+                } catch (NumberFormatException e) {
+                    Log.error(LOGGER, "Invalid value in " + INIT_PARAM_MAX_CONNECTIONS_PER_HOST + ": " + hostLimit);
+                }
+            }
+        }
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .disableContentCompression()
+                .build();
+
+        // Close connections that have been idle for too long so that we don't keep sockets the remote
+        // server has already closed.
+        if (idleTimeout > 0) {
+            idleConnectionEvictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "http-proxy-idle-connection-evictor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            idleConnectionEvictor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    connectionManager.closeExpiredConnections();
+                    connectionManager.closeIdleConnections(idleTimeout, TimeUnit.SECONDS);
+                }
+            }, idleTimeout, idleTimeout, TimeUnit.SECONDS);
+        }
+    }
+
+    private int getIntInitParam(ServletConfig servletConfig, String paramName, int defaultValue) {
+        String value = ServletConfigUtil.getInitParamValue(servletConfig, paramName);
+        if (StringUtils.isEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            Log.error(LOGGER, "Invalid value for " + paramName + ": " + value + ". Using " + defaultValue + " instead.");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return the connection pool used by the proxy (for statistics).
+     */
+    public PoolingHttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * Releases the connections held by the pooled http client.
+     */
+    @Override
+    public void destroy() {
+        if (idleConnectionEvictor != null) {
+            idleConnectionEvictor.shutdownNow();
+        }
+        IOUtils.closeQuietly(httpClient);
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+        }
+        super.destroy();
     }
 
     @Override
@@ -128,44 +256,12 @@ public class HttpProxyServlet extends HttpServlet {
             }
 
             if (url.startsWith("http://") || url.startsWith("https://")) {
-                HttpClient client = HttpClients.createDefault();
                 httpGet = new HttpGet(uri);
 
                 // Added support for proxy
                 configureProxy(httpGet, proxyHost, proxyPort);
 
-                final HttpResponse httpResponse = client.execute(httpGet);
-
-                if (httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                    Header contentType = httpResponse.getLastHeader(HEADER_CONTENT_TYPE);
-                    String[] contentTypesReturned = contentType.getValue().split(";");
-                    if (!isValidContentType(contentTypesReturned[0])) {
-                        contentTypesReturned = contentType.getValue().split(" ");
-                        if (!isValidContentType(contentTypesReturned[0])) {
-                            throw new ServletException("Status: 415 Unsupported media type");
-                        }
-                    }
-
-                    // Sets response contentType
-                    response.setContentType(getResponseContentType(contentTypesReturned));
-
-                    String responseBody = IOUtils.toString(httpResponse.getEntity().getContent(), Constants.ENCODING).trim();
-
-                    PrintWriter out = response.getWriter();
-                    out.print(responseBody);
-
-                    out.flush();
-                    out.close();
-
-                } else {
-                    returnExceptionMessage(response,
-                           httpResponse.getStatusLine().getStatusCode(),
-                            "Unexpected failure: " + httpResponse.getStatusLine().getReasonPhrase()
-                    );
-                }
-
-                httpGet.releaseConnection();
-
+                proxyRequest(httpGet, response);
             } else {
                 returnExceptionMessage(response, HttpStatus.SC_FORBIDDEN, "only HTTP(S) protocol supported");
             }
@@ -185,6 +281,56 @@ public class HttpProxyServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Executes the request with the pooled client and streams the response body to the servlet response.
+     *
+     * @param httpRequest   Request to the proxied url
+     * @param response      Servlet response
+     */
+    private void proxyRequest(HttpRequestBase httpRequest, HttpServletResponse response) throws ServletException, IOException {
+        final CloseableHttpResponse httpResponse = httpClient.execute(httpRequest);
+        try {
+            final HttpEntity entity = httpResponse.getEntity();
+            if (httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+                Header contentType = httpResponse.getLastHeader(HEADER_CONTENT_TYPE);
+                String[] contentTypesReturned = contentType.getValue().split(";");
+                if (!isValidContentType(contentTypesReturned[0])) {
+                    contentTypesReturned = contentType.getValue().split(" ");
+                    if (!isValidContentType(contentTypesReturned[0])) {
+                        throw new ServletException("Status: 415 Unsupported media type");
+                    }
+                }
+
+                // Sets response contentType
+                response.setContentType(getResponseContentType(contentType.getValue(), contentTypesReturned[0]));
+
+                if (entity != null) {
+                    if (entity.getContentLength() >= 0 && entity.getContentLength() <= Integer.MAX_VALUE) {
+                        response.setContentLength((int) entity.getContentLength());
+                    }
+                    // stream the body so that large responses are not held in memory.  Reading the entity
+                    // completely also allows the connection to be reused for the next request.
+                    InputStream in = entity.getContent();
+                    try {
+                        OutputStream out = response.getOutputStream();
+                        IOUtils.copy(in, out);
+                        out.flush();
+                    } finally {
+                        IOUtils.closeQuietly(in);
+                    }
+                }
+            } else {
+                returnExceptionMessage(response,
+                        httpResponse.getStatusLine().getStatusCode(),
+                        "Unexpected failure: " + httpResponse.getStatusLine().getReasonPhrase()
+                );
+            }
+            EntityUtils.consumeQuietly(entity);
+        } finally {
+            httpResponse.close();
+        }
+    }
+
     private String createURI(HttpServletRequest request, String url) {
         // Get rest of parameters to pass to proxied url
         StringBuilder paramString = new StringBuilder();
@@ -239,8 +385,6 @@ public class HttpProxyServlet extends HttpServlet {
             if (url.startsWith("http://") || url.startsWith("https://")) {
                 httpPost = new HttpPost(uri );
 
-                // Transfer bytes from in to out
-                PrintWriter out = response.getWriter();
                 String body = RequestUtil.inputStreamAsString(request);
 
                 configureProxy(httpPost, proxyHost, proxyPort);
@@ -249,34 +393,7 @@ public class HttpProxyServlet extends HttpServlet {
                 StringEntity entity = new StringEntity(body, contentType1);
                 httpPost.setEntity(entity);
 
-                final CloseableHttpResponse httpResponse = HttpClients.createDefault().execute(httpPost);
-
-                if (httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-                    Header contentType = httpResponse.getLastHeader(HEADER_CONTENT_TYPE);
-                    String[] contentTypesReturned = contentType.getValue().split(";");
-                    if (!isValidContentType(contentTypesReturned[0])) {
-                        contentTypesReturned = contentType.getValue().split(" ");
-                        if (!isValidContentType(contentTypesReturned[0])) {
-                            throw new ServletException("Status: 415 Unsupported media type");
-                        }
-                    }
-
-                    // Sets response contentType
-                    response.setContentType(getResponseContentType(contentTypesReturned));
-
-                    String responseBody = IOUtils.toString(httpPost.getEntity().getContent());
-
-                    out.print(responseBody);
-                    out.flush();
-                    out.close();
-
-                } else {
-                	returnExceptionMessage(response,
-                            httpResponse.getStatusLine().getStatusCode(),
-                            "Unexpected failure: " + httpResponse.getStatusLine().getReasonPhrase()
-                    );
-                }
-
+                proxyRequest(httpPost, response);
             } else {
                 //throw new ServletException("only HTTP(S) protocol supported");
             	returnExceptionMessage(response, HttpStatus.SC_FORBIDDEN, "only HTTP(S) protocol supported");
@@ -295,28 +412,24 @@ public class HttpProxyServlet extends HttpServlet {
     }
     
     /**
-     * Gets the contentType for response
+     * Gets the contentType for response: the content type returned by the proxied url, with its parameters unchanged as
+     * the body is copied as is.  The OGC xml media types are returned as text/xml.
      *
-     * @param contentTypes Content types returned by request
+     * @param contentType Content type returned by request
+     * @param mediaType   Media type of the content type returned by request
      * @return Content type for response
      */
-    private String getResponseContentType(String[] contentTypes) {
-        String ct = "";
-        String charset = ";charset=ISO-8859-1";
-        if (contentTypes.length >= 1) ct = contentTypes[0];
-        if (contentTypes.length >= 2) charset = ";" + contentTypes[1];
-
-        if ((ct.equals("application/vnd.ogc.gml")) ||
-                (ct.equals("text/plain")) ||
-                (ct.equals("text/html")) ||
-                (ct.equals("application/vnd.ogc.se_xml")) ||
-                (ct.equals("application/vnd.ogc.sld+xml")) ||
-                (ct.equals("application/vnd.ogc.wms_xml")))
-
-            return "text/xml" + charset;
-
-        else
-            return "" + ct + charset;
+    private String getResponseContentType(String contentType, String mediaType) {
+        if ((mediaType.equals("application/vnd.ogc.gml")) ||
+                (mediaType.equals("text/plain")) ||
+                (mediaType.equals("text/html")) ||
+                (mediaType.equals("application/vnd.ogc.se_xml")) ||
+                (mediaType.equals("application/vnd.ogc.sld+xml")) ||
+                (mediaType.equals("application/vnd.ogc.wms_xml"))) {
+            return "text/xml" + contentType.substring(contentType.indexOf(mediaType) + mediaType.length());
+        } else {
+            return contentType;
+        }
     }
 
     /**
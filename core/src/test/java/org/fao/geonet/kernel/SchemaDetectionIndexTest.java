@@ -0,0 +1,98 @@
+package org.fao.geonet.kernel;
+
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the {@link SchemaDetectionIndex} with autodetect elements like the ones of the schema plugins.
+ */
+public class SchemaDetectionIndexTest {
+    private SchemaDetectionIndex index;
+
+    @Before
+    public void buildIndex() throws Exception {
+        Map<String, Schema> schemas = new LinkedHashMap<String, Schema>();
+        schemas.put("iso19139", schema(
+                "<autodetect xmlns:gmd=\"http://www.isotc211.org/2005/gmd\">" +
+                "  <elements type=\"root\"><gmd:MD_Metadata/><gmd:CI_ResponsibleParty/></elements>" +
+                "</autodetect>"));
+        schemas.put("iso19139.profile", schema(
+                "<autodetect xmlns:gmd=\"http://www.isotc211.org/2005/gmd\" xmlns:gco=\"http://www.isotc211.org/2005/gco\">" +
+                "  <elements><gmd:metadataStandardName><gco:CharacterString>Profile.*</gco:CharacterString></gmd:metadataStandardName></elements>" +
+                "</autodetect>"));
+        schemas.put("dublin-core", schema(
+                "<autodetect xmlns:dc=\"http://purl.org/dc/elements/1.1/\">" +
+                "  <elements type=\"search\"><dc:title/><dc:identifier/></elements>" +
+                "  <namespaces xmlns:dc=\"http://purl.org/dc/elements/1.1/\"/>" +
+                "</autodetect>"));
+        schemas.put("custom", schema(
+                "<autodetect><attributes profile=\"custom\"/></autodetect>"));
+        index = SchemaDetectionIndex.build(schemas);
+    }
+
+    @Test
+    public void testRoot() throws Exception {
+        Element md = Xml.loadString("<gmd:MD_Metadata xmlns:gmd=\"http://www.isotc211.org/2005/gmd\"/>", false);
+        assertEquals(Arrays.asList("iso19139"), index.matchRoot(md));
+        assertTrue(index.matchNeedlesWithValue(index.summarize(md)).isEmpty());
+
+        Element other = Xml.loadString("<gmd:MD_Metadata xmlns:gmd=\"http://other\"/>", false);
+        assertTrue(index.matchRoot(other).isEmpty());
+    }
+
+    @Test
+    public void testNeedleWithValue() throws Exception {
+        Element md = Xml.loadString("<gmd:MD_Metadata xmlns:gmd=\"http://www.isotc211.org/2005/gmd\" " +
+                                    "xmlns:gco=\"http://www.isotc211.org/2005/gco\"><gmd:metadataStandardName>" +
+                                    "<gco:CharacterString>Profile of ISO 19139</gco:CharacterString>" +
+                                    "</gmd:metadataStandardName></gmd:MD_Metadata>", false);
+        assertEquals(Arrays.asList("iso19139.profile"), index.matchNeedlesWithValue(index.summarize(md)));
+
+        Element otherValue = Xml.loadString("<gmd:MD_Metadata xmlns:gmd=\"http://www.isotc211.org/2005/gmd\" " +
+                                            "xmlns:gco=\"http://www.isotc211.org/2005/gco\"><gmd:metadataStandardName>" +
+                                            "<gco:CharacterString>ISO 19115</gco:CharacterString>" +
+                                            "</gmd:metadataStandardName></gmd:MD_Metadata>", false);
+        assertTrue(index.matchNeedlesWithValue(index.summarize(otherValue)).isEmpty());
+    }
+
+    @Test
+    public void testNeedlesAndNamespaces() throws Exception {
+        Element md = Xml.loadString("<simpledc xmlns:dc=\"http://purl.org/dc/elements/1.1/\">" +
+                                    "<dc:title>a</dc:title><dc:identifier>b</dc:identifier></simpledc>", false);
+        SchemaDetectionIndex.Record record = index.summarize(md);
+        assertEquals(Arrays.asList("dublin-core"), index.matchNeedles(record));
+        assertEquals(Arrays.asList("dublin-core"), index.matchNamespaces(record));
+
+        Element titleOnly = Xml.loadString("<simpledc xmlns:dc=\"http://purl.org/dc/elements/1.1/\">" +
+                                           "<dc:title>a</dc:title></simpledc>", false);
+        assertEquals(Collections.<String>emptyList(), index.matchNeedles(index.summarize(titleOnly)));
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        Element md = Xml.loadString("<record><info profile=\"custom\"/><other/></record>", false);
+        List<String> matches = index.matchAttributes(index.summarize(md));
+        assertEquals(Arrays.asList("custom"), matches);
+
+        Element otherValue = Xml.loadString("<record><info profile=\"other\"/></record>", false);
+        assertTrue(index.matchAttributes(index.summarize(otherValue)).isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Schema schema(String autodetect) throws Exception {
+        Schema schema = new Schema();
+        schema.setAutodetectElements(Xml.loadString(autodetect, false).getChildren());
+        return schema;
+    }
+}
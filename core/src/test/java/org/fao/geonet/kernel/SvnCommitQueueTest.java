@@ -0,0 +1,214 @@
+package org.fao.geonet.kernel;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the {@link SvnCommitQueue} against a local file:// subversion repository.
+ */
+public class SvnCommitQueueTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SVNURL repoUrl;
+    private File queueDir;
+    private final AtomicBoolean failCommits = new AtomicBoolean(false);
+    private volatile String failingId;
+    private volatile Runnable duringCommit;
+
+    private final SvnCommitQueue.Committer committer = new SvnCommitQueue.Committer() {
+        @Override
+        public void commit(Set<String> ids, String logMessage) throws Exception {
+            if (failCommits.get()) {
+                throw new IllegalStateException("subversion is unavailable");
+            }
+            if (ids.contains(failingId)) {
+                throw new IllegalStateException("metadata " + failingId + " can't be committed");
+            }
+            Runnable task = duringCommit;
+            if (task != null) {
+                duringCommit = null;
+                task.run();
+            }
+            SVNRepository repository = SVNRepositoryFactory.create(repoUrl);
+            List<String> toAdd = new ArrayList<String>();
+            for (String id : ids) {
+                if (repository.checkPath(id, -1) == SVNNodeKind.NONE) {
+                    toAdd.add(id);
+                }
+            }
+            ISVNEditor editor = repository.getCommitEditor(logMessage, null, false, null);
+            editor.openRoot(-1);
+            for (String id : toAdd) {
+                SvnUtils.addDir(editor, id);
+            }
+            editor.closeDir();
+            editor.closeEdit();
+        }
+    };
+
+    @Before
+    public void createRepository() throws Exception {
+        FSRepositoryFactory.setup();
+        repoUrl = SVNRepositoryFactory.createLocalRepository(folder.newFolder("svn"), true, false);
+        queueDir = new File(folder.getRoot(), "svn_queue");
+    }
+
+    @Test
+    public void testChangesAreCommittedInBatches() throws Exception {
+        SvnCommitQueue queue = new SvnCommitQueue(queueDir, committer, 10, Long.MAX_VALUE / 2);
+        queue.start();
+        try {
+            long initialRevision = latestRevision();
+            List<String> ids = new ArrayList<String>();
+            for (int i = 0; i < 25; i++) {
+                ids.add(String.valueOf(i));
+            }
+            queue.enqueue(ids, "bulk update");
+            // ids queued twice are only committed once
+            queue.enqueue(Arrays.asList("3", "4"), "second update");
+
+            assertEquals(25, queue.getPendingCount());
+            assertEquals(25, queue.flush());
+
+            assertEquals(0, queue.getPendingCount());
+            assertEquals(0, queue.getLag());
+            assertEquals(3, queue.getCommits());
+            assertEquals(25, queue.getCommittedRecords());
+            assertEquals(initialRevision + 3, latestRevision());
+            assertEquals(SVNNodeKind.DIR, SVNRepositoryFactory.create(repoUrl).checkPath("24", -1));
+            assertEquals(0, queueDir.list().length);
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void testPendingChangesSurviveRestart() throws Exception {
+        failCommits.set(true);
+        SvnCommitQueue queue = new SvnCommitQueue(queueDir, committer, 10, Long.MAX_VALUE / 2);
+        queue.start();
+        queue.enqueue(Arrays.asList("1", "2", "3"), "update");
+        assertEquals(0, queue.flush());
+        // the batch and each id on its own
+        assertEquals(4, queue.getFailedCommits());
+        assertEquals(0, queue.getParkedRecords());
+        assertTrue(queue.isPending("2"));
+        queue.shutdown();
+
+        failCommits.set(false);
+        SvnCommitQueue restarted = new SvnCommitQueue(queueDir, committer, 10, Long.MAX_VALUE / 2);
+        restarted.start();
+        try {
+            assertEquals(3, restarted.getPendingCount());
+            assertTrue(restarted.getLag() >= 0);
+            assertEquals(3, restarted.flush());
+            assertEquals(SVNNodeKind.DIR, SVNRepositoryFactory.create(repoUrl).checkPath("3", -1));
+        } finally {
+            restarted.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailingIdDoesNotBlockOthers() throws Exception {
+        failingId = "13";
+        SvnCommitQueue queue = new SvnCommitQueue(queueDir, committer, 10, Long.MAX_VALUE / 2);
+        queue.start();
+        try {
+            List<String> ids = new ArrayList<String>();
+            for (int i = 0; i < 25; i++) {
+                ids.add(String.valueOf(i));
+            }
+            queue.enqueue(ids, "bulk update");
+
+            assertEquals(24, queue.flush());
+            assertEquals(1, queue.getPendingCount());
+            assertTrue(queue.isPending("13"));
+            assertEquals(SVNNodeKind.DIR, SVNRepositoryFactory.create(repoUrl).checkPath("14", -1));
+
+            // the failing id is retried while other changes keep being committed, then parked
+            for (int i = 1; i < SvnCommitQueue.MAX_FAILED_ATTEMPTS; i++) {
+                queue.enqueue(Arrays.asList(String.valueOf(24 + i)), "update");
+                assertEquals(1, queue.flush());
+            }
+            assertFalse(queue.isPending("13"));
+            assertEquals(0, queue.getPendingCount());
+            assertEquals(1, queue.getParkedRecords());
+            assertTrue(new File(queueDir, "13.failed").exists());
+            assertEquals(SVNNodeKind.NONE, SVNRepositoryFactory.create(repoUrl).checkPath("13", -1));
+
+            // the next change queues it again
+            failingId = null;
+            queue.enqueue(Arrays.asList("13"), "fixed");
+            assertFalse(new File(queueDir, "13.failed").exists());
+            assertEquals(1, queue.flush());
+            assertEquals(SVNNodeKind.DIR, SVNRepositoryFactory.create(repoUrl).checkPath("13", -1));
+            assertEquals(0, queueDir.list().length);
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        SvnCommitQueue queue = new SvnCommitQueue(queueDir, committer, 10, Long.MAX_VALUE / 2);
+        queue.start();
+        try {
+            queue.enqueue(Arrays.asList("1", "2"), "update");
+            queue.remove("1");
+            assertFalse(queue.isPending("1"));
+            assertEquals(1, queue.flush());
+            assertEquals(SVNNodeKind.NONE, SVNRepositoryFactory.create(repoUrl).checkPath("1", -1));
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void testChangeQueuedDuringCommit() throws Exception {
+        final SvnCommitQueue queue = new SvnCommitQueue(queueDir, committer, 10, Long.MAX_VALUE / 2);
+        queue.start();
+        try {
+            queue.enqueue(Arrays.asList("1"), "update");
+            duringCommit = new Runnable() {
+                @Override
+                public void run() {
+                    queue.enqueue(Arrays.asList("1"), "second update");
+                    assertTrue(new File(queueDir, "1.pending").exists());
+                }
+            };
+
+            // the change queued while the first one is committed keeps its journal entry and is committed too
+            assertEquals(2, queue.flush());
+            assertEquals(2, queue.getCommits());
+            assertFalse(queue.isPending("1"));
+            assertEquals(0, queueDir.list().length);
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    private long latestRevision() throws Exception {
+        return SVNRepositoryFactory.create(repoUrl).getLatestRevision();
+    }
+}
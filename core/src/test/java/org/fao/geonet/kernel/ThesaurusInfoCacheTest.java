@@ -0,0 +1,109 @@
+package org.fao.geonet.kernel;
+
+import org.apache.commons.io.FileUtils;
+import org.fao.geonet.constants.Geonet;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test the {@link ThesaurusInfoCache}.
+ */
+public class ThesaurusInfoCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File thesaurusFile;
+    private File cacheFile;
+    private final AtomicInteger parsed = new AtomicInteger();
+
+    private final ThesaurusInfoCache.ThesaurusFactory factory = new ThesaurusInfoCache.ThesaurusFactory() {
+        @Override
+        public Thesaurus create(String title, String namespace) {
+            if (title == null) {
+                parsed.incrementAndGet();
+            }
+            return new Thesaurus(null, thesaurusFile.getName(), title, namespace, Geonet.CodeList.EXTERNAL, "theme",
+                    thesaurusFile, "http://localhost:8080/geonetwork", false);
+        }
+    };
+
+    @Before
+    public void createThesaurusFile() throws Exception {
+        thesaurusFile = folder.newFile("test.rdf");
+        cacheFile = new File(folder.getRoot(), "thesauri-info.properties");
+        writeThesaurus("Test | thesaurus");
+    }
+
+    @Test
+    public void testInfoIsReadFromCache() throws Exception {
+        Thesaurus thesaurus = createThesaurus();
+        assertEquals(1, parsed.get());
+        assertEquals("Test | thesaurus", thesaurus.getTitle());
+        assertEquals("http://test.com/thesaurus#", thesaurus.getDefaultNamespace());
+        assertEquals("2014-03-01", thesaurus.getDate());
+
+        Thesaurus cached = createThesaurus();
+        assertEquals(1, parsed.get());
+        assertEquals(thesaurus.getTitle(), cached.getTitle());
+        assertEquals(thesaurus.getDefaultNamespace(), cached.getDefaultNamespace());
+        assertEquals(thesaurus.getDate(), cached.getDate());
+        assertFalse(cached.isLoaded());
+    }
+
+    @Test
+    public void testChangedFileIsParsedAgain() throws Exception {
+        createThesaurus();
+        writeThesaurus("New title");
+        thesaurusFile.setLastModified(thesaurusFile.lastModified() + 2000);
+
+        Thesaurus thesaurus = createThesaurus();
+        assertEquals(2, parsed.get());
+        assertEquals("New title", thesaurus.getTitle());
+    }
+
+    @Test
+    public void testThesaurusWithoutDate() throws Exception {
+        String rdf = FileUtils.readFileToString(thesaurusFile, "UTF-8");
+        FileUtils.writeStringToFile(thesaurusFile, rdf.replace("<dcterms:issued>2014-03-01</dcterms:issued>", ""), "UTF-8");
+
+        Thesaurus thesaurus = createThesaurus();
+        assertEquals(1, parsed.get());
+        assertNull(thesaurus.getDate());
+
+        Thesaurus cached = createThesaurus();
+        assertEquals(1, parsed.get());
+        assertEquals("Test | thesaurus", cached.getTitle());
+        assertNull(cached.getDate());
+    }
+
+    private Thesaurus createThesaurus() {
+        // a new cache each time so the entries are read back from the file
+        ThesaurusInfoCache cache = new ThesaurusInfoCache(cacheFile);
+        Thesaurus thesaurus = cache.createThesaurus(factory, thesaurusFile.getName(), Geonet.CodeList.EXTERNAL, "theme",
+                thesaurusFile);
+        cache.save();
+        return thesaurus;
+    }
+
+    private void writeThesaurus(String title) throws Exception {
+        FileUtils.writeStringToFile(thesaurusFile,
+                "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"\n" +
+                "         xmlns:skos=\"http://www.w3.org/2004/02/skos/core#\"\n" +
+                "         xmlns:dc=\"http://purl.org/dc/elements/1.1/\"\n" +
+                "         xmlns:dcterms=\"http://purl.org/dc/terms/\">\n" +
+                "  <skos:ConceptScheme rdf:about=\"http://test.com/thesaurus\">\n" +
+                "    <dc:title>" + title + "</dc:title>\n" +
+                "    <dcterms:issued>2014-03-01</dcterms:issued>\n" +
+                "  </skos:ConceptScheme>\n" +
+                "</rdf:RDF>\n", "UTF-8");
+    }
+}
@@ -6,7 +6,13 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.kernel.rdf.Query;
@@ -50,6 +56,34 @@ public class ThesaurusTest extends AbstractThesaurusBasedTest {
         super(false);
     }
 
+    @Test
+    public void testQueriesDoNotWaitForEdits() throws Exception {
+        writableThesaurus.addElement(new KeywordBean(isoLangMapper)
+                .setUriCode("http://thesaurus.test#0")
+                .setValue("Hello", "eng"));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // an edit in progress holds the lock of the thesaurus
+            synchronized (writableThesaurus) {
+                List<Future<List<KeywordBean>>> results = new ArrayList<Future<List<KeywordBean>>>();
+                for (int i = 0; i < 2; i++) {
+                    results.add(executor.submit(new Callable<List<KeywordBean>>() {
+                        @Override
+                        public List<KeywordBean> call() throws Exception {
+                            return QueryBuilder.keywordQueryBuilder(isoLangMapper, "eng").build().execute(writableThesaurus);
+                        }
+                    }));
+                }
+                for (Future<List<KeywordBean>> result : results) {
+                    assertEquals(1, result.get(10, TimeUnit.SECONDS).size());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @SuppressWarnings("deprecation")
     @Test
     public void testAddElementStringStringStringString() throws Exception {
@@ -0,0 +1,95 @@
+package org.fao.geonet.kernel.mef;
+
+import org.apache.commons.io.IOUtils;
+import org.fao.geonet.exceptions.BadFormatEx;
+import org.jdom.Element;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test {@link MEF2StreamVisitor}.
+ */
+public class MEF2StreamVisitorTest {
+
+    @Test
+    public void testVisit() throws Exception {
+        final InputStream in = MEF2StreamVisitorTest.class.getResourceAsStream("mef2-example-2md.zip");
+        final RecordingVisitor visitor = new RecordingVisitor();
+        try {
+            MEFLib.visit(in, visitor);
+        } finally {
+            in.close();
+        }
+
+        final List<String> expected = new ArrayList<String>();
+        expected.add("metadata:0");
+        expected.add("info:0:0e1943d6-64e8-4430-827c-b465c3e9e55c");
+        expected.add("metadata:1");
+        expected.add("info:1:da165110-88fd-11da-a88f-000d939bc5d8");
+        expected.add("private:1:.DS_Store:6148");
+        expected.add("private:1:basins.zip:109940");
+        expected.add("public:1:thumbnail.gif:109796");
+        expected.add("public:1:thumbnail_s.gif:5334");
+        assertEquals(expected, visitor.calls);
+    }
+
+    @Test(expected = BadFormatEx.class)
+    public void testFileBeforeMetadata() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipOutputStream zos = new ZipOutputStream(out);
+        zos.putNextEntry(new ZipEntry("uuid/public/thumbnail.gif"));
+        zos.write(new byte[]{1, 2, 3});
+        zos.putNextEntry(new ZipEntry("uuid/metadata/metadata.xml"));
+        zos.write("<md/>".getBytes("UTF-8"));
+        zos.close();
+
+        MEFLib.visit(new ByteArrayInputStream(out.toByteArray()), new RecordingVisitor());
+    }
+
+    private static class RecordingVisitor implements IMEFVisitor {
+        final List<String> calls = new ArrayList<String>();
+
+        @Override
+        public void handleMetadata(Element md, int index) throws Exception {
+            calls.add("metadata:" + index);
+        }
+
+        @Override
+        public void handleMetadataFiles(File[] files, Element info, int index) throws Exception {
+            calls.add("metadataFiles:" + index);
+        }
+
+        @Override
+        public void handleInfo(Element info, int index) throws Exception {
+            calls.add("info:" + index + ":" + info.getChild("general").getChildText("uuid"));
+        }
+
+        @Override
+        public void handleFeatureCat(Element md, int index) throws Exception {
+            if (md != null) {
+                calls.add("featureCat:" + index);
+            }
+        }
+
+        @Override
+        public void handlePublicFile(String file, String changeDate, InputStream is, int index) throws IOException {
+            calls.add("public:" + index + ":" + file + ":" + IOUtils.toByteArray(is).length);
+        }
+
+        @Override
+        public void handlePrivateFile(String file, String changeDate, InputStream is, int index) throws IOException {
+            calls.add("private:" + index + ":" + file + ":" + IOUtils.toByteArray(is).length);
+        }
+    }
+}
@@ -2,17 +2,26 @@ package org.fao.geonet.kernel.mef;
 
 import static junit.framework.Assert.assertNotNull;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import jeeves.server.context.ServiceContext;
 
 import org.apache.commons.io.FileUtils;
 import org.fao.geonet.AbstractCoreIntegrationTest;
+import org.fao.geonet.constants.Params;
 import org.fao.geonet.domain.Metadata;
 import org.fao.geonet.domain.User;
 import org.fao.geonet.repository.MetadataRepository;
@@ -75,9 +84,44 @@ public class MEFLibIntegrationTest extends AbstractCoreIntegrationTest {
     }
 
     @Test
-    @Ignore
     public void testDoMEF2Export() throws Exception {
-        fail("to implement");
+        ServiceContext context = createServiceContext();
+        loginAsAdmin(context);
+
+        final File resource = new File(MEFLibIntegrationTest.class.getResource("mef2-example-2md.zip").getFile());
+        final List<String> metadataIds = MEFLib.doImport(new Element("request"), context, resource, getStyleSheets());
+        Set<String> uuids = new LinkedHashSet<String>();
+        for (String metadataId : metadataIds) {
+            uuids.add(_metadataRepo.findOne(metadataId).getUuid());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MEFLib.doMEF2Export(context, uuids, "full", false, getStyleSheets(), false, false, out);
+
+        Set<String> entries = new HashSet<String>();
+        ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+        try {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                entries.add(entry.getName());
+            }
+        } finally {
+            zis.close();
+        }
+        for (String uuid : uuids) {
+            assertTrue(entries.contains(uuid + "/metadata/metadata.xml"));
+            assertTrue(entries.contains(uuid + "/info.xml"));
+        }
+
+        // and the streamed file can be imported again
+        final File exported = File.createTempFile("mefTestFile", ".zip");
+        try {
+            FileUtils.writeByteArrayToFile(exported, out.toByteArray());
+            Element params = new Element("request").addContent(new Element(Params.UUID_ACTION).setText(Params.GENERATE_UUID));
+            assertEquals(uuids.size(), MEFLib.doImport(params, context, exported, getStyleSheets()).size());
+        } finally {
+            FileUtils.deleteQuietly(exported);
+        }
     }
 
     public static class ImportMetadata {
@@ -527,4 +527,68 @@ public class KeywordsSearcherTest extends AbstractThesaurusBasedTest {
         assertEquals(keywordId, searcher.getResults().get(0).getUriCode());
     }
 
+
+    @Test
+    public void testSearchLabelIndex() throws Exception {
+        KeywordsSearcher searcher = new KeywordsSearcher(isoLangMapper, thesaurusFinder);
+        searcher.search(fooKeywordParams("1", KeywordSearchType.STARTS_WITH, true).build());
+        // 1 and 10 to 19
+        assertEquals(11, searcher.getNbResults());
+        Set<String> indexUris = new HashSet<String>();
+        for (KeywordBean word : searcher.getResults()) {
+            assertTrue(word.getDefaultValue().startsWith("1"));
+            assertEquals(thesaurusFoo.getKey(), word.getThesaurusKey());
+            indexUris.add(word.getUriCode());
+        }
+
+        // case sensitive searches are still done with a query on the thesaurus
+        searcher.search(fooKeywordParams("1", KeywordSearchType.STARTS_WITH, false).build());
+        Set<String> queryUris = new HashSet<String>();
+        for (KeywordBean word : searcher.getResults()) {
+            queryUris.add(word.getUriCode());
+        }
+        assertEquals(queryUris, indexUris);
+
+        searcher.search(fooKeywordParams("FOOVAL_ENG", KeywordSearchType.CONTAINS, true).maxResults(5).build());
+        assertEquals(5, searcher.getNbResults());
+
+        searcher.search(fooKeywordParams("12_fooVla", KeywordSearchType.FUZZY, true).build());
+        assertEquals(1, searcher.getNbResults());
+        assertEquals(createFooLabel(12, "eng"), searcher.getResults().get(0).getDefaultValue());
+    }
+
+    private KeywordSearchParamsBuilder fooKeywordParams(String keyword, KeywordSearchType searchType, boolean ignoreCase) {
+        return new KeywordSearchParamsBuilder(isoLangMapper)
+            .addThesaurus(thesaurusFoo.getKey())
+            .keyword(keyword, searchType, ignoreCase)
+            .addLang("eng");
+    }
+
+    @Test
+    public void testLabelIndexFollowsEdits() throws Exception {
+        KeywordSearchParamsBuilder params = fooKeywordParams("newly added", KeywordSearchType.STARTS_WITH, true);
+        KeywordsSearcher searcher = new KeywordsSearcher(isoLangMapper, thesaurusFinder);
+        searcher.search(params.build());
+        assertEquals(0, searcher.getNbResults());
+
+        String code = FOO_COM_NS + "newlyAdded";
+        KeywordBean keyword = new KeywordBean(isoLangMapper).setUriCode(code)
+            .setValue("Newly added keyword", "eng")
+            .setDefinition("note", "eng");
+        thesaurusFoo.addElement(keyword);
+        try {
+            searcher.search(params.build());
+            assertEquals(1, searcher.getNbResults());
+            assertEquals(code, searcher.getResults().get(0).getUriCode());
+
+            keyword.setValue("Renamed keyword", "eng");
+            thesaurusFoo.updateElement(keyword, true);
+            searcher.search(params.build());
+            assertEquals(0, searcher.getNbResults());
+        } finally {
+            thesaurusFoo.removeElement(code);
+        }
+        assertEquals(smallWords, thesaurusFoo.getKeywordIndex().size());
+    }
+
 }
@@ -0,0 +1,72 @@
+package org.fao.geonet.kernel.search.log;
+
+import jeeves.server.context.ServiceContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.fao.geonet.AbstractCoreIntegrationTest;
+import org.fao.geonet.domain.statistic.SearchRequest;
+import org.fao.geonet.repository.statistic.SearchRequestParamRepository;
+import org.fao.geonet.repository.statistic.SearchRequestRepository;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test writing the search requests log through the {@link SearchRequestQueue}.
+ */
+public class SearchRequestQueueTest extends AbstractCoreIntegrationTest {
+
+    @Autowired
+    private SearchRequestRepository _searchRequestRepository;
+    @Autowired
+    private SearchRequestParamRepository _searchRequestParamRepository;
+
+    @Test
+    public void testRequestsAreWrittenInBatches() throws Exception {
+        final long numSearches = _searchRequestRepository.count();
+        final long numParams = _searchRequestParamRepository.count();
+
+        final SearchRequestQueue queue = _applicationContext.getAutowireCapableBeanFactory().createBean(SearchRequestQueue.class);
+        queue.setBatchSize(4);
+        TransactionlessTesting.get().run(new TestTask() {
+            @Override
+            public void run() throws Exception {
+                final ServiceContext context = createServiceContext();
+                SearcherLogger logger = new SearcherLogger(context, false, "any");
+                for (int i = 0; i < 10; i++) {
+                    assertTrue(queue.offer(createRequest(logger, "search" + i)));
+                }
+                // writes the requests that the writer thread has not written yet
+                queue.shutdown();
+            }
+        });
+
+        assertEquals(0, queue.getSize());
+        assertEquals(10, queue.getQueued());
+        assertEquals(10, queue.getWritten());
+        assertTrue(queue.getBatches() >= 3);
+        assertEquals(0, queue.getDropped());
+        assertEquals(numSearches + 10, _searchRequestRepository.count());
+        assertEquals(numParams + 20, _searchRequestParamRepository.count());
+
+        // requests added after shutdown are dropped
+        assertFalse(queue.offer(new SearchRequest()));
+        assertEquals(1, queue.getDropped());
+    }
+
+    private SearchRequest createRequest(SearcherLogger logger, String value) {
+        BooleanQuery query = new BooleanQuery();
+        query.add(new TermQuery(new Term("any", value)), BooleanClause.Occur.MUST);
+        query.add(new TermQuery(new Term("_isTemplate", "n")), BooleanClause.Occur.MUST);
+        SearchRequest request = logger.createSearchRequest(query, 3, Sort.RELEVANCE, null, "n");
+        assertNotNull(request);
+        return request;
+    }
+}
@@ -0,0 +1,91 @@
+package org.fao.geonet.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test the {@link StartupOrchestrator}.
+ */
+public class StartupOrchestratorTest {
+
+    @Test
+    public void testDependenciesAreDoneFirst() throws Exception {
+        final List<String> done = Collections.synchronizedList(new ArrayList<String>());
+        StartupOrchestrator startup = new StartupOrchestrator("test", 4);
+        startup.addPhase("a", new Record(done, "a"));
+        startup.addPhase("b", new Record(done, "b"), "a");
+        startup.addPhase("c", new Record(done, "c"), "a", "b");
+        startup.run();
+
+        assertEquals(Arrays.asList("a", "b", "c"), done);
+        assertEquals(3, startup.getTimings().size());
+    }
+
+    @Test
+    public void testIndependentPhasesRunInParallel() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        StartupOrchestrator.Phase waitForOther = new StartupOrchestrator.Phase() {
+            @Override
+            public void run() throws Exception {
+                bothStarted.countDown();
+                if (!bothStarted.await(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("the phases did not run in parallel");
+                }
+            }
+        };
+        StartupOrchestrator startup = new StartupOrchestrator("test", 2);
+        startup.addPhase("a", waitForOther);
+        startup.addPhase("b", waitForOther);
+        startup.run();
+    }
+
+    @Test
+    public void testFailureStopsDependentPhases() throws Exception {
+        final List<String> done = Collections.synchronizedList(new ArrayList<String>());
+        StartupOrchestrator startup = new StartupOrchestrator("test", 2);
+        startup.addPhase("a", new StartupOrchestrator.Phase() {
+            @Override
+            public void run() throws Exception {
+                throw new IllegalArgumentException("a failed");
+            }
+        });
+        startup.addPhase("b", new Record(done, "b"), "a");
+        try {
+            startup.run();
+            fail("the error of the phase should be thrown");
+        } catch (IllegalArgumentException e) {
+            assertEquals("a failed", e.getMessage());
+        }
+        assertTrue(done.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownDependency() {
+        new StartupOrchestrator("test", 2).addPhase("a", new Record(new ArrayList<String>(), "a"), "b");
+    }
+
+    private static class Record implements StartupOrchestrator.Phase {
+        private final List<String> done;
+        private final String name;
+
+        private Record(List<String> done, String name) {
+            this.done = done;
+            this.name = name;
+        }
+
+        @Override
+        public void run() throws Exception {
+            done.add(name);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.geonetwork.http.proxy;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test the {@link HttpProxyServlet} against a local http stub.
+ */
+public class HttpProxyServletTest {
+    private static final String BODY = "<WMT_MS_Capabilities version=\"1.1.1\"/>";
+    private static final String UTF8_BODY = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><title>Qu\u00e9bec</title>";
+    private static final int REQUESTS = 200;
+
+    private HttpServer server;
+    private HttpProxyServlet servlet;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/wms", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                byte[] bytes = BODY.getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "application/vnd.ogc.wms_xml;charset=UTF-8");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        });
+        server.createContext("/xml", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] bytes = UTF8_BODY.getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "application/xml");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        });
+        server.start();
+
+        MockServletConfig config = new MockServletConfig("HttpProxy");
+        config.addInitParameter("AllowedContentTypes", "application/xml,text/xml,application/vnd.ogc.wms_xml");
+        config.addInitParameter("MaxConnectionsPerRoute", "2");
+        servlet = new HttpProxyServlet();
+        servlet.init(config);
+    }
+
+    @After
+    public void tearDown() {
+        servlet.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    public void testConnectionsAreReused() throws Exception {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/wms";
+
+        for (int i = 0; i < REQUESTS; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/proxy");
+            request.addParameter("url", url);
+            request.addParameter("REQUEST", "GetCapabilities");
+            MockHttpServletResponse response = new MockHttpServletResponse();
+
+            servlet.doGet(request, response);
+
+            assertEquals(200, response.getStatus());
+            assertEquals(BODY, response.getContentAsString());
+            assertEquals("text/xml;charset=UTF-8", response.getContentType());
+        }
+        // keep-alive: the sequential requests are all sent through the same pooled connection
+        assertEquals(1, clientPorts.size());
+        assertEquals(0, servlet.getConnectionManager().getTotalStats().getLeased());
+    }
+
+    @Test
+    public void testContentTypeIsPassedThrough() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/proxy");
+        request.addParameter("url", "http://localhost:" + server.getAddress().getPort() + "/xml");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        servlet.doGet(request, response);
+
+        assertEquals(200, response.getStatus());
+        // no charset is added: the body is copied as is and declares its own encoding
+        assertEquals("application/xml", response.getContentType());
+        assertArrayEquals(UTF8_BODY.getBytes("UTF-8"), response.getContentAsByteArray());
+    }
+
+    @Test
+    public void testErrorStatusIsForwarded() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/proxy");
+        request.addParameter("url", "http://localhost:" + server.getAddress().getPort() + "/missing");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        servlet.doGet(request, response);
+
+        assertEquals(404, response.getStatus());
+        assertEquals(0, servlet.getConnectionManager().getTotalStats().getLeased());
+    }
+}
@@ -119,27 +119,38 @@ public class ISODate implements Cloneable, Comparable<ISODate>, Serializable, Xm
     public static String parseISODateTimes(String input1, String input2) {
         DateTimeFormatter dto = ISODateTimeFormat.dateTime();
         PeriodFormatter p = ISOPeriodFormat.standard();
-        DateTime odt1;
-        String odt = "";
+        DateTime odt1 = null;
+        String odt = null;
 
         // input1 should be some sort of ISO time
         // eg. basic: 20080909, full: 2008-09-09T12:21:00 etc
         // convert everything to UTC so that we remove any timezone
         // problems
-        try {
-            DateTime idt = parseBasicOrFullDateTime(input1);
-            odt1 = dto.parseDateTime(idt.toString()).withZone(
-                    DateTimeZone.forID("UTC"));
-            odt = odt1.toString();
+        // the extended format is parsed without Joda-Time, the other formats with it
+        long fastDateTime = parseUTCMillis(input1);
+        if (fastDateTime != Long.MIN_VALUE) {
+            odt = ISODateParser.formatUtc(fastDateTime);
+        }
+        if (odt == null) {
+            try {
+                DateTime idt = parseBasicOrFullDateTime(input1);
+                odt1 = dto.parseDateTime(idt.toString()).withZone(
+                        DateTimeZone.forID("UTC"));
+                odt = odt1.toString();
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return DEFAULT_DATE_TIME;
+            } catch (Exception e) {
+                e.printStackTrace();
+                return DEFAULT_DATE_TIME;
+            }
         }
 
         if (input2 == null || input2.equals(""))
             return odt;
 
+        if (odt1 == null) {
+            odt1 = new DateTime(fastDateTime, DateTimeZone.UTC);
+        }
+
         // input2 can be an ISO time as for input1 but also an ISO time period
         // eg. -P3D or P3D - if an ISO time period then it must be added to the
         // DateTime generated for input1 (odt1)
@@ -161,10 +172,14 @@ public class ISODate implements Cloneable, Comparable<ISODate>, Serializable, Xm
                     odt2 = odt1.minus(ip.toStandardDuration().getMillis());
                 odt = odt + "|" + odt2.toString();
             } else {
-                DateTime idt = parseBasicOrFullDateTime(input2);
-                DateTime odt2 = dto.parseDateTime(idt.toString()).withZone(
-                        DateTimeZone.forID("UTC"));
-                odt = odt + "|" + odt2.toString();
+                long fastDateTime2 = parseUTCMillis(input2);
+                String odt2 = fastDateTime2 == Long.MIN_VALUE ? null : ISODateParser.formatUtc(fastDateTime2);
+                if (odt2 == null) {
+                    DateTime idt = parseBasicOrFullDateTime(input2);
+                    odt2 = dto.parseDateTime(idt.toString()).withZone(
+                            DateTimeZone.forID("UTC")).toString();
+                }
+                odt = odt + "|" + odt2;
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -174,6 +189,21 @@ public class ISODate implements Cloneable, Comparable<ISODate>, Serializable, Xm
         return odt;
     }
 
+    /**
+     * Parse the extended ISO date times (yyyy-MM-dd[THH:mm:ss[.SSS][Z|+hh:mm]]) without going through the Joda-Time
+     * parsers.  The dates without time zone are in the default time zone, like with
+     * {@link #parseBasicOrFullDateTime(String)}.
+     *
+     * @return the UTC time in milliseconds or Long.MIN_VALUE if the date has another format.
+     */
+    private static long parseUTCMillis(String input) {
+        ISODateParser parser = new ISODateParser();
+        if (input == null || !parser.parse(input) || !parser.hasDate || !parser.canonical || !parser.isValid()) {
+            return Long.MIN_VALUE;
+        }
+        return parser.toUtcMillis(DateTimeZone.getDefault());
+    }
+
     public static DateTime parseBasicOrFullDateTime(String input1)
             throws Exception {
         DateTimeFormatter bd = ISODateTimeFormat.basicDate();
@@ -320,6 +350,13 @@ public class ISODate implements Cloneable, Comparable<ISODate>, Serializable, Xm
             throw new IllegalArgumentException("date string is null");
         }
 
+        // the common formats are parsed in one pass, the other ones (and the invalid dates) by the code below
+        ISODateParser parser = new ISODateParser();
+        if (parser.parse(timeAndDate) && (!parser.hasOffset || parser.isValid())) {
+            setFields(parser);
+            return;
+        }
+
         int indexOfT = timeAndDate.indexOf('T');
         if (indexOfT > -1) {
             // Check if iso date contains time info and if using non UTC time zone to parse the date with
@@ -426,6 +463,39 @@ public class ISODate implements Cloneable, Comparable<ISODate>, Serializable, Xm
         return getTimeAsString().equals(other.getTimeAsString());
     }
 
+    /**
+     * Set the date and time from the fields parsed by {@link ISODateParser}, like parseDate and parseTime do.
+     */
+    private void setFields(ISODateParser parser) {
+        parser.shiftToUtc();
+        if (parser.hasDate) {
+            int year = parser.year;
+            if (parser.yearDigits < 4) {
+                year = toFullYear(year);
+            }
+            _shortDate = true;
+            _calendar.set(year, parser.month - 1, parser.day, 0, 0, 0);
+        }
+        if (parser.hasTime) {
+            _calendar.set(HOUR_OF_DAY, parser.hour);
+            _calendar.set(MINUTE, parser.minute);
+            _calendar.set(SECOND, parser.second);
+            _shortDate = false;
+        }
+    }
+
+    private static int toFullYear(int shortYear) {
+        String thisYear = String.valueOf(Calendar.getInstance().get(YEAR));
+        int century = Integer.parseInt(thisYear.substring(0, 2)) * 100;
+        int yearInCentury = Integer.parseInt(thisYear.substring(2));
+
+        if (shortYear <= yearInCentury) {
+            return century + shortYear;
+        } else {
+            return century - 100 + shortYear;
+        }
+    }
+
     private void parseDate(@Nonnull String isoDate) {
         try {
             String[] parts = isoDate.split("-|/");
@@ -434,16 +504,7 @@ public class ISODate implements Cloneable, Comparable<ISODate>, Serializable, Xm
             }
             int year;
             if (parts[0].length() < 4) {
-                int shortYear = Integer.parseInt(parts[0]);
-                String thisYear = String.valueOf(Calendar.getInstance().get(YEAR));
-                int century = Integer.parseInt(thisYear.substring(0, 2)) * 100;
-                int yearInCentury = Integer.parseInt(thisYear.substring(2));
-
-                if (shortYear <= yearInCentury) {
-                    year = century + shortYear;
-                } else {
-                    year = century - 100 + shortYear;
-                }
+                year = toFullYear(Integer.parseInt(parts[0]));
             } else {
                 year = Integer.parseInt(parts[0]);
             }
@@ -0,0 +1,376 @@
+package org.fao.geonet.domain;
+
+import org.joda.time.DateTimeZone;
+
+/**
+ * Single pass parser for the common shapes of ISO 8601 dates used by {@link ISODate}: <code>yyyy-MM-dd</code> (also
+ * with short years, one digit months and days or '/' separators), <code>HH:mm[:ss[.SSS]]</code> and both joined
+ * by 'T', followed by 'Z' or a time zone offset.
+ * <p/>
+ * The shape is read character by character without regular expressions, intermediate strings or exceptions.  When
+ * the input has another shape {@link #parse(String)} returns false and the caller falls back to the (slower) generic
+ * parsing, so the results are always the same as the generic parsing.
+ */
+final class ISODateParser {
+    private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+    private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+
+    int year;
+    int month;
+    int day;
+    int hour;
+    int minute;
+    int second;
+    int millis;
+    /** the number of digits of the year, less than 4 for short years */
+    int yearDigits;
+    boolean hasDate;
+    boolean hasTime;
+    /** the input ends with Z */
+    boolean utc;
+    /** the input ends with a time zone offset (+hh:mm, +hhmm or +hh) */
+    boolean hasOffset;
+    /** the time zone offset in minutes */
+    int offsetMinutes;
+    /**
+     * true if all the fields have the fixed size of the extended ISO format (yyyy-MM-ddTHH:mm:ss.SSS) and
+     * '-' separators.
+     */
+    boolean canonical;
+
+    private String text;
+    private int pos;
+
+    /**
+     * Parse the input.
+     *
+     * @return false if the input does not have one of the supported shapes.
+     */
+    boolean parse(String input) {
+        text = input;
+        pos = 0;
+        year = month = day = hour = minute = second = millis = offsetMinutes = yearDigits = 0;
+        hasDate = hasTime = utc = hasOffset = false;
+        canonical = true;
+
+        int length = input.length();
+        if (length == 0) {
+            return false;
+        }
+
+        boolean timeOnly = input.charAt(0) == 'T' || isTimeOnly();
+        if (!timeOnly) {
+            if (!parseDate()) {
+                return false;
+            }
+            if (pos < length && input.charAt(pos) == 'Z') {
+                utc = true;
+                canonical = false;
+                pos++;
+            }
+            if (pos == length) {
+                return true;
+            }
+        }
+        if (input.charAt(pos) == 'T') {
+            pos++;
+            if (pos == length) {
+                // "yyyy-MM-ddT" is a date
+                canonical = false;
+                return hasDate && !utc;
+            }
+        } else if (!timeOnly) {
+            return false;
+        }
+        if (!hasDate) {
+            canonical = false;
+        }
+        utc = false;
+        return parseTime() && pos == length;
+    }
+
+    /**
+     * Convert the fields, which must have a time zone offset, to UTC.
+     */
+    void shiftToUtc() {
+        if (!hasOffset) {
+            return;
+        }
+        long days = daysFromCivil(year, month, day);
+        long minutes = days * 24 * 60 + hour * 60 + minute - offsetMinutes;
+        long utcDays = floorDiv(minutes, 24 * 60);
+        int minuteOfDay = (int) (minutes - utcDays * 24 * 60);
+        setCivilFromDays(utcDays);
+        hour = minuteOfDay / 60;
+        minute = minuteOfDay % 60;
+        offsetMinutes = 0;
+        hasOffset = false;
+    }
+
+    /**
+     * @return true if the fields are valid dates and times (and not lenient calendar values).
+     */
+    boolean isValid() {
+        return month >= 1 && month <= 12 && day >= 1 && day <= daysInMonth(year, month)
+               && hour < 24 && minute < 60 && second < 60;
+    }
+
+    /**
+     * @return the UTC time of the fields, using the zone when the input has no offset and is not UTC or
+     * Long.MIN_VALUE if the time does not exist in the zone (daylight saving gap).
+     */
+    long toUtcMillis(DateTimeZone zone) {
+        long local = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                     + ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+        if (utc) {
+            return local;
+        }
+        if (hasOffset) {
+            return local - offsetMinutes * MILLIS_PER_MINUTE;
+        }
+        int offset = zone.getOffsetFromLocal(local);
+        long utcMillis = local - offset;
+        if (zone.getOffset(utcMillis) != offset) {
+            return Long.MIN_VALUE;
+        }
+        return utcMillis;
+    }
+
+    /**
+     * Format a UTC time like Joda-Time formats a UTC DateTime: <code>yyyy-MM-ddTHH:mm:ss.SSSZ</code>.
+     *
+     * @return the formatted time or null if the year has more than 4 digits or is negative.
+     */
+    static String formatUtc(long utcMillis) {
+        long days = floorDiv(utcMillis, MILLIS_PER_DAY);
+        int millisOfDay = (int) (utcMillis - days * MILLIS_PER_DAY);
+        ISODateParser fields = new ISODateParser();
+        fields.setCivilFromDays(days);
+        if (fields.year < 0 || fields.year > 9999) {
+            return null;
+        }
+        char[] chars = new char[24];
+        write(chars, 0, fields.year, 4);
+        chars[4] = '-';
+        write(chars, 5, fields.month, 2);
+        chars[7] = '-';
+        write(chars, 8, fields.day, 2);
+        chars[10] = 'T';
+        write(chars, 11, millisOfDay / 3600000, 2);
+        chars[13] = ':';
+        write(chars, 14, (millisOfDay / 60000) % 60, 2);
+        chars[16] = ':';
+        write(chars, 17, (millisOfDay / 1000) % 60, 2);
+        chars[19] = '.';
+        write(chars, 20, millisOfDay % 1000, 3);
+        chars[23] = 'Z';
+        return new String(chars);
+    }
+
+    private boolean isTimeOnly() {
+        // HH:mm... : a ':' before any date separator
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ':') {
+                return true;
+            }
+            if (c == '-' || c == '/' || c == 'T') {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean parseDate() {
+        int start = pos;
+        year = readNumber(4);
+        yearDigits = pos - start;
+        if (yearDigits == 0 || !readDateSeparator()) {
+            return false;
+        }
+        month = readNumber(2);
+        if (month < 0 || !readDateSeparator()) {
+            return false;
+        }
+        day = readNumber(2);
+        if (day < 0) {
+            return false;
+        }
+        canonical &= yearDigits == 4;
+        hasDate = true;
+        return true;
+    }
+
+    private boolean readDateSeparator() {
+        if (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '-' || c == '/') {
+                canonical &= c == '-';
+                pos++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean parseTime() {
+        hour = readNumber(2);
+        if (hour < 0 || !readChar(':')) {
+            return false;
+        }
+        minute = readNumber(2);
+        if (minute < 0) {
+            return false;
+        }
+        hasTime = true;
+        if (readChar(':')) {
+            second = readNumber(2);
+            if (second < 0) {
+                return false;
+            }
+            if (readChar('.')) {
+                int start = pos;
+                int fraction = readNumber(Integer.MAX_VALUE, 3);
+                if (fraction < 0) {
+                    return false;
+                }
+                int digits = Math.min(pos - start, 3);
+                for (int i = digits; i < 3; i++) {
+                    fraction *= 10;
+                }
+                millis = fraction;
+            }
+            if (readChar('Z')) {
+                utc = true;
+                return true;
+            }
+        } else {
+            // HH:mmZ is not supported by the generic parsing of dates without offset
+            canonical = false;
+        }
+        if (pos < text.length() && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) {
+            return hasDate && canonical && parseOffset();
+        }
+        return pos == text.length();
+    }
+
+    private boolean parseOffset() {
+        int sign = text.charAt(pos) == '-' ? -1 : 1;
+        pos++;
+        int start = pos;
+        int offsetHours = readNumber(2);
+        if (offsetHours < 0 || pos - start != 2) {
+            return false;
+        }
+        int offsetMins = 0;
+        if (pos < text.length()) {
+            readChar(':');
+            start = pos;
+            offsetMins = readNumber(2);
+            if (offsetMins < 0 || pos - start != 2) {
+                return false;
+            }
+        }
+        if (offsetHours > 23 || offsetMins > 59) {
+            return false;
+        }
+        hasOffset = true;
+        offsetMinutes = sign * (offsetHours * 60 + offsetMins);
+        return pos == text.length();
+    }
+
+    private boolean readChar(char c) {
+        if (pos < text.length() && text.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Read up to maxDigits digits, the fields of the canonical format must have exactly maxDigits digits.
+     *
+     * @return the number or -1 if there is no digit.
+     */
+    private int readNumber(int maxDigits) {
+        int start = pos;
+        int value = readNumber(maxDigits, maxDigits);
+        if (value >= 0 && pos - start != maxDigits) {
+            canonical = false;
+        }
+        return value;
+    }
+
+    /**
+     * Read up to maxDigits digits, only the first significantDigits are used.
+     *
+     * @return the number or -1 if there is no digit.
+     */
+    private int readNumber(int maxDigits, int significantDigits) {
+        int value = 0;
+        int digits = 0;
+        while (pos < text.length() && digits < maxDigits) {
+            char c = text.charAt(pos);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            if (digits < significantDigits) {
+                value = value * 10 + (c - '0');
+            }
+            digits++;
+            pos++;
+        }
+        return digits == 0 ? -1 : value;
+    }
+
+    private void setCivilFromDays(long days) {
+        // see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+    }
+
+    private static long daysFromCivil(int y, int m, int d) {
+        y -= m <= 2 ? 1 : 0;
+        long era = floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5 + d - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static int daysInMonth(int y, int m) {
+        switch (m) {
+            case 2:
+                return (y % 4 == 0 && (y % 100 != 0 || y % 400 == 0)) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            q--;
+        }
+        return q;
+    }
+
+    private static void write(char[] chars, int offset, int value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package org.fao.geonet.domain.statistic;
+
+import javax.persistence.*;
+
+/**
+ * Rollup of the {@link SearchRequest}s made on one day for one service.  The rollups are maintained incrementally by
+ * a background job (see {@link org.fao.geonet.repository.statistic.SearchRequestDayStatRepositoryCustom#aggregateNewRequests})
+ * so that the statistics do not have to scan the whole search log.
+ */
+@Entity
+@Access(AccessType.PROPERTY)
+@Table(name = "RequestsByDay", uniqueConstraints = @UniqueConstraint(columnNames = {"requestday", "service"}))
+@SequenceGenerator(name = SearchRequestDayStat.ID_SEQ_NAME, initialValue = 100, allocationSize = 1)
+public class SearchRequestDayStat {
+    static final String ID_SEQ_NAME = "search_request_day_stat_id_seq";
+    /**
+     * The length of the day column (yyyy-MM-dd).
+     */
+    public static final int DAY_LENGTH = 10;
+    private int _id;
+    private String _day;
+    private String _service;
+    private int _requests;
+    private int _noHitRequests;
+    private int _autogeneratedRequests;
+    private int _simpleRequests;
+    private int _lastRequestId;
+
+    /**
+     * Get the id of the rollup.
+     *
+     * @return the id of the rollup.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQ_NAME)
+    public int getId() {
+        return _id;
+    }
+
+    /**
+     * Set the id of the rollup.
+     *
+     * @param id the id of the rollup.
+     */
+    public void setId(int id) {
+        this._id = id;
+    }
+
+    /**
+     * Get the day of the requests (yyyy-MM-dd).
+     *
+     * @return the day of the requests.
+     */
+    @Column(name = "requestday", length = DAY_LENGTH, nullable = false)
+    public String getDay() {
+        return _day;
+    }
+
+    /**
+     * Set the day of the requests (yyyy-MM-dd).
+     *
+     * @param day the day of the requests.
+     */
+    public void setDay(String day) {
+        this._day = day;
+    }
+
+    /**
+     * Get the service the requests were made with.
+     *
+     * @return the service the requests were made with.
+     */
+    @Column(name = "service")
+    public String getService() {
+        return _service;
+    }
+
+    /**
+     * Set the service the requests were made with.
+     *
+     * @param service the service the requests were made with.
+     */
+    public void setService(String service) {
+        this._service = service;
+    }
+
+    /**
+     * Get the number of requests.
+     *
+     * @return the number of requests.
+     */
+    @Column(nullable = false)
+    public int getRequests() {
+        return _requests;
+    }
+
+    /**
+     * Set the number of requests.
+     *
+     * @param requests the number of requests.
+     */
+    public void setRequests(int requests) {
+        this._requests = requests;
+    }
+
+    /**
+     * Get the number of requests without hits.
+     *
+     * @return the number of requests without hits.
+     */
+    @Column(name = "nohits", nullable = false)
+    public int getNoHitRequests() {
+        return _noHitRequests;
+    }
+
+    /**
+     * Set the number of requests without hits.
+     *
+     * @param noHitRequests the number of requests without hits.
+     */
+    public void setNoHitRequests(int noHitRequests) {
+        this._noHitRequests = noHitRequests;
+    }
+
+    /**
+     * Get the number of autogenerated requests.
+     *
+     * @return the number of autogenerated requests.
+     */
+    @Column(name = "autogenerated", nullable = false)
+    public int getAutogeneratedRequests() {
+        return _autogeneratedRequests;
+    }
+
+    /**
+     * Set the number of autogenerated requests.
+     *
+     * @param autogeneratedRequests the number of autogenerated requests.
+     */
+    public void setAutogeneratedRequests(int autogeneratedRequests) {
+        this._autogeneratedRequests = autogeneratedRequests;
+    }
+
+    /**
+     * Get the number of simple requests.
+     *
+     * @return the number of simple requests.
+     */
+    @Column(name = "simple", nullable = false)
+    public int getSimpleRequests() {
+        return _simpleRequests;
+    }
+
+    /**
+     * Set the number of simple requests.
+     *
+     * @param simpleRequests the number of simple requests.
+     */
+    public void setSimpleRequests(int simpleRequests) {
+        this._simpleRequests = simpleRequests;
+    }
+
+    /**
+     * Get the id of the last {@link SearchRequest} added to the rollup.  The largest value of all the rollups is where
+     * the next aggregation starts.
+     *
+     * @return the id of the last {@link SearchRequest} added to the rollup.
+     */
+    @Column(name = "lastrequestid", nullable = false)
+    public int getLastRequestId() {
+        return _lastRequestId;
+    }
+
+    /**
+     * Set the id of the last {@link SearchRequest} added to the rollup.
+     *
+     * @param lastRequestId the id of the last {@link SearchRequest} added to the rollup.
+     */
+    public void setLastRequestId(int lastRequestId) {
+        this._lastRequestId = lastRequestId;
+    }
+}
@@ -0,0 +1,58 @@
+package org.fao.geonet.domain.statistic;
+
+import javax.persistence.*;
+
+/**
+ * The id of the last {@link SearchRequest} scanned by the aggregation into the {@link SearchRequestDayStat} and
+ * {@link SearchTermStat} rollups.  There is a single row, the rollups themselves can't hold this mark as the requests
+ * which can't be aggregated (without date) don't update any rollup.
+ */
+@Entity
+@Access(AccessType.PROPERTY)
+@Table(name = "RequestsWatermark")
+public class SearchStatWatermark {
+    /**
+     * The id of the single row.
+     */
+    public static final int ID = 1;
+    private int _id = ID;
+    private int _lastRequestId;
+
+    /**
+     * Get the id of the row, always {@link #ID}.
+     *
+     * @return the id of the row.
+     */
+    @Id
+    public int getId() {
+        return _id;
+    }
+
+    /**
+     * Set the id of the row.
+     *
+     * @param id the id of the row.
+     */
+    public void setId(int id) {
+        this._id = id;
+    }
+
+    /**
+     * Get the id of the last {@link SearchRequest} scanned by the aggregation, the next aggregation starts after it.
+     *
+     * @return the id of the last {@link SearchRequest} scanned by the aggregation.
+     */
+    @Column(name = "lastrequestid", nullable = false)
+    public int getLastRequestId() {
+        return _lastRequestId;
+    }
+
+    /**
+     * Set the id of the last {@link SearchRequest} scanned by the aggregation.
+     *
+     * @param lastRequestId the id of the last {@link SearchRequest} scanned by the aggregation.
+     */
+    public void setLastRequestId(int lastRequestId) {
+        this._lastRequestId = lastRequestId;
+    }
+}
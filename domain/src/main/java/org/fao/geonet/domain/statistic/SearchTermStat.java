@@ -0,0 +1,116 @@
+package org.fao.geonet.domain.statistic;
+
+import javax.persistence.*;
+
+/**
+ * Rollup of the number of {@link SearchRequestParam}s with one term (field and text) for one service.  The rollups
+ * are maintained incrementally together with the {@link SearchRequestDayStat}s.
+ */
+@Entity
+@Access(AccessType.PROPERTY)
+@Table(name = "RequestTerms")
+@SequenceGenerator(name = SearchTermStat.ID_SEQ_NAME, initialValue = 100, allocationSize = 1)
+public class SearchTermStat {
+    static final String ID_SEQ_NAME = "search_term_stat_id_seq";
+    private int _id;
+    private String _service;
+    private String _termField;
+    private String _termText;
+    private int _requests;
+
+    /**
+     * Get the id of the rollup.
+     *
+     * @return the id of the rollup.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQ_NAME)
+    public int getId() {
+        return _id;
+    }
+
+    /**
+     * Set the id of the rollup.
+     *
+     * @param id the id of the rollup.
+     */
+    public void setId(int id) {
+        this._id = id;
+    }
+
+    /**
+     * Get the service the requests were made with.
+     *
+     * @return the service the requests were made with.
+     */
+    @Column(name = "service")
+    public String getService() {
+        return _service;
+    }
+
+    /**
+     * Set the service the requests were made with.
+     *
+     * @param service the service the requests were made with.
+     */
+    public void setService(String service) {
+        this._service = service;
+    }
+
+    /**
+     * Get the field of the term.
+     *
+     * @return the field of the term.
+     */
+    @Column(name = "termfield")
+    public String getTermField() {
+        return _termField;
+    }
+
+    /**
+     * Set the field of the term.
+     *
+     * @param termField the field of the term.
+     */
+    public void setTermField(String termField) {
+        this._termField = termField;
+    }
+
+    /**
+     * Get the text of the term.
+     *
+     * @return the text of the term.
+     */
+    @Column(name = "termtext")
+    public String getTermText() {
+        return _termText;
+    }
+
+    /**
+     * Set the text of the term.
+     *
+     * @param termText the text of the term.
+     */
+    public void setTermText(String termText) {
+        this._termText = termText;
+    }
+
+    /**
+     * Get the number of request parameters with this term.
+     *
+     * @return the number of request parameters with this term.
+     */
+    @Column(nullable = false)
+    public int getRequests() {
+        return _requests;
+    }
+
+    /**
+     * Set the number of request parameters with this term.
+     *
+     * @param requests the number of request parameters with this term.
+     */
+    public void setRequests(int requests) {
+        this._requests = requests;
+    }
+}
@@ -0,0 +1,61 @@
+package org.fao.geonet.repository;
+
+import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.domain.MetadataType;
+
+/**
+ * The properties of a harvested {@link org.fao.geonet.domain.Metadata} that harvesters need to align the local
+ * metadata with the remote records, loaded without the metadata XML.
+ *
+ * @see MetadataRepositoryCustom#findAllHarvestedSummaries(String, int, int)
+ */
+public class HarvestedMetadataSummary {
+    private final int _id;
+    private final String _uuid;
+    private final ISODate _changeDate;
+    private final MetadataType _type;
+    private final String _harvestUri;
+
+    public HarvestedMetadataSummary(int id, String uuid, ISODate changeDate, MetadataType type, String harvestUri) {
+        this._id = id;
+        this._uuid = uuid;
+        this._changeDate = changeDate;
+        this._type = type;
+        this._harvestUri = harvestUri;
+    }
+
+    /**
+     * Get the id of the metadata.
+     */
+    public int getId() {
+        return _id;
+    }
+
+    /**
+     * Get the uuid of the metadata.
+     */
+    public String getUuid() {
+        return _uuid;
+    }
+
+    /**
+     * Get the change date of the metadata.
+     */
+    public ISODate getChangeDate() {
+        return _changeDate;
+    }
+
+    /**
+     * Get the type of the metadata (metadata, template...).
+     */
+    public MetadataType getType() {
+        return _type;
+    }
+
+    /**
+     * Get the uri the metadata was harvested from (only set by some harvesters).
+     */
+    public String getHarvestUri() {
+        return _harvestUri;
+    }
+}
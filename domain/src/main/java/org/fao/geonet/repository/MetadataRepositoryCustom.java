@@ -75,6 +75,28 @@ public interface MetadataRepositoryCustom {
     @Nonnull
     List<Integer> findAllIdsBy(@Nonnull Specification<Metadata> spec);
 
+    /**
+     * Load the id, uuid, change date, type and harvest uri of the metadata harvested by a harvester, without loading
+     * the metadata themselves.  The results are ordered by id and paged by id (keyset paging) so that all the metadata
+     * of a large harvester can be loaded in chunks:
+     * <pre>
+     *     int lastId = -1;
+     *     List&lt;HarvestedMetadataSummary&gt; page;
+     *     do {
+     *         page = repository.findAllHarvestedSummaries(harvesterUuid, lastId, 1000);
+     *         ...
+     *         lastId = page.get(page.size() - 1).getId();
+     *     } while (page.size() == 1000);
+     * </pre>
+     *
+     * @param harvesterUuid the uuid of the harvester.
+     * @param afterId only the metadata with an id greater than this id are returned.
+     * @param maxResults the maximum number of results.
+     * @return the summaries ordered by id.
+     */
+    @Nonnull
+    List<HarvestedMetadataSummary> findAllHarvestedSummaries(@Nonnull String harvesterUuid, int afterId, int maxResults);
+
     /**
      * Find the metadata that has the oldest change date.
      *
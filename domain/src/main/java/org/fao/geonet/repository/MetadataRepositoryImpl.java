@@ -3,8 +3,12 @@ package org.fao.geonet.repository;
 import com.google.common.collect.Maps;
 import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.domain.MetadataDataInfo;
 import org.fao.geonet.domain.MetadataDataInfo_;
+import org.fao.geonet.domain.MetadataHarvestInfo;
+import org.fao.geonet.domain.MetadataHarvestInfo_;
 import org.fao.geonet.domain.MetadataSourceInfo;
+import org.fao.geonet.domain.MetadataType;
 import org.fao.geonet.domain.Metadata_;
 import org.fao.geonet.domain.Pair;
 import org.fao.geonet.repository.reports.MetadataReportsQueries;
@@ -105,6 +109,31 @@ public class MetadataRepositoryImpl implements MetadataRepositoryCustom {
         return _entityManager.createQuery(cbQuery).getResultList();
     }
 
+    @Nonnull
+    @Override
+    public List<HarvestedMetadataSummary> findAllHarvestedSummaries(@Nonnull String harvesterUuid, int afterId, int maxResults) {
+        CriteriaBuilder cb = _entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> cbQuery = cb.createTupleQuery();
+        Root<Metadata> root = cbQuery.from(Metadata.class);
+        final Path<Integer> idPath = root.get(Metadata_.id);
+        final Path<MetadataDataInfo> dataInfo = root.get(Metadata_.dataInfo);
+        final Path<MetadataHarvestInfo> harvestInfo = root.get(Metadata_.harvestInfo);
+
+        cbQuery.multiselect(idPath, root.get(Metadata_.uuid), dataInfo.get(MetadataDataInfo_.changeDate),
+                dataInfo.get(MetadataDataInfo_.type_JPAWorkaround), harvestInfo.get(MetadataHarvestInfo_.uri));
+        cbQuery.where(cb.and(
+                cb.equal(harvestInfo.get(MetadataHarvestInfo_.uuid), harvesterUuid),
+                cb.greaterThan(idPath, afterId)));
+        cbQuery.orderBy(cb.asc(idPath));
+
+        List<HarvestedMetadataSummary> results = new ArrayList<HarvestedMetadataSummary>();
+        for (Tuple tuple : _entityManager.createQuery(cbQuery).setMaxResults(maxResults).getResultList()) {
+            results.add(new HarvestedMetadataSummary((Integer) tuple.get(0), (String) tuple.get(1), (ISODate) tuple.get(2),
+                    MetadataType.lookup((Character) tuple.get(3)), (String) tuple.get(4)));
+        }
+        return results;
+    }
+
     @Override
     public Metadata findOneOldestByChangeDate() {
         final CriteriaBuilder cb = _entityManager.getCriteriaBuilder();
@@ -0,0 +1,62 @@
+package org.fao.geonet.repository.specification;
+
+import org.fao.geonet.domain.statistic.SearchTermStat;
+import org.fao.geonet.domain.statistic.SearchTermStat_;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.criteria.*;
+import java.util.Collection;
+
+/**
+ * Specifications for making queries on {@link SearchTermStat} Entities.
+ */
+public final class SearchTermStatSpecs {
+    private SearchTermStatSpecs() {
+        // utility classes should not have visible constructors
+    }
+
+    /**
+     * Create a specification for querying by termField.
+     *
+     * @param termField the termField.
+     * @return a specification for querying termField.
+     */
+    public static Specification<SearchTermStat> hasTermField(final String termField) {
+        return new Specification<SearchTermStat>() {
+            @Override
+            public Predicate toPredicate(Root<SearchTermStat> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+                return cb.equal(root.get(SearchTermStat_.termField), termField);
+            }
+        };
+    }
+
+    /**
+     * Create a specification for querying by one of the termFields.
+     *
+     * @param termFields the termFields.
+     * @return a specification for querying by one of the termFields.
+     */
+    public static Specification<SearchTermStat> hasTermFieldIn(final Collection<String> termFields) {
+        return new Specification<SearchTermStat>() {
+            @Override
+            public Predicate toPredicate(Root<SearchTermStat> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+                return root.get(SearchTermStat_.termField).in(termFields);
+            }
+        };
+    }
+
+    /**
+     * Create a specification for querying by service.
+     *
+     * @param service the service.
+     * @return a specification for querying by service.
+     */
+    public static Specification<SearchTermStat> hasService(final String service) {
+        return new Specification<SearchTermStat>() {
+            @Override
+            public Predicate toPredicate(Root<SearchTermStat> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+                return cb.equal(root.get(SearchTermStat_.service), service);
+            }
+        };
+    }
+}
@@ -0,0 +1,12 @@
+package org.fao.geonet.repository.statistic;
+
+import org.fao.geonet.domain.statistic.SearchRequestDayStat;
+import org.fao.geonet.repository.GeonetRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+
+/**
+ * Data Access object for accessing the {@link SearchRequestDayStat} rollups.
+ */
+public interface SearchRequestDayStatRepository extends GeonetRepository<SearchRequestDayStat, Integer>,
+        JpaSpecificationExecutor<SearchRequestDayStat>, SearchRequestDayStatRepositoryCustom {
+}
@@ -0,0 +1,80 @@
+package org.fao.geonet.repository.statistic;
+
+import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.domain.Pair;
+import org.fao.geonet.domain.statistic.SearchRequestDayStat;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Custom query methods for the {@link SearchRequestDayStat} rollups and for maintaining the rollups of the search
+ * requests log.
+ */
+public interface SearchRequestDayStatRepositoryCustom {
+    /**
+     * Count the requests made between the given days, like
+     * {@link SearchRequestRepositoryCustom#getRequestDateToRequestCountBetween} but from the rollups.
+     *
+     * @param dateInterval the grouping and sort type, a day or a larger interval
+     * @param from         start day (inclusive)
+     * @param to           end day (inclusive)
+     * @param service      the service of the requests or null for all the services
+     * @param <T>          the type of date
+     * @return a mapping from a time to the number of requests
+     * @throws IllegalArgumentException if the interval is smaller than a day.
+     */
+    @Nonnull
+    <T extends DateInterval> List<Pair<T, Integer>> getRequestCountBetween(@Nonnull T dateInterval, @Nonnull ISODate from,
+                                                                          @Nonnull ISODate to, @Nullable String service);
+
+    /**
+     * Sum the rollups.
+     *
+     * @param service the service of the requests or null for all the services
+     * @param from    the first day (inclusive) or null for all the days
+     * @return an unsaved rollup with the sum of the counts of the rollups.
+     */
+    @Nonnull
+    SearchRequestDayStat getTotals(@Nullable String service, @Nullable ISODate from);
+
+    /**
+     * Get all the services of the requests in the rollups.
+     */
+    @Nonnull
+    List<String> getServices();
+
+    /**
+     * Get the first day with requests or null if there is no rollup.
+     */
+    @Nullable
+    ISODate getOldestDay();
+
+    /**
+     * Get the last day with requests or null if there is no rollup.
+     */
+    @Nullable
+    ISODate getMostRecentDay();
+
+    /**
+     * Get the id of the last {@link org.fao.geonet.domain.statistic.SearchRequest} scanned by the aggregation, including
+     * the requests without date which are not counted in any rollup.
+     */
+    int getLastAggregatedRequestId();
+
+    /**
+     * Add the search requests (and their parameters) logged since the last aggregation to the
+     * {@link SearchRequestDayStat} and {@link org.fao.geonet.domain.statistic.SearchTermStat} rollups.
+     * <p/>
+     * The requests are aggregated in the order of their ids, the aggregation stops at the first request which is not
+     * older than settledBefore so that requests still being written by other transactions are not skipped.  Must be
+     * called in a transaction.
+     *
+     * @param maxRequests   the maximum number of requests to aggregate
+     * @param settledBefore only the requests made before this date are aggregated
+     * @return the number of requests aggregated.
+     */
+    int aggregateNewRequests(@Nonnegative int maxRequests, @Nonnull ISODate settledBefore);
+}
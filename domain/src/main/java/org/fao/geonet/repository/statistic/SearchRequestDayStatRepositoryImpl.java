@@ -0,0 +1,327 @@
+package org.fao.geonet.repository.statistic;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.domain.ISODate_;
+import org.fao.geonet.domain.Pair;
+import org.fao.geonet.domain.statistic.SearchRequest;
+import org.fao.geonet.domain.statistic.SearchRequestDayStat;
+import org.fao.geonet.domain.statistic.SearchRequestDayStat_;
+import org.fao.geonet.domain.statistic.SearchRequestParam;
+import org.fao.geonet.domain.statistic.SearchRequestParam_;
+import org.fao.geonet.domain.statistic.SearchRequest_;
+import org.fao.geonet.domain.statistic.SearchStatWatermark;
+import org.fao.geonet.domain.statistic.SearchTermStat;
+import org.fao.geonet.domain.statistic.SearchTermStat_;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+/**
+ * Implementation for the custom search methods of {@link SearchRequestDayStatRepositoryCustom}.
+ */
+public class SearchRequestDayStatRepositoryImpl implements SearchRequestDayStatRepositoryCustom {
+    /**
+     * The maximum number of terms in the IN clause used to find the existing term rollups.
+     */
+    private static final int MAX_TERMS_PER_QUERY = 500;
+
+    @PersistenceContext
+    private EntityManager _EntityManager;
+
+    @Override
+    public <T extends DateInterval> List<Pair<T, Integer>> getRequestCountBetween(@Nonnull final T dateInterval,
+                                                                                 @Nonnull ISODate from, @Nonnull ISODate to,
+                                                                                 @Nullable String service) {
+        if (dateInterval.getSubstringEnd() > SearchRequestDayStat.DAY_LENGTH) {
+            throw new IllegalArgumentException("The rollups are by day, " + dateInterval.getClass().getSimpleName()
+                                               + " is not supported");
+        }
+        final CriteriaBuilder cb = _EntityManager.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> cbQuery = cb.createTupleQuery();
+        final Root<SearchRequestDayStat> statRoot = cbQuery.from(SearchRequestDayStat.class);
+
+        final Path<String> day = statRoot.get(SearchRequestDayStat_.day);
+        final Expression<String> dayByType = cb.substring(day, 1, dateInterval.getSubstringEnd());
+        final List<Predicate> predicates = new ArrayList<Predicate>();
+        predicates.add(cb.greaterThanOrEqualTo(day, from.getDateAsString()));
+        predicates.add(cb.lessThanOrEqualTo(day, to.getDateAsString()));
+        if (service != null) {
+            predicates.add(cb.equal(statRoot.get(SearchRequestDayStat_.service), service));
+        }
+
+        cbQuery.select(cb.tuple(dayByType, cb.sum(statRoot.get(SearchRequestDayStat_.requests))))
+                .where(predicates.toArray(new Predicate[predicates.size()]))
+                .groupBy(dayByType)
+                .orderBy(cb.desc(dayByType));
+
+        return Lists.transform(_EntityManager.createQuery(cbQuery).getResultList(), new Function<Tuple, Pair<T, Integer>>() {
+            @Nullable
+            @Override
+            @SuppressWarnings("unchecked")
+            public Pair<T, Integer> apply(@Nonnull Tuple stat) {
+                final T date = (T) dateInterval.createFromString(stat.get(0, String.class));
+                return Pair.read(date, intValue(stat.get(1)));
+            }
+        });
+    }
+
+    @Nonnull
+    @Override
+    public SearchRequestDayStat getTotals(@Nullable String service, @Nullable ISODate from) {
+        final CriteriaBuilder cb = _EntityManager.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> cbQuery = cb.createTupleQuery();
+        final Root<SearchRequestDayStat> statRoot = cbQuery.from(SearchRequestDayStat.class);
+
+        final List<Predicate> predicates = new ArrayList<Predicate>();
+        if (service != null) {
+            predicates.add(cb.equal(statRoot.get(SearchRequestDayStat_.service), service));
+        }
+        if (from != null) {
+            predicates.add(cb.greaterThanOrEqualTo(statRoot.get(SearchRequestDayStat_.day), from.getDateAsString()));
+        }
+        cbQuery.select(cb.tuple(
+                cb.sum(statRoot.get(SearchRequestDayStat_.requests)),
+                cb.sum(statRoot.get(SearchRequestDayStat_.noHitRequests)),
+                cb.sum(statRoot.get(SearchRequestDayStat_.autogeneratedRequests)),
+                cb.sum(statRoot.get(SearchRequestDayStat_.simpleRequests)),
+                cb.max(statRoot.get(SearchRequestDayStat_.lastRequestId))))
+                .where(predicates.toArray(new Predicate[predicates.size()]));
+
+        final Tuple sums = _EntityManager.createQuery(cbQuery).getSingleResult();
+        final SearchRequestDayStat totals = new SearchRequestDayStat();
+        totals.setService(service);
+        totals.setRequests(intValue(sums.get(0)));
+        totals.setNoHitRequests(intValue(sums.get(1)));
+        totals.setAutogeneratedRequests(intValue(sums.get(2)));
+        totals.setSimpleRequests(intValue(sums.get(3)));
+        totals.setLastRequestId(intValue(sums.get(4)));
+        return totals;
+    }
+
+    @Nonnull
+    @Override
+    public List<String> getServices() {
+        final CriteriaBuilder cb = _EntityManager.getCriteriaBuilder();
+        final CriteriaQuery<String> query = cb.createQuery(String.class);
+        final Root<SearchRequestDayStat> statRoot = query.from(SearchRequestDayStat.class);
+        query.select(statRoot.get(SearchRequestDayStat_.service)).distinct(true);
+
+        return _EntityManager.createQuery(query).getResultList();
+    }
+
+    @Override
+    public ISODate getOldestDay() {
+        final CriteriaBuilder cb = _EntityManager.getCriteriaBuilder();
+        final CriteriaQuery<String> query = cb.createQuery(String.class);
+        final Root<SearchRequestDayStat> statRoot = query.from(SearchRequestDayStat.class);
+        query.select(cb.least(statRoot.get(SearchRequestDayStat_.day)));
+
+        final String day = _EntityManager.createQuery(query).getSingleResult();
+        return day == null ? null : new ISODate(day);
+    }
+
+    @Override
+    public ISODate getMostRecentDay() {
+        final CriteriaBuilder cb = _EntityManager.getCriteriaBuilder();
+        final CriteriaQuery<String> query = cb.createQuery(String.class);
+        final Root<SearchRequestDayStat> statRoot = query.from(SearchRequestDayStat.class);
+        query.select(cb.greatest(statRoot.get(SearchRequestDayStat_.day)));
+
+        final String day = _EntityManager.createQuery(query).getSingleResult();
+        return day == null ? null : new ISODate(day);
+    }
+
+    @Override
+    public int getLastAggregatedRequestId() {
+        final SearchStatWatermark watermark = _EntityManager.find(SearchStatWatermark.class, SearchStatWatermark.ID);
+        if (watermark != null) {
+            return watermark.getLastRequestId();
+        }
+        // rollups made before the watermark was stored
+        final CriteriaBuilder cb = _EntityManager.getCriteriaBuilder();
+        final CriteriaQuery<Integer> query = cb.createQuery(Integer.class);
+        final Root<SearchRequestDayStat> statRoot = query.from(SearchRequestDayStat.class);
+        query.select(cb.max(statRoot.get(SearchRequestDayStat_.lastRequestId)));
+
+        return intValue(_EntityManager.createQuery(query).getSingleResult());
+    }
+
+    @Override
+    public int aggregateNewRequests(int maxRequests, @Nonnull ISODate settledBefore) {
+        final int fromId = getLastAggregatedRequestId();
+
+        // find the range of ids to aggregate
+        final CriteriaBuilder cb = _EntityManager.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> idQuery = cb.createTupleQuery();
+        final Root<SearchRequest> idRoot = idQuery.from(SearchRequest.class);
+        final Path<Integer> id = idRoot.get(SearchRequest_.id);
+        idQuery.select(cb.tuple(id, idRoot.get(SearchRequest_.requestDate).get(ISODate_.dateAndTime)))
+                .where(cb.greaterThan(id, fromId))
+                .orderBy(cb.asc(id));
+
+        final String settled = settledBefore.getDateAndTime();
+        int toId = fromId;
+        int count = 0;
+        for (Tuple request : _EntityManager.createQuery(idQuery).setMaxResults(maxRequests).getResultList()) {
+            final String requestDate = request.get(1, String.class);
+            if (requestDate != null && requestDate.compareTo(settled) >= 0) {
+                break;
+            }
+            toId = request.get(0, Integer.class);
+            count++;
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        aggregateDays(fromId, toId);
+        aggregateTerms(fromId, toId);
+
+        // the requests without date don't update any rollup, the watermark must still move past them
+        SearchStatWatermark watermark = _EntityManager.find(SearchStatWatermark.class, SearchStatWatermark.ID);
+        if (watermark == null) {
+            watermark = new SearchStatWatermark();
+            _EntityManager.persist(watermark);
+        }
+        watermark.setLastRequestId(toId);
+        return count;
+    }
+
+    private void aggregateDays(int fromId, int toId) {
+        final CriteriaBuilder cb = _EntityManager.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> cbQuery = cb.createTupleQuery();
+        final Root<SearchRequest> requestRoot = cbQuery.from(SearchRequest.class);
+
+        final Path<Integer> id = requestRoot.get(SearchRequest_.id);
+        final Expression<String> day = cb.substring(requestRoot.get(SearchRequest_.requestDate).get(ISODate_.dateAndTime), 1,
+                SearchRequestDayStat.DAY_LENGTH);
+        final Path<String> service = requestRoot.get(SearchRequest_.service);
+
+        cbQuery.select(cb.tuple(day, service, cb.count(requestRoot),
+                countIf(cb, cb.equal(requestRoot.get(SearchRequest_.hits), 0)),
+                countIf(cb, cb.isTrue(requestRoot.get(SearchRequest_.autogenerated))),
+                countIf(cb, cb.isTrue(requestRoot.get(SearchRequest_.simple))),
+                cb.max(id)))
+                .where(cb.greaterThan(id, fromId), cb.lessThanOrEqualTo(id, toId))
+                .groupBy(day, service);
+        final List<Tuple> rollups = _EntityManager.createQuery(cbQuery).getResultList();
+
+        final Set<String> days = new HashSet<String>();
+        for (Tuple rollup : rollups) {
+            days.add(rollup.get(0, String.class));
+        }
+        days.remove(null);
+        final Map<List<String>, SearchRequestDayStat> stats = new HashMap<List<String>, SearchRequestDayStat>();
+        if (!days.isEmpty()) {
+            final CriteriaQuery<SearchRequestDayStat> statQuery = cb.createQuery(SearchRequestDayStat.class);
+            final Root<SearchRequestDayStat> statRoot = statQuery.from(SearchRequestDayStat.class);
+            statQuery.where(statRoot.get(SearchRequestDayStat_.day).in(days));
+            for (SearchRequestDayStat stat : _EntityManager.createQuery(statQuery).getResultList()) {
+                stats.put(Arrays.asList(stat.getDay(), stat.getService()), stat);
+            }
+        }
+
+        for (Tuple rollup : rollups) {
+            final String rollupDay = rollup.get(0, String.class);
+            if (rollupDay == null) {
+                // a request without date can not be added to a rollup
+                continue;
+            }
+            final String rollupService = rollup.get(1, String.class);
+            final List<String> key = Arrays.asList(rollupDay, rollupService);
+            SearchRequestDayStat stat = stats.get(key);
+            if (stat == null) {
+                stat = new SearchRequestDayStat();
+                stat.setDay(rollupDay);
+                stat.setService(rollupService);
+                _EntityManager.persist(stat);
+                stats.put(key, stat);
+            }
+            stat.setRequests(stat.getRequests() + intValue(rollup.get(2)));
+            stat.setNoHitRequests(stat.getNoHitRequests() + intValue(rollup.get(3)));
+            stat.setAutogeneratedRequests(stat.getAutogeneratedRequests() + intValue(rollup.get(4)));
+            stat.setSimpleRequests(stat.getSimpleRequests() + intValue(rollup.get(5)));
+            stat.setLastRequestId(Math.max(stat.getLastRequestId(), intValue(rollup.get(6))));
+        }
+    }
+
+    private void aggregateTerms(int fromId, int toId) {
+        final CriteriaBuilder cb = _EntityManager.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> cbQuery = cb.createTupleQuery();
+        final Root<SearchRequestParam> paramRoot = cbQuery.from(SearchRequestParam.class);
+        final Join<SearchRequestParam, SearchRequest> request = paramRoot.join(SearchRequestParam_.request);
+
+        final Path<Integer> id = request.get(SearchRequest_.id);
+        final Path<String> service = request.get(SearchRequest_.service);
+        final Path<String> termField = paramRoot.get(SearchRequestParam_.termField);
+        final Path<String> termText = paramRoot.get(SearchRequestParam_.termText);
+
+        // the same terms as the ones counted by SearchRequestParamRepositoryImpl#getTermTextToRequestCount
+        cbQuery.select(cb.tuple(service, termField, termText, cb.count(paramRoot)))
+                .where(cb.greaterThan(id, fromId), cb.lessThanOrEqualTo(id, toId),
+                        cb.not(cb.trim(termField).in(SearchRequestParamRepositoryImpl.TERMS_TO_EXCLUDE_FROM_TAG_CLOUD)),
+                        cb.notEqual(cb.trim(termText), ""))
+                .groupBy(service, termField, termText);
+        final List<Tuple> rollups = _EntityManager.createQuery(cbQuery).getResultList();
+
+        final List<String> texts = new ArrayList<String>(new HashSet<String>(Lists.transform(rollups,
+                new Function<Tuple, String>() {
+                    @Nullable
+                    @Override
+                    public String apply(@Nonnull Tuple rollup) {
+                        return rollup.get(2, String.class);
+                    }
+                })));
+        final Map<List<String>, SearchTermStat> stats = new HashMap<List<String>, SearchTermStat>();
+        for (int i = 0; i < texts.size(); i += MAX_TERMS_PER_QUERY) {
+            final CriteriaQuery<SearchTermStat> statQuery = cb.createQuery(SearchTermStat.class);
+            final Root<SearchTermStat> statRoot = statQuery.from(SearchTermStat.class);
+            statQuery.where(statRoot.get(SearchTermStat_.termText).in(texts.subList(i, Math.min(texts.size(), i + MAX_TERMS_PER_QUERY))));
+            for (SearchTermStat stat : _EntityManager.createQuery(statQuery).getResultList()) {
+                stats.put(Arrays.asList(stat.getService(), stat.getTermField(), stat.getTermText()), stat);
+            }
+        }
+
+        for (Tuple rollup : rollups) {
+            final List<String> key = Arrays.asList(rollup.get(0, String.class), rollup.get(1, String.class),
+                    rollup.get(2, String.class));
+            SearchTermStat stat = stats.get(key);
+            if (stat == null) {
+                stat = new SearchTermStat();
+                stat.setService(key.get(0));
+                stat.setTermField(key.get(1));
+                stat.setTermText(key.get(2));
+                _EntityManager.persist(stat);
+                stats.put(key, stat);
+            }
+            stat.setRequests(stat.getRequests() + intValue(rollup.get(3)));
+        }
+    }
+
+    private static Expression<Integer> countIf(CriteriaBuilder cb, Predicate condition) {
+        return cb.sum(cb.<Integer>selectCase().when(condition, 1).otherwise(0));
+    }
+
+    private static int intValue(@Nullable Object number) {
+        return number == null ? 0 : ((Number) number).intValue();
+    }
+}
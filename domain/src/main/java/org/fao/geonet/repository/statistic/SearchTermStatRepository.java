@@ -0,0 +1,12 @@
+package org.fao.geonet.repository.statistic;
+
+import org.fao.geonet.domain.statistic.SearchTermStat;
+import org.fao.geonet.repository.GeonetRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+
+/**
+ * Data Access object for accessing the {@link SearchTermStat} rollups.
+ */
+public interface SearchTermStatRepository extends GeonetRepository<SearchTermStat, Integer>,
+        JpaSpecificationExecutor<SearchTermStat>, SearchTermStatRepositoryCustom {
+}
@@ -0,0 +1,26 @@
+package org.fao.geonet.repository.statistic;
+
+import org.fao.geonet.domain.Pair;
+import org.fao.geonet.domain.statistic.SearchTermStat;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Custom query methods for querying the {@link SearchTermStat} rollups.
+ */
+public interface SearchTermStatRepositoryCustom {
+    /**
+     * Calculate the number of requests per search term, like
+     * {@link SearchRequestParamRepositoryCustom#getTermTextToRequestCount(int, Specification)} but from the rollups.
+     *
+     * @param limit         the max number of elements to show
+     * @param specification a specification to limit what values are returned.
+     * @return a list of search term to number of requests containing that search term.
+     */
+    @Nonnull
+    List<Pair<String, Integer>> getTermTextToRequestCount(@Nonnegative int limit, @Nullable Specification<SearchTermStat> specification);
+}
@@ -0,0 +1,56 @@
+package org.fao.geonet.repository.statistic;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import org.fao.geonet.domain.Pair;
+import org.fao.geonet.domain.statistic.SearchTermStat;
+import org.fao.geonet.domain.statistic.SearchTermStat_;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
+
+/**
+ * Implementation for the custom search methods of {@link SearchTermStatRepositoryCustom}.
+ */
+public class SearchTermStatRepositoryImpl implements SearchTermStatRepositoryCustom {
+    @PersistenceContext
+    EntityManager _EntityManager;
+
+    @Override
+    public List<Pair<String, Integer>> getTermTextToRequestCount(int limit, Specification<SearchTermStat> spec) {
+        final CriteriaBuilder cb = _EntityManager.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> cbQuery = cb.createQuery(Tuple.class);
+
+        final Root<SearchTermStat> statRoot = cbQuery.from(SearchTermStat.class);
+        final Path<String> termTextPath = statRoot.get(SearchTermStat_.termText);
+        final Expression<Integer> countExpr = cb.sum(statRoot.get(SearchTermStat_.requests));
+
+        cbQuery.select(cb.tuple(termTextPath, countExpr))
+                .groupBy(termTextPath)
+                .orderBy(cb.desc(countExpr));
+        if (spec != null) {
+            cbQuery.where(spec.toPredicate(statRoot, cbQuery, cb));
+        }
+
+        final TypedQuery<Tuple> query = _EntityManager.createQuery(cbQuery);
+        query.setMaxResults(limit);
+        return Lists.transform(query.getResultList(), new Function<Tuple, Pair<String, Integer>>() {
+            @Nullable
+            @Override
+            public Pair<String, Integer> apply(@Nonnull Tuple input) {
+                return Pair.read(input.get(0, String.class), ((Number) input.get(1)).intValue());
+            }
+        });
+    }
+}
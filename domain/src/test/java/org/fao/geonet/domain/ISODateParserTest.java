@@ -0,0 +1,143 @@
+package org.fao.geonet.domain;
+
+import org.fao.geonet.utils.Log;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that {@link ISODateParser} gives the same results as the generic (Joda-Time) parsing used before.
+ */
+public class ISODateParserTest {
+    private static final String[] DATE_TIMES = {
+            "2014-03-01",
+            "2014-03-01T10:20:30",
+            "2014-03-01T10:20:30.123",
+            "2014-03-01T10:20:30.1",
+            "2014-03-01T10:20:30Z",
+            "2014-03-01T10:20:30.123Z",
+            "2014-03-01T23:20:30+02:00",
+            "2014-03-01T01:20:30-0530",
+            "2014-12-31T23:59:59.999-01",
+            "2012-02-29T00:00:00+14:00"
+    };
+
+    @Test
+    public void testParseISODateTimeIsUnchanged() throws Exception {
+        for (String dateTime : DATE_TIMES) {
+            assertEquals(dateTime, legacyParseISODateTime(dateTime), ISODate.parseISODateTime(dateTime));
+        }
+    }
+
+    @Test
+    public void testParseISODateTimesIsUnchanged() throws Exception {
+        assertEquals(legacyParseISODateTime("2014-03-01T10:20:30Z") + "|" + legacyParseISODateTime("2014-03-05T10:20:30+01:00"),
+                ISODate.parseISODateTimes("2014-03-01T10:20:30Z", "2014-03-05T10:20:30+01:00"));
+        assertEquals("2014-03-01T10:20:30.000Z|2014-03-04T10:20:30.000Z",
+                ISODate.parseISODateTimes("2014-03-01T10:20:30Z", "P3D"));
+        // the basic format is still parsed by Joda-Time
+        assertEquals(legacyParseISODateTime("20140301T102030Z"), ISODate.parseISODateTime("20140301T102030Z"));
+    }
+
+    @Test
+    public void testShapes() {
+        ISODateParser parser = new ISODateParser();
+        assertTrue(parser.parse("2014-03-01T10:20:30.123Z"));
+        assertTrue(parser.canonical && parser.utc && parser.hasDate && parser.hasTime);
+        assertEquals(123, parser.millis);
+
+        assertTrue(parser.parse("99/6/3"));
+        assertFalse(parser.canonical);
+        assertEquals(2, parser.yearDigits);
+
+        assertTrue(parser.parse("T10:20"));
+        assertFalse(parser.hasDate);
+        assertTrue(parser.hasTime);
+
+        assertTrue(parser.parse("2014-03-01T10:20:30+01:30"));
+        assertTrue(parser.hasOffset);
+        assertEquals(90, parser.offsetMinutes);
+
+        assertFalse(parser.parse(""));
+        assertFalse(parser.parse("20140301"));
+        assertFalse(parser.parse("2014-03-01T10"));
+        assertFalse(parser.parse("2014-03-01T10:20:30+1"));
+        assertFalse(parser.parse("2014-03-01 10:20:30"));
+        assertFalse(parser.parse("10:20+01:00"));
+    }
+
+    @Test
+    public void testShiftToUtc() {
+        ISODateParser parser = new ISODateParser();
+        assertTrue(parser.parse("2014-01-01T01:20:30+02:00"));
+        parser.shiftToUtc();
+        assertEquals(2013, parser.year);
+        assertEquals(12, parser.month);
+        assertEquals(31, parser.day);
+        assertEquals(23, parser.hour);
+        assertEquals(20, parser.minute);
+        assertEquals(30, parser.second);
+    }
+
+    @Test
+    public void testFormatUtc() {
+        assertEquals("1970-01-01T00:00:00.000Z", ISODateParser.formatUtc(0));
+        assertEquals("1969-12-31T23:59:59.999Z", ISODateParser.formatUtc(-1));
+        assertEquals(ISODateTimeFormat.dateTime().withZone(DateTimeZone.UTC).print(1393669230123L),
+                ISODateParser.formatUtc(1393669230123L));
+        assertNull(ISODateParser.formatUtc(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    public void testSetDateAndTimeWithOffset() {
+        ISODate date = new ISODate();
+        date.setDateAndTime("2014-01-01T01:20:30+02:00");
+        assertEquals(2013, date.getYears());
+        assertEquals(12, date.getMonths());
+        assertEquals(31, date.getDays());
+        assertEquals(23, date.getHours());
+        assertEquals(20, date.getMinutes());
+        assertEquals(30, date.getSeconds());
+        assertFalse(date.isDateOnly());
+    }
+
+    @Test
+    public void benchmarkParseISODateTime() throws Exception {
+        int iterations = 20000;
+        long legacy = Long.MAX_VALUE;
+        long singlePass = Long.MAX_VALUE;
+        // best of a few runs, the first ones warm up both paths
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                legacyParseISODateTime(DATE_TIMES[i % DATE_TIMES.length]);
+            }
+            legacy = Math.min(legacy, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                ISODate.parseISODateTime(DATE_TIMES[i % DATE_TIMES.length]);
+            }
+            singlePass = Math.min(singlePass, System.nanoTime() - start);
+        }
+
+        Log.info(Constants.DOMAIN_LOG_MODULE, "ISO date time parsing, Joda-Time formatters: " + legacy / iterations
+                                              + "ns/date, single pass: " + singlePass / iterations + "ns/date");
+        assertTrue("single pass parsing (" + singlePass / iterations + "ns/date) is slower than the Joda-Time formatters ("
+                   + legacy / iterations + "ns/date)", singlePass < legacy);
+    }
+
+    /**
+     * The parsing of ISODate.parseISODateTime before the single pass parser: the Joda-Time basic and full formatters
+     * tried one after the other.
+     */
+    private static String legacyParseISODateTime(String dateTime) throws Exception {
+        return ISODateTimeFormat.dateTime().parseDateTime(ISODate.parseBasicOrFullDateTime(dateTime).toString())
+                .withZone(DateTimeZone.UTC).toString();
+    }
+}
@@ -202,6 +202,38 @@ public class MetadataRepositoryTest extends AbstractSpringDataTest {
         assertNotNull(allSourceInfo.get(metadata3.getId()));
     }
 
+    @Test
+    public void testFindAllHarvestedSummaries() throws Exception {
+        Metadata metadata = newMetadata();
+        metadata.getHarvestInfo().setUuid("harvester");
+        metadata.getHarvestInfo().setUri("http://remote/md1");
+        metadata = _repo.save(metadata);
+        Metadata metadata2 = newMetadata();
+        metadata2.getHarvestInfo().setUuid("harvester");
+        metadata2 = _repo.save(metadata2);
+        Metadata metadata3 = newMetadata();
+        metadata3.getHarvestInfo().setUuid("harvester");
+        metadata3 = _repo.save(metadata3);
+        _repo.save(newMetadata());
+
+        List<HarvestedMetadataSummary> firstPage = _repo.findAllHarvestedSummaries("harvester", -1, 2);
+        assertEquals(2, firstPage.size());
+        final HarvestedMetadataSummary summary = firstPage.get(0);
+        assertEquals(metadata.getId(), summary.getId());
+        assertEquals(metadata.getUuid(), summary.getUuid());
+        assertEquals(metadata.getDataInfo().getChangeDate(), summary.getChangeDate());
+        assertEquals(metadata.getDataInfo().getType(), summary.getType());
+        assertEquals("http://remote/md1", summary.getHarvestUri());
+        assertEquals(metadata2.getId(), firstPage.get(1).getId());
+
+        List<HarvestedMetadataSummary> secondPage = _repo.findAllHarvestedSummaries("harvester", firstPage.get(1).getId(), 2);
+        assertEquals(1, secondPage.size());
+        assertEquals(metadata3.getId(), secondPage.get(0).getId());
+        assertNull(secondPage.get(0).getHarvestUri());
+
+        assertTrue(_repo.findAllHarvestedSummaries("harvester", metadata3.getId(), 2).isEmpty());
+    }
+
     private Metadata updateChangeDate(Metadata metadata, String date) {
         metadata.getDataInfo().setChangeDate(new ISODate(date));
         return metadata;
@@ -0,0 +1,151 @@
+package org.fao.geonet.repository.statistic;
+
+import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.domain.Pair;
+import org.fao.geonet.domain.statistic.SearchRequest;
+import org.fao.geonet.domain.statistic.SearchRequestDayStat;
+import org.fao.geonet.domain.statistic.SearchRequestParam;
+import org.fao.geonet.repository.AbstractSpringDataTest;
+import org.fao.geonet.repository.specification.SearchTermStatSpecs;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test the incremental aggregation of the search requests log in the {@link SearchRequestDayStat} and
+ * {@link org.fao.geonet.domain.statistic.SearchTermStat} rollups.
+ */
+public class SearchRequestDayStatRepositoryTest extends AbstractSpringDataTest {
+    private static final ISODate NOW = new ISODate("2100-01-01T00:00:00");
+
+    @Autowired
+    SearchRequestRepository _requestRepo;
+    @Autowired
+    SearchRequestDayStatRepository _dayStatRepo;
+    @Autowired
+    SearchTermStatRepository _termStatRepo;
+
+    @PersistenceContext
+    EntityManager _entityManager;
+
+    @Test
+    public void testAggregateNewRequests() {
+        assertEquals(0, _dayStatRepo.aggregateNewRequests(100, NOW));
+        assertNull(_dayStatRepo.getOldestDay());
+
+        save("1980-10-10T00:00:00", "q", 0, "any", "water");
+        save("1980-10-10T10:11:00", "q", 3, "any", "water");
+        save("1980-10-10T10:11:00", "csw", 1, "_cat", "dataset");
+        save("1980-11-13T01:11:00", "q", 1, "any", "soil");
+
+        assertEquals(4, _dayStatRepo.aggregateNewRequests(100, NOW));
+        assertEquals(0, _dayStatRepo.aggregateNewRequests(100, NOW));
+
+        assertEquals(3, _dayStatRepo.count());
+        SearchRequestDayStat totals = _dayStatRepo.getTotals("q", null);
+        assertEquals(3, totals.getRequests());
+        assertEquals(1, totals.getNoHitRequests());
+        assertEquals(4, _dayStatRepo.getTotals(null, null).getRequests());
+        assertEquals(1, _dayStatRepo.getTotals(null, new ISODate("1980-11-01T00:00:00")).getRequests());
+        assertEquals("1980-10-10", _dayStatRepo.getOldestDay().getDateAsString());
+        assertEquals("1980-11-13", _dayStatRepo.getMostRecentDay().getDateAsString());
+
+        List<Pair<String, Integer>> terms = _termStatRepo.getTermTextToRequestCount(10, null);
+        assertEquals(2, terms.size());
+        assertEquals(Pair.read("water", 2), terms.get(0));
+        assertEquals(Pair.read("soil", 1), terms.get(1));
+
+        // only the new requests are added to the rollups
+        save("1980-11-13T05:00:00", "q", 0, "any", "water");
+        assertEquals(1, _dayStatRepo.aggregateNewRequests(100, NOW));
+        totals = _dayStatRepo.getTotals("q", null);
+        assertEquals(4, totals.getRequests());
+        assertEquals(2, totals.getNoHitRequests());
+        assertEquals(3, _dayStatRepo.count());
+        assertEquals(Pair.read("water", 3), _termStatRepo.getTermTextToRequestCount(1, null).get(0));
+        assertEquals(Pair.read("water", 3), _termStatRepo.getTermTextToRequestCount(10,
+                SearchTermStatSpecs.hasService("q")).get(0));
+    }
+
+    @Test
+    public void testAggregateInBatchesAndSettledRequests() {
+        save("1980-10-10T00:00:00", "q", 0, "any", "water");
+        save("1980-10-11T00:00:00", "q", 0, "any", "water");
+        save("1980-10-12T00:00:00", "q", 0, "any", "water");
+
+        assertEquals(2, _dayStatRepo.aggregateNewRequests(2, NOW));
+        assertEquals(0, _dayStatRepo.aggregateNewRequests(2, new ISODate("1980-10-12T00:00:00")));
+        assertEquals(1, _dayStatRepo.aggregateNewRequests(2, NOW));
+        assertEquals(3, _dayStatRepo.getTotals(null, null).getRequests());
+    }
+
+    @Test
+    public void testRequestsWithoutDateMoveTheWatermark() {
+        save("1980-10-10T00:00:00", "q", 0, "any", "water");
+        save(null, "q", 0, "any", "water");
+        final int lastWithoutDate = save(null, "q", 0, "any", "water");
+        save("1980-10-11T00:00:00", "q", 0, "any", "water");
+
+        assertEquals(1, _dayStatRepo.aggregateNewRequests(1, NOW));
+
+        // a batch of requests without date does not update any rollup but must not be scanned again
+        assertEquals(2, _dayStatRepo.aggregateNewRequests(2, NOW));
+        assertEquals(lastWithoutDate, _dayStatRepo.getLastAggregatedRequestId());
+        assertEquals(1, _dayStatRepo.getTotals(null, null).getRequests());
+
+        assertEquals(1, _dayStatRepo.aggregateNewRequests(2, NOW));
+        assertEquals(0, _dayStatRepo.aggregateNewRequests(2, NOW));
+        assertEquals(2, _dayStatRepo.getTotals(null, null).getRequests());
+        assertEquals(2, _dayStatRepo.count());
+    }
+
+    @Test
+    public void testGetRequestCountBetween() {
+        save("1980-10-10T00:00:00", "q", 0, "any", "water");
+        save("1980-10-10T10:11:00", "csw", 3, "any", "water");
+        save("1980-10-13T01:11:00", "q", 1, "any", "water");
+        save("1980-11-13T01:11:00", "q", 1, "any", "water");
+        _dayStatRepo.aggregateNewRequests(100, NOW);
+
+        final ISODate from = new ISODate("1980-10-01T00:00:00");
+        final ISODate to = new ISODate("1980-10-31T00:00:00");
+        List<Pair<DateInterval.Day, Integer>> byDay = _dayStatRepo.getRequestCountBetween(new DateInterval.Day(), from, to, null);
+        assertEquals(2, byDay.size());
+        assertEquals(Pair.read(new DateInterval.Day("1980-10-13"), 1), byDay.get(0));
+        assertEquals(Pair.read(new DateInterval.Day("1980-10-10"), 2), byDay.get(1));
+
+        byDay = _dayStatRepo.getRequestCountBetween(new DateInterval.Day(), from, to, "q");
+        assertEquals(Pair.read(new DateInterval.Day("1980-10-10"), 1), byDay.get(1));
+
+        List<Pair<DateInterval.Month, Integer>> byMonth = _dayStatRepo.getRequestCountBetween(new DateInterval.Month(), from,
+                new ISODate("1980-12-31T00:00:00"), null);
+        assertEquals(2, byMonth.size());
+        assertEquals(Pair.read(new DateInterval.Month("1980-11"), 1), byMonth.get(0));
+        assertEquals(Pair.read(new DateInterval.Month("1980-10"), 3), byMonth.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetRequestCountBetweenByHour() {
+        _dayStatRepo.getRequestCountBetween(new DateInterval.Hour(), new ISODate(), new ISODate(), null);
+    }
+
+    private int save(String date, String service, int hits, String termField, String termText) {
+        SearchRequest request = new SearchRequest();
+        request.setRequestDate(date == null ? null : new ISODate(date));
+        request.setService(service);
+        request.setHits(hits);
+        SearchRequestParam param = new SearchRequestParam();
+        param.setTermField(termField);
+        param.setTermText(termText);
+        request.addParam(param);
+        _requestRepo.save(request);
+        _entityManager.flush();
+        return request.getId();
+    }
+}
@@ -73,6 +73,7 @@ public class HarvestManagerImpl implements HarvestInfoProvider, HarvestManager {
     private String         xslPath;
     private ServiceContext context;
     private boolean readOnly;
+    private boolean jobListenerRegistered = false;
 
     private Map<String, AbstractHarvester> hmHarvesters   = new HashMap<String, AbstractHarvester>();
     private Map<String, AbstractHarvester> hmHarvestLookup= new HashMap<String, AbstractHarvester>();
@@ -84,9 +85,8 @@ public class HarvestManagerImpl implements HarvestInfoProvider, HarvestManager {
 	//---------------------------------------------------------------------------
 
     /**
-     * initialize the manager.
-     *
-     *
+     * initialize the manager.  Can be called again after a failure: the harvesters created by the previous call are
+     * unscheduled and created again.
      *
      * @param context service context
      * @throws Exception hmm
@@ -97,9 +97,19 @@ public class HarvestManagerImpl implements HarvestInfoProvider, HarvestManager {
         this.readOnly = isReadOnly;
         Log.debug(Geonet.HARVEST_MAN, "HarvesterManager initializing, READONLYMODE is " + this.readOnly);
 		xslPath    = context.getAppPath() + Geonet.Path.STYLESHEETS+ "/xml/harvesting/";
-		AbstractHarvester.getScheduler().getListenerManager().addJobListener(
-		        HarversterJobListener.getInstance(this));
-		
+		if (!jobListenerRegistered) {
+		    AbstractHarvester.getScheduler().getListenerManager().addJobListener(
+		            HarversterJobListener.getInstance(this));
+		    jobListenerRegistered = true;
+		}
+
+        //--- init is run again when the previous startup attempt failed: drop the harvesters it scheduled
+        for (AbstractHarvester ah : hmHarvesters.values()) {
+            ah.shutdown();
+        }
+        hmHarvesters.clear();
+        hmHarvestLookup.clear();
+
         final Element harvesting = settingMan.get("harvesting", -1);
         if (harvesting != null) {
             Element entries = harvesting.getChild("children");
@@ -0,0 +1,289 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.harvest;
+
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.DataManager;
+import org.fao.geonet.utils.BandwidthLimiter;
+import org.fao.geonet.utils.Log;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shares the resources of the node between the harvesters.  Each harvester is still triggered by its own Quartz job,
+ * but a harvest only starts once it is admitted by the scheduler:
+ * <ul>
+ *     <li>at most maxConcurrentHarvests harvests run at the same time;</li>
+ *     <li>at most maxConcurrentHarvestsPerHost harvests of the same remote host run at the same time;</li>
+ *     <li>among the waiting harvests, the one with the highest priority is admitted first, then the one of the
+ *     harvester which started the least recently, then the one which waited the longest;</li>
+ *     <li>a harvester which is already running or waiting is refused, so that a manual run and a scheduled run of the
+ *     same harvester can't overlap.</li>
+ * </ul>
+ * The scheduler also provides the bandwidth limiter shared by all the harvests and the indexing back-pressure: the
+ * harvesters call {@link #awaitIndexCapacity()} before fetching more records so that harvesting slows down when the
+ * node is busy indexing.
+ * <p/>
+ * A limit of 0 or less means no limit.
+ */
+public class HarvestScheduler {
+
+    /**
+     * A harvest admitted by (or waiting for) the scheduler.
+     */
+    public static final class Ticket {
+        private final String harvesterUuid;
+        private final String host;
+        private final int priority;
+        private final long sequence;
+
+        private Ticket(String harvesterUuid, String host, int priority, long sequence) {
+            this.harvesterUuid = harvesterUuid;
+            this.host = host;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        public String getHarvesterUuid() {
+            return harvesterUuid;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+    }
+
+    private static final long DEFAULT_INDEXING_POLL_INTERVAL = 500;
+    private static final long DEFAULT_MAX_INDEXING_WAIT = 60000;
+
+    @Autowired
+    private DataManager dataMan;
+
+    private int maxConcurrentHarvests;
+    private int maxConcurrentHarvestsPerHost;
+    private BandwidthLimiter bandwidthLimiter;
+    private int maxPendingIndexing;
+    private long indexingPollInterval = DEFAULT_INDEXING_POLL_INTERVAL;
+    private long maxIndexingWait = DEFAULT_MAX_INDEXING_WAIT;
+
+    private final List<Ticket> waiting = new ArrayList<Ticket>();
+    private final Map<String, Integer> runningPerHost = new HashMap<String, Integer>();
+    private final Map<String, Long> lastStarts = new HashMap<String, Long>();
+    /** the uuids of the harvesters running or waiting */
+    private final Set<String> harvesters = new HashSet<String>();
+    private int running;
+    private long sequence;
+    private long starts;
+
+    /**
+     * Wait until the harvest can start.  {@link #release(Ticket)} must be called when the harvest ends.
+     *
+     * @param harvesterUuid the uuid of the harvester.
+     * @param host the remote host harvested, null if the harvester does not access a remote host.
+     * @param priority the priority of the harvester, the higher the sooner.
+     * @return the ticket of the harvest or null if the harvester is already running or waiting, the harvest must not
+     * start.
+     * @throws InterruptedException if the thread is interrupted while waiting, the harvest must not start.
+     */
+    public synchronized Ticket acquire(String harvesterUuid, String host, int priority) throws InterruptedException {
+        if (!harvesters.add(harvesterUuid)) {
+            Log.info(Geonet.HARVEST_MAN, "Harvester " + harvesterUuid + " is already running or waiting to run");
+            return null;
+        }
+        final Ticket ticket = new Ticket(harvesterUuid, host == null ? null : host.toLowerCase(Locale.ENGLISH), priority,
+                sequence++);
+        waiting.add(ticket);
+        try {
+            if (next() != ticket) {
+                Log.info(Geonet.HARVEST_MAN, "Harvester " + harvesterUuid + " is waiting for a free harvest slot ("
+                                             + running + " harvests running, " + waiting.size() + " waiting)");
+                while (next() != ticket) {
+                    wait();
+                }
+            }
+        } catch (InterruptedException e) {
+            harvesters.remove(harvesterUuid);
+            throw e;
+        } finally {
+            waiting.remove(ticket);
+            // the other waiting harvests check again once this method returns: several slots may be free, or this
+            // harvest was interrupted
+            notifyAll();
+        }
+
+        running++;
+        if (ticket.host != null) {
+            runningPerHost.put(ticket.host, getRunning(ticket.host) + 1);
+        }
+        lastStarts.put(harvesterUuid, ++starts);
+        return ticket;
+    }
+
+    /**
+     * Release the slot of a harvest which ended.
+     */
+    public synchronized void release(Ticket ticket) {
+        running--;
+        harvesters.remove(ticket.harvesterUuid);
+        if (ticket.host != null) {
+            int hostRunning = getRunning(ticket.host) - 1;
+            if (hostRunning > 0) {
+                runningPerHost.put(ticket.host, hostRunning);
+            } else {
+                runningPerHost.remove(ticket.host);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Get the waiting ticket admitted next.
+     *
+     * @return the ticket or null if no waiting harvest can start now.
+     */
+    private Ticket next() {
+        if (maxConcurrentHarvests > 0 && running >= maxConcurrentHarvests) {
+            return null;
+        }
+        Ticket best = null;
+        for (Ticket ticket : waiting) {
+            if (ticket.host != null && maxConcurrentHarvestsPerHost > 0
+                && getRunning(ticket.host) >= maxConcurrentHarvestsPerHost) {
+                continue;
+            }
+            if (best == null || isBefore(ticket, best)) {
+                best = ticket;
+            }
+        }
+        return best;
+    }
+
+    private boolean isBefore(Ticket ticket, Ticket other) {
+        if (ticket.priority != other.priority) {
+            return ticket.priority > other.priority;
+        }
+        long lastStart = getLastStart(ticket.harvesterUuid);
+        long otherLastStart = getLastStart(other.harvesterUuid);
+        if (lastStart != otherLastStart) {
+            return lastStart < otherLastStart;
+        }
+        return ticket.sequence < other.sequence;
+    }
+
+    private long getLastStart(String harvesterUuid) {
+        Long lastStart = lastStarts.get(harvesterUuid);
+        return lastStart == null ? 0 : lastStart;
+    }
+
+    private int getRunning(String host) {
+        Integer hostRunning = runningPerHost.get(host);
+        return hostRunning == null ? 0 : hostRunning;
+    }
+
+    /**
+     * @return the number of harvests running.
+     */
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    /**
+     * @return the number of harvests waiting for a slot.
+     */
+    public synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    /**
+     * Wait while the node is busy indexing, at most maxIndexingWait milliseconds so that a harvest always makes
+     * progress.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void awaitIndexCapacity() throws InterruptedException {
+        if (maxPendingIndexing <= 0) {
+            return;
+        }
+        final long deadline = System.currentTimeMillis() + maxIndexingWait;
+        while (dataMan.getIndexingCount() >= maxPendingIndexing && System.currentTimeMillis() < deadline) {
+            Thread.sleep(indexingPollInterval);
+        }
+    }
+
+    /**
+     * Get the limiter shared by all the harvests.
+     *
+     * @return the limiter or null if the bandwidth is not limited.
+     */
+    public BandwidthLimiter getBandwidthLimiter() {
+        return bandwidthLimiter;
+    }
+
+    public synchronized void setMaxConcurrentHarvests(int maxConcurrentHarvests) {
+        this.maxConcurrentHarvests = maxConcurrentHarvests;
+        notifyAll();
+    }
+
+    public synchronized void setMaxConcurrentHarvestsPerHost(int maxConcurrentHarvestsPerHost) {
+        this.maxConcurrentHarvestsPerHost = maxConcurrentHarvestsPerHost;
+        notifyAll();
+    }
+
+    /**
+     * Set the number of bytes per second all the harvests can read from the remote nodes together.
+     */
+    public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        this.bandwidthLimiter = maxBytesPerSecond > 0 ? new BandwidthLimiter(maxBytesPerSecond) : null;
+    }
+
+    /**
+     * Set the indexing load (see {@link DataManager#getIndexingCount()}) above which the harvests stop fetching records.
+     */
+    public void setMaxPendingIndexing(int maxPendingIndexing) {
+        this.maxPendingIndexing = maxPendingIndexing;
+    }
+
+    public void setIndexingPollInterval(long indexingPollInterval) {
+        this.indexingPollInterval = indexingPollInterval;
+    }
+
+    public void setMaxIndexingWait(long maxIndexingWait) {
+        this.maxIndexingWait = maxIndexingWait;
+    }
+
+    void setDataManager(DataManager dataMan) {
+        this.dataMan = dataMan;
+    }
+}
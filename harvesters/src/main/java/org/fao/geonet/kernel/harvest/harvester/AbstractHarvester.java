@@ -43,11 +43,13 @@ import org.fao.geonet.kernel.GeonetworkDataDirectory;
 import org.fao.geonet.kernel.MetadataIndexerProcessor;
 import org.fao.geonet.kernel.harvest.Common.OperResult;
 import org.fao.geonet.kernel.harvest.Common.Status;
+import org.fao.geonet.kernel.harvest.HarvestScheduler;
 import org.fao.geonet.kernel.setting.HarvesterSettingsManager;
 import org.fao.geonet.repository.*;
 import org.fao.geonet.repository.specification.MetadataSpecs;
 import org.fao.geonet.resources.Resources;
 import org.fao.geonet.services.harvesting.notifier.SendNotification;
+import org.fao.geonet.utils.BandwidthLimiter;
 import org.fao.geonet.utils.Log;
 import org.fao.geonet.utils.QuartzSchedulerUtils;
 import org.jdom.Element;
@@ -333,7 +335,8 @@ public abstract class AbstractHarvester<T extends HarvestResult> {
     /**
      * Run the harvester in the synchronously (in the current thread) and return whether the harvest correctly completed.
      *
-     * @return {@link OperResult#OK} or {@link OperResult#ERROR}
+     * @return {@link OperResult#OK}, {@link OperResult#ALREADY_RUNNING} if the harvester is already running or
+     * {@link OperResult#ERROR}
      */
     public synchronized OperResult invoke() {
         Status oldStatus = status;
@@ -478,10 +481,37 @@ public abstract class AbstractHarvester<T extends HarvestResult> {
     }
 
     /**
-     * Run the harvest process.
+     * Run the harvest process once the {@link HarvestScheduler} admits it.  The bandwidth limiter of the scheduler
+     * applies to the requests executed by the harvest.
      * This has to be protected or better for CGLib to proxy to it./
      */
-    protected synchronized OperResult harvest() {
+    protected OperResult harvest() {
+        final AbstractParams harvestParams = getParams();
+        final HarvestScheduler.Ticket ticket;
+        try {
+            ticket = harvestScheduler.acquire(harvestParams.uuid, harvestParams.getRemoteHost(), harvestParams.priority);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warning("Harvest of " + harvestParams.name + " was interrupted while waiting to start");
+            return OperResult.ERROR;
+        }
+        if (ticket == null) {
+            log.warning("Harvest of " + harvestParams.name + " is already running or waiting to start, not started again");
+            return OperResult.ALREADY_RUNNING;
+        }
+        BandwidthLimiter.bind(harvestScheduler.getBandwidthLimiter());
+        try {
+            return harvestNow();
+        } finally {
+            BandwidthLimiter.unbind();
+            harvestScheduler.release(ticket);
+        }
+    }
+
+    /**
+     * Run the harvest process in the current thread.
+     */
+    private synchronized OperResult harvestNow() {
         OperResult operResult = OperResult.OK;
         running = true;
         try {
@@ -658,6 +688,9 @@ public abstract class AbstractHarvester<T extends HarvestResult> {
         removeIcon(getParams().uuid);
 
         context.getBean(SourceRepository.class).delete(getParams().uuid);
+
+        final HarvesterDataRepository harvesterDataRepository = context.getBean(HarvesterDataRepository.class);
+        harvesterDataRepository.delete(harvesterDataRepository.findAllById_HarvesterUuid(getParams().uuid));
         // FIXME: Should also delete the categories we have created for servers
     }
 
@@ -752,6 +785,10 @@ public abstract class AbstractHarvester<T extends HarvestResult> {
 
         settingMan.add("id:" + optionsId, "every", params.every);
         settingMan.add("id:" + optionsId, "oneRunOnly", params.oneRunOnly);
+        settingMan.add("id:" + optionsId, "fetchThreads", params.fetchThreads);
+        settingMan.add("id:" + optionsId, "transformThreads", params.transformThreads);
+        settingMan.add("id:" + optionsId, "indexThreads", params.indexThreads);
+        settingMan.add("id:" + optionsId, "priority", params.priority);
         settingMan.add("id:" + optionsId, "status", status);
 
         //--- setup content node ---------------------------------------
@@ -930,6 +967,8 @@ public abstract class AbstractHarvester<T extends HarvestResult> {
     protected HarvesterSettingsManager settingMan;
     @Autowired
     protected DataManager dataMan;
+    @Autowired
+    protected HarvestScheduler harvestScheduler;
 
     protected AbstractParams params;
     protected T result;
@@ -40,6 +40,8 @@ import org.jdom.Element;
 import org.quartz.JobDetail;
 import org.quartz.Trigger;
 
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -122,6 +124,12 @@ public abstract class AbstractParams {
 		every      = Util.getParam(opt, "every",      "0 0 0 * * ?" );
 		
 		oneRunOnly = Util.getParam(opt, "oneRunOnly", false);
+
+		fetchThreads     = Util.getParam(opt, "fetchThreads",     DEFAULT_THREADS);
+		transformThreads = Util.getParam(opt, "transformThreads", DEFAULT_THREADS);
+		indexThreads     = Util.getParam(opt, "indexThreads",     DEFAULT_THREADS);
+		priority         = Util.getParam(opt, "priority",         0);
+		remoteHost       = getRemoteHost(site, null);
 		
 		getTrigger();
 
@@ -176,6 +184,12 @@ public abstract class AbstractParams {
 		every      = Util.getParam(opt, "every",      every);
 		oneRunOnly = Util.getParam(opt, "oneRunOnly", oneRunOnly);
 
+		fetchThreads     = Util.getParam(opt, "fetchThreads",     fetchThreads);
+		transformThreads = Util.getParam(opt, "transformThreads", transformThreads);
+		indexThreads     = Util.getParam(opt, "indexThreads",     indexThreads);
+		priority         = Util.getParam(opt, "priority",         priority);
+		remoteHost       = getRemoteHost(site, remoteHost);
+
 		getTrigger();
 		
 		importXslt = Util.getParam(content, "importxslt", importXslt);
@@ -232,6 +246,12 @@ public abstract class AbstractParams {
 		copy.every      = every;
 		copy.oneRunOnly = oneRunOnly;
 
+		copy.fetchThreads     = fetchThreads;
+		copy.transformThreads = transformThreads;
+		copy.indexThreads     = indexThreads;
+		copy.priority         = priority;
+		copy.remoteHost       = remoteHost;
+
 		copy.importXslt = importXslt;
 		copy.validate   = validate;
 
@@ -246,6 +266,44 @@ public abstract class AbstractParams {
 		copy.node = node;
 	}
 
+    /**
+     * Get the remote host harvested, used by the {@link org.fao.geonet.kernel.harvest.HarvestScheduler} to limit the
+     * number of harvests of the same host running at the same time.
+     *
+     * @return the host or null if the harvester does not access a remote host.
+     */
+	public String getRemoteHost() {
+		return remoteHost;
+	}
+
+    /**
+     * Get the remote host from the first address of the site configuration: an url (url, capabilitiesUrl, baseUrl or
+     * the host of the GeoNetwork harvesters) or a host name (host or server).
+     *
+     * @param defaultValue the host returned when the site does not contain an address.
+     * @return the host or null if the address is not valid.
+     */
+	private static String getRemoteHost(Element site, String defaultValue) {
+		if (site == null) {
+			return defaultValue;
+		}
+		for (String name : REMOTE_ADDRESS_ELEMENTS) {
+			String address = site.getChildTextTrim(name);
+			if (StringUtils.isEmpty(address)) {
+				continue;
+			}
+			if (!address.contains("://")) {
+				return address;
+			}
+			try {
+				return new URL(address).getHost();
+			} catch (MalformedURLException e) {
+				return null;
+			}
+		}
+		return defaultValue;
+	}
+
     /**
      *
      * @return
@@ -410,6 +468,22 @@ public abstract class AbstractParams {
 	String  every;
 	public boolean oneRunOnly;
 
+    /**
+     * Number of threads of each stage of the {@link HarvestPipeline}: retrieval of the records, conversion and
+     * indexing.
+     */
+	public int fetchThreads     = DEFAULT_THREADS;
+	public int transformThreads = DEFAULT_THREADS;
+	public int indexThreads     = DEFAULT_THREADS;
+
+    /**
+     * Priority of the harvester in the {@link org.fao.geonet.kernel.harvest.HarvestScheduler} queue, the higher the
+     * sooner.
+     */
+	public int priority;
+
+	private String remoteHost;
+
 	public boolean validate;
 	public String importXslt;
 
@@ -431,4 +505,6 @@ public abstract class AbstractParams {
 	private List<String> alCategories = new ArrayList<String>();
 
 	private static final long MAX_EVERY = Integer.MAX_VALUE;
+	private static final int DEFAULT_THREADS = 1;
+	private static final String[] REMOTE_ADDRESS_ELEMENTS = {"url", "capabilitiesUrl", "baseUrl", "host", "server"};
 }
\ No newline at end of file
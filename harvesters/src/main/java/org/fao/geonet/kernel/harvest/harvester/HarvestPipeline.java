@@ -0,0 +1,352 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.harvest.harvester;
+
+import org.fao.geonet.Logger;
+import org.fao.geonet.kernel.DataManager;
+import org.fao.geonet.kernel.harvest.HarvestScheduler;
+import org.fao.geonet.utils.BandwidthLimiter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the records of a harvest through separate stages connected by bounded queues, so that the remote node, the
+ * CPU and the database are kept busy at the same time:
+ * <ol>
+ *     <li>fetch: retrieves a record from its reference (fetchThreads threads)</li>
+ *     <li>transform: converts the record, eg. with an XSLT (transformThreads threads)</li>
+ *     <li>store: inserts or updates the record in the database, in the calling thread so that the
+ *     database is accessed like in a sequential harvest</li>
+ *     <li>index: indexes the stored records in batches (indexThreads threads)</li>
+ * </ol>
+ * A stage returning null drops the record.  An exception thrown by a stage is added to the errors of the harvest
+ * and only drops the record it was thrown for.
+ * <p/>
+ * If a {@link HarvestScheduler} is set, the fetchers wait while the node is busy indexing.
+ *
+ * @param <R> the type of the record references (eg. a file or an uuid).
+ * @param <F> the type of the fetched records.
+ * @param <T> the type of the transformed records.
+ */
+public class HarvestPipeline<R, F, T> {
+
+    /**
+     * One stage of the pipeline.
+     */
+    public interface Stage<R, I, O> {
+        /**
+         * Process one record.
+         *
+         * @param ref the reference of the record.
+         * @param input the output of the previous stage for this record.
+         * @return the output of the stage or null to drop the record.
+         */
+        O process(R ref, I input) throws Exception;
+    }
+
+    private static final int QUEUE_CAPACITY_PER_THREAD = 10;
+    private static final int DEFAULT_INDEX_BATCH_SIZE = 50;
+
+    private final Logger log;
+    private final DataManager dataMan;
+    private final String name;
+
+    private Stage<R, R, F> fetcher;
+    private Stage<R, F, T> transformer;
+    private Stage<R, T, String> store;
+
+    private int fetchThreads = 1;
+    private int transformThreads = 1;
+    private int indexThreads = 1;
+    private int indexBatchSize = DEFAULT_INDEX_BATCH_SIZE;
+    private HarvestScheduler scheduler;
+
+    /**
+     * @param name the name used for the threads of the pipeline.
+     * @param log the logger of the harvest.
+     * @param dataMan the data manager used to index the stored records.
+     */
+    public HarvestPipeline(String name, Logger log, DataManager dataMan) {
+        this.name = name;
+        this.log = log;
+        this.dataMan = dataMan;
+    }
+
+    /**
+     * Set the stage retrieving the records.
+     */
+    public HarvestPipeline<R, F, T> setFetcher(Stage<R, R, F> fetcher) {
+        this.fetcher = fetcher;
+        return this;
+    }
+
+    /**
+     * Set the stage converting the records.
+     */
+    public HarvestPipeline<R, F, T> setTransformer(Stage<R, F, T> transformer) {
+        this.transformer = transformer;
+        return this;
+    }
+
+    /**
+     * Set the stage storing the records.  It returns the id of the metadata to index, or null if the metadata
+     * does not have to be indexed.
+     */
+    public HarvestPipeline<R, F, T> setStore(Stage<R, T, String> store) {
+        this.store = store;
+        return this;
+    }
+
+    /**
+     * Set the number of threads of the stages from the harvester parameters.
+     */
+    public HarvestPipeline<R, F, T> setThreads(AbstractParams params) {
+        this.fetchThreads = Math.max(1, params.fetchThreads);
+        this.transformThreads = Math.max(1, params.transformThreads);
+        this.indexThreads = Math.max(1, params.indexThreads);
+        return this;
+    }
+
+    /**
+     * Set the number of metadata indexed together.
+     */
+    public HarvestPipeline<R, F, T> setIndexBatchSize(int indexBatchSize) {
+        this.indexBatchSize = Math.max(1, indexBatchSize);
+        return this;
+    }
+
+    /**
+     * Set the scheduler providing the indexing back-pressure, null to fetch the records as fast as possible.
+     */
+    public HarvestPipeline<R, F, T> setScheduler(HarvestScheduler scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    /**
+     * Run all the records through the pipeline.  Returns when all the records are stored and indexed.
+     *
+     * @param refs the references of the records to harvest.
+     * @param errors the list the errors are added to.
+     */
+    public void run(Iterable<R> refs, final List<HarvestError> errors) throws Exception {
+        final Iterator<R> refIterator = refs.iterator();
+        final BlockingQueue<Item<F>> fetched = new ArrayBlockingQueue<Item<F>>(transformThreads * QUEUE_CAPACITY_PER_THREAD);
+        final BlockingQueue<Item<T>> transformed = new ArrayBlockingQueue<Item<T>>(transformThreads * QUEUE_CAPACITY_PER_THREAD);
+        final BlockingQueue<List<String>> toIndex = new ArrayBlockingQueue<List<String>>(indexThreads * 2);
+        final Item<F> endOfFetched = new Item<F>(null, null);
+        final Item<T> endOfTransformed = new Item<T>(null, null);
+        final List<String> endOfIndex = new ArrayList<String>();
+
+        ExecutorService fetchPool = Executors.newFixedThreadPool(fetchThreads, new StageThreadFactory("fetch"));
+        ExecutorService transformPool = Executors.newFixedThreadPool(transformThreads, new StageThreadFactory("transform"));
+        ExecutorService indexPool = Executors.newFixedThreadPool(indexThreads, new StageThreadFactory("index"));
+        try {
+            //--- fetch: the last fetcher to finish tells the transformers that there are no more records
+
+            final AtomicInteger runningFetchers = new AtomicInteger(fetchThreads);
+            for (int i = 0; i < fetchThreads; i++) {
+                fetchPool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            R ref;
+                            while ((ref = nextRef(refIterator)) != null) {
+                                if (scheduler != null) {
+                                    scheduler.awaitIndexCapacity();
+                                }
+                                F record = process(fetcher, ref, ref, errors);
+                                if (record != null) {
+                                    fetched.put(new Item<F>(ref, record));
+                                }
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            if (runningFetchers.decrementAndGet() == 0) {
+                                putEnd(fetched, endOfFetched, transformThreads);
+                            }
+                        }
+                    }
+                });
+            }
+
+            //--- transform: the last transformer to finish tells the store that there are no more records
+
+            final AtomicInteger runningTransformers = new AtomicInteger(transformThreads);
+            for (int i = 0; i < transformThreads; i++) {
+                transformPool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Item<F> item;
+                            while ((item = fetched.take()) != endOfFetched) {
+                                T record = process(transformer, item.ref, item.value, errors);
+                                if (record != null) {
+                                    transformed.put(new Item<T>(item.ref, record));
+                                }
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            if (runningTransformers.decrementAndGet() == 0) {
+                                putEnd(transformed, endOfTransformed, 1);
+                            }
+                        }
+                    }
+                });
+            }
+
+            //--- index
+
+            for (int i = 0; i < indexThreads; i++) {
+                indexPool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            List<String> ids;
+                            while ((ids = toIndex.take()) != endOfIndex) {
+                                try {
+                                    dataMan.indexMetadata(ids);
+                                } catch (Throwable t) {
+                                    addError(errors, t, "Unable to index metadata " + ids);
+                                }
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+
+            //--- store in this thread
+
+            List<String> batch = new ArrayList<String>();
+            Item<T> item;
+            while ((item = transformed.take()) != endOfTransformed) {
+                String id = process(store, item.ref, item.value, errors);
+                if (id != null) {
+                    batch.add(id);
+                    if (batch.size() >= indexBatchSize) {
+                        dataMan.flush();
+                        toIndex.put(batch);
+                        batch = new ArrayList<String>();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                dataMan.flush();
+                toIndex.put(batch);
+            }
+            for (int i = 0; i < indexThreads; i++) {
+                toIndex.put(endOfIndex);
+            }
+
+            indexPool.shutdown();
+            indexPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            fetchPool.shutdownNow();
+            transformPool.shutdownNow();
+            indexPool.shutdownNow();
+        }
+    }
+
+    private R nextRef(Iterator<R> refIterator) {
+        synchronized (refIterator) {
+            return refIterator.hasNext() ? refIterator.next() : null;
+        }
+    }
+
+    /**
+     * Tell the consumers of a queue that there are no more records.  If the pipeline is being aborted there is no
+     * consumer left to tell.
+     */
+    private <E> void putEnd(BlockingQueue<E> queue, E end, int consumers) {
+        try {
+            for (int i = 0; i < consumers; i++) {
+                queue.put(end);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <I, O> O process(Stage<R, I, O> stage, R ref, I input, List<HarvestError> errors) {
+        try {
+            return stage.process(ref, input);
+        } catch (Throwable t) {
+            addError(errors, t, "Unable to process record " + ref + " harvested by " + name);
+            return null;
+        }
+    }
+
+    private void addError(List<HarvestError> errors, Throwable t, String message) {
+        log.error(message);
+        log.error("   Error is: " + t.getMessage());
+        synchronized (errors) {
+            errors.add(new HarvestError(t, log));
+        }
+    }
+
+    /**
+     * A record with its reference.
+     */
+    private class Item<V> {
+        final R ref;
+        final V value;
+
+        Item(R ref, V value) {
+            this.ref = ref;
+            this.value = value;
+        }
+    }
+
+    private class StageThreadFactory implements ThreadFactory {
+        private final String stage;
+        private final AtomicInteger count = new AtomicInteger();
+        // the stage threads read the remote resources with the bandwidth limit of the harvest
+        private final BandwidthLimiter limiter = BandwidthLimiter.getCurrent();
+
+        StageThreadFactory(String stage) {
+            this.stage = stage;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(BandwidthLimiter.wrap(limiter, r), "harvest-" + name + "-" + stage + "-"
+                                                                       + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
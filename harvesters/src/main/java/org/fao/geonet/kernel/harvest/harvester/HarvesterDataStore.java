@@ -0,0 +1,222 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.harvest.harvester;
+
+import org.fao.geonet.domain.HarvesterData;
+import org.fao.geonet.domain.HarvesterDataId;
+import org.fao.geonet.repository.HarvesterDataRepository;
+import org.fao.geonet.util.Sha1Encoder;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Values a harvester keeps from one harvest to the next (checkpoints, validators of the remote documents...), stored
+ * as {@link HarvesterData} of the harvester.
+ * <p/>
+ * The keys of a store start with a prefix, so that the stores of a harvester do not see the values of each other.  A
+ * key too long to be stored is replaced by its digest, and a value too long to be stored is not stored.
+ * <p/>
+ * A store created with a signature of the parameters of the harvester discards its values when it is loaded with
+ * another signature, ie. when the parameters which change the harvested records were modified.
+ */
+public class HarvesterDataStore {
+    /**
+     * The maximum length of the keys and of the values.
+     */
+    public static final int MAX_LENGTH = 255;
+    private static final String SIGNATURE_KEY = "signature";
+    private static final String DIGEST_PREFIX = "sha1:";
+
+    private final HarvesterDataRepository repository;
+    private final String harvesterUuid;
+    private final String prefix;
+    private final String signature;
+
+    private final Map<String, HarvesterData> stored = new HashMap<String, HarvesterData>();
+
+    /**
+     * @param repository the repository the values are stored in.
+     * @param harvesterUuid the uuid of the harvester.
+     * @param prefix the prefix of the keys of the store, eg. "oaipmh:".
+     * @param signature the signature of the parameters of the harvester the values are valid for, null if the values
+     *                  do not depend on the parameters.
+     */
+    public HarvesterDataStore(HarvesterDataRepository repository, String harvesterUuid, String prefix,
+                              @Nullable String signature) {
+        this.repository = repository;
+        this.harvesterUuid = harvesterUuid;
+        this.prefix = prefix;
+        this.signature = signature;
+    }
+
+    /**
+     * Load the values stored by the previous harvests, discarding them if the signature changed.
+     *
+     * @return false if the values were discarded.
+     */
+    public synchronized boolean load() {
+        stored.clear();
+        for (HarvesterData data : repository.findAllById_HarvesterUuid(harvesterUuid)) {
+            if (data.getId().getKey().startsWith(prefix)) {
+                stored.put(data.getId().getKey(), data);
+            }
+        }
+
+        if (signature == null) {
+            return true;
+        }
+        HarvesterData storedSignature = stored.get(prefix + SIGNATURE_KEY);
+        if (storedSignature != null && storedSignature.getValue().equals(signature)) {
+            return true;
+        }
+
+        discard();
+        save(prefix + SIGNATURE_KEY, signature);
+        return false;
+    }
+
+    /**
+     * Get a value.
+     *
+     * @return the value or null if it is not stored.
+     */
+    public synchronized String get(String key) {
+        HarvesterData data = stored.get(getKey(key));
+        return data == null ? null : data.getValue();
+    }
+
+    /**
+     * Store a value, or remove it if null.
+     *
+     * @return false if the value is too long to be stored, the previous value is then kept.
+     */
+    public synchronized boolean put(String key, @Nullable String value) {
+        if (value == null) {
+            delete(key);
+            return true;
+        }
+        if (value.length() > MAX_LENGTH) {
+            return false;
+        }
+        save(getKey(key), value);
+        return true;
+    }
+
+    /**
+     * Store several values in one call to the repository.  The values too long to be stored are skipped.
+     */
+    public synchronized void putAll(Map<String, String> values) {
+        List<HarvesterData> toSave = new ArrayList<HarvesterData>();
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            if (value.getValue() == null || value.getValue().length() > MAX_LENGTH) {
+                continue;
+            }
+            toSave.add(create(getKey(value.getKey()), value.getValue()));
+        }
+        if (toSave.isEmpty()) {
+            return;
+        }
+        for (HarvesterData data : repository.save(toSave)) {
+            stored.put(data.getId().getKey(), data);
+        }
+    }
+
+    /**
+     * Remove a value.
+     */
+    public synchronized void delete(String key) {
+        HarvesterData data = stored.remove(getKey(key));
+        if (data != null) {
+            repository.delete(data);
+        }
+    }
+
+    /**
+     * Remove all the values but the ones of the keys.
+     */
+    public synchronized void retain(Collection<String> keys) {
+        Set<String> retained = new HashSet<String>();
+        retained.add(prefix + SIGNATURE_KEY);
+        for (String key : keys) {
+            retained.add(getKey(key));
+        }
+
+        List<HarvesterData> obsolete = new ArrayList<HarvesterData>();
+        for (HarvesterData data : stored.values()) {
+            if (!retained.contains(data.getId().getKey())) {
+                obsolete.add(data);
+            }
+        }
+        remove(obsolete);
+    }
+
+    /**
+     * Remove all the values.
+     */
+    public synchronized void discard() {
+        List<HarvesterData> obsolete = new ArrayList<HarvesterData>(stored.values());
+        remove(obsolete);
+    }
+
+    //---------------------------------------------------------------------------
+
+    private void remove(List<HarvesterData> obsolete) {
+        if (obsolete.isEmpty()) {
+            return;
+        }
+        for (HarvesterData data : obsolete) {
+            stored.remove(data.getId().getKey());
+        }
+        repository.delete(obsolete);
+    }
+
+    private void save(String storedKey, String value) {
+        stored.put(storedKey, repository.save(create(storedKey, value)));
+    }
+
+    private HarvesterData create(String storedKey, String value) {
+        HarvesterData data = stored.get(storedKey);
+        if (data == null) {
+            data = new HarvesterData();
+            data.setId(new HarvesterDataId(harvesterUuid, storedKey));
+        }
+        data.setValue(value);
+        return data;
+    }
+
+    private String getKey(String key) {
+        String storedKey = prefix + key;
+        if (storedKey.length() > MAX_LENGTH) {
+            storedKey = prefix + DIGEST_PREFIX + Sha1Encoder.encodeString(key);
+        }
+        return storedKey;
+    }
+}
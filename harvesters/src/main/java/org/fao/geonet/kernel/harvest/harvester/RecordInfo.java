@@ -25,6 +25,7 @@ package org.fao.geonet.kernel.harvest.harvester;
 
 import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.repository.HarvestedMetadataSummary;
 import org.jdom.Element;
 
 //=============================================================================
@@ -79,6 +80,14 @@ public class RecordInfo
         changeDate = record.getDataInfo().getChangeDate().getDateAndTime();
     }
 
+    public RecordInfo(HarvestedMetadataSummary record)
+    {
+        id         = "" + record.getId();
+        uuid       = record.getUuid();
+        isTemplate = record.getType().codeString;
+        changeDate = record.getChangeDate().getDateAndTime();
+    }
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- API methods
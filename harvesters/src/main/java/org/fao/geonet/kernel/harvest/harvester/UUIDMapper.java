@@ -23,26 +23,25 @@
 
 package org.fao.geonet.kernel.harvest.harvester;
 
-import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.repository.HarvestedMetadataSummary;
 import org.fao.geonet.repository.MetadataRepository;
 
 import java.util.HashMap;
 import java.util.List;
 
-import static org.fao.geonet.repository.specification.MetadataSpecs.hasHarvesterUuid;
-import static org.springframework.data.jpa.domain.Specifications.where;
-
 //=============================================================================
 
-/** Create a mapping remote ID -> local ID / change date. Retrieves all metadata
-  * of a given siteID and puts them into an hashmap.
+/** Create a mapping remote ID -> local ID / change date. Retrieves the id, uuid,
+  * change date and type of all metadata of a given siteID and puts them into an
+  * hashmap. The metadata themselves are not loaded and the summaries are read in
+  * pages so that large harvests do not fill the persistence context.
   */
 
 public class UUIDMapper
 {
-	private HashMap<String, String> hmUuidDate 		 = new HashMap<String, String>();
-	private HashMap<String, String> hmUuidId   		 = new HashMap<String, String>();
-	private HashMap<String, String> hmUuidTemplate = new HashMap<String, String>();
+	static final int PAGE_SIZE = 1000;
+
+	private HashMap<String, HarvestedMetadataSummary> hmUuidSummary = new HashMap<String, HarvestedMetadataSummary>();
 
 	//--------------------------------------------------------------------------
 	//---
@@ -52,18 +51,15 @@ public class UUIDMapper
 
 	public UUIDMapper(MetadataRepository repo, String harvestUuid) throws Exception
 	{
-        final List<Metadata> all = repo.findAll(where(hasHarvesterUuid(harvestUuid)));
-
-        for (Metadata record : all) {
-            String id = record.getId() + "";
-            String uuid = record.getUuid();
-            String date = record.getDataInfo().getChangeDate().getDateAndTime();
-            String isTemplate = record.getDataInfo().getType().codeString;
-
-            hmUuidDate.put(uuid, date);
-            hmUuidId.put(uuid, id);
-            hmUuidTemplate.put(uuid, isTemplate);
-        }
+		int lastId = -1;
+		List<HarvestedMetadataSummary> page;
+		do {
+			page = repo.findAllHarvestedSummaries(harvestUuid, lastId, PAGE_SIZE);
+			for (HarvestedMetadataSummary summary : page) {
+				hmUuidSummary.put(summary.getUuid(), summary);
+				lastId = summary.getId();
+			}
+		} while (page.size() == PAGE_SIZE);
 	}
 
 	//--------------------------------------------------------------------------
@@ -72,19 +68,39 @@ public class UUIDMapper
 	//---
 	//--------------------------------------------------------------------------
 
-	public String getTemplate(String uuid) { return hmUuidTemplate.get(uuid); }
+	public String getTemplate(String uuid)
+	{
+		HarvestedMetadataSummary summary = hmUuidSummary.get(uuid);
+		return summary == null ? null : summary.getType().codeString;
+	}
 
 	//--------------------------------------------------------------------------
 	
-	public String getChangeDate(String uuid) { return hmUuidDate.get(uuid); }
+	public String getChangeDate(String uuid)
+	{
+		HarvestedMetadataSummary summary = hmUuidSummary.get(uuid);
+		return summary == null ? null : summary.getChangeDate().getDateAndTime();
+	}
 
 	//--------------------------------------------------------------------------
 
-	public String getID(String uuid) { return hmUuidId.get(uuid); }
+	public String getID(String uuid)
+	{
+		HarvestedMetadataSummary summary = hmUuidSummary.get(uuid);
+		return summary == null ? null : String.valueOf(summary.getId());
+	}
+
+	//--------------------------------------------------------------------------
+
+	public String getHarvestUri(String uuid)
+	{
+		HarvestedMetadataSummary summary = hmUuidSummary.get(uuid);
+		return summary == null ? null : summary.getHarvestUri();
+	}
 
 	//--------------------------------------------------------------------------
 
-	public Iterable<String> getUUIDs() { return hmUuidDate.keySet(); }
+	public Iterable<String> getUUIDs() { return hmUuidSummary.keySet(); }
 }
 
 //=============================================================================
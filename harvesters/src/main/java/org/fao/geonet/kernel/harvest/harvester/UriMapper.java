@@ -24,9 +24,8 @@
 package org.fao.geonet.kernel.harvest.harvester;
 
 import jeeves.server.context.ServiceContext;
-import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.repository.HarvestedMetadataSummary;
 import org.fao.geonet.repository.MetadataRepository;
-import org.fao.geonet.repository.specification.MetadataSpecs;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -51,20 +50,25 @@ public class UriMapper
 	public UriMapper(ServiceContext context, String harvestUuid) throws Exception
 	{
         final MetadataRepository metadataRepository = context.getBean(MetadataRepository.class);
-        final List<Metadata> metadataList = metadataRepository.findAll(MetadataSpecs.hasHarvesterUuid(harvestUuid));
 
-		for (Metadata record : metadataList) {
-			String uri  = record.getHarvestInfo().getUri();
+		int lastId = -1;
+		List<HarvestedMetadataSummary> page;
+		do {
+			page = metadataRepository.findAllHarvestedSummaries(harvestUuid, lastId, UUIDMapper.PAGE_SIZE);
+			for (HarvestedMetadataSummary record : page) {
+				String uri  = record.getHarvestUri();
 
-			List<RecordInfo> records = hmUriRecords.get(uri);
-			
-			if (records == null) {
-				records = new ArrayList<RecordInfo>();
-				hmUriRecords.put(uri, records);
+				List<RecordInfo> records = hmUriRecords.get(uri);
+
+				if (records == null) {
+					records = new ArrayList<RecordInfo>();
+					hmUriRecords.put(uri, records);
+				}
+
+				records.add(new RecordInfo(record));
+				lastId = record.getId();
 			}
-			
-			records.add(new RecordInfo(record));
-		}
+		} while (page.size() == UUIDMapper.PAGE_SIZE);
 	}
 
 	//--------------------------------------------------------------------------
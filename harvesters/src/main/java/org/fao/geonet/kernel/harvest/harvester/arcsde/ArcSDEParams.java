@@ -107,4 +107,5 @@ public class ArcSDEParams extends AbstractParams {
 		copy.database = database;
 		return copy;		
 	}
+
 }
@@ -123,7 +123,11 @@ public class Aligner extends BaseAligner
 	//---
 	//--------------------------------------------------------------------------
 
-	public HarvestResult align(Set<RecordInfo> records, List<HarvestError> errors) throws Exception
+	/**
+	 * Prepares the alignment: retrieves the local categories and groups and the uuids already harvested by this
+	 * node.  Must be called before the first {@link #alignPage(java.util.Map, java.util.List)}.
+	 */
+	public void start() throws Exception
 	{
 		log.info("Start of alignment for : "+ params.name);
 
@@ -141,35 +145,41 @@ public class Aligner extends BaseAligner
                 HarvesterUtil.parseXSLFilter(params.xslfilter, log);
         processName = filter.one();
         processParams = filter.two();
+	}
 
-        //-----------------------------------------------------------------------
-		//--- remove old metadata
-
-		for (String uuid : localUuids.getUUIDs())
-			if (!exists(records, uuid))
-			{
-				String id = localUuids.getID(uuid);
+	//--------------------------------------------------------------------------
 
-                if(log.isDebugEnabled())
-                    log.debug("  - Removing old metadata with local id:"+ id);
-				dataMan.deleteMetadata(context, id);
+	/**
+	 * Inserts or updates the records of one page of GetRecords results.  The records added or updated are indexed
+	 * together once the whole page has been stored.
+	 *
+	 * @param page the records of the page with the full metadata returned by GetRecords, or null when the metadata
+	 *             has to be retrieved with GetRecordById.
+	 * @param errors the list the errors are added to.
+	 */
+	public void alignPage(Map<RecordInfo, Element> page, List<HarvestError> errors) throws Exception
+	{
+		List<String> toIndex = new ArrayList<String>();
 
-                dataMan.flush();
+		for(Map.Entry<RecordInfo, Element> entry : page.entrySet())
+		{
+			RecordInfo ri = entry.getKey();
 
-                result.locallyRemoved++;
+			//--- the same record can be returned by several searches
+			if (!harvestedUuids.add(ri.uuid)) {
+				continue;
 			}
 
-		//-----------------------------------------------------------------------
-		//--- insert/update new metadata
-
-		for(RecordInfo ri : records)
-		{
 		    try{
     
     			String id = dataMan.getMetadataId(ri.uuid);
     
-    			if (id == null)	addMetadata(ri);
-    			else				updateMetadata(ri, id);
+    			if (id == null)	id = addMetadata(ri, entry.getValue());
+    			else				id = updateMetadata(ri, id, entry.getValue());
+
+    			if (id != null) {
+    				toIndex.add(id);
+    			}
                 result.totalMetadata++;
 		    }catch(Throwable t) {
 		        errors.add(new HarvestError(t, log));
@@ -180,23 +190,67 @@ public class Aligner extends BaseAligner
 		    }
 		}
 
+		if (!toIndex.isEmpty()) {
+			dataMan.flush();
+			dataMan.indexMetadata(toIndex);
+		}
+	}
+
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Ends the alignment.
+	 *
+	 * @param removeOld true to remove the metadata of this node which were not returned by the remote node.  Must be
+	 *                  false if one of the searches did not complete.
+	 */
+	public HarvestResult end(boolean removeOld) throws Exception
+	{
+		//-----------------------------------------------------------------------
+		//--- remove old metadata
+
+		if (removeOld) {
+			for (String uuid : localUuids.getUUIDs())
+				if (!harvestedUuids.contains(uuid))
+				{
+					String id = localUuids.getID(uuid);
+
+	                if(log.isDebugEnabled())
+	                    log.debug("  - Removing old metadata with local id:"+ id);
+					dataMan.deleteMetadata(context, id);
+
+	                dataMan.flush();
+
+	                result.locallyRemoved++;
+				}
+		} else {
+			log.warning("Old metadata not removed because the searches did not complete for : "+ params.name);
+		}
+
 		log.info("End of alignment for : "+ params.name);
 
 		return result;
 	}
 
+	/**
+	 * Returns the number of distinct records aligned so far.
+	 */
+	public int getAlignedCount() {
+		return harvestedUuids.size();
+	}
+
 	//--------------------------------------------------------------------------
 	//---
 	//--- Private methods : addMetadata
 	//---
 	//--------------------------------------------------------------------------
 
-	private void addMetadata(RecordInfo ri) throws Exception
+	private String addMetadata(RecordInfo ri, Element record) throws Exception
 	{
-		Element md = retrieveMetadata(ri.uuid);
+		Element md = getMetadata(ri.uuid, record);
 
 		if (md == null) {
-            return;
+            return null;
         }
 
 		String schema = dataMan.autodetectSchema(md, null);
@@ -207,7 +261,7 @@ public class Aligner extends BaseAligner
             }
 			result.unknownSchema++;
 
-			return;
+			return null;
 		}
 
         if (log.isDebugEnabled()) {
@@ -250,10 +304,8 @@ public class Aligner extends BaseAligner
             }
         });
 
-        dataMan.flush();
-
-        dataMan.indexMetadata(id, false);
 		result.addedMetadata++;
+		return id;
 	}
 
 	//--------------------------------------------------------------------------
@@ -261,7 +313,7 @@ public class Aligner extends BaseAligner
 	//--- Private methods : updateMetadata
 	//---
 	//--------------------------------------------------------------------------
-	private void updateMetadata(RecordInfo ri, String id) throws Exception
+	private String updateMetadata(RecordInfo ri, String id, Element record) throws Exception
 	{
 		String date = localUuids.getChangeDate(ri.uuid);
 
@@ -279,10 +331,10 @@ public class Aligner extends BaseAligner
                 if(log.isDebugEnabled()) {
                     log.debug("  - Updating local metadata for uuid:"+ ri.uuid);
                 }
-				Element md = retrieveMetadata(ri.uuid);
+				Element md = getMetadata(ri.uuid, record);
 
 				if (md == null) {
-					return;
+					return null;
 				}
                 String schema = dataMan.autodetectSchema(md, null);
                 if (!params.xslfilter.equals("")) {
@@ -307,12 +359,11 @@ public class Aligner extends BaseAligner
                 metadata.getCategories().clear();
                 addCategories(metadata, params.getCategories(), localCateg, context, log, null);
 
-                dataMan.flush();
-
-                dataMan.indexMetadata(id, false);
 				result.updatedMetadata++;
+				return id;
 			}
 		}
+		return null;
 	}
 
 	//--------------------------------------------------------------------------
@@ -321,20 +372,20 @@ public class Aligner extends BaseAligner
 	//---
 	//--------------------------------------------------------------------------
 
-    /**
-     *  Returns true if the uuid is present in the remote node.
-     * 
-     * @param records
-     * @param uuid
-     * @return
-     */
-	private boolean exists(Set<RecordInfo> records, String uuid)
+	/**
+	 * Returns the metadata of a record: the full record returned by GetRecords if there is one in a known schema,
+	 * otherwise the record retrieved with GetRecordById.  Null is returned if the metadata is not accepted
+	 * (see {@link #acceptMetadata(String, org.jdom.Element)}).
+	 *
+	 * @param uuid uuid of the metadata
+	 * @param record the full record returned by GetRecords or null
+	 */
+	private Element getMetadata(String uuid, Element record)
 	{
-		for(RecordInfo ri : records)
-			if (uuid.equals(ri.uuid))
-				return true;
-
-		return false;
+		if (record == null || dataMan.autodetectSchema(record, null) == null) {
+			return retrieveMetadata(uuid);
+		}
+		return acceptMetadata(uuid, record);
 	}
 
 	//--------------------------------------------------------------------------
@@ -373,22 +424,7 @@ public class Aligner extends BaseAligner
 			response = list.get(0);
 			response = (Element) response.detach();
 
-            // validate it here if requested
-            if (params.validate) {
-                if(!dataMan.validate(response))  {
-                    log.info("Ignoring invalid metadata with uuid " + uuid);
-                    result.doesNotValidate++;
-                    return null;
-                }
-            }
-            
-            if(params.rejectDuplicateResource) {
-                if (foundDuplicateForResource(uuid, response)) {
-                    return null;
-                }
-            }
-            
-            return response;
+            return acceptMetadata(uuid, response);
 		}
 		catch(Exception e)
 		{
@@ -401,6 +437,34 @@ public class Aligner extends BaseAligner
 		}
 	}
 
+	/**
+	 * If validation is requested and the metadata does not validate, or if duplicate resources are rejected and
+	 * the resource is already described in the catalog, null is returned.
+	 *
+	 * @param uuid uuid of the metadata
+	 * @param md the metadata
+	 * @return the metadata or null
+	 */
+	private Element acceptMetadata(String uuid, Element md)
+	{
+        // validate it here if requested
+        if (params.validate) {
+            if(!dataMan.validate(md))  {
+                log.info("Ignoring invalid metadata with uuid " + uuid);
+                result.doesNotValidate++;
+                return null;
+            }
+        }
+
+        if(params.rejectDuplicateResource) {
+            if (foundDuplicateForResource(uuid, md)) {
+                return null;
+            }
+        }
+
+        return md;
+	}
+
     /**
      * Check for metadata in the catalog having the same resource identifier as the
      * harvested record.
@@ -481,6 +545,7 @@ public class Aligner extends BaseAligner
     private UUIDMapper     localUuids;
     private HarvestResult  result;
     private GetRecordByIdRequest request;
+    private Set<String>    harvestedUuids = new HashSet<String>();
 
     private String processName;
     private Map<String, String> processParams = new HashMap<String, String>();
@@ -206,6 +206,7 @@ public class CswParams extends AbstractParams {
         }
 	}
 
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- Variables
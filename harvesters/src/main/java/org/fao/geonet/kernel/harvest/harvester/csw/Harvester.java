@@ -36,12 +36,14 @@ import org.fao.geonet.exceptions.BadParameterEx;
 import org.fao.geonet.exceptions.BadXmlResponseEx;
 import org.fao.geonet.exceptions.OperationAbortedEx;
 import org.fao.geonet.kernel.DataManager;
+import org.fao.geonet.kernel.harvest.HarvestScheduler;
 import org.fao.geonet.kernel.harvest.harvester.HarvestError;
 import org.fao.geonet.kernel.harvest.harvester.HarvestResult;
 import org.fao.geonet.kernel.harvest.harvester.IHarvester;
 import org.fao.geonet.kernel.harvest.harvester.RecordInfo;
 import org.fao.geonet.lib.Lib;
 import org.fao.geonet.utils.AbstractHttpRequest;
+import org.fao.geonet.utils.BandwidthLimiter;
 import org.fao.geonet.utils.GeonetHttpRequestFactory;
 import org.fao.geonet.utils.Xml;
 import org.fao.geonet.utils.XmlRequest;
@@ -49,6 +51,11 @@ import org.jdom.Element;
 
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 //=============================================================================
 
@@ -80,10 +87,15 @@ class Harvester implements IHarvester<HarvestResult>
 
 		CswServer server = retrieveCapabilities(log);
 
+		//--- the records are aligned page by page while the searches go on
+
+		Aligner aligner = new Aligner(log, context, server, params);
+		aligner.start();
+
 		//--- perform all searches
-		
-		Set<RecordInfo> records = new HashSet<RecordInfo>();
-		
+
+		boolean complete = true;
+
 		Search s = new Search();
 		
 		for (Element element : params.eltSearches) {
@@ -97,13 +109,15 @@ class Harvester implements IHarvester<HarvestResult>
 		}
 			
         try {
-            records.addAll(search(server, s));
+            search(server, s, aligner);
         } catch (Exception t) {
+            complete = false;
             log.error("Unknown error trying to harvest");
             log.error(t.getMessage());
             log.error(t);
             errors.add(new HarvestError(t, log));
         } catch (Throwable t) {
+            complete = false;
             log.fatal("Something unknown and terrible happened while harvesting");
             log.fatal(t.getMessage());
             errors.add(new HarvestError(t, log));
@@ -112,26 +126,26 @@ class Harvester implements IHarvester<HarvestResult>
 		if (params.isSearchEmpty()) {
 		    try {
 		        log.debug("Doing an empty search");
-		        records.addAll(search(server, Search.createEmptySearch()));
+		        search(server, Search.createEmptySearch(), aligner);
             } catch(Exception t) {
+                complete = false;
                 log.error("Unknown error trying to harvest");
                 log.error(t.getMessage());
                 log.error(t);
                 errors.add(new HarvestError(t, log));
 		    } catch(Throwable t) {
+                complete = false;
                 log.fatal("Something unknown and terrible happened while harvesting");
                 log.fatal(t.getMessage());
                 errors.add(new HarvestError(t, log));
             }
 	    }
 
-		log.info("Total records processed in all searches :"+ records.size());
+		log.info("Total records processed in all searches :"+ aligner.getAlignedCount());
 
-		//--- align local node
+		//--- remove the records no more in the remote node
 
-		Aligner aligner = new Aligner(log, context, server, params);
-
-		return aligner.align(records, errors);
+		return aligner.end(complete);
 	}
 
 	//---------------------------------------------------------------------------
@@ -209,109 +223,202 @@ class Harvester implements IHarvester<HarvestResult>
 	//---------------------------------------------------------------------------
 
 	/**
-	 * Does CSW GetRecordsRequest.
+	 * Does CSW GetRecordsRequest and aligns the records page by page.
+	 *
+	 * The full records are requested (in the output schema of the remote node) so that each page can be stored
+	 * without one GetRecordById per record.  If the remote node fails to return full records, the summaries are
+	 * requested and the aligner gets the records one by one.  The next page is fetched while the current one is
+	 * aligned, once the node is not busy indexing.
 	 */
-	private Set<RecordInfo> search(CswServer server, Search s) throws Exception
+	private void search(CswServer server, Search s, Aligner aligner) throws Exception
 	{
-		int start =  1;
-
-		GetRecordsRequest request = new GetRecordsRequest(context);
+		final GetRecordsRequest request = new GetRecordsRequest(context);
 
 		request.setResultType(ResultType.RESULTS);
-		//request.setOutputSchema(OutputSchema.OGC_CORE);	// Use default value
-		request.setElementSetName(ElementSetName.SUMMARY);
 		request.setMaxRecords(GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE + "");
         request.setDistribSearch(params.queryScope.equalsIgnoreCase("true"));
         request.setHopCount(params.hopCount + "");
 
 		CswOperation oper = server.getOperation(CswServer.GET_RECORDS);
 
-        // Use the preferred HTTP method and check one exist.
+		Element response = searchFirstPage(request, oper, server, s, ElementSetName.FULL, false);
+		boolean fullRecords = response != null;
 
-        configRequest(request, oper, server, s, PREFERRED_HTTP_METHOD);
+		if (!fullRecords) {
+			log.warning("Full records not returned by GetRecords on : "+ params.name +". Records will be retrieved one by one.");
+			response = searchFirstPage(request, oper, server, s, ElementSetName.SUMMARY, true);
+		}
 
-        if (params.useAccount) {
-            log.debug("Logging into server (" + params.username + ")");
-            request.setCredentials(params.username, params.password);
-        }
-        // Simple fallback mechanism. Try search with PREFERRED_HTTP_METHOD method, if fails change it
-        try {
-            log.info("Re-trying the search with another HTTP method.");
-            request.setStartPosition(start +"");
-		    doSearch(request, start, 1);
-        } catch(Exception ex) {
-            if(log.isDebugEnabled()) {
-                log.debug(ex.getMessage());
-                log.debug("Changing to CSW harvester to use " + (PREFERRED_HTTP_METHOD.equals("GET")?"POST":"GET"));
-            }
-            errors.add(new HarvestError(ex, log));
+		final HarvestScheduler scheduler = context.getBean(HarvestScheduler.class);
+		ExecutorService fetcher = Executors.newSingleThreadExecutor();
+		try {
+			int start = 1;
+			int count = 0;
 
-            configRequest(request, oper, server, s, PREFERRED_HTTP_METHOD.equals("GET")?"POST":"GET");
-        }
+			while (true)
+			{
+                if(log.isDebugEnabled())
+                    log.debug("Number of child elements in response: " + response.getChildren().size());
 
-		Set<RecordInfo> records = new HashSet<RecordInfo>();
+				Element results = getSearchResults(response);
 
-		while (true)
-		{
-			request.setStartPosition(start +"");
-			Element response = doSearch(request, start, GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE);
-            if(log.isDebugEnabled())
-                log.debug("Number of child elements in response: " + response.getChildren().size());
-
-			Element results  = response.getChild("SearchResults", Csw.NAMESPACE_CSW);
-			// heikki: some providers forget to update their CSW namespace to the CSW 2.0.2 specification
-			if(results == null) {
-				// in that case, try to accommodate them anyway:
-				results = response.getChild("SearchResults", Csw.NAMESPACE_CSW_OLD);
-				if (results == null) {
-					throw new OperationAbortedEx("Missing 'SearchResults'", response);
-				}
-				else {
-					log.warning("Received GetRecords response with incorrect namespace: " + Csw.NAMESPACE_CSW_OLD);
+				Map<RecordInfo, Element> page = getPage(results, fullRecords);
+				count += page.size();
+
+				//--- check to see if we have to perform other searches
+
+				int recCount = getRecordCount(results);
+
+                if(log.isDebugEnabled()) {
+                    log.debug("Records declared in response : "+ recCount);
+                    log.debug("Records found in response    : "+ page.size());
+                }
+
+				final int nextStart = start + GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE;
+				Future<Element> nextPage = null;
+
+				if (nextStart <= recCount) {
+					//--- do not fetch more records while the node is busy indexing
+					scheduler.awaitIndexCapacity();
+					nextPage = fetcher.submit(BandwidthLimiter.wrap(BandwidthLimiter.getCurrent(), new Callable<Element>() {
+						@Override
+						public Element call() throws Exception {
+							request.setStartPosition(nextStart + "");
+							return doSearch(request, nextStart, GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE);
+						}
+					}));
 				}
+
+				aligner.alignPage(page, errors);
+
+				if (nextPage == null)
+					break;
+
+				response = getResult(nextPage);
+				start = nextStart;
 			}
 
-			@SuppressWarnings("unchecked")
-            List<Element> list = results.getChildren();
-			int counter = 0;
+			log.info("Records added to result list : "+ count);
+		} finally {
+			fetcher.shutdownNow();
+		}
+	}
 
-			log.debug("Extracting all elements in the csw harvesting response");
-			for (Element record :list) {
-                try {
-    				RecordInfo recInfo= getRecordInfo((Element)record.clone());
+	//---------------------------------------------------------------------------
 
-    				if (recInfo != null)
-    					records.add(recInfo);
+	/**
+	 * Requests the first page with the preferred HTTP method and, if it fails, with the other one.
+	 *
+	 * @param failOnError if true the failure is reported as a harvest error and an exception is thrown,
+	 *                       otherwise null is returned.
+	 */
+	private Element searchFirstPage(GetRecordsRequest request, CswOperation oper, CswServer server, Search s,
+									ElementSetName elementSetName, boolean failOnError) throws Exception
+	{
+		request.setElementSetName(elementSetName);
 
-    				counter++;
+		String otherMethod = PREFERRED_HTTP_METHOD.equals("GET") ? "POST" : "GET";
+		Exception failure = null;
 
-                } catch (Exception ex) {
-                    errors.add(new HarvestError(ex, log));
-                    log.error("Unable to process record from csw (" + this.params.name + ")");
-                    log.error("   Record failed: " + counter); 
-                    log.debug("   Record: " +  ((Element)record).getName()); 
-                }
+		for (String method : new String[] { PREFERRED_HTTP_METHOD, otherMethod }) {
+			configRequest(request, oper, server, s, method);
 
-            }
+			if (params.useAccount) {
+				log.debug("Logging into server (" + params.username + ")");
+				request.setCredentials(params.username, params.password);
+			}
 
-			//--- check to see if we have to perform other searches
+			request.setStartPosition("1");
+			try {
+				return executeSearch(request, 1, GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE);
+			} catch (Exception ex) {
+				if(log.isDebugEnabled()) {
+					log.debug(ex.getMessage());
+					log.debug("Search with " + method + " and element set " + elementSetName + " failed");
+				}
+				failure = ex;
+			}
+		}
 
-			int recCount = getRecordCount(results);
+		if (!failOnError) {
+			return null;
+		}
 
-            if(log.isDebugEnabled()) {
-                log.debug("Records declared in response : "+ recCount);
-			    log.debug("Records found in response    : "+ counter);
-            }
+		errors.add(new HarvestError(failure, log));
+		log.warning("Raised exception when searching : "+ failure);
+		throw new OperationAbortedEx("Raised exception when searching: " + failure.getMessage(), failure);
+	}
 
-			if (start+GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE > recCount)
-				break;
+	//---------------------------------------------------------------------------
 
-			start += GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE;
+	private Element getSearchResults(Element response) throws OperationAbortedEx
+	{
+		Element results  = response.getChild("SearchResults", Csw.NAMESPACE_CSW);
+		// heikki: some providers forget to update their CSW namespace to the CSW 2.0.2 specification
+		if(results == null) {
+			// in that case, try to accommodate them anyway:
+			results = response.getChild("SearchResults", Csw.NAMESPACE_CSW_OLD);
+			if (results == null) {
+				throw new OperationAbortedEx("Missing 'SearchResults'", response);
+			}
+			else {
+				log.warning("Received GetRecords response with incorrect namespace: " + Csw.NAMESPACE_CSW_OLD);
+			}
 		}
+		return results;
+	}
+
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Returns the records of a page of search results with their full metadata if fullRecords is true.
+	 */
+	private Map<RecordInfo, Element> getPage(Element results, boolean fullRecords)
+	{
+		Map<RecordInfo, Element> page = new LinkedHashMap<RecordInfo, Element>();
 
-		log.info("Records added to result list : "+ records.size());
+		@SuppressWarnings("unchecked")
+		List<Element> list = results.getChildren();
+		int counter = 0;
 
-		return records;
+		log.debug("Extracting all elements in the csw harvesting response");
+		for (Element record :list) {
+            try {
+                Element copy = (Element) record.clone();
+				RecordInfo recInfo= getRecordInfo(copy);
+
+				if (recInfo != null)
+					page.put(recInfo, fullRecords ? copy : null);
+
+				counter++;
+
+            } catch (Exception ex) {
+                errors.add(new HarvestError(ex, log));
+                log.error("Unable to process record from csw (" + this.params.name + ")");
+                log.error("   Record failed: " + counter); 
+                log.debug("   Record: " +  record.getName());
+            }
+        }
+
+		return page;
+	}
+
+	//---------------------------------------------------------------------------
+
+	private Element getResult(Future<Element> future) throws Exception
+	{
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
 	}
 
     //---------------------------------------------------------------------------
@@ -532,14 +639,7 @@ class Harvester implements IHarvester<HarvestResult>
 	{
 		try
 		{
-			log.info("Searching on : "+ params.name +" ("+ start +".."+ (start + max) +")");
-			Element response = request.execute();
-            if(log.isDebugEnabled()) {
-                log.debug("Sent request "+request.getSentData());
-                log.debug("Search results:\n"+Xml.getString(response));
-            }
-
-			return response;
+			return executeSearch(request, start, max);
 		}
 		catch(Exception e)
 		{
@@ -551,6 +651,20 @@ class Harvester implements IHarvester<HarvestResult>
 
 	//---------------------------------------------------------------------------
 
+	private Element executeSearch(CatalogRequest request, int start, int max) throws Exception
+	{
+		log.info("Searching on : "+ params.name +" ("+ start +".."+ (start + max) +")");
+		Element response = request.execute();
+        if(log.isDebugEnabled()) {
+            log.debug("Sent request "+request.getSentData());
+            log.debug("Search results:\n"+Xml.getString(response));
+        }
+
+		return response;
+	}
+
+	//---------------------------------------------------------------------------
+
 	private int getRecordCount(Element results) throws OperationAbortedEx
 	{
 		String numRec = results.getAttributeValue("numberOfRecordsMatched");
@@ -628,7 +742,7 @@ class Harvester implements IHarvester<HarvestResult>
 	/**
 	 * Contains a list of accumulated errors during the executing of this harvest.
 	 */
-	private List<HarvestError> errors = new LinkedList<HarvestError>();
+	private List<HarvestError> errors = Collections.synchronizedList(new LinkedList<HarvestError>());
 }
 
 //=============================================================================
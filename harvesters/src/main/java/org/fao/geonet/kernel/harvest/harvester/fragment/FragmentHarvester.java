@@ -24,7 +24,10 @@
 package org.fao.geonet.kernel.harvest.harvester.fragment;
 
 import com.google.common.base.Optional;
+import jeeves.TransactionAspect;
+import jeeves.TransactionTask;
 import jeeves.server.context.ServiceContext;
+import jeeves.xlink.Processor;
 import org.fao.geonet.GeonetContext;
 import org.fao.geonet.Logger;
 import org.fao.geonet.constants.Geonet;
@@ -45,6 +48,7 @@ import org.fao.geonet.utils.Xml;
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.Namespace;
+import org.springframework.transaction.TransactionStatus;
 
 import javax.annotation.Nonnull;
 import java.sql.SQLException;
@@ -58,6 +62,14 @@ import java.util.*;
  * to create metadata and/or sub-templates from metadata fragments they have
  * harvested
  * 
+ * The records are stored in batches of {@link FragmentParams#batchSize}
+ * records, each batch in a single transaction which is committed or rolled
+ * back as a whole. The stored metadata and sub-templates are indexed once the
+ * batch is committed, so that the xlinks of the records to the sub-templates
+ * are resolved when the sub-templates are stored. {@link #flush()} must be
+ * called once all the fragments are harvested, even if the harvest failed, to
+ * index the last batch.
+ * 
 **/
 
 public class FragmentHarvester extends BaseAligner {
@@ -133,15 +145,84 @@ public class FragmentHarvester extends BaseAligner {
 		localGroups = new GroupMapper (context);
 
 		@SuppressWarnings("unchecked")
-        List<Element> recs = fragments.getChildren();
+        List<Element> recs = new ArrayList<Element>(fragments.getChildren());
 		
-		for (Element rec : recs) {
-			addRecord(rec);
+		for (int start = 0; start < recs.size(); start += params.batchSize) {
+			storeBatch(recs.subList(start, Math.min(recs.size(), start + params.batchSize)));
+			if (pendingIds.size() >= params.batchSize) {
+				flush();
+			}
 		}
 		
 		return harvestSummary;
 	}
 
+	//---------------------------------------------------------------------------
+	/** 
+    * Store the metadata and sub-templates of a batch of records in a single
+    * transaction. If it fails nothing of the batch is stored or indexed.
+    * 
+    */
+	private void storeBatch(final List<Element> recs) throws Exception {
+		Set<String> previousIds = new HashSet<String>(pendingIds);
+		try {
+			TransactionAspect.runInTransaction("fragment harvester batch", context.getApplicationContext(),
+					TransactionAspect.TransactionRequirement.CREATE_NEW, TransactionAspect.CommitBehavior.ALWAYS_COMMIT,
+					false, new TransactionTask<Object>() {
+				@Override
+				public Object doInTransaction(TransactionStatus transaction) throws Throwable {
+					for (Element rec : recs) {
+						addRecord(rec);
+					}
+					//--- flushed here so that a failure rolls the batch back
+					dataMan.flush();
+					return null;
+				}
+			});
+		} catch (RuntimeException e) {
+			pendingIds.retainAll(previousIds);
+			//--- checked exceptions of the batch are wrapped by the transaction
+			if (e.getClass() == RuntimeException.class && e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	//---------------------------------------------------------------------------
+	/** 
+    * Index the metadata and sub-templates stored since the last batch was
+    * indexed
+    * 
+    */
+	public void flush() throws Exception {
+		if (pendingIds.isEmpty()) {
+			return;
+		}
+
+		//--- the xlinks are resolved when the records are indexed: drop the
+		//--- cached versions of the sub-templates updated in this batch
+		for (String uuid : updatedSubtemplates) {
+			Processor.uncacheXLinkUri(metadataGetService+"?uuid="+uuid);
+		}
+		updatedSubtemplates.clear();
+
+		List<String> ids = new ArrayList<String>(pendingIds);
+		pendingIds.clear();
+        if(log.isDebugEnabled()) log.debug("  - Indexing batch of "+ ids.size() +" metadata");
+		dataMan.indexMetadata(ids);
+	}
+
+	//---------------------------------------------------------------------------
+	/** 
+    * Add a stored metadata or sub-template to the ids to index once the batch
+    * is committed
+    * 
+    */
+	private void addToBatch(String id) {
+		pendingIds.add(id);
+	}
+
 	//---------------------------------------------------------------------------
 	/** 
     * Load metadata template to be used to generate metadata
@@ -348,6 +429,7 @@ public class FragmentHarvester extends BaseAligner {
      */
 	private void updateSubtemplate(String id, String uuid, Element md) throws Exception {
         update(id, md, true);
+        updatedSubtemplates.add(uuid);
         harvestSummary.updatedMetadata.add(uuid);
         harvestSummary.fragmentsUpdated++;
 	}
@@ -387,9 +469,7 @@ public class FragmentHarvester extends BaseAligner {
 
         dataMan.setTemplateExt(iId, MetadataType.SUB_TEMPLATE);
 		dataMan.setHarvestedExt(iId, params.uuid, Optional.of(harvestUri));
-		dataMan.indexMetadata(id, false);
-
-        dataMan.flush();
+		addToBatch(id);
 
         harvestSummary.fragmentsAdded ++;
     }
@@ -575,9 +655,7 @@ public class FragmentHarvester extends BaseAligner {
              dataMan.setHarvestedExt(iId, params.uuid, Optional.of(harvestUri));
          }
 
-         dataMan.indexMetadata(id, false);
-
-         dataMan.flush();
+         addToBatch(id);
      }
 
 	//---------------------------------------------------------------------------
@@ -613,13 +691,7 @@ public class FragmentHarvester extends BaseAligner {
 		
 		dataMan.setTemplateExt(iId, MetadataType.METADATA);
 		dataMan.setHarvestedExt(iId, params.uuid, Optional.of(harvestUri));
-		dataMan.indexMetadata(id, false);
-
-        if(log.isDebugEnabled()) {
-            log.debug("	- Commit "+id);
-        }
-
-        dataMan.flush();
+		addToBatch(id);
 
         harvestSummary.recordsBuilt++;
 	}
@@ -636,6 +708,12 @@ public class FragmentHarvester extends BaseAligner {
 	private CategoryMapper localCateg;
 	private GroupMapper localGroups;
 	private HarvestSummary harvestSummary;
+	/** ids of the metadata and sub-templates stored since the last batch was indexed */
+	private Set<String> pendingIds = new LinkedHashSet<String>();
+	/** uuids of the sub-templates updated since the last batch was indexed */
+	private Set<String> updatedSubtemplates = new HashSet<String>();
+
+	public static final int DEFAULT_BATCH_SIZE = 50;
 	
 	static public class FragmentParams {
 		public String uuid;
@@ -646,6 +724,8 @@ public class FragmentHarvester extends BaseAligner {
 		public Boolean createSubtemplates;
 		public Iterable<Privileges> privileges;
 		public Iterable<String> categories;
+		/** number of records stored in one transaction and indexed together */
+		public int batchSize = DEFAULT_BATCH_SIZE;
 	}
 	
 	public static class HarvestSummary {
@@ -162,6 +162,7 @@ public class GeoPRESTParams extends AbstractParams
         }
 	}
 
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- Variables
@@ -31,11 +31,9 @@ import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.*;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.harvest.BaseAligner;
+import org.fao.geonet.kernel.harvest.HarvestScheduler;
 import org.fao.geonet.kernel.harvest.harvester.*;
-import org.fao.geonet.kernel.mef.IMEFVisitor;
 import org.fao.geonet.kernel.mef.Importer;
-import org.fao.geonet.kernel.mef.MEFLib;
-import org.fao.geonet.kernel.mef.MEFVisitor;
 import org.fao.geonet.kernel.schema.MetadataSchema;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.geonet.lib.Lib;
@@ -71,8 +69,8 @@ public class Aligner extends BaseAligner
 	{
 		this.log     = log;
 		this.context = context;
-		this.request = req;
 		this.params  = params;
+		this.mefRetriever = new MEFBatchRetriever(log, req, params.getServletPath(), params.mefFormatFull);
 
 		GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
 		dataMan = gc.getBean(DataManager.class);
@@ -154,7 +152,16 @@ public class Aligner extends BaseAligner
 			}
 
 		//-----------------------------------------------------------------------
-		//--- insert/update new metadata
+		//--- insert/update new metadata, retrieving the MEF files by batches
+
+		// look up value of localrating/enable
+		GeonetContext  gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
+		SettingManager settingManager = gc.getBean(SettingManager.class);
+		boolean localRating = settingManager.getValueAsBool("system/localrating/enable", false);
+
+		//--- each batch waits while the node is busy indexing
+		HarvestScheduler scheduler = context.getBean(HarvestScheduler.class);
+		Map<String, RecordInfo> batch = new LinkedHashMap<String, RecordInfo>();
 
 		for(RecordInfo ri : records)
 		{
@@ -167,24 +174,28 @@ public class Aligner extends BaseAligner
 						 	+", schema:"+ ri.schema);
 				result.unknownSchema++;
 			}
+			else if (dataMan.getMetadataId(ri.uuid) != null && localUuids.getID(ri.uuid) == null)
+			{
+                if(log.isDebugEnabled())
+                    log.debug("  - Skipped metadata managed by another harvesting node. uuid:"+ ri.uuid +", name:"+ params.name);
+			}
 			else
 			{
-				String id = dataMan.getMetadataId(ri.uuid);
-
-				// look up value of localrating/enable
-				GeonetContext  gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
-				SettingManager settingManager = gc.getBean(SettingManager.class);
-				boolean localRating = settingManager.getValueAsBool("system/localrating/enable", false);
-				
-				if (id == null)	{
-					addMetadata(ri, localRating);
-				}
-				else {
-					updateMetadata(ri, id, localRating);
+				batch.put(ri.uuid, ri);
+
+				if (batch.size() >= params.mefBatchSize) {
+					scheduler.awaitIndexCapacity();
+					alignBatch(batch, localRating);
+					batch.clear();
 				}
 			}
 		}
 
+		if (!batch.isEmpty()) {
+			scheduler.awaitIndexCapacity();
+			alignBatch(batch, localRating);
+		}
+
 		log.info("End of alignment for : "+ params.name);
 
 		return result;
@@ -193,99 +204,136 @@ public class Aligner extends BaseAligner
 
 	//--------------------------------------------------------------------------
 	//---
-	//--- Private methods : addMetadata
+	//--- Private methods : MEF retrieval
 	//---
 	//--------------------------------------------------------------------------
 
-	private void addMetadata(final RecordInfo ri, final boolean localRating) throws Exception
+	/** Retrieve the records of a batch, in one MEF file when the remote node
+	  * supports it, see {@link MEFBatchRetriever}.
+	  */
+
+	private void alignBatch(Map<String, RecordInfo> batch, final boolean localRating)
 	{
-		final String  id[] = { null };
-		final Element md[] = { null };
+		Set<String> unretrievable = mefRetriever.retrieve(batch, new MEFBatchRetriever.VisitorFactory()
+		{
+			public MEFBatchRetriever.RecordVisitor create(Map<String, RecordInfo> records)
+			{
+				return new MEFRecordVisitor(records, localRating);
+			}
+		});
+
+		for (String uuid : unretrievable)
+		{
+			//--- maybe the metadata has been removed just now
+			if(log.isDebugEnabled())
+				log.debug("  - Skipped unretrievable metadata (maybe has been removed) with uuid:"+ uuid);
+			result.unretrievable++;
+		}
+	}
 
-		//--- import metadata from MEF file
+	//--------------------------------------------------------------------------
+	/** Adds or updates the records of a MEF file while it is downloaded. */
+
+	private class MEFRecordVisitor extends MEFBatchRetriever.RecordVisitor
+	{
+		private final boolean localRating;
 
-		File mefFile = retrieveMEF(ri.uuid);
+		private Element md;
+		private String  id;
+		private boolean updated;
+		private Element publicFiles;
+		private Element privateFiles;
 
-		try
+		MEFRecordVisitor(Map<String, RecordInfo> records, boolean localRating)
 		{
-			MEFLib.visit(mefFile, new MEFVisitor(), new IMEFVisitor()
-			{
-				public void handleMetadata(Element mdata, int index) throws Exception
-				{
-					md[index] = mdata;
-				}
+			super(records);
+			this.localRating = localRating;
+		}
 
-				//--------------------------------------------------------------------
-				
-				public void handleMetadataFiles(File[] files, Element info, int index) throws Exception {}
-				
-				//--------------------------------------------------------------------
+		public void handleMetadata(Element mdata, int index) throws Exception
+		{
+			md = mdata;
+			id = null;
+		}
 
-				public void handleInfo(Element info, int index) throws Exception
-				{
-					id[index] = addMetadata(ri, md[index], info, localRating);
-				}
+		//--------------------------------------------------------------------
 
-				//--------------------------------------------------------------------
+		public void handleMetadataFiles(File[] files, Element info, int index) throws Exception {}
 
-				public void handlePublicFile(String file, String changeDate, InputStream is, int index) throws IOException
+		//--------------------------------------------------------------------
+
+		public void handleFeatureCat(Element md, int index) throws Exception
+		{
+			// Feature Catalog not managed for harvesting
+		}
+
+		//--------------------------------------------------------------------
+
+		protected void handleRecord(RecordInfo ri, Element info, int index) throws Exception
+		{
+			String localId = dataMan.getMetadataId(ri.uuid);
+
+			try
+			{
+				if (localId == null)
 				{
-                    if (id[index] == null) return;
-
-                    if(log.isDebugEnabled()) log.debug("    - Adding remote public file with name:"+ file);
-					String pubDir = Lib.resource.getDir(context, "public", id[index]);
-
-					File outFile = new File(pubDir, file);
-					FileOutputStream os = null;
-					try {
-                        os = new FileOutputStream(outFile);
-    					BinaryFile.copy(is, os);
-    					IO.setLastModified(outFile, new ISODate(changeDate).getTimeInSeconds() * 1000, log.getModule());
-					} finally {
-					    IOUtils.closeQuietly(os);
-					}
+					updated = false;
+					id = addMetadata(ri, md, info, localRating);
 				}
-				
-				public void handleFeatureCat(Element md, int index)
-						throws Exception {
-					// Feature Catalog not managed for harvesting
-				}
-
-				public void handlePrivateFile(String file, String changeDate,
-						InputStream is, int index) throws IOException {
-				    if (params.mefFormatFull) {
-                        if(log.isDebugEnabled())
-                            log.debug("    - Adding remote private file with name:" + file + " available for download for user used for harvester.");
-	                    String dir = Lib.resource.getDir(context, "private", id[index]);
-	                    File outFile = new File(dir, file);
-	                    FileOutputStream os = null;
-	                    try {
-                            os = new FileOutputStream(outFile);
-    	                    BinaryFile.copy(is, os);
-    	                    IO.setLastModified(outFile, new ISODate(changeDate).getTimeInSeconds() * 1000, log.getModule());
-	                    } finally {
-	                        IOUtils.closeQuietly(os);
-	                    }
-				    }
+				else
+				{
+					updated = true;
+					updateMetadata(ri, localId, md, info, localRating);
+					id = localId;
+					publicFiles  = info.getChild("public");
+					privateFiles = info.getChild("private");
 				}
-			});
+			}
+			catch(Exception e)
+			{
+				log.error("  - Unable to align metadata with uuid:"+ ri.uuid +" : "+ e.getMessage());
+				result.unretrievable++;
+			}
 		}
-		catch(Exception e)
+
+		//--------------------------------------------------------------------
+
+		public void handlePublicFile(String file, String changeDate, InputStream is, int index) throws IOException
 		{
-			//--- we ignore the exception here. Maybe the metadata has been removed just now
-            if(log.isDebugEnabled())
-                log.debug("  - Skipped unretrievable metadata (maybe has been removed) with uuid:"+ ri.uuid);
-			result.unretrievable++;
-			e.printStackTrace();
+			if (id == null)
+				return;
+
+			if (updated)
+				updateFile(id, file, "public", changeDate, is, publicFiles);
+			else
+			{
+				if(log.isDebugEnabled()) log.debug("    - Adding remote public file with name:"+ file);
+				saveFile(id, file, "public", changeDate, is);
+			}
 		}
-		finally
+
+		//--------------------------------------------------------------------
+
+		public void handlePrivateFile(String file, String changeDate, InputStream is, int index) throws IOException
 		{
-		     if (!mefFile.delete() && mefFile.exists()) {
-		         log.warning("Unable to delete mefFile: "+mefFile);
-		     }
+			if (id == null)
+				return;
+
+			if (updated)
+				updateFile(id, file, "private", changeDate, is, privateFiles);
+			else if (params.mefFormatFull)
+			{
+				if(log.isDebugEnabled())
+					log.debug("    - Adding remote private file with name:" + file + " available for download for user used for harvester.");
+				saveFile(id, file, "private", changeDate, is);
+			}
 		}
 	}
 
+	//--------------------------------------------------------------------------
+	//---
+	//--- Private methods : addMetadata
+	//---
 	//--------------------------------------------------------------------------
 
 	private String addMetadata(RecordInfo ri, Element md, Element info, boolean localRating) throws Exception
@@ -504,78 +552,6 @@ public class Aligner extends BaseAligner
 	//---
 	//--------------------------------------------------------------------------
 
-	private void updateMetadata(final RecordInfo ri, final String id, final boolean localRating) throws Exception
-	{
-		final Element md[]     = { null };
-		final Element publicFiles[] = { null };
-		final Element privateFiles[] = { null };
-
-		if (localUuids.getID(ri.uuid) == null) {
-            if(log.isDebugEnabled())
-                log.debug("  - Skipped metadata managed by another harvesting node. uuid:"+ ri.uuid +", name:"+ params.name);
-        } else {
-			File mefFile = retrieveMEF(ri.uuid);
-
-			try
-			{
-				MEFLib.visit(mefFile, new MEFVisitor(), new IMEFVisitor()
-				{
-					public void handleMetadata(Element mdata, int index) throws Exception
-					{
-						md[index] = mdata;
-					}
-
-					//-----------------------------------------------------------------
-					
-					public void handleMetadataFiles(File[] files, Element info, int index) throws Exception
-					{
-						//md[index] = mdata;
-					}
-					
-					public void handleInfo(Element info, int index) throws Exception
-					{
-						updateMetadata(ri, id, md[index], info, localRating);
-						publicFiles[index] = info.getChild("public");
-						privateFiles[index] = info.getChild("private");
-					}
-
-					//-----------------------------------------------------------------
-
-					public void handlePublicFile(String file, String changeDate, InputStream is, int index) throws IOException
-					{
-						updateFile(id, file, "public", changeDate, is, publicFiles[index]);
-					}
-
-					public void handleFeatureCat(Element md, int index)
-							throws Exception {
-						// Feature Catalog not managed for harvesting
-					}
-
-					public void handlePrivateFile(String file,
-							String changeDate, InputStream is, int index)
-							throws IOException {
-	                       updateFile(id, file, "private", changeDate, is, privateFiles[index]);
-					}
-					
-				});
-			}
-			catch(Exception e)
-			{
-				//--- we ignore the exception here. Maybe the metadata has been removed just now
-				result.unretrievable++;
-			}
-			finally
-			{
-	             if (!mefFile.delete() && mefFile.exists()) {
-	                 log.warning("Unable to delete mefFile: "+mefFile);
-	             }
-
-			}
-		}
-	}
-
-	//--------------------------------------------------------------------------
-
 	private void updateMetadata(RecordInfo ri, String id, Element md, Element info, boolean localRating) throws Exception
 	{
 		String date = localUuids.getChangeDate(ri.uuid);
@@ -734,14 +710,7 @@ public class Aligner extends BaseAligner
 		{
             if(log.isDebugEnabled()){ log.debug("  - Adding remote " + dir + "  file with name:"+ file);}
 
-			FileOutputStream os = null;
-			try {
-                os = new FileOutputStream(locFile);
-    			BinaryFile.copy(is, os);
-    			IO.setLastModified(locFile, remIsoDate.getTimeInSeconds() * 1000, log.getModule());
-			} finally {
-			    IOUtils.closeQuietly(os);
-			}
+			saveFile(id, file, dir, changeDate, is);
 		}
 		else
 		{
@@ -749,6 +718,22 @@ public class Aligner extends BaseAligner
 		}
 	}
 
+	//--------------------------------------------------------------------------
+
+	private void saveFile(String id, String file, String dir, String changeDate, InputStream is) throws IOException
+	{
+		File outFile = new File(Lib.resource.getDir(context, dir, id), file);
+
+		FileOutputStream os = null;
+		try {
+            os = new FileOutputStream(outFile);
+			BinaryFile.copy(is, os);
+			IO.setLastModified(outFile, new ISODate(changeDate).getTimeInSeconds() * 1000, log.getModule());
+		} finally {
+		    IOUtils.closeQuietly(os);
+		}
+	}
+
 	//--------------------------------------------------------------------------
 	//---
 	//--- Private methods
@@ -766,22 +751,6 @@ public class Aligner extends BaseAligner
 		return false;
 	}
 
-	//--------------------------------------------------------------------------
-
-	private File retrieveMEF(String uuid) throws IOException
-	{
-		request.clearParams();
-		request.addParam("uuid",   uuid);
-		request.addParam("format", (params.mefFormatFull ? "full" : "partial"));
-
-		request.setAddress(params.getServletPath() +"/srv/en/"+ Geonet.Service.MEF_EXPORT);
-
-		File tempFile = File.createTempFile("temp-", ".dat");
-		request.executeLarge(tempFile);
-
-		return tempFile;
-	}
-
 	//--------------------------------------------------------------------------
 	//---
 	//--- Variables
@@ -790,7 +759,6 @@ public class Aligner extends BaseAligner
 
 	private Logger         log;
 	private ServiceContext context;
-	private XmlRequest     request;
 	private GeonetParams   params;
 	private DataManager    dataMan;
 	private HarvestResult   result;
@@ -798,6 +766,8 @@ public class Aligner extends BaseAligner
 	private CategoryMapper localCateg;
 	private GroupMapper    localGroups;
 	private UUIDMapper     localUuids;
+
+	private MEFBatchRetriever mefRetriever;
 	
 	private String processName;
     private Map<String, String> processParams = new HashMap<String, String>();
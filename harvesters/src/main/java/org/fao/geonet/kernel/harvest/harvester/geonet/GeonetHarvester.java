@@ -124,6 +124,7 @@ public class GeonetHarvester extends AbstractHarvester<HarvestResult>
         settingMan.add("id:"+siteId, "host",    params.host);
 		settingMan.add("id:"+siteId, "createRemoteCategory", params.createRemoteCategory);
 		settingMan.add("id:"+siteId, "mefFormatFull", params.mefFormatFull);
+		settingMan.add("id:"+siteId, "mefBatchSize", params.mefBatchSize);
 		settingMan.add("id:"+siteId, "xslfilter", params.xslfilter);
 
 		//--- store search nodes
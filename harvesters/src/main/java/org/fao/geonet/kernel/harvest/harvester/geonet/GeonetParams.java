@@ -38,6 +38,8 @@ import java.util.ArrayList;
 
 public class GeonetParams extends AbstractParams
 {
+	public static final int DEFAULT_MEF_BATCH_SIZE = 50;
+
 	//--------------------------------------------------------------------------
 	//---
 	//--- Constructor
@@ -68,6 +70,7 @@ public class GeonetParams extends AbstractParams
 
 		createRemoteCategory = Util.getParam(site, "createRemoteCategory", false);
 		mefFormatFull = Util.getParam(site, "mefFormatFull", false);
+		mefBatchSize = Util.getParam(site, "mefBatchSize", DEFAULT_MEF_BATCH_SIZE);
 		xslfilter = Util.getParam(site, "xslfilter", "");
 
 		//checkPort(port);
@@ -92,6 +95,7 @@ public class GeonetParams extends AbstractParams
 		host    = Util.getParam(site, "host",    host);
         createRemoteCategory = Util.getParam(site, "createRemoteCategory", createRemoteCategory);
         mefFormatFull = Util.getParam(site, "mefFormatFull", mefFormatFull);
+        mefBatchSize = Util.getParam(site, "mefBatchSize", mefBatchSize);
         xslfilter = Util.getParam(site, "xslfilter", "");
 
 		//checkPort(port);
@@ -141,6 +145,7 @@ public class GeonetParams extends AbstractParams
 		copy.host    = host;
 		copy.createRemoteCategory = createRemoteCategory;
 		copy.mefFormatFull = mefFormatFull;
+		copy.mefBatchSize = mefBatchSize;
 		copy.xslfilter = xslfilter;
 		
 		for (Search s : alSearches)
@@ -190,6 +195,7 @@ public class GeonetParams extends AbstractParams
 		}
 	}
 
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- Variables
@@ -199,6 +205,12 @@ public class GeonetParams extends AbstractParams
 	public String  host;
 	public boolean createRemoteCategory;
 	public boolean mefFormatFull;
+
+	/**
+	 * The number of records requested in one MEF file. A value of 1 retrieves the
+	 * records one by one.
+	 */
+	public int     mefBatchSize;
 	
 	/**
 	 * The filter is a process (see schema/process folder) which depends on the schema.
@@ -0,0 +1,252 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.harvest.harvester.geonet;
+
+import org.fao.geonet.Logger;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.harvest.harvester.RecordInfo;
+import org.fao.geonet.kernel.mef.IMEFVisitor;
+import org.fao.geonet.kernel.mef.MEFLib;
+import org.fao.geonet.utils.XmlRequest;
+import org.jdom.Element;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+//=============================================================================
+
+/** Retrieves the records of a remote node in MEF files, several records per
+  * MEF file. The records missing in a MEF file (eg. because the transfer failed)
+  * are retrieved one by one. A node which only exports the first of the
+  * requested uuids is detected (it returns a single record while the others
+  * can be retrieved one by one) and all the next records are then retrieved
+  * one by one.
+  */
+
+class MEFBatchRetriever
+{
+	//--------------------------------------------------------------------------
+	//---
+	//--- Constructor
+	//---
+	//--------------------------------------------------------------------------
+
+	/**
+	  * @param servletPath the path of the remote node, eg. /geonetwork
+	  * @param fullFormat  true to retrieve the full MEF files (with the private files)
+	  */
+
+	MEFBatchRetriever(Logger log, XmlRequest request, String servletPath, boolean fullFormat)
+	{
+		this.log         = log;
+		this.request     = request;
+		this.servletPath = servletPath;
+		this.fullFormat  = fullFormat;
+	}
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- API methods
+	//---
+	//--------------------------------------------------------------------------
+
+	/** Retrieve the records of a batch, in one MEF file when possible.
+	  *
+	  * @return the uuids of the records which could not be retrieved
+	  */
+
+	Set<String> retrieve(Map<String, RecordInfo> batch, VisitorFactory factory)
+	{
+		Set<String> handled = new HashSet<String>();
+		boolean singleRecordReturned = false;
+
+		if (batch.size() > 1 && !singleRecordMEF)
+		{
+			RecordVisitor visitor = factory.create(batch);
+			try
+			{
+				retrieveMEF(batch.keySet(), visitor);
+				singleRecordReturned = (visitor.returned == 1);
+			}
+			catch(Exception e)
+			{
+				log.warning("  - Unable to retrieve a batch of "+ batch.size() +" records, retrieving the missing ones one by one. Error is: "+ e.getMessage());
+			}
+			handled.addAll(visitor.handled);
+		}
+
+		Set<String> unretrievable = new LinkedHashSet<String>();
+		int retrievedOneByOne = 0;
+
+		for (RecordInfo ri : batch.values())
+		{
+			if (handled.contains(ri.uuid))
+				continue;
+
+			RecordVisitor visitor = factory.create(Collections.singletonMap(ri.uuid, ri));
+			try
+			{
+				retrieveMEF(Collections.singleton(ri.uuid), visitor);
+			}
+			catch(Exception e)
+			{
+				if(log.isDebugEnabled())
+					log.debug("  - Error while retrieving metadata with uuid:"+ ri.uuid +" : "+ e.getMessage());
+			}
+
+			if (visitor.handled.isEmpty())
+				unretrievable.add(ri.uuid);
+			else
+				retrievedOneByOne++;
+		}
+
+		//--- one record out of several requested: either the others have just been
+		//--- removed or the node ignores the extra uuids, in which case they could
+		//--- be retrieved one by one
+
+		if (singleRecordReturned && retrievedOneByOne > 0)
+		{
+			log.info("  - The remote node returned 1 of the "+ batch.size() +" records requested in one MEF file, retrieving the records one by one");
+			singleRecordMEF = true;
+		}
+
+		return unretrievable;
+	}
+
+	//--------------------------------------------------------------------------
+	/** True when the remote node does not export several records in one MEF file */
+
+	boolean isSingleRecordMEF()
+	{
+		return singleRecordMEF;
+	}
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- Private methods
+	//---
+	//--------------------------------------------------------------------------
+
+	private void retrieveMEF(Set<String> uuids, final IMEFVisitor visitor) throws Exception
+	{
+		request.clearParams();
+		for (String uuid : uuids)
+			request.addParam("uuid", uuid);
+		request.addParam("format",   (fullFormat ? "full" : "partial"));
+		request.addParam("version",  "2");
+		request.addParam("relation", "false");
+
+		request.setAddress(servletPath +"/srv/en/"+ Geonet.Service.MEF_EXPORT);
+
+		request.executeLarge(new XmlRequest.InputStreamHandler<Void>()
+		{
+			public Void handle(InputStream in) throws Exception
+			{
+				MEFLib.visit(in, visitor);
+				return null;
+			}
+		});
+	}
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- Visitors
+	//---
+	//--------------------------------------------------------------------------
+
+	/** Creates the visitor of the MEF file of some records. */
+
+	interface VisitorFactory
+	{
+		RecordVisitor create(Map<String, RecordInfo> records);
+	}
+
+	//--------------------------------------------------------------------------
+	/** Visitor of a MEF file which keeps track of the records it contains.
+	  * Each requested record is passed once to {@link #handleRecord}.
+	  */
+
+	abstract static class RecordVisitor implements IMEFVisitor
+	{
+		protected final Map<String, RecordInfo> records;
+		private final Set<String> handled = new HashSet<String>();
+		private int returned;
+
+		RecordVisitor(Map<String, RecordInfo> records)
+		{
+			this.records = records;
+		}
+
+		//--------------------------------------------------------------------
+
+		public final void handleInfo(Element info, int index) throws Exception
+		{
+			returned++;
+
+			RecordInfo ri = getRecord(info);
+
+			//--- not one of the requested records
+			if (ri == null || !handled.add(ri.uuid))
+				return;
+
+			handleRecord(ri, info, index);
+		}
+
+		//--------------------------------------------------------------------
+
+		protected abstract void handleRecord(RecordInfo ri, Element info, int index) throws Exception;
+
+		//--------------------------------------------------------------------
+
+		private RecordInfo getRecord(Element info)
+		{
+			Element general = info.getChild("general");
+			String  uuid    = (general == null) ? null : general.getChildText("uuid");
+
+			//--- the info file of a single record may not contain its uuid
+			if (uuid == null && records.size() == 1)
+				return records.values().iterator().next();
+
+			return (uuid == null) ? null : records.get(uuid);
+		}
+	}
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- Variables
+	//---
+	//--------------------------------------------------------------------------
+
+	private final Logger      log;
+	private final XmlRequest  request;
+	private final String      servletPath;
+	private final boolean     fullFormat;
+
+	/** True when the remote node does not export several records in one MEF file */
+	private boolean           singleRecordMEF;
+}
@@ -164,6 +164,7 @@ public class GeonetParams extends AbstractParams
         }
 	}
 
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- Variables
@@ -0,0 +1,153 @@
+//=============================================================================
+//===	Copyright (C) 2001-2009 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+package org.fao.geonet.kernel.harvest.harvester.localfilesystem;
+
+import org.fao.geonet.kernel.harvest.harvester.HarvesterDataStore;
+import org.fao.geonet.repository.HarvesterDataRepository;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The files harvested by a local filesystem harvester: size, last modification date, content hash and id of the
+ * metadata of each file.  The manifest is stored in a {@link HarvesterDataStore} so that the next harvest can skip
+ * the unchanged files without opening them.
+ * <p/>
+ * The manifest is discarded when the parameters of the harvester which change the harvested metadata (conversion,
+ * privileges, categories...) are modified.
+ */
+class FileManifest {
+    private static final String KEY_PREFIX = "manifest:";
+    private static final String FILE_KEY_PREFIX = "file:";
+
+    /**
+     * The state of one harvested file.
+     */
+    static class Entry {
+        final long size;
+        final long lastModified;
+        final String hash;
+        final String metadataId;
+
+        Entry(long size, long lastModified, String hash, String metadataId) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.metadataId = metadataId;
+        }
+
+        /**
+         * Return true if the size and modification date of the file did not change.
+         */
+        boolean isSameFile(File file) {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+
+        String toValue() {
+            return size + "|" + lastModified + "|" + hash + "|" + metadataId;
+        }
+
+        static Entry parse(String value) {
+            String[] parts = value.split("\\|");
+            if (parts.length != 4) {
+                return null;
+            }
+            try {
+                return new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2], parts[3]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private final HarvesterDataStore store;
+    private final String rootPath;
+
+    private final Map<String, String> updated = new HashMap<String, String>();
+
+    /**
+     * @param repository the repository the manifest is stored in.
+     * @param harvesterUuid the uuid of the harvester.
+     * @param root the harvested directory.
+     * @param signature the signature of the parameters of the harvester the manifest is valid for.
+     */
+    FileManifest(HarvesterDataRepository repository, String harvesterUuid, File root, String signature) {
+        this.store = new HarvesterDataStore(repository, harvesterUuid, KEY_PREFIX, signature);
+        this.rootPath = root.getAbsolutePath();
+    }
+
+    /**
+     * Load the manifest stored by the previous harvest, discarding it if the parameters changed.
+     */
+    synchronized void load() {
+        updated.clear();
+        store.load();
+    }
+
+    /**
+     * Get the entry of a file recorded by the previous harvest.
+     *
+     * @return the entry or null if the file was not harvested or the manifest was discarded.
+     */
+    Entry get(File file) {
+        String value = store.get(getKey(file));
+        return value == null ? null : Entry.parse(value);
+    }
+
+    /**
+     * Record the state of a harvested file.  Can be called from several threads.
+     */
+    synchronized void put(File file, Entry entry) {
+        updated.put(getKey(file), entry.toValue());
+    }
+
+    /**
+     * Store the manifest: the entries put during this harvest are saved and the entries of the files which are not
+     * in the harvested files anymore are deleted.
+     *
+     * @param harvestedFiles all the files found by this harvest.
+     */
+    synchronized void save(List<File> harvestedFiles) {
+        store.putAll(updated);
+
+        List<String> keys = new ArrayList<String>(updated.keySet());
+        for (File file : harvestedFiles) {
+            keys.add(getKey(file));
+        }
+        store.retain(keys);
+    }
+
+    /**
+     * The key of a file: its path relative to the harvested directory.
+     */
+    private String getKey(File file) {
+        String path = file.getAbsolutePath();
+        if (path.startsWith(rootPath)) {
+            path = path.substring(rootPath.length());
+        }
+        return FILE_KEY_PREFIX + path;
+    }
+}
@@ -23,17 +23,22 @@
 package org.fao.geonet.kernel.harvest.harvester.localfilesystem;
 
 import jeeves.server.context.ServiceContext;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
 import org.fao.geonet.Logger;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.*;
 import org.fao.geonet.exceptions.BadInputEx;
 import org.fao.geonet.kernel.harvest.BaseAligner;
 import org.fao.geonet.kernel.harvest.harvester.*;
+import org.fao.geonet.repository.HarvesterDataRepository;
 import org.fao.geonet.repository.MetadataRepository;
 import org.fao.geonet.repository.OperationAllowedRepository;
 import org.fao.geonet.repository.SourceRepository;
 import org.fao.geonet.repository.Updater;
+import org.fao.geonet.repository.specification.MetadataSpecs;
 import org.fao.geonet.resources.Resources;
+import org.fao.geonet.util.Sha1Encoder;
 import org.fao.geonet.util.XMLExtensionFilenameFilter;
 import org.fao.geonet.utils.IO;
 import org.fao.geonet.utils.Xml;
@@ -42,10 +47,17 @@ import org.jdom.JDOMException;
 
 import javax.annotation.Nonnull;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -59,6 +71,7 @@ public class LocalFilesystemHarvester extends AbstractHarvester<HarvestResult> {
 	//FIXME Put on a different file?
 	private BaseAligner aligner = new BaseAligner() {};
 	private LocalFilesystemParams params;
+	private final List<HarvestError> errors = Collections.synchronizedList(new LinkedList<HarvestError>());
 
 	
 	@Override
@@ -99,12 +112,18 @@ public class LocalFilesystemHarvester extends AbstractHarvester<HarvestResult> {
 	 * files removed from the harvesting source are NOT removed from the database. Also, no checks
 	 * on modification date are done; the result gets inserted or replaced if the result appears to
 	 * be in a supported schema.
+	 *
+	 * The files whose size and modification date did not change since the previous harvest (see
+	 * {@link FileManifest}) are skipped without being opened.  The other files are read, transformed,
+	 * stored and indexed by the stages of a {@link HarvestPipeline}; those whose content did not change
+	 * are skipped once read.
 	 * @param listOfFiles
 	 * @throws Exception
 	 */
 	private HarvestResult align(List<File> listOfFiles) throws Exception {
 		log.debug("Start of alignment for : "+ params.name);
 		result = new HarvestResult();
+		errors.clear();
 
 		boolean transformIt = false;
 		String thisXslt = context.getAppPath() + Geonet.Path.IMPORT_STYLESHEETS + "/";
@@ -112,121 +131,219 @@ public class LocalFilesystemHarvester extends AbstractHarvester<HarvestResult> {
 			thisXslt = thisXslt + params.importXslt;
 			transformIt = true;
 		}
+		final boolean transform = transformIt;
+		final String xslt = thisXslt;
 
 		//----------------------------------------------------------------
 		//--- retrieve all local categories and groups
 		//--- retrieve harvested uuids for given harvesting node
-		CategoryMapper localCateg = new CategoryMapper(context);
-		GroupMapper localGroups = new GroupMapper(context);
+		final CategoryMapper localCateg = new CategoryMapper(context);
+		final GroupMapper localGroups = new GroupMapper(context);
+
+		final Set<String> harvestedIds = new HashSet<String>();
+		for (Integer id : context.getBean(MetadataRepository.class).findAllIdsBy(MetadataSpecs.hasHarvesterUuid(params.uuid))) {
+			harvestedIds.add(String.valueOf(id));
+		}
+
+		final Set<String> idsForHarvestingResult = Collections.synchronizedSet(new HashSet<String>());
+
+		//-----------------------------------------------------------------------
+		//--- skip the files which did not change since the previous harvest
+
+		final FileManifest manifest = new FileManifest(context.getBean(HarvesterDataRepository.class), params.uuid,
+				new File(params.directoryname), getManifestSignature());
+		manifest.load();
+
+		List<File> changedFiles = new ArrayList<File>();
+		for (File file : listOfFiles) {
+			FileManifest.Entry entry = manifest.get(file);
+			if (entry != null && entry.isSameFile(file) && harvestedIds.contains(entry.metadataId)) {
+				result.totalMetadata++;
+				result.unchangedMetadata++;
+				idsForHarvestingResult.add(entry.metadataId);
+			} else {
+				changedFiles.add(file);
+			}
+		}
+		log.debug("Files changed since the previous harvest: " + changedFiles.size());
 
-		List<String> idsForHarvestingResult = new ArrayList<String>();
 		//-----------------------------------------------------------------------
 		//--- insert/update new metadata
 
-		for(File file : listOfFiles) {
-			result.totalMetadata++;
-			Element xml;
-			String filePath = file.getCanonicalPath();
-			
-			try {
-				log.debug("reading file: " + filePath);	
-				xml = Xml.loadFile(file);
-			} catch (JDOMException e) { // JDOM problem
-				log.debug("Error loading XML from file " + filePath +", ignoring");	
-				e.printStackTrace();
-				result.badFormat++;
-				continue; // skip this one
-			} catch (Exception e) { // some other error
-				log.debug("Error retrieving XML from file " + filePath +", ignoring");	
-				e.printStackTrace();
-				result.unretrievable++;
-				continue; // skip this one
-			}
+		HarvestPipeline<File, HarvestedFile, HarvestedFile> pipeline =
+				new HarvestPipeline<File, HarvestedFile, HarvestedFile>(params.name, log, dataMan);
+		pipeline.setThreads(params);
+		pipeline.setScheduler(harvestScheduler);
 
-			// validate it here if requested
-			if (params.validate) {
-				try {
-					Xml.validate(xml);
-				} catch (Exception e) {
-					log.debug("Cannot validate XML from file " + filePath +", ignoring. Error was: "+e.getMessage());
-					result.doesNotValidate++;
-					continue; // skip this one
+		pipeline.setFetcher(new HarvestPipeline.Stage<File, File, HarvestedFile>() {
+			@Override
+			public HarvestedFile process(File file, File input) throws Exception {
+				synchronized (result) {
+					result.totalMetadata++;
 				}
-			}
-			
-			// transform using importxslt if not none
-			if (transformIt) {
+				String filePath = file.getCanonicalPath();
+				HarvestedFile harvested = new HarvestedFile(file.length(), file.lastModified());
 				try {
-					xml = Xml.transform(xml, thisXslt);
-				} catch (Exception e) {
-					log.debug("Cannot transform XML from file " + filePath+", ignoring. Error was: "+e.getMessage());
-					result.badFormat++;
-					continue; // skip this one
+					log.debug("reading file: " + filePath);
+					harvested.hash = hash(file);
+
+					// the file was touched but its content did not change
+					FileManifest.Entry entry = manifest.get(file);
+					if (entry != null && entry.hash.equals(harvested.hash) && harvestedIds.contains(entry.metadataId)) {
+						manifest.put(file, new FileManifest.Entry(harvested.size, harvested.lastModified, harvested.hash,
+								entry.metadataId));
+						idsForHarvestingResult.add(entry.metadataId);
+						synchronized (result) {
+							result.unchangedMetadata++;
+						}
+						return null;
+					}
+
+					harvested.xml = Xml.loadFile(file);
+					return harvested;
+				} catch (JDOMException e) { // JDOM problem
+					log.debug("Error loading XML from file " + filePath +", ignoring");
+					e.printStackTrace();
+					synchronized (result) {
+						result.badFormat++;
+					}
+				} catch (Exception e) { // some other error
+					log.debug("Error retrieving XML from file " + filePath +", ignoring");
+					e.printStackTrace();
+					synchronized (result) {
+						result.unretrievable++;
+					}
 				}
+				return null; // skip this one
 			}
+		});
+
+		pipeline.setTransformer(new HarvestPipeline.Stage<File, HarvestedFile, HarvestedFile>() {
+			@Override
+			public HarvestedFile process(File file, HarvestedFile harvested) throws Exception {
+				String filePath = file.getPath();
+
+				// validate it here if requested
+				if (params.validate) {
+					try {
+						Xml.validate(harvested.xml);
+					} catch (Exception e) {
+						log.debug("Cannot validate XML from file " + filePath +", ignoring. Error was: "+e.getMessage());
+						synchronized (result) {
+							result.doesNotValidate++;
+						}
+						return null; // skip this one
+					}
+				}
 
-			String schema = dataMan.autodetectSchema(xml, null);
-			if(schema == null) {
-				result.unknownSchema++;
+				// transform using importxslt if not none
+				if (transform) {
+					try {
+						harvested.xml = Xml.transform(harvested.xml, xslt);
+					} catch (Exception e) {
+						log.debug("Cannot transform XML from file " + filePath+", ignoring. Error was: "+e.getMessage());
+						synchronized (result) {
+							result.badFormat++;
+						}
+						return null; // skip this one
+					}
+				}
+
+				harvested.schema = dataMan.autodetectSchema(harvested.xml, null);
+				if(harvested.schema == null) {
+					synchronized (result) {
+						result.unknownSchema++;
+					}
+					return null;
+				}
+				return harvested;
 			}
-			else {
+		});
+
+		pipeline.setStore(new HarvestPipeline.Stage<File, HarvestedFile, String>() {
+			@Override
+			public String process(File file, HarvestedFile harvested) throws Exception {
+				String schema = harvested.schema;
+				Element xml = harvested.xml;
+
 				String uuid = dataMan.extractUUID(schema, xml);
 				if(uuid == null || uuid.equals("")) {
-					result.badFormat++;
+					synchronized (result) {
+						result.badFormat++;
+					}
+					return null;
 				}
-				else {
-					String id = dataMan.getMetadataId( uuid);
-					if (id == null)	{
-					    // For new record change date will be the time
-					    // the record was harvested
-                        String createDate = new ISODate().toString();
-                        // or the last modified date of the file
-                        if (params.checkFileLastModifiedForUpdate) {
-                            createDate = new ISODate(file.lastModified(), false).getDateAndTime();
-					    }
-                        
-                        
-						log.debug("adding new metadata");
-						id = addMetadata(xml, uuid, schema, localGroups, localCateg, createDate);
+
+				String id = dataMan.getMetadataId( uuid);
+				String toIndex = null;
+				if (id == null)	{
+				    // For new record change date will be the time
+				    // the record was harvested
+                    String createDate = new ISODate().toString();
+                    // or the last modified date of the file
+                    if (params.checkFileLastModifiedForUpdate) {
+                        createDate = new ISODate(harvested.lastModified, false).getDateAndTime();
+				    }
+                    
+                    
+					log.debug("adding new metadata");
+					id = addMetadata(xml, uuid, schema, localGroups, localCateg, createDate);
+					toIndex = id;
+					synchronized (result) {
 						result.addedMetadata++;
-					} else {
-					    // Check last modified date of the file with the record change date
-					    // to check if an update is required
-					    if (params.checkFileLastModifiedForUpdate) {
-    					    Date fileDate = new Date(file.lastModified());
-
-                            final Metadata metadata = context.getBean(MetadataRepository.class).findOne(id);
-                            final ISODate modified = metadata.getDataInfo().getChangeDate();
-                            Date recordDate = modified.toDate();
-                            
-    					    log.debug(" File date is: " + fileDate.toString() + " / record date is: " + modified);
-    					    if (recordDate.before(fileDate)) {
-    					        log.debug("  Db record is older than file. Updating record with id: " + id);
-    					        updateMetadata(xml, id, localGroups, localCateg);
-                                result.updatedMetadata ++;
-    					    } else {
-    					        log.debug("  Db record is not older than last modified date of file. No need for update.");
-    					        result.unchangedMetadata ++;
-    					    }
+					}
+				} else {
+				    // Check last modified date of the file with the record change date
+				    // to check if an update is required
+				    if (params.checkFileLastModifiedForUpdate) {
+					    Date fileDate = new Date(harvested.lastModified);
+
+                        final Metadata metadata = context.getBean(MetadataRepository.class).findOne(id);
+                        final ISODate modified = metadata.getDataInfo().getChangeDate();
+                        Date recordDate = modified.toDate();
+                        
+					    log.debug(" File date is: " + fileDate.toString() + " / record date is: " + modified);
+					    if (recordDate.before(fileDate)) {
+					        log.debug("  Db record is older than file. Updating record with id: " + id);
+					        updateMetadata(xml, id, localGroups, localCateg);
+					        toIndex = id;
+					        synchronized (result) {
+					            result.updatedMetadata ++;
+					        }
 					    } else {
-    					    log.debug("  updating existing metadata, id is: " + id);
-    						updateMetadata(xml, id, localGroups, localCateg);
-    						result.updatedMetadata++;
+					        log.debug("  Db record is not older than last modified date of file. No need for update.");
+					        synchronized (result) {
+					            result.unchangedMetadata ++;
+					        }
 					    }
-					}
-					idsForHarvestingResult.add(id);
+				    } else {
+					    log.debug("  updating existing metadata, id is: " + id);
+						updateMetadata(xml, id, localGroups, localCateg);
+						toIndex = id;
+						synchronized (result) {
+							result.updatedMetadata++;
+						}
+				    }
 				}
+				idsForHarvestingResult.add(id);
+				manifest.put(file, new FileManifest.Entry(harvested.size, harvested.lastModified, harvested.hash, id));
+				return toIndex;
 			}
-		}
+		});
+
+		pipeline.run(changedFiles, errors);
+
+		//-----------------------------------------------------------------------
+		//--- the entries of the deleted files are removed from the manifest
+
+		manifest.save(listOfFiles);
 
 		if(!params.nodelete) {
 			//
 			// delete locally existing metadata from the same source if they were
 			// not in this harvesting result
 			//
-            List<Metadata> existingMetadata = context.getBean(MetadataRepository.class).findAllByHarvestInfo_Uuid(params.uuid);
-			for(Metadata existingId : existingMetadata) {
-				String ex$ = String.valueOf(existingId.getId());
+			for(String ex$ : harvestedIds) {
 				if(!idsForHarvestingResult.contains(ex$)) {
 				    log.debug("  Removing: " + ex$);
 					dataMan.deleteMetadata(context, ex$);
@@ -238,6 +355,51 @@ public class LocalFilesystemHarvester extends AbstractHarvester<HarvestResult> {
 		return result;
 	}
 
+	/**
+	 * The signature of the parameters which change the harvested metadata: the manifest of the previous harvest is
+	 * not used if they changed.
+	 */
+	private String getManifestSignature() {
+		StringBuilder signature = new StringBuilder();
+		signature.append(params.importXslt).append('|').append(params.validate).append('|')
+				.append(params.checkFileLastModifiedForUpdate).append('|').append(params.ownerId);
+		for (Privileges privileges : params.getPrivileges()) {
+			signature.append('|').append(privileges.getGroupId()).append(':');
+			for (Integer operation : privileges.getOperations()) {
+				signature.append(operation).append(',');
+			}
+		}
+		for (String category : params.getCategories()) {
+			signature.append('|').append(category);
+		}
+		return Sha1Encoder.encodeString(signature.toString());
+	}
+
+	private static String hash(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return DigestUtils.sha1Hex(in);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * A file going through the harvest pipeline.
+	 */
+	private static class HarvestedFile {
+		final long size;
+		final long lastModified;
+		String hash;
+		Element xml;
+		String schema;
+
+		HarvestedFile(long size, long lastModified) {
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+
 	private void updateMetadata(Element xml, final String id, GroupMapper localGroups, final CategoryMapper localCateg) throws Exception {
 		log.debug("  - Updating metadata with id: "+ id);
 
@@ -259,13 +421,11 @@ public class LocalFilesystemHarvester extends AbstractHarvester<HarvestResult> {
         aligner.addCategories(metadata, params.getCategories(), localCateg, context, log, null);
 
         dataMan.flush();
-
-        dataMan.indexMetadata(id, false);
 	}
 
 	
 	/**
-	 * Inserts a metadata into the database. Lucene index is updated after insertion.
+	 * Inserts a metadata into the database. The metadata is indexed by the harvest pipeline.
 	 * @param xml
 	 * @param uuid
 	 * @param schema
@@ -301,7 +461,6 @@ public class LocalFilesystemHarvester extends AbstractHarvester<HarvestResult> {
 
         dataMan.flush();
 
-        dataMan.indexMetadata(id, false);
 		return id;
     }
 
@@ -314,6 +473,11 @@ public class LocalFilesystemHarvester extends AbstractHarvester<HarvestResult> {
 		this.result = align(results);
 	}
 
+	@Override
+	public List<HarvestError> getErrors() {
+		return errors;
+	}
+
 	@Override
 	protected void doInit(Element entry, ServiceContext context) throws BadInputEx {
 		params = new LocalFilesystemParams(dataMan);
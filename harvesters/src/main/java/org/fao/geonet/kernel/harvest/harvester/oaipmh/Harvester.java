@@ -34,29 +34,38 @@ import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.domain.Metadata;
 import org.fao.geonet.domain.MetadataType;
 import org.fao.geonet.domain.OperationAllowedId_;
-import org.fao.geonet.exceptions.OperationAbortedEx;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.harvest.BaseAligner;
+import org.fao.geonet.kernel.harvest.HarvestScheduler;
 import org.fao.geonet.kernel.harvest.harvester.CategoryMapper;
 import org.fao.geonet.kernel.harvest.harvester.GroupMapper;
 import org.fao.geonet.kernel.harvest.harvester.HarvestError;
+import org.fao.geonet.kernel.harvest.harvester.HarvestPipeline;
 import org.fao.geonet.kernel.harvest.harvester.HarvestResult;
 import org.fao.geonet.kernel.harvest.harvester.IHarvester;
 import org.fao.geonet.kernel.harvest.harvester.UUIDMapper;
 import org.fao.geonet.lib.Lib;
+import org.fao.geonet.repository.HarvesterDataRepository;
 import org.fao.geonet.repository.MetadataRepository;
 import org.fao.geonet.repository.OperationAllowedRepository;
 import org.fao.geonet.repository.Updater;
+import org.fao.geonet.util.Sha1Encoder;
 import org.fao.geonet.utils.GeonetHttpRequestFactory;
 import org.fao.geonet.utils.Xml;
 import org.fao.geonet.utils.XmlRequest;
 import org.fao.oaipmh.OaiPmh;
+import org.fao.oaipmh.exceptions.BadArgumentException;
 import org.fao.oaipmh.exceptions.NoRecordsMatchException;
 import org.fao.oaipmh.requests.GetRecordRequest;
 import org.fao.oaipmh.requests.ListIdentifiersRequest;
+import org.fao.oaipmh.requests.ListRecordsRequest;
+import org.fao.oaipmh.requests.TokenListRequest;
 import org.fao.oaipmh.responses.GetRecordResponse;
 import org.fao.oaipmh.responses.Header;
-import org.fao.oaipmh.responses.ListIdentifiersResponse;
+import org.fao.oaipmh.responses.ListRecordsResponse;
+import org.fao.oaipmh.responses.ListResponse;
+import org.fao.oaipmh.responses.Record;
+import org.fao.oaipmh.responses.ResumptionToken;
 import org.jdom.Element;
 import org.jdom.JDOMException;
 
@@ -64,6 +73,8 @@ import javax.annotation.Nonnull;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -71,6 +82,18 @@ import java.util.Set;
 
 //=============================================================================
 
+/**
+ * Harvests the records of an OAI-PMH node page by page:
+ * <ul>
+ *     <li>the records are listed with ListRecords or, if the node fails to return them, with ListIdentifiers
+ *     and retrieved with GetRecord on several threads;</li>
+ *     <li>the records of each page are stored and indexed in batches by a {@link HarvestPipeline};</li>
+ *     <li>once a page is stored, the resumption token of the next page is saved in a {@link OaiPmhCheckpoint}
+ *     so that a harvest which stopped resumes the search where it stopped;</li>
+ *     <li>if the harvester is incremental, only the records changed since the previous complete search are
+ *     requested.</li>
+ * </ul>
+ */
 class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 {
 	private HarvestResult result;
@@ -102,12 +125,8 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 
 	    this.log = log;
 
-		ListIdentifiersRequest req = new ListIdentifiersRequest(context.getBean(GeonetHttpRequestFactory.class));
-		req.setSchemaPath(new File(context.getAppPath() + Geonet.SchemaPath.OAI_PMH));
-
-        XmlRequest t = req.getTransport();
 		try {
-			t.setUrl(new URL(params.url));
+			url = new URL(params.url);
         } catch (MalformedURLException e1) {
             HarvestError harvestError = new HarvestError(e1, log);
             harvestError.setDescription(harvestError.getDescription() + " " + params.url);
@@ -115,56 +134,69 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
             throw new AbortExecutionException(e1);
         }
 
-		if (params.useAccount) {
-            t.setCredentials(params.username, params.password);
-        }
+		schemaPath = new File(context.getAppPath() + Geonet.SchemaPath.OAI_PMH);
 
-		//--- set the proxy info if necessary
-		Lib.net.setupProxy(context, t);
+		//-----------------------------------------------------------------------
+		//--- retrieve all local categories and groups
+		//--- retrieve harvested uuids for given harvesting node
+
+		localCateg = new CategoryMapper(context);
+		localGroups= new GroupMapper(context);
+		localUuids = new UUIDMapper(context.getBean(MetadataRepository.class), params.uuid);
+
+        dataMan.flush();
+
+		checkpoint = new OaiPmhCheckpoint(context.getBean(HarvesterDataRepository.class), params.uuid,
+				getCheckpointSignature());
+		checkpoint.load();
+
+		pipeline = createPipeline();
+
+		//--- perform all searches, the records are aligned page by page
 
-		//--- perform all searches
+		List<Search> searches = new ArrayList<Search>();
+		for (Search s : params.getSearches()) {
+			searches.add(s);
+		}
+        if (params.isSearchEmpty()) {
+            log.debug("Doing an empty search");
+            searches.add(Search.createEmptySearch());
+        }
 
-		Set<RecordInfo> records = new HashSet<RecordInfo>();
+		boolean complete = true;
 
-        for (Search s : params.getSearches()) {
+		for (int i = 0; i < searches.size(); i++) {
             try {
-                records.addAll(search(req, s));
+                complete &= search(i, searches.get(i));
             } catch (Exception e) {
                 log.error("Unknown error trying to harvest");
                 log.error(e.getMessage());
                 e.printStackTrace();
                 errors.add(new HarvestError(e, log));
+                complete = false;
             } catch (Throwable e) {
                 log.fatal("Something unknown and terrible happened while harvesting");
                 log.fatal(e.getMessage());
                 e.printStackTrace();
                 errors.add(new HarvestError(e, log));
+                complete = false;
             }
         }
 
-        if (params.isSearchEmpty()) {
-            try {
-                log.debug("Doing an empty search");
-                records.addAll(search(req, Search.createEmptySearch()));
-            } catch(Exception e) {
-                log.error("Unknown error trying to harvest");
-                log.error(e.getMessage());
-                e.printStackTrace();
-                errors.add(new HarvestError(e, log));
-            } catch(Throwable e) {
-                log.fatal("Something unknown and terrible happened while harvesting");
-                log.fatal(e.getMessage());
-                e.printStackTrace();
-                errors.add(new HarvestError(e, log));
-            }
-        }
+		log.info("Total records processed in all searches :"+ harvested.size());
 
-		log.info("Total records processed in all searches :"+ records.size());
+		//--- remove the records which are not on the remote node anymore: without a complete
+		//--- list of the records the old ones are not known
 
-		//--- align local node
+		if (!params.incremental && harvested.size() != 0) {
+			if (complete) {
+				removeOldMetadata();
+			} else {
+				log.warning("Some searches did not list all the records from the beginning, old metadata are not removed");
+			}
+		}
 
-		if (records.size() != 0)
-			align(t, records);
+		log.info("End of alignment for : "+ params.name);
 
 		return result;
 	}
@@ -175,80 +207,300 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	//---
 	//---------------------------------------------------------------------------
 
-	private Set<RecordInfo> search(ListIdentifiersRequest req, Search s) throws OperationAbortedEx
+	/**
+	 * Harvest the records of a search, resuming it if it was interrupted by the previous harvest.  Once a page
+	 * has records which could not be harvested, the position and the high-water mark of the search are not
+	 * advanced anymore so that the next harvest lists these records again.
+	 *
+	 * @return true if all the records of the search were listed by this harvest.
+	 */
+	private boolean search(int index, Search s) throws Exception
 	{
-		//--- setup search parameters
+		log.info("Searching on : "+ params.name);
 
-		if (s.from.length() != 0)	req.setFrom(new ISODate(s.from));
-			else							req.setFrom(null);
+		OaiPmhCheckpoint.Position position = checkpoint.getPosition(index);
+		ListResponse response = null;
+		String  verb;
+		ISODate started;
+		boolean fromStart = true;
+
+		if (position != null) {
+			try {
+				log.info("Resuming search interrupted by the previous harvest with : "+ position.verb);
+				response = list(position.verb, s, null, position.token);
+				fromStart = false;
+			} catch (Exception e) {
+				//--- whatever the reason (expired token, server error...), the saved position is dropped so that
+				//--- the next harvests do not try it again
+				log.warning("The search interrupted by the previous harvest cannot be resumed, restarting it : "+ e);
+				checkpoint.clearPosition(index);
+			}
+		}
 
-		if (s.until.length() != 0)	req.setUntil(new ISODate(s.until));
-			else 							req.setUntil(null);
+		if (response != null) {
+			verb    = position.verb;
+			started = position.started;
+		} else {
+			ISODate from = getFrom(index, s);
+			try {
+				response = startSearch(s, from);
+			} catch (NoRecordsMatchException e) {
+				if (from == null || !params.incremental) {
+					log.warning("No records were matched: " + e.getMessage());
+					this.errors.add(new HarvestError(e, log));
+				} else {
+					log.info("No records changed since " + from);
+				}
+				return true;
+			} catch (Exception e) {
+				log.warning("Raised exception when searching : "+ e);
+				log.warning(Util.getStackTrace(e));
+				throw e;
+			}
+			verb    = (response instanceof ListRecordsResponse) ? ListRecordsRequest.VERB : ListIdentifiersRequest.VERB;
+			started = (response.getResponseDate() != null) ? response.getResponseDate() : new ISODate();
+		}
 
-		if (s.set.length() != 0) 	req.setSet(s.set);
-			else 							req.setSet(null);
+		//--- loop on the pages of the response
 
-		req.setMetadataPrefix(s.prefix);
+		List<RecordInfo> page = new ArrayList<RecordInfo>();
+		int count = 0;
+		boolean failed = false;
 
-		//--- execute request and loop on response
+		while (response.hasNext()) {
+			Object o = response.next();
 
-		Set<RecordInfo> records = new HashSet<RecordInfo>();
+			if (o instanceof Record) {
+				page.add(new RecordInfo((Record) o, s.prefix));
+			} else {
+				page.add(new RecordInfo((Header) o, s.prefix));
+			}
 
-		log.info("Searching on : "+ params.name);
+			if (response.isEndOfPage()) {
+				int errorCount = errors.size();
+				alignPage(page);
+				count += page.size();
+				page.clear();
+				failed |= (errors.size() > errorCount);
+
+				ResumptionToken token = response.getResumptionToken();
+				if (!failed && token != null && !token.isTokenEmpty()) {
+					checkpoint.savePosition(index, new OaiPmhCheckpoint.Position(verb, started, token.getToken()));
+				}
+			}
+		}
 
-		try
-		{
-			ListIdentifiersResponse response = req.execute();
+		log.info("Records listed by the search : "+ count);
 
-			while (response.hasNext())
-			{
-				Header h = response.next();
+		if (failed) {
+			log.warning("Some records of the search could not be harvested, the next harvest will list them again");
+		} else {
+			checkpoint.complete(index, started);
+		}
 
-				if (!h.isDeleted())
-					records.add(new RecordInfo(h, s.prefix));
-			}
+		return fromStart;
+	}
+
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Request the first page of a search with ListRecords.  If it fails, the records are listed with
+	 * ListIdentifiers and retrieved one by one.
+	 */
+	private ListResponse startSearch(Search s, ISODate from) throws Exception
+	{
+		try {
+			return listFrom(ListRecordsRequest.VERB, s, from);
+		} catch (NoRecordsMatchException e) {
+			throw e;
+		} catch (Exception e) {
+			log.warning("ListRecords failed on : "+ params.name +", the records will be retrieved one by one. Error is : "+ e.getMessage());
+			return listFrom(ListIdentifiersRequest.VERB, s, from);
+		}
+	}
 
-			log.info("Records added to result list : "+ records.size());
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Request the first page of a search.  The high-water mark has a time, which is rejected by the nodes
+	 * supporting only the day granularity: the request is then sent with the day only.
+	 */
+	private ListResponse listFrom(String verb, Search s, ISODate from) throws Exception
+	{
+		try {
+			return list(verb, s, from, null);
+		} catch (BadArgumentException e) {
+			if (from == null || from.isDateOnly())
+				throw e;
 
-			return records;
+			log.info("Requesting the records from the day "+ from.getDateAsString() +" : "+ e.getMessage());
+			return list(verb, s, new ISODate(from.getDateAsString()), null);
 		}
-		catch(NoRecordsMatchException e)
-		{
-			log.warning("No records were matched: " + e.getMessage());
-			this.errors.add(new HarvestError(e, log));
-			return records;
+	}
+
+	//---------------------------------------------------------------------------
+
+	private ListResponse list(String verb, Search s, ISODate from, String token) throws Exception
+	{
+		final GeonetHttpRequestFactory requestFactory = context.getBean(GeonetHttpRequestFactory.class);
+		TokenListRequest req = ListRecordsRequest.VERB.equals(verb)
+				? new ListRecordsRequest(requestFactory) : new ListIdentifiersRequest(requestFactory);
+
+		req.setSchemaPath(schemaPath);
+		setupTransport(req.getTransport());
+
+		if (token != null) {
+			req.setResumptionToken(token);
+		} else {
+			//--- setup search parameters
+
+			req.setFrom(from);
+
+			if (s.until.length() != 0)	req.setUntil(new ISODate(s.until));
+				else 							req.setUntil(null);
+
+			if (s.set.length() != 0) 	req.setSet(s.set);
+				else 							req.setSet(null);
+
+			req.setMetadataPrefix(s.prefix);
 		}
 
-		catch(Exception e)
-		{
-			log.warning("Raised exception when searching : "+ e);
-			log.warning(Util.getStackTrace(e));
-            this.errors.add(new HarvestError(e, log));
-			throw new OperationAbortedEx("Raised exception when searching", e);
+		return (ListResponse) req.execute();
+	}
+
+	//---------------------------------------------------------------------------
+
+	private void setupTransport(XmlRequest t)
+	{
+		t.setUrl(url);
+
+		if (params.useAccount) {
+            t.setCredentials(params.username, params.password);
+        }
+
+		//--- set the proxy info if necessary
+		Lib.net.setupProxy(context, t);
+	}
+
+	//---------------------------------------------------------------------------
+
+	/**
+	 * The 'from' of a search: if the harvester is incremental, the date the last complete search started at.
+	 */
+	private ISODate getFrom(int index, Search s)
+	{
+		ISODate from = (s.from.length() != 0) ? new ISODate(s.from) : null;
+
+		if (params.incremental) {
+			ISODate highWaterMark = checkpoint.getHighWaterMark(index);
+
+			if (highWaterMark != null && (from == null || highWaterMark.timeDifferenceInSeconds(from) > 0))
+				from = highWaterMark;
 		}
+
+		return from;
 	}
 
 	//---------------------------------------------------------------------------
 
-	private void align(XmlRequest t, Set<RecordInfo> records) throws Exception
+	/**
+	 * The signature of the parameters which change the listed records: the checkpoints of the previous
+	 * harvests are not used if they changed.
+	 */
+	private String getCheckpointSignature()
 	{
-		log.info("Start of alignment for : "+ params.name);
+		StringBuilder signature = new StringBuilder();
+		signature.append(params.url).append('|').append(params.incremental);
 
-		//-----------------------------------------------------------------------
-		//--- retrieve all local categories and groups
-		//--- retrieve harvested uuids for given harvesting node
+		for (Search s : params.getSearches()) {
+			signature.append('|').append(s.from).append(',').append(s.until).append(',').append(s.set)
+					.append(',').append(s.prefix);
+		}
 
-		localCateg = new CategoryMapper(context);
-		localGroups= new GroupMapper(context);
-		localUuids = new UUIDMapper(context.getBean(MetadataRepository.class), params.uuid);
+		return Sha1Encoder.encodeString(signature.toString());
+	}
 
-        dataMan.flush();
+	//---------------------------------------------------------------------------
 
-        //-----------------------------------------------------------------------
-		//--- remove old metadata
+	/**
+	 * Store the records of a page which are new or more recent than the local ones.
+	 */
+	private void alignPage(List<RecordInfo> page) throws Exception
+	{
+		List<RecordInfo> toHarvest = new ArrayList<RecordInfo>();
+
+		for (RecordInfo ri : page) {
+			if (ri.deleted) {
+				if (params.incremental)
+					removeMetadata(ri.id);
 
+				continue;
+			}
+
+			//--- the record was already listed by another search
+			if (!harvested.add(ri.id))
+				continue;
+
+			result.totalMetadata++;
+
+			String id = localUuids.getID(ri.id);
+
+			if (id != null && !ri.isMoreRecentThan(localUuids.getChangeDate(ri.id))) {
+	            if(log.isDebugEnabled()) log.debug("  - Metadata XML not changed for remote id : "+ ri.id);
+				result.unchangedMetadata++;
+			} else {
+				toHarvest.add(ri);
+			}
+		}
+
+		if (!toHarvest.isEmpty())
+			pipeline.run(toHarvest, errors);
+	}
+
+	//---------------------------------------------------------------------------
+
+	/**
+	 * The records are retrieved (if not listed with ListRecords) and converted on separate threads, then
+	 * stored and indexed in batches.
+	 */
+	private HarvestPipeline<RecordInfo, Element, Element> createPipeline()
+	{
+		HarvestPipeline<RecordInfo, Element, Element> pipeline =
+				new HarvestPipeline<RecordInfo, Element, Element>(params.name, log, dataMan);
+		pipeline.setThreads(params);
+		pipeline.setScheduler(context.getBean(HarvestScheduler.class));
+
+		pipeline.setFetcher(new HarvestPipeline.Stage<RecordInfo, RecordInfo, Element>() {
+			@Override
+			public Element process(RecordInfo ri, RecordInfo input) throws Exception {
+				return (ri.metadata != null) ? ri.metadata : retrieveMetadata(ri);
+			}
+		});
+		pipeline.setTransformer(new HarvestPipeline.Stage<RecordInfo, Element, Element>() {
+			@Override
+			public Element process(RecordInfo ri, Element md) throws Exception {
+				return toLocalMetadata(ri, md);
+			}
+		});
+		pipeline.setStore(new HarvestPipeline.Stage<RecordInfo, Element, String>() {
+			@Override
+			public String process(RecordInfo ri, Element md) throws Exception {
+				String id = localUuids.getID(ri.id);
+
+				if (id == null)	return addMetadata(ri, md);
+				else				return updateMetadata(ri, md, id);
+			}
+		});
+
+		return pipeline;
+	}
+
+	//---------------------------------------------------------------------------
+
+	private void removeOldMetadata() throws Exception
+	{
 		for (String uuid : localUuids.getUUIDs())
-			if (!exists(records, uuid))
+			if (!harvested.contains(uuid))
 			{
 				String id = localUuids.getID(uuid);
 
@@ -259,33 +511,25 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 
                 result.locallyRemoved++;
 			}
+	}
 
-		//-----------------------------------------------------------------------
-		//--- insert/update new metadata
-
-		for(RecordInfo ri : records)
-		{
-			result.totalMetadata++;
+	//---------------------------------------------------------------------------
 
-			String id = localUuids.getID(ri.id);
+	/** Remove the local copy of a record deleted on the remote node */
 
-			if (id == null)	addMetadata(t, ri);
-			else				updateMetadata(t, ri, id);
-		}
+	private void removeMetadata(String remoteId) throws Exception
+	{
+		String id = localUuids.getID(remoteId);
 
-		log.info("End of alignment for : "+ params.name);
-	}
+		if (id == null)
+			return;
 
-	//--------------------------------------------------------------------------
-	/** Return true if the uuid is present in the remote records */
+        if(log.isDebugEnabled()) log.debug("  - Removing deleted metadata with local id:"+ id);
+		dataMan.deleteMetadataGroup(context, id);
 
-	private boolean exists(Set<RecordInfo> records, String uuid)
-	{
-		for(RecordInfo ri : records)
-			if (uuid.equals(ri.id))
-				return true;
+        dataMan.flush();
 
-		return false;
+        result.locallyRemoved++;
 	}
 
 	//--------------------------------------------------------------------------
@@ -294,13 +538,8 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	//---
 	//--------------------------------------------------------------------------
 
-	private void addMetadata(XmlRequest t, RecordInfo ri) throws Exception
+	private String addMetadata(RecordInfo ri, Element md) throws Exception
 	{
-		Element md = retrieveMetadata(t, ri);
-
-		if (md == null)
-			return;
-
 		//--- schema handled check already done
 
 		String schema = dataMan.autodetectSchema(md);
@@ -328,55 +567,34 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
             }
         });
 
-        dataMan.flush();
+		synchronized (result) {
+			result.addedMetadata++;
+		}
 
-        dataMan.indexMetadata(id, false);
-		result.addedMetadata++;
+		return id;
 	}
 
 	//--------------------------------------------------------------------------
 
-	private Element retrieveMetadata(XmlRequest transport, RecordInfo ri)
+	/** Retrieve a record listed with ListIdentifiers. Each call uses its own transport so that several
+	  * records can be retrieved at the same time.
+	  */
+
+	private Element retrieveMetadata(RecordInfo ri)
 	{
 		try
 		{
             if(log.isDebugEnabled()) log.debug("  - Getting remote metadata with id : "+ ri.id);
 
-			GetRecordRequest req = new GetRecordRequest(transport);
-			req.setSchemaPath(new File(context.getAppPath() + Geonet.SchemaPath.OAI_PMH));
+			GetRecordRequest req = new GetRecordRequest(context.getBean(GeonetHttpRequestFactory.class));
+			req.setSchemaPath(schemaPath);
+			setupTransport(req.getTransport());
 			req.setIdentifier(ri.id);
 			req.setMetadataPrefix(ri.prefix);
 
 			GetRecordResponse res = req.execute();
 
-			Element md = res.getRecord().getMetadata();
-
-            if(log.isDebugEnabled()) log.debug("    - Record got:\n"+ Xml.getString(md));
-
-			if (isOaiDc(md))
-			{
-                if(log.isDebugEnabled()) log.debug("    - Converting oai_dc to dublin core");
-				md = toDublinCore(md);
-
-				if (md == null)
-					return null;
-			}
-
-			String schema = dataMan.autodetectSchema(md, null);
-
-			if (schema == null)
-			{
-				log.warning("Skipping metadata with unknown schema. Remote id : "+ ri.id);
-				result.unknownSchema++;
-			}
-			else
-			{
-				if (!params.validate || validates(schema, md))
-					return (Element) md.detach();
-
-				log.warning("Skipping metadata that does not validate. Remote id : "+ ri.id);
-				result.doesNotValidate++;
-			}
+			return res.getRecord().getMetadata();
 		}
 
 		catch(JDOMException e)
@@ -385,7 +603,9 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
             harvestError.setDescription("Skipping metadata with bad XML format. Remote id : "+ ri.id);
             harvestError.printLog(log);
             this.errors.add(harvestError);
-			result.badFormat++;
+			synchronized (result) {
+				result.badFormat++;
+			}
 		}
 
 		catch(Exception e)
@@ -394,7 +614,9 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
             harvestError.setDescription("Raised exception while getting metadata file : "+ e);
             this.errors.add(harvestError);
             harvestError.printLog(log);
-			result.unretrievable++;
+			synchronized (result) {
+				result.unretrievable++;
+			}
 		}
 
 		//--- we don't raise any exception here. Just try to go on
@@ -403,6 +625,61 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 
 	//--------------------------------------------------------------------------
 
+	/** Convert the metadata of a record and check its schema
+	  *
+	  * @return the metadata or null if the record has to be skipped
+	  */
+
+	private Element toLocalMetadata(RecordInfo ri, Element md)
+	{
+        if(log.isDebugEnabled()) log.debug("    - Record got:\n"+ Xml.getString(md));
+
+		if (isOaiDc(md))
+		{
+            if(log.isDebugEnabled()) log.debug("    - Converting oai_dc to dublin core");
+			md = toDublinCore(md);
+
+			if (md == null)
+				return null;
+		}
+
+		String schema;
+		try
+		{
+			schema = dataMan.autodetectSchema(md, null);
+		}
+		catch (Exception e)
+		{
+            HarvestError harvestError = new HarvestError(e, log);
+            harvestError.setDescription("Raised exception while detecting the schema : "+ e);
+            this.errors.add(harvestError);
+            harvestError.printLog(log);
+			return null;
+		}
+
+		if (schema == null)
+		{
+			log.warning("Skipping metadata with unknown schema. Remote id : "+ ri.id);
+			synchronized (result) {
+				result.unknownSchema++;
+			}
+		}
+		else
+		{
+			if (!params.validate || validates(schema, md))
+				return (Element) md.detach();
+
+			log.warning("Skipping metadata that does not validate. Remote id : "+ ri.id);
+			synchronized (result) {
+				result.doesNotValidate++;
+			}
+		}
+
+		return null;
+	}
+
+	//--------------------------------------------------------------------------
+
 	private boolean isOaiDc(Element md)
 	{
 		return (md.getName().equals("dc")) && (md.getNamespace().equals(OaiPmh.Namespaces.OAI_DC));
@@ -451,48 +728,35 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	//---
 	//--------------------------------------------------------------------------
 
-	private void updateMetadata(XmlRequest t, RecordInfo ri, String id) throws Exception
+	private String updateMetadata(RecordInfo ri, Element md, String id) throws Exception
 	{
-		String date = localUuids.getChangeDate(ri.id);
+        if(log.isDebugEnabled()) log.debug("  - Updating local metadata for remote id : "+ ri.id);
 
-		if (!ri.isMoreRecentThan(date))
-		{
-            if(log.isDebugEnabled()) log.debug("  - Metadata XML not changed for remote id : "+ ri.id);
-			result.unchangedMetadata++;
-		}
-		else
-		{
-            if(log.isDebugEnabled()) log.debug("  - Updating local metadata for remote id : "+ ri.id);
+        //
+        // update metadata
+        //
+        boolean validate = false;
+        boolean ufo = false;
+        boolean index = false;
+        String language = context.getLanguage();
+        final Metadata metadata = dataMan.updateMetadata(context, id, md, validate, ufo, index, language, ri.changeDate.toString(),
+                false);
+
+        //--- the administrator could change privileges and categories using the
+		//--- web interface so we have to re-set both
+
+        OperationAllowedRepository repository = context.getBean(OperationAllowedRepository.class);
+        repository.deleteAllByIdAttribute(OperationAllowedId_.metadataId, Integer.parseInt(id));
+        addPrivileges(id, params.getPrivileges(), localGroups, dataMan, context, log);
 
-			Element md = retrieveMetadata(t, ri);
+        metadata.getCategories().clear();
+        addCategories(metadata, params.getCategories(), localCateg, context, log, null);
 
-			if (md == null)
-				return;
-
-            //
-            // update metadata
-            //
-            boolean validate = false;
-            boolean ufo = false;
-            boolean index = false;
-            String language = context.getLanguage();
-            final Metadata metadata = dataMan.updateMetadata(context, id, md, validate, ufo, index, language, ri.changeDate.toString(),
-                    false);
-
-            //--- the administrator could change privileges and categories using the
-			//--- web interface so we have to re-set both
-
-            OperationAllowedRepository repository = context.getBean(OperationAllowedRepository.class);
-            repository.deleteAllByIdAttribute(OperationAllowedId_.metadataId, Integer.parseInt(id));
-            addPrivileges(id, params.getPrivileges(), localGroups, dataMan, context, log);
-
-            metadata.getCategories().clear();
-            addCategories(metadata, params.getCategories(), localCateg, context, log, null);
-
-            dataMan.flush();
-            dataMan.indexMetadata(id, false);
+		synchronized (result) {
 			result.updatedMetadata++;
 		}
+
+		return id;
 	}
 
 
@@ -513,12 +777,21 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	private CategoryMapper localCateg;
 	private GroupMapper    localGroups;
 	private UUIDMapper     localUuids;
+	private URL            url;
+	private File           schemaPath;
+
+	private OaiPmhCheckpoint checkpoint;
+	private HarvestPipeline<RecordInfo, Element, Element> pipeline;
+
+	/**
+	 * The remote ids of the records listed by this harvest.
+	 */
+	private Set<String> harvested = new HashSet<String>();
     /**
-     * Contains a list of accumulated errors during the executing of this harvest.
+     * Contains a list of accumulated errors during the executing of this harvest.  Filled by the threads of
+     * the pipeline.
      */
-    private List<HarvestError> errors = new LinkedList<HarvestError>();
+    private List<HarvestError> errors = Collections.synchronizedList(new LinkedList<HarvestError>());
 }
 
 //=============================================================================
-
-
@@ -0,0 +1,183 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.harvest.harvester.oaipmh;
+
+import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.kernel.harvest.harvester.HarvesterDataStore;
+import org.fao.geonet.repository.HarvesterDataRepository;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The progress of the searches of an OAI-PMH harvester, stored in a {@link HarvesterDataStore}:
+ * <ul>
+ *     <li>the position of a search which did not complete: the verb and the resumption token of the next page
+ *     to request, so that the next harvest resumes the search instead of restarting it;</li>
+ *     <li>the high-water mark of each search: the date of the response to the first request of the last
+ *     complete search, used as the 'from' of the next incremental harvest.</li>
+ * </ul>
+ * The checkpoints are discarded when the parameters of the harvester which change the listed records
+ * (url, searches...) are modified.
+ */
+class OaiPmhCheckpoint
+{
+	private static final String KEY_PREFIX = "oaipmh:";
+
+	/**
+	 * Where an interrupted search stopped.
+	 */
+	static class Position
+	{
+		final String  verb;
+		final ISODate started;
+		final String  token;
+
+		Position(String verb, ISODate started, String token)
+		{
+			this.verb    = verb;
+			this.started = started;
+			this.token   = token;
+		}
+
+		String toValue()
+		{
+			return verb + "|" + started.toString() + "|" + token;
+		}
+
+		static Position parse(String value)
+		{
+			// the token comes last as it may contain the separator
+			String[] parts = value.split("\\|", 3);
+			if (parts.length != 3)
+				return null;
+
+			return new Position(parts[0], new ISODate(parts[1]), parts[2]);
+		}
+	}
+
+	private final HarvesterDataStore store;
+
+	/**
+	 * @param repository the repository the checkpoints are stored in.
+	 * @param harvesterUuid the uuid of the harvester.
+	 * @param signature the signature of the parameters of the harvester the checkpoints are valid for.
+	 */
+	OaiPmhCheckpoint(HarvesterDataRepository repository, String harvesterUuid, String signature)
+	{
+		this.store = new HarvesterDataStore(repository, harvesterUuid, KEY_PREFIX, signature);
+	}
+
+	/**
+	 * Load the checkpoints stored by the previous harvests, discarding them if the parameters changed.
+	 */
+	void load()
+	{
+		store.load();
+	}
+
+	/**
+	 * Get the position of a search interrupted by the previous harvest.
+	 *
+	 * @return the position or null if the search has to start from the beginning.
+	 */
+	Position getPosition(int search)
+	{
+		StringBuilder value = new StringBuilder();
+		String part;
+		for (int i = 0; (part = store.get(getPositionKey(search, i))) != null; i++)
+			value.append(part);
+
+		return value.length() == 0 ? null : Position.parse(value.toString());
+	}
+
+	/**
+	 * Store the position of a search once the records of a page are stored.  A position longer than the values
+	 * of the store (long resumption tokens) is split in several values, saved together.
+	 */
+	void savePosition(int search, Position position)
+	{
+		String value = position.toValue();
+		Map<String, String> parts = new LinkedHashMap<String, String>();
+		for (int start = 0; start < value.length(); start += HarvesterDataStore.MAX_LENGTH)
+			parts.put(getPositionKey(search, parts.size()),
+					value.substring(start, Math.min(value.length(), start + HarvesterDataStore.MAX_LENGTH)));
+
+		store.putAll(parts);
+		clearPosition(search, parts.size());
+	}
+
+	/**
+	 * Forget the position of a search: the next harvest restarts it.
+	 */
+	void clearPosition(int search)
+	{
+		clearPosition(search, 0);
+	}
+
+	/**
+	 * Get the date the last complete search started at.
+	 *
+	 * @return the date or null if the search never completed.
+	 */
+	ISODate getHighWaterMark(int search)
+	{
+		String value = store.get(getHighWaterMarkKey(search));
+		return value == null ? null : new ISODate(value);
+	}
+
+	/**
+	 * Record that a search completed: the next harvest will restart it and, if incremental, request the records
+	 * changed since it started.
+	 */
+	void complete(int search, ISODate started)
+	{
+		clearPosition(search);
+		store.put(getHighWaterMarkKey(search), started.toString());
+	}
+
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Remove the parts of a position from the given one, ie. the parts left by a longer position.
+	 */
+	private void clearPosition(int search, int fromPart)
+	{
+		for (int i = fromPart; store.get(getPositionKey(search, i)) != null; i++)
+			store.delete(getPositionKey(search, i));
+	}
+
+	private static String getPositionKey(int search, int part)
+	{
+		String key = "search:" + search + ":position";
+		return part == 0 ? key : key + ":" + part;
+	}
+
+	private static String getHighWaterMarkKey(int search)
+	{
+		return "search:" + search + ":from";
+	}
+}
+
+//=============================================================================
@@ -127,7 +127,8 @@ public class OaiPmhHarvester extends AbstractHarvester<HarvestResult>
 		settingMan.add("id:"+siteId, "url",  params.url);
 		settingMan.add("id:"+siteId, "icon", params.icon);
 
-		settingMan.add("id:"+optionsId, "validate", params.validate);
+		settingMan.add("id:"+optionsId, "validate",    params.validate);
+		settingMan.add("id:"+optionsId, "incremental", params.incremental);
 
 		//--- store search nodes
 
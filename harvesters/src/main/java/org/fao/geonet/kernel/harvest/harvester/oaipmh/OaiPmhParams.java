@@ -64,7 +64,8 @@ public class OaiPmhParams extends AbstractParams
 		url      = Util.getParam(site, "url",  "");
 		icon     = Util.getParam(site, "icon", "");
 
-		validate = Util.getParam(options, "validate", false);
+		validate    = Util.getParam(options, "validate",    false);
+		incremental = Util.getParam(options, "incremental", false);
 
 		addSearches(searches);
 	}
@@ -86,7 +87,8 @@ public class OaiPmhParams extends AbstractParams
 		url      = Util.getParam(site,  "url",  url);
 		icon     = Util.getParam(site,  "icon", icon);
 
-		validate = Util.getParam(options, "validate", validate);
+		validate    = Util.getParam(options, "validate",    validate);
+		incremental = Util.getParam(options, "incremental", incremental);
 
 		//--- if some search queries are given, we drop the previous ones and
 		//--- set these new ones
@@ -117,7 +119,8 @@ public class OaiPmhParams extends AbstractParams
 		copy.url  = url;
 		copy.icon = icon;
 
-		copy.validate = validate;
+		copy.validate    = validate;
+		copy.incremental = incremental;
 
 		for (Search s : alSearches)
 			copy.alSearches.add(s.copy());
@@ -146,6 +149,7 @@ public class OaiPmhParams extends AbstractParams
 		}
 	}
 
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- Variables
@@ -155,6 +159,13 @@ public class OaiPmhParams extends AbstractParams
 	public String url;
 	public String icon;
 
+	/**
+	 * If true, only the records changed since the previous harvest are requested and the records deleted
+	 * on the remote node are removed from the deleted headers. Otherwise all the records are listed and
+	 * the local records which are not listed anymore are removed.
+	 */
+	public boolean incremental;
+
 	private ArrayList<Search> alSearches = new ArrayList<Search>();
 }
 
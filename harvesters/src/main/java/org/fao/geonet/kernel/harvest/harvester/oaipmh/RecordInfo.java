@@ -25,6 +25,8 @@ package org.fao.geonet.kernel.harvest.harvester.oaipmh;
 
 import org.fao.geonet.domain.ISODate;
 import org.fao.oaipmh.responses.Header;
+import org.fao.oaipmh.responses.Record;
+import org.jdom.Element;
 
 //=============================================================================
 
@@ -41,6 +43,18 @@ public class RecordInfo
 		id         = h.getIdentifier();
 		changeDate = h.getDateStamp();
 		prefix     = mdPrefix;
+		deleted    = h.isDeleted();
+	}
+
+	//---------------------------------------------------------------------------
+
+	/** A record returned by ListRecords, with its metadata */
+
+	public RecordInfo(Record r, String mdPrefix)
+	{
+		this(r.getHeader(), mdPrefix);
+
+		metadata = r.getMetadata();
 	}
 
 	//---------------------------------------------------------------------------
@@ -85,6 +99,10 @@ public class RecordInfo
 	public String  id;
 	public ISODate changeDate;
 	public String  prefix;
+	public boolean deleted;
+
+	/** The metadata if listed with ListRecords, null if it has to be retrieved with GetRecord */
+	public Element metadata;
 
 }
 
@@ -0,0 +1,178 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.harvest.harvester.ogcwxs;
+
+import com.google.common.base.Function;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.fao.geonet.kernel.harvest.harvester.HarvesterDataStore;
+import org.fao.geonet.repository.HarvesterDataRepository;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Retrieves the GetCapabilities document of a service with a conditional request.  The ETag and Last-Modified of
+ * the document harvested by the previous harvest are sent as If-None-Match and If-Modified-Since: a service
+ * answering 304 Not Modified, or returning the same document as the previous harvest (many services do not send
+ * validators), is reported as unchanged.
+ * <p/>
+ * The validators are stored in a {@link HarvesterDataStore}.  They only replace the previous ones when
+ * {@link #commit()} is called once the harvest succeeded, and {@link #invalidate()} must be called before the
+ * harvested metadata are modified so that the next harvest does not skip a service whose harvest failed.  They are
+ * discarded when the parameters of the harvester which change the harvested metadata are modified.
+ */
+class CapabilitiesFetcher
+{
+	private static final String KEY_PREFIX        = "ogcwxs:";
+	private static final String ETAG_KEY          = "etag";
+	private static final String LAST_MODIFIED_KEY = "lastModified";
+	private static final String DIGEST_KEY        = "digest";
+
+	private final GeonetHttpRequestFactory requestFactory;
+	private final HarvesterDataStore store;
+
+	private String etag;
+	private String lastModified;
+	private String digest;
+
+	/**
+	 * @param requestFactory the factory executing the requests.
+	 * @param repository the repository the validators are stored in.
+	 * @param harvesterUuid the uuid of the harvester.
+	 * @param signature the signature of the parameters of the harvester the validators are valid for.
+	 */
+	CapabilitiesFetcher(GeonetHttpRequestFactory requestFactory, HarvesterDataRepository repository,
+						String harvesterUuid, String signature)
+	{
+		this.requestFactory = requestFactory;
+		this.store          = new HarvesterDataStore(repository, harvesterUuid, KEY_PREFIX, signature);
+	}
+
+	/**
+	 * Load the validators stored by the previous harvest, discarding them if the parameters changed.
+	 */
+	void load()
+	{
+		store.load();
+	}
+
+	/**
+	 * Get the capabilities document.
+	 *
+	 * @param url the GetCapabilities url.
+	 * @param configurator configures the client of the request (proxy, credentials...).
+	 * @return the document or null if it did not change since the last committed harvest.
+	 */
+	Element fetch(String url, Function<HttpClientBuilder, Void> configurator) throws IOException, JDOMException
+	{
+		HttpGet req = new HttpGet(url);
+
+		String storedEtag = store.get(ETAG_KEY);
+		String storedLastModified = store.get(LAST_MODIFIED_KEY);
+		String storedDigest = store.get(DIGEST_KEY);
+
+		// without the digest of the previous document, the metadata must be harvested anyway
+		if (storedDigest != null)
+		{
+			if (storedEtag != null)
+				req.setHeader("If-None-Match", storedEtag);
+			if (storedLastModified != null)
+				req.setHeader("If-Modified-Since", storedLastModified);
+		}
+
+		ClientHttpResponse response = null;
+		byte[] body;
+		try
+		{
+			response = requestFactory.execute(req, configurator);
+
+			if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && storedDigest != null)
+				return null;
+
+			if (response.getStatusCode() != HttpStatus.OK)
+				throw new IOException("GetCapabilities request " + url + " failed: " + response.getRawStatusCode()
+						+ " " + response.getStatusText());
+
+			body = IOUtils.toByteArray(response.getBody());
+
+			HttpHeaders headers = response.getHeaders();
+			etag         = headers.getETag();
+			lastModified = headers.getFirst("Last-Modified");
+			digest       = DigestUtils.sha1Hex(body);
+		}
+		finally
+		{
+			if (response != null)
+				response.close();
+			req.releaseConnection();
+		}
+
+		if (digest.equals(storedDigest))
+		{
+			// the service does not support conditional requests, or its validators changed but not the document
+			commit();
+			return null;
+		}
+
+		return Xml.loadStream(new ByteArrayInputStream(body));
+	}
+
+	/**
+	 * Remove the stored validators: until {@link #commit()} is called, the next harvest harvests the service
+	 * even if it did not change.
+	 */
+	void invalidate()
+	{
+		for (String key : new String[] { ETAG_KEY, LAST_MODIFIED_KEY, DIGEST_KEY })
+			store.delete(key);
+	}
+
+	/**
+	 * Store the validators of the document returned by {@link #fetch(String, Function)}: the next harvest skips
+	 * the service if the document did not change.
+	 */
+	void commit()
+	{
+		if (digest == null)
+			return;
+
+		// a validator too long to be stored is not sent by the next harvest
+		invalidate();
+		store.put(DIGEST_KEY, digest);
+		store.put(ETAG_KEY, etag);
+		store.put(LAST_MODIFIED_KEY, lastModified);
+	}
+}
+
+//=============================================================================
@@ -25,8 +25,13 @@ package org.fao.geonet.kernel.harvest.harvester.ogcwxs;
 
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.collect.Iterables;
 import jeeves.server.context.ServiceContext;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.fao.geonet.GeonetContext;
@@ -36,28 +41,31 @@ import org.fao.geonet.constants.Params;
 import org.fao.geonet.domain.Metadata;
 import org.fao.geonet.domain.MetadataType;
 import org.fao.geonet.kernel.DataManager;
+import org.fao.geonet.kernel.GeonetworkDataDirectory;
 import org.fao.geonet.kernel.SchemaManager;
 import org.fao.geonet.kernel.harvest.BaseAligner;
+import org.fao.geonet.kernel.harvest.HarvestScheduler;
 import org.fao.geonet.kernel.harvest.harvester.AbstractHarvester;
 import org.fao.geonet.kernel.harvest.harvester.CategoryMapper;
 import org.fao.geonet.kernel.harvest.harvester.GroupMapper;
 import org.fao.geonet.kernel.harvest.harvester.HarvestError;
+import org.fao.geonet.kernel.harvest.harvester.HarvestPipeline;
 import org.fao.geonet.kernel.harvest.harvester.HarvestResult;
 import org.fao.geonet.kernel.harvest.harvester.IHarvester;
+import org.fao.geonet.kernel.harvest.harvester.Privileges;
 import org.fao.geonet.kernel.harvest.harvester.UUIDMapper;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.geonet.lib.Lib;
+import org.fao.geonet.repository.HarvesterDataRepository;
 import org.fao.geonet.repository.MetadataRepository;
 import org.fao.geonet.repository.Updater;
 import org.fao.geonet.services.thumbnail.Set;
 import org.fao.geonet.util.FileCopyMgr;
 import org.fao.geonet.util.Sha1Encoder;
-import org.fao.geonet.utils.BinaryFile;
 import org.fao.geonet.utils.GeonetHttpRequestFactory;
 import org.fao.geonet.utils.Xml;
 import org.fao.geonet.utils.XmlRequest;
 import org.jdom.Element;
-import org.jdom.JDOMException;
 import org.jdom.Namespace;
 import org.jdom.filter.ElementFilter;
 import org.jdom.xpath.XPath;
@@ -67,6 +75,7 @@ import org.springframework.http.client.ClientHttpResponse;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.*;
+import java.net.URI;
 import java.net.URL;
 import java.sql.SQLException;
 import java.text.DateFormat;
@@ -168,6 +177,9 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 		GeonetContext gc = (GeonetContext) context.getHandlerContext (Geonet.CONTEXT_NAME);
 		dataMan = gc.getBean(DataManager.class);
 		schemaMan = gc.getBean(SchemaManager.class);
+		requestFactory = context.getBean(GeonetHttpRequestFactory.class);
+		hostLimiter = new HostRequestLimiter(params.maxRequestsPerHost);
+		thumbnailCache = new ThumbnailCache(getThumbnailCacheDir(context, params.uuid));
     }
 
 	//---------------------------------------------------------------------------
@@ -190,6 +202,7 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
         // the node will not be referenced in the catalogue until next harvesting.
         // TODO : define a rule for UUID in order to be able to do an update operation ? 
         UUIDMapper localUuids = new UUIDMapper(context.getBean(MetadataRepository.class), params.uuid);
+        int localCount = Iterables.size(localUuids.getUUIDs());
 
 
         // Try to load capabilities document
@@ -202,17 +215,28 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
         if(log.isDebugEnabled()) {
             log.debug("GetCapabilities document: " + this.capabilitiesUrl);
         }
-		
-        XmlRequest req = context.getBean(GeonetHttpRequestFactory.class).createXmlRequest();
-        req.setUrl(new URL(this.capabilitiesUrl));
-        req.setMethod(XmlRequest.Method.GET);
-        Lib.net.setupProxy(context, req);
 
-        if (params.useAccount) {
-            req.setCredentials(params.username, params.password);
+        CapabilitiesFetcher capabilitiesFetcher = new CapabilitiesFetcher(requestFactory,
+                context.getBean(HarvesterDataRepository.class), params.uuid, getSignature());
+        capabilitiesFetcher.load();
+
+        // The metadata of the previous harvest were removed (eg. the harvester was cleared): harvest them again
+        if (localCount == 0) {
+            capabilitiesFetcher.invalidate();
+        }
+
+        xml = capabilitiesFetcher.fetch(this.capabilitiesUrl, getClientConfigurator(params.useAccount ? this.capabilitiesUrl : null));
+
+        if (xml == null) {
+            log.info("  - GetCapabilities document did not change since the previous harvest, keeping the "
+                     + localCount + " metadata");
+            result.unchangedMetadata = localCount;
+            result.totalMetadata = localCount;
+            return result;
         }
 
-        xml = req.execute();
+        // The next harvest must not skip the service if this one fails
+        capabilitiesFetcher.invalidate();
 
 		//-----------------------------------------------------------------------
 		//--- remove old metadata
@@ -240,7 +264,14 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
         addMetadata (xml);
         dataMan.flush();
 
+        // Drop the GetMap images of the layers which are gone or moved
+        thumbnailCache.purge();
+
         result.totalMetadata = result.addedMetadata + result.layer;
+
+        if (errors.isEmpty()) {
+            capabilitiesFetcher.commit();
+        }
     
 		return result;
 	}
@@ -319,11 +350,11 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 			if (layers.size()>0) {
 				log.info("  - Number of layers, featureTypes or Coverages found : " + layers.size());
 			
+				List<WxSLayerRegistry> refs = new ArrayList<WxSLayerRegistry>();
 				for (Element layer : layers) {
-					WxSLayerRegistry s = addLayerMetadata (layer, capa);
-					if (s != null)
-						layersRegistry.add(s);
-				}       
+					refs.add(new WxSLayerRegistry(refs.size(), layer));
+				}
+				addLayersMetadata (refs, capa);
 				
 				// Update ISO19119 for data/service links creation (ie. operatesOn element)
 				// The editor will support that but it will make quite heavy XML.
@@ -366,9 +397,7 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 		// Add Thumbnails only after metadata insertion to avoid concurrent transaction
 		// and loaded thumbnails could eventually failed anyway.
 		if (params.ogctype.startsWith("WMS") && params.createThumbnails) {
-        	for (WxSLayerRegistry layer : layersRegistry) {
-                loadThumbnail (layer);
-            }
+			loadThumbnails (layersRegistry);
         }
 	}
 	
@@ -477,39 +506,76 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 
 	
 	/** 
-     * Add metadata for a Layer/FeatureType/Coverage element of a GetCapabilities document.
-     * This function search for a metadataUrl element (with @type = TC211 and format = text/xml) 
-     * and try to load the XML document. 
-     * If failed, then an XSLT is used for creating metadata from the 
-     * Layer/FeatureType/Coverage element.
-     * If loaded document contain an existing uuid, metadata will not be loaded in the catalogue.
+     * Add metadata for the Layer/FeatureType/Coverage elements of a GetCapabilities document.
+     * 
+     * The layers are processed in parallel by a {@link HarvestPipeline}: the metadataUrl documents
+     * are loaded by fetchThreads threads (sending at most maxRequestsPerHost requests at the same
+     * time to a host), the GetCapabilities document is transformed by transformThreads threads and
+     * the metadata are inserted in this thread.
      *  
-     * @param layer     Layer/FeatureType/Coverage element
+     * @param layers    Layer/FeatureType/Coverage elements
      * @param capa		GetCapabilities document
-     *  
-     * @return          uuid 
      *                   
      */
-	private WxSLayerRegistry addLayerMetadata (Element layer, Element capa) throws JDOMException
+	private void addLayersMetadata (List<WxSLayerRegistry> layers, final Element capa) throws Exception
 	{
-		
-		DateFormat df 		= new SimpleDateFormat ("yyyy-MM-dd'T'HH:mm:ss");
-		Date dt 			= new Date ();
-		WxSLayerRegistry reg= new WxSLayerRegistry ();
-		String schema;
-		String mdXml;
-		String date 		= df.format (dt);
+		final String date 		= new SimpleDateFormat ("yyyy-MM-dd'T'HH:mm:ss").format (new Date ());
 		//--- Loading stylesheet
-		String styleSheet 	= schemaMan.getSchemaDir(params.outputSchema) + 
+		final String styleSheet = schemaMan.getSchemaDir(params.outputSchema) + 
 								Geonet.Path.CONVERT_STYLESHEETS +
 								"/OGCWxSGetCapabilitiesto19119/" + 
 								"/OGC" +
 								params.ogctype.substring(0,3) + 
 								"GetCapabilitiesLayer-to-19139.xsl";
-		Element xml 		= null;
-		
-		boolean exist;
-		boolean loaded 		= false;
+		final java.util.Set<String> storedUuids = new HashSet<String>();
+
+		HarvestPipeline<WxSLayerRegistry, WxSLayerRegistry, WxSLayerRegistry> pipeline =
+				new HarvestPipeline<WxSLayerRegistry, WxSLayerRegistry, WxSLayerRegistry>(params.name, log, dataMan);
+		pipeline.setThreads(params);
+		pipeline.setScheduler(context.getBean(HarvestScheduler.class));
+
+		pipeline.setFetcher(new HarvestPipeline.Stage<WxSLayerRegistry, WxSLayerRegistry, WxSLayerRegistry>() {
+			@Override
+			public WxSLayerRegistry process(WxSLayerRegistry reg, WxSLayerRegistry input) throws Exception {
+				return fetchLayerMetadata (reg);
+			}
+		});
+		pipeline.setTransformer(new HarvestPipeline.Stage<WxSLayerRegistry, WxSLayerRegistry, WxSLayerRegistry>() {
+			@Override
+			public WxSLayerRegistry process(WxSLayerRegistry reg, WxSLayerRegistry input) throws Exception {
+				return transformLayerMetadata (reg, capa, styleSheet);
+			}
+		});
+		pipeline.setStore(new HarvestPipeline.Stage<WxSLayerRegistry, WxSLayerRegistry, String>() {
+			@Override
+			public String process(WxSLayerRegistry reg, WxSLayerRegistry input) throws Exception {
+				return storeLayerMetadata (reg, date, storedUuids);
+			}
+		});
+		pipeline.run(layers, errors);
+
+		// The layers are stored in any order: link them in the order of the GetCapabilities document
+		Collections.sort(layersRegistry, new Comparator<WxSLayerRegistry>() {
+			@Override
+			public int compare(WxSLayerRegistry o1, WxSLayerRegistry o2) {
+				return o1.index < o2.index ? -1 : (o1.index == o2.index ? 0 : 1);
+			}
+		});
+	}
+
+	/** 
+     * Identify a layer and, if the harvester uses the metadataUrl of the layers, search for a
+     * metadataUrl element (with @type = TC211 and format = text/xml) and try to load the XML document.
+     *  
+     * @param reg       the layer
+     *  
+     * @return          the layer or null if the layer is skipped
+     *                   
+     */
+	private WxSLayerRegistry fetchLayerMetadata (WxSLayerRegistry reg) throws Exception
+	{
+		Element layer = reg.layer;
+		String mdXml;
 		
 		if (params.ogctype.substring(0,3).equals("WMS")) {
 			Element name;
@@ -578,55 +644,60 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 				if (href != null) {	// No metadataUrl attribute for that layer
 					mdXml = href.getValue ();
 					try {
-						xml = Xml.loadFile (new URL(mdXml));
+						Element xml = loadMetadataUrl (mdXml);
 
                         // If url is CSW GetRecordById remove envelope
                         if (xml.getName().equals("GetRecordByIdResponse")) {
                             xml = (Element) xml.getChildren().get(0);
                         }
 
-						schema = dataMan.autodetectSchema (xml, null); // ie. iso19115 or 139 or DC
-						// Extract uuid from loaded xml document
-						// FIXME : uuid could be duplicate if metadata already exist in catalog
-						reg.uuid = dataMan.extractUUID(schema, xml);
-						exist = dataMan.existsMetadataUuid(reg.uuid);
-						
-						if (exist) {
-							log.warning("    Metadata uuid already exist in the catalogue. Metadata will not be loaded.");
-							result.layerUuidExist ++;
-							// Return the layer info even if it exists in order
-							// to link to the service record.
-							return reg;
-						}
+						String schema = dataMan.autodetectSchema (xml, null); // ie. iso19115 or 139 or DC
 						
 						if (schema == null) {
 							log.warning("    Failed to detect schema from metadataUrl file. Use GetCapabilities document instead for that layer.");
-							result.unknownSchema ++;
-							loaded = false;
+							synchronized (result) {
+								result.unknownSchema ++;
+							}
 						} else { 
+							// Extract uuid from loaded xml document
+							// FIXME : uuid could be duplicate if metadata already exist in catalog
+							reg.uuid = dataMan.extractUUID(schema, xml);
+							reg.xml = xml;
+							reg.fromMetadataUrl = true;
 							log.info("  - Load layer metadataUrl document ok: " + mdXml);
-							
-							loaded = true;
-							result.layerUsingMdUrl ++;
 						}
+					} catch (InterruptedException e) {
+						throw e;
 					// TODO : catch other exception
-					}catch (Exception e) {
+					} catch (Exception e) {
 						log.warning("  - Failed to load layer using metadataUrl attribute : " + e.getMessage());
-						loaded = false;
 					}
 				} else {
 					log.info("  - No metadataUrl attribute with format text/xml found for that layer");
-					loaded = false;
 				}
 			} else {
 				log.info("  - No OnlineResource found for that layer");
-				loaded = false;
 			}
 		}
 		
-		
+		return reg;
+	}
+
+	/** 
+     * Create the metadata of a layer from the GetCapabilities document if it was not loaded
+     * from its metadataUrl and extract its bbox.
+     *  
+     * @param reg       the layer
+     * @param capa		GetCapabilities document
+     * @param styleSheet	the XSLT creating the metadata of a layer
+     *  
+     * @return          the layer or null if it has no metadata
+     *                   
+     */
+	private WxSLayerRegistry transformLayerMetadata (WxSLayerRegistry reg, Element capa, String styleSheet)
+	{
 		//--- using GetCapabilities document
-		if (!loaded && params.useLayer){
+		if (reg.xml == null && params.useLayer){
 			try {
 				//--- set XSL param to filter on layer and set uuid
 				Map<String, String> param = new HashMap<String, String>();
@@ -635,14 +706,79 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 				param.put("lang", params.lang);
 				param.put("topic", params.topic);
 				
-				xml = Xml.transform (capa, styleSheet, param);
+				reg.xml = Xml.transform (capa, styleSheet, param);
                 if(log.isDebugEnabled()) log.debug("  - Layer loaded using GetCapabilities document.");
 				
 			} catch (Exception e) {
 				log.warning("  - Failed to do XSLT transformation on Layer element : " + e.getMessage());
 			}
 		}
+
+		if (reg.xml == null) {
+			log.warning("  - Failed to load layer metadata : no metadata for layer " + reg.name);
+			synchronized (result) {
+				result.unretrievable ++;
+			}
+			return null;
+		}
 		
+		try {
+			// Load bbox info for later use (eg. WMS thumbnails creation)
+			Namespace gmd 	= Namespace.getNamespace("http://www.isotc211.org/2005/gmd");
+			Namespace gco 	= Namespace.getNamespace("http://www.isotc211.org/2005/gco");
+			
+			ElementFilter bboxFinder = new ElementFilter("EX_GeographicBoundingBox", gmd);
+            @SuppressWarnings("unchecked")
+            Iterator<Element> bboxes = reg.xml.getDescendants(bboxFinder);
+			
+			while (bboxes.hasNext()) {
+				Element box = bboxes.next();
+				// FIXME : Could be null. Default bbox if from root layer
+				reg.minx = Double.valueOf(box.getChild("westBoundLongitude", gmd).getChild("Decimal", gco).getText());
+				reg.miny = Double.valueOf(box.getChild("southBoundLatitude", gmd).getChild("Decimal", gco).getText());
+				reg.maxx = Double.valueOf(box.getChild("eastBoundLongitude", gmd).getChild("Decimal", gco).getText());
+				reg.maxy = Double.valueOf(box.getChild("northBoundLatitude", gmd).getChild("Decimal", gco).getText());
+				
+			}
+		}  catch (Exception e) {
+            log.warning("  - Failed to extract layer bbox from metadata : " + e.getMessage());
+        }
+
+		return reg;
+	}
+
+	/** 
+     * Insert the metadata of a layer.  If the metadata loaded from the metadataUrl contain an
+     * existing uuid, metadata will not be loaded in the catalogue.
+     *  
+     * @param reg       the layer
+     * @param date		the creation and change date of the metadata
+     * @param storedUuids	the uuids of the layers already stored by this harvest
+     *  
+     * @return          the id of the metadata to index or null
+     *                   
+     */
+	private String storeLayerMetadata (WxSLayerRegistry reg, String date, java.util.Set<String> storedUuids) throws Exception
+	{
+		Element xml = reg.xml;
+		reg.xml = null;
+		reg.layer = null;
+
+		if (reg.fromMetadataUrl) {
+			if (storedUuids.contains(reg.uuid) || dataMan.existsMetadataUuid(reg.uuid)) {
+				log.warning("    Metadata uuid already exist in the catalogue. Metadata will not be loaded.");
+				result.layerUuidExist ++;
+				// Return the layer info even if it exists in order
+				// to link to the service record.
+				layersRegistry.add(reg);
+				return null;
+			}
+			result.layerUsingMdUrl ++;
+		} else if (storedUuids.contains(reg.uuid)) {
+			log.warning("  - Skipping layer " + reg.name + " listed more than once in the GetCapabilities document.");
+			result.uuidSkipped ++;
+			return null;
+		}
 		
 		// Insert in db
 		try {
@@ -653,10 +789,11 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
             String group = null, isTemplate = null, docType = null, title = null, category = null;
             boolean ufo = false, indexImmediate = false;
             
-			schema = dataMan.autodetectSchema (xml);
+			String schema = dataMan.autodetectSchema (xml);
 			
             reg.id = dataMan.insertMetadata(context, schema, xml, reg.uuid, Integer.parseInt(params.ownerId), group, params.uuid,
                          isTemplate, docType, category, date, date, ufo, indexImmediate);
+            storedUuids.add(reg.uuid);
 
 			int iId = Integer.parseInt(reg.id);
             if(log.isDebugEnabled()) log.debug("    - Layer loaded in DB.");
@@ -671,93 +808,136 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
             if(log.isDebugEnabled()) log.debug("    - Set Harvested.");
 			dataMan.setHarvestedExt(iId, params.uuid, Optional.of(params.url)); // FIXME : harvestUuid should be a MD5 string
 
-            dataMan.flush();
-
-            dataMan.indexMetadata(reg.id, false);
-			
-			try {
-    			// Load bbox info for later use (eg. WMS thumbnails creation)
-    			Namespace gmd 	= Namespace.getNamespace("http://www.isotc211.org/2005/gmd");
-    			Namespace gco 	= Namespace.getNamespace("http://www.isotc211.org/2005/gco");
-    			
-    			ElementFilter bboxFinder = new ElementFilter("EX_GeographicBoundingBox", gmd);
-                @SuppressWarnings("unchecked")
-                Iterator<Element> bboxes = xml.getDescendants(bboxFinder);
-    			
-    			while (bboxes.hasNext()) {
-    				Element box = bboxes.next();
-    				// FIXME : Could be null. Default bbox if from root layer
-    				reg.minx = Double.valueOf(box.getChild("westBoundLongitude", gmd).getChild("Decimal", gco).getText());
-    				reg.miny = Double.valueOf(box.getChild("southBoundLatitude", gmd).getChild("Decimal", gco).getText());
-    				reg.maxx = Double.valueOf(box.getChild("eastBoundLongitude", gmd).getChild("Decimal", gco).getText());
-    				reg.maxy = Double.valueOf(box.getChild("northBoundLatitude", gmd).getChild("Decimal", gco).getText());
-    				
-    			}
-			}  catch (Exception e) {
-	            log.warning("  - Failed to extract layer bbox from metadata : " + e.getMessage());
-	        }
-
+			layersRegistry.add(reg);
 			result.layer ++;
 			log.info("  - metadata loaded with uuid: " + reg.uuid + "/internal id: " + reg.id);
+
+			// the pipeline indexes the layer
+			return reg.id;
 				
 		} catch (Exception e) {
 			log.warning("  - Failed to load layer metadata : " + e.getMessage());
-			result.unretrievable ++;
+			synchronized (result) {
+				result.unretrievable ++;
+			}
 			return null;
 		}
-		
-		return reg;
+	}
+
+	/** 
+     * Load the metadataUrl document of a layer.
+     *  
+     * @param url   the metadataUrl
+     *                   
+     */
+	private Element loadMetadataUrl (String url) throws Exception
+	{
+		String host = hostLimiter.acquire(url);
+		try {
+			XmlRequest req = requestFactory.createXmlRequest(new URL(url));
+			req.setMethod(XmlRequest.Method.GET);
+			Lib.net.setupProxy(context, req);
+			return req.execute();
+		} finally {
+			hostLimiter.release(host);
+		}
 	}
 	
 
+	/** 
+     * Create the thumbnails of the layers.  The GetMap images are retrieved in parallel by
+     * fetchThreads threads and the thumbnails are set in this thread.
+     *  
+     * @param layers   the layers for which the thumbnails need to be generated
+     *                   
+     */
+	private void loadThumbnails (List<WxSLayerRegistry> layers) throws Exception {
+		List<WxSLayerRegistry> harvested = new ArrayList<WxSLayerRegistry>();
+		for (WxSLayerRegistry layer : layers) {
+			// layers whose metadata already existed in the catalogue are not harvested
+			if (layer.id != null) {
+				harvested.add(layer);
+			}
+		}
+
+		HarvestPipeline<WxSLayerRegistry, String, String> pipeline =
+				new HarvestPipeline<WxSLayerRegistry, String, String>(params.name, log, dataMan);
+		pipeline.setThreads(params);
+
+		pipeline.setFetcher(new HarvestPipeline.Stage<WxSLayerRegistry, WxSLayerRegistry, String>() {
+			@Override
+			public String process(WxSLayerRegistry layer, WxSLayerRegistry input) throws Exception {
+				String filename = getMapThumbnail(layer);
+				if (filename == null) {
+					synchronized (result) {
+						result.thumbnailsFailed ++;
+					}
+				}
+				return filename;
+			}
+		});
+		pipeline.setTransformer(new HarvestPipeline.Stage<WxSLayerRegistry, String, String>() {
+			@Override
+			public String process(WxSLayerRegistry layer, String filename) throws Exception {
+				return filename;
+			}
+		});
+		pipeline.setStore(new HarvestPipeline.Stage<WxSLayerRegistry, String, String>() {
+			@Override
+			public String process(WxSLayerRegistry layer, String filename) throws Exception {
+				// the thumbnail service indexes the metadata
+				loadThumbnail(layer, filename);
+				return null;
+			}
+		});
+		pipeline.run(harvested, errors);
+	}
+
 	/** 
      * Call GeoNetwork service to load thumbnails and create small and 
      * big ones. 
      *  
      *  
      * @param layer   layer for which the thumbnail needs to be generated
+     * @param filename	the GetMap image in the upload directory
      *                   
      */
-	private void loadThumbnail (WxSLayerRegistry layer){
+	private void loadThumbnail (WxSLayerRegistry layer, String filename){
         if(log.isDebugEnabled())
             log.debug("  - Creating thumbnail for layer metadata: " + layer.name + " id: " + layer.id);
 		Set s = new org.fao.geonet.services.thumbnail.Set ();
 		
 		try {
-			String filename = getMapThumbnail(layer);
+            if(log.isDebugEnabled()) log.debug("  - File: " + filename);
 			
-			if (filename != null) {
-                if(log.isDebugEnabled()) log.debug("  - File: " + filename);
-				
-				Element par = new Element ("request");
-				par.addContent(new Element ("id").setText(layer.id));
-				par.addContent(new Element ("version").setText("10"));
-				par.addContent(new Element ("type").setText("large"));
-				
-				Element fname = new Element ("fname").setText(filename);
-				fname.setAttribute("content-type", "image/png");
-				fname.setAttribute("type", "file");
-				fname.setAttribute("size", "");
-				
-				par.addContent(fname);
-				par.addContent(new Element ("add").setText("Add"));
-				par.addContent(new Element ("createSmall").setText("on"));
-				par.addContent(new Element ("smallScalingFactor").setText("180"));
-				par.addContent(new Element ("smallScalingDir").setText("width"));
-				
-				// Call the services 
-				s.execOnHarvest(par, context, dataMan);
+			Element par = new Element ("request");
+			par.addContent(new Element ("id").setText(layer.id));
+			par.addContent(new Element ("version").setText("10"));
+			par.addContent(new Element ("type").setText("large"));
+			
+			Element fname = new Element ("fname").setText(filename);
+			fname.setAttribute("content-type", "image/png");
+			fname.setAttribute("type", "file");
+			fname.setAttribute("size", "");
+			
+			par.addContent(fname);
+			par.addContent(new Element ("add").setText("Add"));
+			par.addContent(new Element ("createSmall").setText("on"));
+			par.addContent(new Element ("smallScalingFactor").setText("180"));
+			par.addContent(new Element ("smallScalingDir").setText("width"));
+			
+			// Call the services 
+			s.execOnHarvest(par, context, dataMan);
 
-                dataMan.flush();
+            dataMan.flush();
 
-                result.thumbnails ++;
-			} else {
-				result.thumbnailsFailed ++;
-            }
+            result.thumbnails ++;
 		} catch (Exception e) {
 			log.warning("  - Failed to set thumbnail for metadata: " + e.getMessage());
 			e.printStackTrace();
-			result.thumbnailsFailed ++;
+			synchronized (result) {
+				result.thumbnailsFailed ++;
+			}
 		}
 		
 	}
@@ -783,14 +963,15 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	
 	
 	/** 
-     * Load thumbnails making a GetMap operation.
+     * Load thumbnails making a GetMap operation, or from the thumbnail cache if the
+     * same map was retrieved by a previous harvest.
      * Width is 300px. Ratio is computed for height using LatLongBoundingBoxElement.
      *  
      *  
      * @param layer   layer for which the thumbnail needs to be generated
      *                   
      */
-	private String getMapThumbnail (WxSLayerRegistry layer) {
+	private String getMapThumbnail (WxSLayerRegistry layer) throws InterruptedException {
 		String filename = layer.uuid + ".png";
 		String dir = context.getUploadDir();
 		Double r = WIDTH / 
@@ -820,56 +1001,132 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
         		;
 		// All is in Lat/Long epsg:4326
 		
+		try {
+			File image = thumbnailCache.get(url);
+			if (image != null) {
+                if(log.isDebugEnabled()) log.debug ("Using cached GetMap image for layer: " + layer.name);
+			} else {
+				image = getMap(url);
+				if (image == null) {
+					return null;
+				}
+			}
+			// The thumbnail service moves the file from the upload directory
+			FileUtils.copyFile(image, new File(dir + filename));
+		} catch (IOException ioe){
+			log.info (" Unable to connect to '" + url + "'");
+			log.info (ioe.getMessage());
+			return null;
+		}
+		
+		return filename;
+	}
+
+	/** 
+     * Retrieve a GetMap image and store it in the thumbnail cache.
+     *  
+     * @param url   the GetMap url
+     * @return      the cached image or null if the service did not return an image
+     *                   
+     */
+	private File getMap (String url) throws IOException, InterruptedException {
         HttpGet req = new HttpGet(url);
 
         if(log.isDebugEnabled()) log.debug ("Retrieving remote document: " + url);
 
-
+		String host = hostLimiter.acquire(url);
+		ClientHttpResponse httpResponse = null;
 		try {
 		    // Connect
-            final GeonetHttpRequestFactory requestFactory = context.getBean(GeonetHttpRequestFactory.class);
-            final ClientHttpResponse httpResponse = requestFactory.execute(req, new Function<HttpClientBuilder, Void>() {
-                @Nullable
-                @Override
-                public Void apply(@Nullable HttpClientBuilder input) {
-                    // set proxy from settings manager
-                    Lib.net.setupProxy(context, input);
-                    return null;  //To change body of implemented methods use File | Settings | File Templates.
-                }
-            });
+            httpResponse = requestFactory.execute(req, getClientConfigurator(null));
 
             if(log.isDebugEnabled()) {
                 log.debug("   Get " + httpResponse.getStatusCode());
             }
 
-			if (httpResponse.getStatusCode() == HttpStatus.OK) {
-			    // Save image document to temp directory
-				// TODO: Check OGC exception
-                OutputStream fo = null;
-                InputStream in = null;
-                
-                try {
-                    fo = new FileOutputStream (dir + filename);
-                    in = httpResponse.getBody();
-                    BinaryFile.copy (in,fo);
-                } finally {
-                    IOUtils.closeQuietly(in);
-                    IOUtils.closeQuietly(fo);
-                }
-			} else {
+			if (httpResponse.getStatusCode() != HttpStatus.OK) {
 				log.info (" Http error connecting");
 				return null;
 			}
-		} catch (IOException ioe){
-			log.info (" Unable to connect to '" + req.toString() + "'");
-			log.info (ioe.getMessage());
-			return null;
+
+			// An OGC exception is not an image and must not be cached
+			String contentType = httpResponse.getHeaders().getFirst("Content-Type");
+			if (contentType != null && !contentType.toLowerCase(Locale.ENGLISH).startsWith("image/")) {
+				log.info (" GetMap returned " + contentType + " instead of an image");
+				return null;
+			}
+
+            InputStream in = null;
+            try {
+                in = httpResponse.getBody();
+                return thumbnailCache.put(url, in);
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
 		} finally {
+			if (httpResponse != null) {
+				httpResponse.close();
+			}
 		    // Release current connection to the connection pool once you are done
 		    req.releaseConnection ();
+			hostLimiter.release(host);
 		}
-		
-		return filename;
+	}
+
+	/** 
+     * Configure the clients of the requests: set the proxy from the settings and, if
+     * required, the credentials of the harvester.
+     *  
+     * @param accountUrl	the url the credentials of the harvester are sent to, null to send no credentials
+     *                   
+     */
+	private Function<HttpClientBuilder, Void> getClientConfigurator (final String accountUrl) {
+		return new Function<HttpClientBuilder, Void>() {
+            @Nullable
+            @Override
+            public Void apply(@Nullable HttpClientBuilder input) {
+                // set proxy from settings manager
+                CredentialsProvider provider = Lib.net.setupProxy(context, input);
+                if (accountUrl != null) {
+                    provider.setCredentials(new AuthScope(URI.create(accountUrl).getHost(), AuthScope.ANY_PORT),
+                            new UsernamePasswordCredentials(params.username, params.password));
+                    input.setDefaultCredentialsProvider(provider);
+                }
+                return null;
+            }
+        };
+	}
+
+	/** 
+     * The signature of the parameters which change the harvested metadata: the GetCapabilities
+     * document is only compared with the one of the previous harvest if they did not change.
+     */
+	private String getSignature () {
+		StringBuilder signature = new StringBuilder(this.capabilitiesUrl);
+		signature.append('|').append(params.lang).append('|').append(params.topic)
+				.append('|').append(params.useLayer).append('|').append(params.useLayerMd)
+				.append('|').append(params.createThumbnails).append('|').append(params.datasetCategory)
+				.append('|').append(params.outputSchema).append('|').append(params.ownerId);
+		for (Privileges privileges : params.getPrivileges()) {
+			signature.append('|').append(privileges.getGroupId());
+			for (Integer operation : privileges.getOperations()) {
+				signature.append(',').append(operation);
+			}
+		}
+		for (String categoryId : params.getCategories()) {
+			signature.append('|').append(categoryId);
+		}
+		return Sha1Encoder.encodeString(signature.toString());
+	}
+
+	/** 
+     * The directory of the GetMap images cached for the thumbnails of a harvester.
+     *  
+     * @param harvesterUuid	the uuid of the harvester
+     */
+	static File getThumbnailCacheDir (ServiceContext context, String harvesterUuid) {
+		return new File(context.getBean(GeonetworkDataDirectory.class).getSystemDataDir(),
+				"harvester_thumbnails" + File.separator + harvesterUuid);
 	}
 
 	/** 
@@ -903,6 +1160,10 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	private CategoryMapper localCateg;
 	private GroupMapper    localGroups;
     private HarvestResult   result;
+	private GeonetHttpRequestFactory requestFactory;
+	private HostRequestLimiter hostLimiter;
+	private ThumbnailCache thumbnailCache;
+	private final List<HarvestError> errors = Collections.synchronizedList(new ArrayList<HarvestError>());
 
     /**
 	 * Store the GetCapabilities operation URL. This URL is scrambled
@@ -919,6 +1180,12 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
     private List<WxSLayerRegistry> layersRegistry = new ArrayList<WxSLayerRegistry>();
 	
 	private static class WxSLayerRegistry {
+		/** the position of the layer in the GetCapabilities document */
+		public final int index;
+		/** the layer element and its metadata, only set while the layer is harvested */
+		public Element layer;
+		public Element xml;
+		public boolean fromMetadataUrl;
 		public String uuid;
 		public String id;
 		public String name;
@@ -926,6 +1193,11 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 		public Double miny = -90.0;
 		public Double maxx = 180.0;
 		public Double maxy = 90.0;
+
+		WxSLayerRegistry(int index, Element layer) {
+			this.index = index;
+			this.layer = layer;
+		}
 	}
 
 	/* (non-Javadoc)
@@ -933,8 +1205,7 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	 */
 	@Override
 	public List<HarvestError> getErrors() {
-		// TODO Auto-generated method stub
-		return null;
+		return errors;
 	}
 
 }
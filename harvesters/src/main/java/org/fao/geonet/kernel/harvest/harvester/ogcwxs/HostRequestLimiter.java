@@ -0,0 +1,100 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+
+package org.fao.geonet.kernel.harvest.harvester.ogcwxs;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of requests a harvest sends at the same time to each remote host, so that processing the
+ * layers in parallel does not overload the harvested service or the hosts of the metadata urls.
+ */
+class HostRequestLimiter
+{
+	private final int maxRequestsPerHost;
+	private final Map<String, Semaphore> permits = new HashMap<String, Semaphore>();
+
+	/**
+	 * @param maxRequestsPerHost the number of concurrent requests per host, 0 or less for no limit.
+	 */
+	HostRequestLimiter(int maxRequestsPerHost)
+	{
+		this.maxRequestsPerHost = maxRequestsPerHost;
+	}
+
+	/**
+	 * Wait until a request can be sent to the host of the url.  {@link #release(String)} must be called with the
+	 * returned host once the response is read.
+	 *
+	 * @return the host of the url, null if the requests to this url are not limited.
+	 */
+	String acquire(String url) throws InterruptedException
+	{
+		if (maxRequestsPerHost <= 0)
+			return null;
+
+		String host;
+		try
+		{
+			host = new URL(url).getHost().toLowerCase(Locale.ENGLISH);
+		}
+		catch (MalformedURLException e)
+		{
+			// the request will fail anyway
+			return null;
+		}
+
+		getPermits(host).acquire();
+		return host;
+	}
+
+	/**
+	 * Release the request acquired for the host.
+	 *
+	 * @param host the host returned by {@link #acquire(String)}.
+	 */
+	void release(String host)
+	{
+		if (host != null)
+			getPermits(host).release();
+	}
+
+	private synchronized Semaphore getPermits(String host)
+	{
+		Semaphore semaphore = permits.get(host);
+		if (semaphore == null)
+		{
+			semaphore = new Semaphore(maxRequestsPerHost, true);
+			permits.put(host, semaphore);
+		}
+		return semaphore;
+	}
+}
+
+//=============================================================================
@@ -24,6 +24,7 @@
 package org.fao.geonet.kernel.harvest.harvester.ogcwxs;
 
 import jeeves.server.context.ServiceContext;
+import org.apache.commons.io.FileUtils;
 import org.fao.geonet.Logger;
 import org.fao.geonet.domain.Source;
 import org.fao.geonet.exceptions.BadInputEx;
@@ -133,6 +134,14 @@ public class OgcWxSHarvester extends AbstractHarvester<HarvestResult>
 		settingMan.add("id:"+optionsId, "useLayerMd",  params.useLayerMd);
 		settingMan.add("id:"+optionsId, "datasetCategory",  params.datasetCategory);
 		settingMan.add("id:"+optionsId, "outputSchema",  params.outputSchema);
+		settingMan.add("id:"+optionsId, "maxRequestsPerHost",  params.maxRequestsPerHost);
+	}
+
+	protected void doDestroy() throws SQLException
+	{
+		super.doDestroy();
+
+		FileUtils.deleteQuietly(Harvester.getThumbnailCacheDir(context, params.uuid));
 	}
 
 	//---------------------------------------------------------------------------
@@ -68,6 +68,7 @@ public class OgcWxSParams extends AbstractParams
 		useLayerMd		= Util.getParam(opt, "useLayerMd",  false);
 		datasetCategory	= Util.getParam(opt, "datasetCategory",  "");
 		outputSchema	= Util.getParam(opt, "outputSchema",  "");
+		maxRequestsPerHost = Util.getParam(opt, "maxRequestsPerHost", DEFAULT_MAX_REQUESTS_PER_HOST);
 	}
 
 	//---------------------------------------------------------------------------
@@ -94,6 +95,7 @@ public class OgcWxSParams extends AbstractParams
 		useLayerMd		= Util.getParam(opt, "useLayerMd",  useLayerMd);
 		datasetCategory = Util.getParam(opt, "datasetCategory",  datasetCategory);
 		outputSchema 	= Util.getParam(opt, "outputSchema",  outputSchema);
+		maxRequestsPerHost = Util.getParam(opt, "maxRequestsPerHost", maxRequestsPerHost);
 	}
 
 	//---------------------------------------------------------------------------
@@ -117,9 +119,11 @@ public class OgcWxSParams extends AbstractParams
 		copy.useLayerMd 		= useLayerMd;
 		copy.datasetCategory    = datasetCategory;
 		copy.outputSchema    	= outputSchema;
+		copy.maxRequestsPerHost = maxRequestsPerHost;
 		return copy;
 	}
 
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- Variables
@@ -136,6 +140,14 @@ public class OgcWxSParams extends AbstractParams
 	public boolean useLayerMd;
 	public String datasetCategory;
 	public String outputSchema;
+
+	/**
+	 * The number of requests (metadata urls, GetMap...) sent at the same time to a host while the layers are
+	 * processed by fetchThreads threads.
+	 */
+	public int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+
+	private static final int DEFAULT_MAX_REQUESTS_PER_HOST = 2;
 }
 
 //=============================================================================
@@ -0,0 +1,136 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+
+package org.fao.geonet.kernel.harvest.harvester.ogcwxs;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.fao.geonet.util.Sha1Encoder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The GetMap images downloaded for the thumbnails of the layers by the previous harvests of a harvester.  The
+ * images are keyed on the GetMap url, ie. on the service, the layer, the bounding box and the size of the image,
+ * so that a layer whose bounding box changed gets a new thumbnail.
+ * <p/>
+ * The images not used by a harvest are removed by {@link #purge()} at the end of the harvest.
+ */
+class ThumbnailCache
+{
+	private static final String EXTENSION = ".png";
+
+	private final File directory;
+	private final Set<String> used = Collections.synchronizedSet(new HashSet<String>());
+
+	/**
+	 * @param directory the directory of the images of the harvester.
+	 */
+	ThumbnailCache(File directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * Get the image downloaded from the url by a previous harvest.
+	 *
+	 * @return the image or null if it is not cached.
+	 */
+	File get(String url)
+	{
+		String name = getName(url);
+		File file = new File(directory, name);
+		if (!file.isFile())
+			return null;
+
+		used.add(name);
+		return file;
+	}
+
+	/**
+	 * Store the image downloaded from the url.
+	 *
+	 * @param url the GetMap url.
+	 * @param in the image, closed by the caller.
+	 * @return the cached image.
+	 */
+	File put(String url, InputStream in) throws IOException
+	{
+		String name = getName(url);
+		File file = new File(directory, name);
+		File tmp = new File(directory, name + ".tmp");
+
+		FileUtils.forceMkdir(directory);
+		OutputStream out = null;
+		try
+		{
+			out = new FileOutputStream(tmp);
+			IOUtils.copy(in, out);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(out);
+		}
+
+		// an image is never read while being written
+		if ((file.exists() && !file.delete()) || !tmp.renameTo(file))
+		{
+			FileUtils.deleteQuietly(tmp);
+			throw new IOException("Unable to store thumbnail in " + file);
+		}
+
+		used.add(name);
+		return file;
+	}
+
+	/**
+	 * Remove the images not used since the cache was created.
+	 */
+	void purge()
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+
+		for (File file : files)
+		{
+			if (!used.contains(file.getName()))
+				FileUtils.deleteQuietly(file);
+		}
+	}
+
+	private static String getName(String url)
+	{
+		return Sha1Encoder.encodeString(url) + EXTENSION;
+	}
+}
+
+//=============================================================================
@@ -0,0 +1,254 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.harvest.harvester.thredds;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.fao.geonet.util.Sha1Encoder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The catalogs retrieved by the previous harvests of a THREDDS harvester, with the ETag and Last-Modified returned
+ * by the server, so that the catalogs can be requested with conditional requests.
+ * <p/>
+ * The documents are written as soon as they are retrieved but their validators are only written by
+ * {@link #commit(boolean)} once the datasets of the catalogs are harvested: a catalog is only reported as unchanged
+ * if the harvest which retrieved it succeeded.  The digest of the document is committed with the validators so that
+ * a document overwritten by a failed harvest is never mistaken for the committed one.
+ */
+class CatalogCache
+{
+	private static final String VALIDATORS_FILE    = "validators.properties";
+	private static final String DOCUMENT_EXTENSION = ".xml";
+	private static final String ETAG               = ".etag";
+	private static final String LAST_MODIFIED      = ".lastModified";
+	private static final String DIGEST             = ".digest";
+
+	/**
+	 * The validators of a catalog document.
+	 */
+	static class Validators
+	{
+		final String etag;
+		final String lastModified;
+		final String digest;
+
+		Validators(String etag, String lastModified, String digest)
+		{
+			this.etag         = etag;
+			this.lastModified = lastModified;
+			this.digest       = digest;
+		}
+	}
+
+	private final File directory;
+	private final Properties committed = new Properties();
+	private final Map<String, Validators> crawled = new HashMap<String, Validators>();
+
+	/**
+	 * @param directory the directory of the catalogs of the harvester.
+	 */
+	CatalogCache(File directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * Load the validators committed by the previous harvest.
+	 */
+	synchronized void load() throws IOException
+	{
+		committed.clear();
+		crawled.clear();
+
+		File file = new File(directory, VALIDATORS_FILE);
+		if (!file.isFile())
+			return;
+
+		InputStream in = null;
+		try
+		{
+			in = new FileInputStream(file);
+			committed.load(in);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Get the validators to send with the request of a catalog.
+	 *
+	 * @return the validators or null if the catalog must be retrieved anyway.
+	 */
+	Validators getValidators(String url) throws IOException
+	{
+		String key = getKey(url);
+		Validators validators = getCommitted(key);
+		if (validators == null || (validators.etag == null && validators.lastModified == null))
+			return null;
+
+		File file = new File(directory, key + DOCUMENT_EXTENSION);
+		if (!file.isFile() || !DigestUtils.sha1Hex(FileUtils.readFileToByteArray(file)).equals(validators.digest))
+			return null;
+
+		return validators;
+	}
+
+	/**
+	 * Get the cached document of a catalog the server reported as not modified.
+	 */
+	byte[] getDocument(String url) throws IOException
+	{
+		String key = getKey(url);
+		byte[] document = FileUtils.readFileToByteArray(new File(directory, key + DOCUMENT_EXTENSION));
+
+		synchronized (this)
+		{
+			crawled.put(key, getCommitted(key));
+		}
+		return document;
+	}
+
+	/**
+	 * Store the document of a catalog retrieved from the server.
+	 *
+	 * @param etag the ETag returned by the server or null.
+	 * @param lastModified the Last-Modified returned by the server or null.
+	 */
+	void putDocument(String url, byte[] document, String etag, String lastModified) throws IOException
+	{
+		String key = getKey(url);
+
+		FileUtils.forceMkdir(directory);
+		OutputStream out = null;
+		try
+		{
+			out = new FileOutputStream(new File(directory, key + DOCUMENT_EXTENSION));
+			out.write(document);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(out);
+		}
+
+		synchronized (this)
+		{
+			crawled.put(key, new Validators(etag, lastModified, DigestUtils.sha1Hex(document)));
+		}
+	}
+
+	/**
+	 * Write the validators of the catalogs retrieved by this harvest.
+	 *
+	 * @param complete true if all the catalogs were crawled: the documents of the catalogs which were not crawled
+	 *                 are removed, else the validators of these catalogs are kept.
+	 */
+	synchronized void commit(boolean complete) throws IOException
+	{
+		Properties validators = new Properties();
+		if (!complete)
+			validators.putAll(committed);
+
+		for (Map.Entry<String, Validators> entry : crawled.entrySet())
+		{
+			String key = entry.getKey();
+			Validators value = entry.getValue();
+			validators.remove(key + ETAG);
+			validators.remove(key + LAST_MODIFIED);
+			validators.remove(key + DIGEST);
+			if (value == null)
+				continue;
+			if (value.etag != null)
+				validators.setProperty(key + ETAG, value.etag);
+			if (value.lastModified != null)
+				validators.setProperty(key + LAST_MODIFIED, value.lastModified);
+			validators.setProperty(key + DIGEST, value.digest);
+		}
+
+		FileUtils.forceMkdir(directory);
+		OutputStream out = null;
+		try
+		{
+			out = new FileOutputStream(new File(directory, VALIDATORS_FILE));
+			validators.store(out, null);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(out);
+		}
+
+		if (complete)
+		{
+			Set<String> documents = new HashSet<String>();
+			for (String key : crawled.keySet())
+				documents.add(key + DOCUMENT_EXTENSION);
+
+			File[] files = directory.listFiles();
+			if (files != null)
+			{
+				for (File file : files)
+				{
+					if (file.getName().endsWith(DOCUMENT_EXTENSION) && !documents.contains(file.getName()))
+						FileUtils.deleteQuietly(file);
+				}
+			}
+		}
+
+		committed.clear();
+		committed.putAll(validators);
+		crawled.clear();
+	}
+
+	//---------------------------------------------------------------------------
+
+	private synchronized Validators getCommitted(String key)
+	{
+		String digest = committed.getProperty(key + DIGEST);
+		if (digest == null)
+			return null;
+
+		return new Validators(committed.getProperty(key + ETAG), committed.getProperty(key + LAST_MODIFIED), digest);
+	}
+
+	private static String getKey(String url)
+	{
+		return Sha1Encoder.encodeString(url);
+	}
+}
+
+//=============================================================================
@@ -0,0 +1,392 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.harvest.harvester.thredds;
+
+import com.google.common.base.Function;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.fao.geonet.Logger;
+import org.fao.geonet.exceptions.BadXmlResponseEx;
+import org.fao.geonet.utils.BandwidthLimiter;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import thredds.catalog.InvCatalogFactory;
+import thredds.catalog.InvCatalogImpl;
+import thredds.catalog.InvCatalogRef;
+import thredds.catalog.InvDataset;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Crawls a THREDDS catalog and the catalogs it references breadth first.
+ * <p/>
+ * The catalogs referenced by a catalog (catalogRef elements) are added to a frontier and retrieved by several
+ * threads, with conditional requests if the catalog was retrieved by the previous harvest (see {@link CatalogCache}).
+ * The crawled catalogs are returned by {@link #next()} as soon as they are parsed, so that their datasets are
+ * harvested while the next catalogs are retrieved; the threads wait while too many crawled catalogs are not consumed.
+ * <p/>
+ * A catalog is only crawled once, even if several catalogs reference it.  The frontier is bounded: the references
+ * found when it is full are dropped, as well as the catalogs which could not be retrieved, and the crawl is then
+ * reported as incomplete by {@link #isComplete()}.
+ */
+class CatalogCrawler
+{
+	static final int DEFAULT_MAX_FRONTIER = 10000;
+	private static final int CRAWLED_CAPACITY_PER_THREAD = 2;
+
+	/**
+	 * A crawled catalog.
+	 */
+	static class CrawledCatalog
+	{
+		/** The url of the catalog. */
+		final String url;
+		/** The reference to the catalog in the catalog which references it, null for the root catalog. */
+		final InvCatalogRef ref;
+		/** The parsed catalog. */
+		final InvCatalogImpl catalog;
+		/** The catalog document. */
+		final byte[] document;
+		/** True if the server reported that the catalog did not change since the previous harvest. */
+		final boolean unchanged;
+
+		CrawledCatalog(String url, InvCatalogRef ref, InvCatalogImpl catalog, byte[] document, boolean unchanged)
+		{
+			this.url       = url;
+			this.ref       = ref;
+			this.catalog   = catalog;
+			this.document  = document;
+			this.unchanged = unchanged;
+		}
+	}
+
+	/**
+	 * A catalog to crawl.
+	 */
+	private static class Reference
+	{
+		final String url;
+		final InvCatalogRef ref;
+
+		Reference(String url, InvCatalogRef ref)
+		{
+			this.url = url;
+			this.ref = ref;
+		}
+	}
+
+	private final GeonetHttpRequestFactory requestFactory;
+	private final Function<HttpClientBuilder, Void> configurator;
+	private final CatalogCache cache;
+	private final Logger log;
+	private final int threads;
+	private final int maxFrontier;
+
+	private final LinkedList<Reference> frontier = new LinkedList<Reference>();
+	private final Set<String> visited = new HashSet<String>();
+	private final LinkedList<CrawledCatalog> crawled = new LinkedList<CrawledCatalog>();
+	private int fetching;
+	private boolean complete = true;
+	private boolean stopped;
+	private ExecutorService pool;
+
+	/**
+	 * @param requestFactory the factory executing the requests.
+	 * @param configurator configures the client of the requests (proxy...).
+	 * @param cache the catalogs retrieved by the previous harvest.
+	 * @param log the logger of the harvest.
+	 * @param threads the number of catalogs retrieved at the same time.
+	 * @param maxFrontier the maximum number of catalogs waiting to be retrieved.
+	 */
+	CatalogCrawler(GeonetHttpRequestFactory requestFactory, Function<HttpClientBuilder, Void> configurator,
+				   CatalogCache cache, Logger log, int threads, int maxFrontier)
+	{
+		this.requestFactory = requestFactory;
+		this.configurator   = configurator;
+		this.cache          = cache;
+		this.log            = log;
+		this.threads        = Math.max(1, threads);
+		this.maxFrontier    = maxFrontier;
+	}
+
+	/**
+	 * Retrieve the root catalog and start crawling the catalogs it references.
+	 *
+	 * @return the root catalog.
+	 * @throws Exception if the root catalog cannot be retrieved or is invalid.
+	 */
+	CrawledCatalog start(String url) throws Exception
+	{
+		synchronized (this)
+		{
+			visited.add(url);
+		}
+		CrawledCatalog root = fetch(new Reference(url, null));
+
+		synchronized (this)
+		{
+			addReferences(root.catalog.getDatasets());
+		}
+
+		final AtomicInteger count = new AtomicInteger();
+		final BandwidthLimiter limiter = BandwidthLimiter.getCurrent();
+		pool = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(BandwidthLimiter.wrap(limiter, r), "thredds-crawler-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (int i = 0; i < threads; i++)
+		{
+			pool.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					crawl();
+				}
+			});
+		}
+		pool.shutdown();
+
+		return root;
+	}
+
+	/**
+	 * Get the next crawled catalog, waiting for it to be retrieved.
+	 *
+	 * @return the catalog or null if all the catalogs were crawled.
+	 */
+	synchronized CrawledCatalog next() throws InterruptedException
+	{
+		while (crawled.isEmpty())
+		{
+			if (stopped || (frontier.isEmpty() && fetching == 0))
+				return null;
+			wait();
+		}
+
+		CrawledCatalog catalog = crawled.removeFirst();
+		notifyAll();
+		return catalog;
+	}
+
+	/**
+	 * @return true if all the referenced catalogs were crawled.
+	 */
+	synchronized boolean isComplete()
+	{
+		return complete;
+	}
+
+	/**
+	 * Stop crawling.  The crawl is incomplete if catalogs were still to be crawled.
+	 */
+	void shutdown()
+	{
+		synchronized (this)
+		{
+			if (!frontier.isEmpty() || fetching > 0)
+				complete = false;
+			stopped = true;
+			notifyAll();
+		}
+		if (pool != null)
+			pool.shutdownNow();
+	}
+
+	//---------------------------------------------------------------------------
+
+	private void crawl()
+	{
+		while (true)
+		{
+			Reference reference;
+			synchronized (this)
+			{
+				try
+				{
+					while (!stopped && (frontier.isEmpty() || crawled.size() >= threads * CRAWLED_CAPACITY_PER_THREAD))
+					{
+						if (frontier.isEmpty() && fetching == 0)
+						{
+							notifyAll();
+							return;
+						}
+						wait();
+					}
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (stopped)
+					return;
+
+				reference = frontier.removeFirst();
+				fetching++;
+			}
+
+			CrawledCatalog catalog = null;
+			try
+			{
+				catalog = fetch(reference);
+			}
+			catch (Exception e)
+			{
+				log.error("Unable to crawl catalog " + reference.url + ": " + e.getMessage());
+			}
+
+			synchronized (this)
+			{
+				if (catalog != null)
+				{
+					crawled.add(catalog);
+					addReferences(catalog.catalog.getDatasets());
+				}
+				else
+				{
+					complete = false;
+				}
+				fetching--;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Add the catalogs referenced by datasets to the frontier.  The referenced catalogs themselves are not read.
+	 */
+	private void addReferences(List<InvDataset> datasets)
+	{
+		for (InvDataset ds : datasets)
+		{
+			if (ds instanceof InvCatalogRef)
+			{
+				InvCatalogRef ref = (InvCatalogRef) ds;
+				URI uri = ref.getURI();
+				if (uri == null)
+				{
+					log.warning("Skipping catalog reference " + ref.getXlinkHref() + " which cannot be resolved");
+					complete = false;
+					continue;
+				}
+
+				String url = uri.toString();
+				if (!visited.add(url))
+					continue;
+
+				if (frontier.size() >= maxFrontier)
+				{
+					if (complete)
+						log.warning("More than " + maxFrontier + " catalogs to crawl, skipping " + url + " and the next ones");
+					complete = false;
+					continue;
+				}
+				frontier.add(new Reference(url, ref));
+			}
+			else
+			{
+				addReferences(ds.getDatasets());
+			}
+		}
+	}
+
+	private CrawledCatalog fetch(Reference reference) throws Exception
+	{
+		String url = reference.url;
+		HttpGet req = new HttpGet(url);
+
+		CatalogCache.Validators validators = cache.getValidators(url);
+		if (validators != null)
+		{
+			if (validators.etag != null)
+				req.setHeader("If-None-Match", validators.etag);
+			if (validators.lastModified != null)
+				req.setHeader("If-Modified-Since", validators.lastModified);
+		}
+
+		ClientHttpResponse response = null;
+		byte[] document;
+		boolean unchanged = false;
+		try
+		{
+			response = requestFactory.execute(req, configurator);
+
+			if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && validators != null)
+			{
+				document  = cache.getDocument(url);
+				unchanged = true;
+			}
+			else if (response.getStatusCode() == HttpStatus.OK)
+			{
+				document = IOUtils.toByteArray(response.getBody());
+				HttpHeaders headers = response.getHeaders();
+				cache.putDocument(url, document, headers.getETag(), headers.getFirst("Last-Modified"));
+			}
+			else
+			{
+				throw new IOException("Request " + url + " failed: " + response.getRawStatusCode() + " "
+						+ response.getStatusText());
+			}
+		}
+		finally
+		{
+			if (response != null)
+				response.close();
+			req.releaseConnection();
+		}
+
+		InvCatalogFactory factory = new InvCatalogFactory("default", true);
+		InvCatalogImpl catalog = factory.readXML(new ByteArrayInputStream(document), new URI(url));
+		StringBuilder buff = new StringBuilder();
+		if (!catalog.check(buff, true))
+			throw new BadXmlResponseEx("Invalid catalog " + url + "\n" + buff.toString());
+
+		if (log.isDebugEnabled())
+			log.debug("Crawled catalog " + url + (unchanged ? " (not modified)" : ""));
+
+		return new CrawledCatalog(url, reference.ref, catalog, document, unchanged);
+	}
+}
+
+//=============================================================================
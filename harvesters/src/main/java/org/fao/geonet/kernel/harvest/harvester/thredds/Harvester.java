@@ -26,10 +26,12 @@
 
 package org.fao.geonet.kernel.harvest.harvester.thredds;
 
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import jeeves.server.context.ServiceContext;
 import jeeves.xlink.Processor;
 import org.apache.commons.io.IOUtils;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.fao.geonet.Constants;
 import org.fao.geonet.GeonetContext;
 import org.fao.geonet.Logger;
@@ -40,8 +42,10 @@ import org.fao.geonet.domain.MetadataType;
 import org.fao.geonet.exceptions.BadServerCertificateEx;
 import org.fao.geonet.exceptions.BadXmlResponseEx;
 import org.fao.geonet.kernel.DataManager;
+import org.fao.geonet.kernel.GeonetworkDataDirectory;
 import org.fao.geonet.kernel.SchemaManager;
 import org.fao.geonet.kernel.harvest.BaseAligner;
+import org.fao.geonet.kernel.harvest.HarvestScheduler;
 import org.fao.geonet.kernel.harvest.harvester.*;
 import org.fao.geonet.kernel.harvest.harvester.fragment.FragmentHarvester;
 import org.fao.geonet.kernel.harvest.harvester.fragment.FragmentHarvester.FragmentParams;
@@ -53,7 +57,6 @@ import org.fao.geonet.repository.Updater;
 import org.fao.geonet.utils.GeonetHttpRequestFactory;
 import org.fao.geonet.util.Sha1Encoder;
 import org.fao.geonet.utils.Xml;
-import org.fao.geonet.utils.XmlRequest;
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.Namespace;
@@ -69,6 +72,8 @@ import ucar.unidata.util.StringUtil;
 import javax.annotation.Nonnull;
 import javax.net.ssl.SSLHandshakeException;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
@@ -212,58 +217,88 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	public HarvestResult harvest(Logger log) throws Exception {
 		this.log = log;
 		
-		Element xml = null;
 		log.info("Retrieving remote metadata information for : " + params.name);
         
 		//--- Get uuid's and change dates of metadata records previously 
 		//--- harvested by this harvester grouping by harvest uri
 		localUris = new UriMapper(context, params.uuid);
 
-		//--- Try to load thredds catalog document
-		String url = params.url;
+		//--- Catalogs retrieved by the previous harvest, requested with conditional requests
+		CatalogCache catalogCache = new CatalogCache(getCatalogCacheDir(context, params.uuid));
+		catalogCache.load();
+
+		CatalogCrawler crawler = new CatalogCrawler(context.getBean(GeonetHttpRequestFactory.class),
+				getClientConfigurator(), catalogCache, log, params.fetchThreads, CatalogCrawler.DEFAULT_MAX_FRONTIER);
+		boolean complete;
 		try {
-			XmlRequest req = context.getBean(GeonetHttpRequestFactory.class).createXmlRequest();
-			req.setUrl(new URL(url));
-			req.setMethod(XmlRequest.Method.GET);
-			Lib.net.setupProxy(context, req);
-
-			xml = req.execute();
-		} catch (SSLHandshakeException e) {
-			throw new BadServerCertificateEx(
-				"Most likely cause: The thredds catalog "+url+" does not have a "+
-				"valid certificate. If you feel this is because the server may be "+
-				"using a test certificate rather than a certificate from a well "+
-				"known certification authority, then you can add this certificate "+
-				"to the GeoNetwork keystore using bin/installCert");
+			//--- Try to load thredds catalog document
+			String url = params.url;
+			CatalogCrawler.CrawledCatalog root;
+			try {
+				root = crawler.start(url);
+			} catch (SSLHandshakeException e) {
+				throw new BadServerCertificateEx(
+					"Most likely cause: The thredds catalog "+url+" does not have a "+
+					"valid certificate. If you feel this is because the server may be "+
+					"using a test certificate rather than a certificate from a well "+
+					"known certification authority, then you can add this certificate "+
+					"to the GeoNetwork keystore using bin/installCert");
+			}
+
+			//--- Traverse catalog to create services and dataset metadata as required
+			harvestCatalog(root, crawler);
+			complete = crawler.isComplete();
+		} finally {
+			crawler.shutdown();
 		}
-		
-	    //--- Traverse catalog to create services and dataset metadata as required
-	    harvestCatalog(xml);
 	        
 		//--- Remove previously harvested metadata for uris that no longer exist on the remote site
-		for (String localUri : localUris.getUris()) {
-			if (!harvestUris.contains(localUri)) {
-				for (RecordInfo record: localUris.getRecords(localUri)) {
-                    if(log.isDebugEnabled()) log.debug ("  - Removing deleted metadata with id: " + record.id);
-					dataMan.deleteMetadata (context, record.id);
-		
-					if (record.isTemplate.equals("s")) {
-						//--- Uncache xlinks if a subtemplate
-						Processor.uncacheXLinkUri(metadataGetService+"?uuid=" + record.uuid);
-						result.subtemplatesRemoved++;
-					} else {
-						result.locallyRemoved++;
+		//--- (only if all catalogs were crawled: the datasets of the others are not known)
+		if (complete) {
+			for (String localUri : localUris.getUris()) {
+				if (!harvestUris.contains(localUri)) {
+					for (RecordInfo record: localUris.getRecords(localUri)) {
+	                    if(log.isDebugEnabled()) log.debug ("  - Removing deleted metadata with id: " + record.id);
+						dataMan.deleteMetadata (context, record.id);
+			
+						if (record.isTemplate.equals("s")) {
+							//--- Uncache xlinks if a subtemplate
+							Processor.uncacheXLinkUri(metadataGetService+"?uuid=" + record.uuid);
+							result.subtemplatesRemoved++;
+						} else {
+							result.locallyRemoved++;
+						}
 					}
 				}
 			}
+		} else {
+			log.warning("Some catalogs could not be crawled, keeping the metadata previously harvested from them");
 		}
 
         dataMan.flush();
 
+		//--- Catalogs are only reported as unchanged to the next harvest if this one succeeded
+		if (errors.isEmpty()) {
+			catalogCache.commit(complete);
+		}
+
         result.totalMetadata = result.serviceRecords + result.collectionDatasetRecords + result.atomicDatasetRecords;
 		return result;
 	}
 
+	//---------------------------------------------------------------------------
+	/** 
+	 * Get the directory of the catalogs retrieved by a harvester
+	 *
+     * @param context		Jeeves context
+     * @param harvesterUuid	uuid of the harvester
+	 **/
+	
+	static File getCatalogCacheDir(ServiceContext context, String harvesterUuid) {
+		return new File(context.getBean(GeonetworkDataDirectory.class).getSystemDataDir(),
+				"harvester_catalogs" + File.separator + harvesterUuid);
+	}
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- Private methods
@@ -284,14 +319,12 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	 * list service records as something that the thredds catalog provides
 	 * 5. Save all
      *	
-     * @param cata      Catalog document
+     * @param root      the root catalog
+     * @param crawler   the crawler retrieving the catalogs referenced by the root catalog
      *                   
      **/
 	
-	 private void harvestCatalog (Element cata) throws Exception {
-
-		if (cata == null)
-			return;
+	 private void harvestCatalog (CatalogCrawler.CrawledCatalog root, CatalogCrawler crawler) throws Exception {
 
 		//--- loading categories and groups
 		localCateg 	= new CategoryMapper (context);
@@ -301,15 +334,11 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 		Lib.net.setupProxy(context);
 		
 		//--- load catalog
-		InvCatalogFactory factory = new InvCatalogFactory("default", true);
-		catalog = (InvCatalogImpl) factory.readXML(params.url);
-		StringBuilder buff = new StringBuilder();
-		if (!catalog.check(buff, true)) {
-			throw new BadXmlResponseEx("Invalid catalog "+ params.url+"\n"+buff.toString());
-		}
+		catalog = root.catalog;
+		Element cata = Xml.loadStream(new ByteArrayInputStream(root.document));
 
 		//--- display catalog read in log file
-		log.info("Catalog read from "+params.url+" is \n"+factory.writeXML(catalog));
+		log.info("Catalog read from "+params.url+" is \n"+new InvCatalogFactory("default", true).writeXML(catalog));
 		String serviceStyleSheet = context.getAppPath() + Geonet.Path.IMPORT_STYLESHEETS + "/ThreddsCatalog-to-ISO19119_ISO19139.xsl"; 
 
 		//--- Get base host url
@@ -319,10 +348,7 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 		
 		//--- Crawl all datasets in the thredds catalogue
 		log.info("Crawling the datasets in the catalog....");
-		List<InvDataset> dsets = catalog.getDatasets();
-		for (InvDataset ds : dsets) {
-			crawlDatasets(ds);
-		}
+		harvestDatasets(root, crawler);
 
 		//--- show how many datasets have been processed
 		int totalDs =	result.collectionDatasetRecords + result.atomicDatasetRecords;
@@ -365,41 +391,76 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 
 	//---------------------------------------------------------------------------
 	/** 
-	 * Crawl all datasets in the catalog recursively
+	 * Harvest the datasets of the crawled catalogs
 	 *
-     * @param	catalogDs		the dataset being processed 
-	 * @throws	Exception 
+	 * The datasets are listed as the catalogs are crawled and run through a
+	 * {@link HarvestPipeline}: the thredds/netcdf metadata of the datasets are
+	 * collected by fetchThreads threads, transformed by transformThreads threads
+	 * and the metadata are saved in this thread.
+	 *
+     * @param	root		the root catalog
+     * @param	crawler		the crawler retrieving the referenced catalogs
 	 **/
 	 
-	private void crawlDatasets(InvDataset catalogDs) throws Exception {
-		log.info("Crawling through "+catalogDs.getName());
-		
-		// HACK!! Get real dataset hidden by netcdf library when catalog ref name
-		// equals top dataset name in referenced catalog
-		InvDataset realDs = catalogDs;
-		if (catalogDs instanceof InvCatalogRef) {
-			InvDataset proxyDataset = ((InvCatalogRef)catalogDs).getProxyDataset();
-			realDs = proxyDataset.getName().equals(catalogDs.getName())?proxyDataset:catalogDs;
+	private void harvestDatasets(final CatalogCrawler.CrawledCatalog root, final CatalogCrawler crawler) throws Exception {
+		HarvestPipeline<InvDataset, DatasetMetadata, DatasetMetadata> pipeline =
+				new HarvestPipeline<InvDataset, DatasetMetadata, DatasetMetadata>(params.name, log, dataMan);
+		pipeline.setThreads(params);
+		pipeline.setScheduler(context.getBean(HarvestScheduler.class));
+
+		pipeline.setFetcher(new HarvestPipeline.Stage<InvDataset, InvDataset, DatasetMetadata>() {
+			@Override
+			public DatasetMetadata process(InvDataset ds, InvDataset input) throws Exception {
+				return harvestMetadataUsingFragments(ds) ? collectFragmentsMetadata(ds) : collectDIFMetadata(ds);
+			}
+		});
+		pipeline.setTransformer(new HarvestPipeline.Stage<InvDataset, DatasetMetadata, DatasetMetadata>() {
+			@Override
+			public DatasetMetadata process(InvDataset ds, DatasetMetadata dsMetadata) throws Exception {
+				return dsMetadata.fragments ? createFragments(ds, dsMetadata) : transformDIFMetadata(ds, dsMetadata);
+			}
+		});
+		pipeline.setStore(new HarvestPipeline.Stage<InvDataset, DatasetMetadata, String>() {
+			@Override
+			public String process(InvDataset ds, DatasetMetadata dsMetadata) throws Exception {
+				return dsMetadata.fragments ? saveFragments(ds, dsMetadata) : saveDIFMetadata(ds, dsMetadata);
+			}
+		});
+		try {
+			pipeline.run(new Iterable<InvDataset>() {
+				@Override
+				public Iterator<InvDataset> iterator() {
+					return new DatasetIterator(root, crawler);
+				}
+			}, errors);
+		} finally {
+			//--- index the last batch of fragment metadata, even the metadata stored before a failure
+			try {
+				if (atomicFragmentHarvester != null) {
+					atomicFragmentHarvester.flush();
+				}
+			} finally {
+				if (collectionFragmentHarvester != null) {
+					collectionFragmentHarvester.flush();
+				}
+			}
 		}
+	}
 
-		if (realDs.hasNestedDatasets()) {
-			List<InvDataset> dsets = realDs.getDatasets();
-			for (InvDataset ds : dsets) {
-				crawlDatasets(ds);
+	//---------------------------------------------------------------------------
+	/** 
+	 * Get the configuration of the client retrieving the catalogs
+	 **/
+	
+	private Function<HttpClientBuilder, Void> getClientConfigurator() {
+		return new Function<HttpClientBuilder, Void>() {
+			@Override
+			public Void apply(HttpClientBuilder input) {
+				// set proxy from settings manager
+				Lib.net.setupProxy(context, input);
+				return null;
 			}
-		} 
-		
-		if (harvestMetadata(realDs)) {
-		    log.info("Harvesting dataset: " + realDs.getName());
-			harvest(realDs); 
-		} else {
-		    log.info("Skipping dataset: " + realDs.getName());
-		}
-		
-		// Release resources allocated when crawling catalog references
-		if (catalogDs instanceof InvCatalogRef) {
-			((InvCatalogRef)catalogDs).release();
-		}
+		};
 	}
 
 	//---------------------------------------------------------------------------
@@ -412,6 +473,24 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	 **/
 	
 	private void saveMetadata(Element md, String uuid, String uri) throws Exception {
+		String id = insertMetadata(md, uuid, uri);
+
+        dataMan.indexMetadata(id, false);
+
+        dataMan.flush();
+    }
+
+	//---------------------------------------------------------------------------
+	/** 
+	 * Insert the metadata in GeoNetwork's database without indexing it
+	 *
+     * @param md		the metadata being saved
+     * @param uuid		the uuid of the metadata being saved
+     * @param uri		the uri from which the metadata has been harvested
+     * @return			the id of the metadata
+	 **/
+	
+	private String insertMetadata(Element md, String uuid, String uri) throws Exception {
 
 		//--- strip the catalog namespace as it is not required
 		md.removeNamespaceDeclaration(invCatalogNS);
@@ -448,37 +527,112 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 		dataMan.setTemplateExt(iId, MetadataType.METADATA);
 		dataMan.setHarvestedExt(iId, params.uuid, Optional.of(uri));
 
-        dataMan.indexMetadata(id, false);
-
-        dataMan.flush();
+		return id;
     }
 
 	//---------------------------------------------------------------------------
 	/** 
-	 * Process one dataset generating metadata as per harvesting node settings
+	 * Lists the datasets of the crawled catalogs for which metadata have to be
+	 * generated as per harvesting node settings, catalog by catalog as the
+	 * catalogs are crawled
 	 *
-     * @param 	ds	the dataset to be processed 
-	 * @throws	Exception 
+	 * The fetchers of the pipeline get the datasets one at a time: the uris of
+	 * the datasets and the services delivering them are recorded here.
 	 **/
 	
-	private void harvest(InvDataset ds) throws Exception {
-		//--- harvest metadata only if the dataset has changed
-		if (!params.modifiedOnly || datasetChanged(ds)) {
-			if (harvestMetadataUsingFragments(ds))	{
-				createMetadataUsingFragments(ds);
-			} else {
-				createDIFMetadata(ds); 
+	private class DatasetIterator implements Iterator<InvDataset> {
+		private final CatalogCrawler crawler;
+		private final LinkedList<InvDataset> datasets = new LinkedList<InvDataset>();
+
+		DatasetIterator(CatalogCrawler.CrawledCatalog root, CatalogCrawler crawler) {
+			this.crawler = crawler;
+			addCatalog(root);
+		}
+
+		@Override
+		public boolean hasNext() {
+			try {
+				while (datasets.isEmpty()) {
+					CatalogCrawler.CrawledCatalog crawled = crawler.next();
+					if (crawled == null) return false;
+					addCatalog(crawled);
+				}
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
 			}
 		}
-		
-		//--- Add dataset uri to list of harvested uri's
-		harvestUris.add(getUri(ds));
-
-		//--- Record uuid of dataset against services that deliver it for  
-		//--- inclusion in operatesOn element in 19119 service record
-		List<InvAccess> accesses = ds.getAccess();
-		for (InvAccess access : accesses) {
-			processService(access.getService(), getUuid(ds), ds);
+
+		@Override
+		public InvDataset next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			return datasets.removeFirst();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private void addCatalog(CatalogCrawler.CrawledCatalog crawled) {
+			log.info("Crawling through catalog "+crawled.url);
+			List<InvDataset> dsets = crawled.catalog.getDatasets();
+
+			// The netcdf library hides a catalog reference behind the top dataset of the
+			// referenced catalog when they have the same name, else the reference is a
+			// collection of the datasets of the referenced catalog
+			if (crawled.ref != null) {
+				boolean hidden = dsets.size() == 1 && dsets.get(0).getName().equals(crawled.ref.getName());
+				if (!hidden) {
+					addDataset(crawled.ref, false);
+				}
+			}
+
+			for (InvDataset ds : dsets) {
+				crawlDatasets(ds, crawled.unchanged);
+			}
+		}
+
+		private void crawlDatasets(InvDataset ds, boolean catalogUnchanged) {
+			//--- referenced catalogs are crawled separately
+			if (ds instanceof InvCatalogRef) return;
+
+			log.info("Crawling through "+ds.getName());
+			if (ds.hasNestedDatasets()) {
+				List<InvDataset> dsets = ds.getDatasets();
+				for (InvDataset child : dsets) {
+					crawlDatasets(child, catalogUnchanged);
+				}
+			}
+			addDataset(ds, catalogUnchanged);
+		}
+
+		private void addDataset(InvDataset ds, boolean catalogUnchanged) {
+			if (!harvestMetadata(ds)) {
+			    log.info("Skipping dataset: " + ds.getName());
+			    return;
+			}
+		    log.info("Harvesting dataset: " + ds.getName());
+
+			//--- Add dataset uri to list of harvested uri's
+			String uri = getUri(ds);
+			harvestUris.add(uri);
+
+			//--- Record uuid of dataset against services that deliver it for  
+			//--- inclusion in operatesOn element in 19119 service record
+			List<InvAccess> accesses = ds.getAccess();
+			for (InvAccess access : accesses) {
+				processService(access.getService(), getUuid(ds), ds);
+			}
+
+			//--- harvest metadata only if the dataset has changed: the datasets of
+			//--- a catalog which did not change since the previous harvest did not change
+			if (params.modifiedOnly && ((catalogUnchanged && localUris.getRecords(uri) != null) || !datasetChanged(ds))) {
+				result.unchangedMetadata++;
+			} else {
+				datasets.add(ds);
+			}
 		}
 	}
 
@@ -561,9 +715,9 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
      * Create metadata using fragments
      *
      * <ul>
-     * <li>collect useful metadata for the dataset<li>
-     * <li>use supplied stylesheet to convert collected metadata into fragments</li>
-     * <li>harvest metadata from fragments as requested</li> 
+     * <li>collect useful metadata for the dataset (fetch stage)<li>
+     * <li>use supplied stylesheet to convert collected metadata into fragments (transform stage)</li>
+     * <li>harvest metadata from fragments as requested (store stage)</li> 
      * </ul>
      * 
      * Metadata collected is as follows:
@@ -585,66 +739,79 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	 * </pre>
      **/
 	
-	private void createMetadataUsingFragments(InvDataset ds) {
-		try {
-			log.info("Retrieving thredds/netcdf metadata...");
+	private DatasetMetadata collectFragmentsMetadata(InvDataset ds) throws Exception {
+		log.info("Retrieving thredds/netcdf metadata...");
 
-			//--- Create root element to collect dataset metadata to be passed to xsl transformation
-			Element dsMetadata = new Element("root");
-		
-			//--- Add catalog uri (url) to allow relative urls to be resolved
-			dsMetadata.addContent(new Element("catalogUri").setText(ds.getParentCatalog().getUriString()));
+		//--- Create root element to collect dataset metadata to be passed to xsl transformation
+		Element dsMetadata = new Element("root");
+	
+		//--- Add catalog uri (url) to allow relative urls to be resolved
+		dsMetadata.addContent(new Element("catalogUri").setText(ds.getParentCatalog().getUriString()));
 
-			//--- Add suggested uuid for dataset
-			dsMetadata.addContent(new Element("uuid").setText(getUuid(ds)));
-			
-			//--- Add fullName of dataset
-			dsMetadata.addContent(new Element("fullName").setText(ds.getFullName()));
+		//--- Add suggested uuid for dataset
+		dsMetadata.addContent(new Element("uuid").setText(getUuid(ds)));
+		
+		//--- Add fullName of dataset
+		dsMetadata.addContent(new Element("fullName").setText(ds.getFullName()));
 
-			//--- Add dataset subset catalog information to metadata
-			dsMetadata.addContent(getDatasetSubset(ds));
-			
-			//--- For atomic dataset's add ncml for dataset to metadata
-			if (!ds.hasNestedDatasets()) {
-				NetcdfDataset ncD = NetcdfDataset.openDataset("thredds:"+ds.getCatalogUrl());
+		//--- Add dataset subset catalog information to metadata
+		dsMetadata.addContent(getDatasetSubset(ds));
+		
+		//--- For atomic dataset's add ncml for dataset to metadata
+		if (!ds.hasNestedDatasets()) {
+			NetcdfDataset ncD = NetcdfDataset.openDataset("thredds:"+ds.getCatalogUrl());
+			try {
 				NcMLWriter ncmlWriter = new NcMLWriter();
 				Element ncml = Xml.loadString(ncmlWriter.writeXML(ncD),false);
 				dsMetadata.addContent(ncml);
+			} finally {
+				ncD.close();
 			}
+		}
 
-            if(log.isDebugEnabled()) log.debug("Thredds metadata and ncml is:"+Xml.getString(dsMetadata));
+        if(log.isDebugEnabled()) log.debug("Thredds metadata and ncml is:"+Xml.getString(dsMetadata));
 
-			//--- Create fragments using provided stylesheet
+		DatasetMetadata metadata = new DatasetMetadata();
+		metadata.fragments = true;
+		metadata.source = dsMetadata;
+		return metadata;
+	}
 
-			String schema = ds.hasNestedDatasets() ? params.outputSchemaOnCollectionsFragments : params.outputSchemaOnAtomicsFragments;
-			fragmentStylesheetDirectory = schemaMan.getSchemaDir(schema) + Geonet.Path.TDS_STYLESHEETS;
-			String stylesheet = ds.hasNestedDatasets() ? params.collectionFragmentStylesheet : params.atomicFragmentStylesheet;
+	private DatasetMetadata createFragments(InvDataset ds, DatasetMetadata metadata) throws Exception {
+		//--- Create fragments using provided stylesheet
 
-			Element fragments = Xml.transform(dsMetadata, fragmentStylesheetDirectory + "/" + stylesheet);
-            if(log.isDebugEnabled()) log.debug("Fragments generated for dataset:"+Xml.getString(fragments));
-			
-			//--- remove any previously harvested metadata/sub-templates
-			deleteExistingMetadata(getUri(ds));
-			
-			//--- Create metadata/subtemplates from fragments
-			FragmentHarvester fragmentHarvester = ds.hasNestedDatasets() ? collectionFragmentHarvester : atomicFragmentHarvester;
-			HarvestSummary fragmentResult = fragmentHarvester.harvest(fragments, getUri(ds));
-			
-			//--- Include fragment results in thredds results
-			result.fragmentsReturned += fragmentResult.fragmentsReturned;
-			result.fragmentsUnknownSchema += fragmentResult.fragmentsUnknownSchema;
-			result.subtemplatesAdded += fragmentResult.fragmentsAdded;
-			result.fragmentsMatched += fragmentResult.fragmentsMatched;
-			
-			if (ds.hasNestedDatasets()) {
-				result.collectionDatasetRecords += fragmentResult.recordsBuilt;
-			} else {
-				result.atomicDatasetRecords += fragmentResult.recordsBuilt;
-			}
-		} catch (Exception e) {
-			log.error("Thrown Exception "+e+" during dataset processing");
-			e.printStackTrace();
+		String schema = ds.hasNestedDatasets() ? params.outputSchemaOnCollectionsFragments : params.outputSchemaOnAtomicsFragments;
+		String fragmentStylesheetDirectory = schemaMan.getSchemaDir(schema) + Geonet.Path.TDS_STYLESHEETS;
+		String stylesheet = ds.hasNestedDatasets() ? params.collectionFragmentStylesheet : params.atomicFragmentStylesheet;
+
+		metadata.md = Xml.transform(metadata.source, fragmentStylesheetDirectory + "/" + stylesheet);
+        if(log.isDebugEnabled()) log.debug("Fragments generated for dataset:"+Xml.getString(metadata.md));
+
+		return metadata;
+	}
+
+	private String saveFragments(InvDataset ds, DatasetMetadata metadata) throws Exception {
+		//--- remove any previously harvested metadata/sub-templates
+		deleteExistingMetadata(getUri(ds));
+		
+		//--- Create metadata/subtemplates from fragments
+		FragmentHarvester fragmentHarvester = ds.hasNestedDatasets() ? collectionFragmentHarvester : atomicFragmentHarvester;
+		HarvestSummary fragmentResult = fragmentHarvester.harvest(metadata.md, getUri(ds));
+		
+		//--- Include fragment results in thredds results
+		result.fragmentsReturned += fragmentResult.fragmentsReturned;
+		result.fragmentsUnknownSchema += fragmentResult.fragmentsUnknownSchema;
+		result.subtemplatesAdded += fragmentResult.fragmentsAdded;
+		result.fragmentsMatched += fragmentResult.fragmentsMatched;
+		
+		if (ds.hasNestedDatasets()) {
+			result.collectionDatasetRecords += fragmentResult.recordsBuilt;
+		} else {
+			result.atomicDatasetRecords += fragmentResult.recordsBuilt;
 		}
+
+		//--- the fragment harvester indexes the metadata it creates in batches
+		return null;
 	}
 
 	//---------------------------------------------------------------------------
@@ -700,194 +867,193 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	//---------------------------------------------------------------------------
 	/** 
 	 * Process one dataset by extracting its metadata, writing to DIF
-	 * and using xslt to transform to the required ISO format. 
+	 * (fetch stage) and using xslt to transform to the required ISO format
+	 * (transform stage) before saving it (store stage).
 	 *
 	 * @param ds     the dataset to be processed 
 	 */
 	
-	private void createDIFMetadata(InvDataset ds) {
-	try {
-
-			boolean addCoordSys = false; // add coordinate systems if not DIF relaxed
-
-			//--- TODO: Thredds has a metadata converter interface and some other
-			//--- methods of handling metadata (including XML of different 
-			//--- namespaces) in the catalog - this is a place holder for getting
-			//--- this info in future
-			List <InvMetadata> mds = ds.getMetadata();
-			log.info("Dataset has "+mds.size()+" metadata elements");
-			for (InvMetadata md : mds) {
-				log.info("Found metadata "+md.toString());
-			}
-
-			//--- check and see whether this dataset is DIF writeable
-			DIFWriter difWriter = new DIFWriter();
-			StringBuffer sBuff = new StringBuffer();
-			Element dif = null;
-
-			if (difWriter.isDatasetUseable(ds, sBuff)) {
-				log.info("Yay! Dataset has DIF compatible metadata "+sBuff.toString());
-
-				dif = difWriter.writeOneEntry(ds, sBuff);
+	private DatasetMetadata collectDIFMetadata(InvDataset ds) throws Exception {
+		DatasetMetadata metadata = new DatasetMetadata();
+
+		boolean addCoordSys = false; // add coordinate systems if not DIF relaxed
+
+		//--- TODO: Thredds has a metadata converter interface and some other
+		//--- methods of handling metadata (including XML of different 
+		//--- namespaces) in the catalog - this is a place holder for getting
+		//--- this info in future
+		List <InvMetadata> mds = ds.getMetadata();
+		log.info("Dataset has "+mds.size()+" metadata elements");
+		for (InvMetadata md : mds) {
+			log.info("Found metadata "+md.toString());
+		}
 
-			} else {
-				log.info("Dataset does not have DIF compatible metadata so we will write a relaxed DIF entry\n"+sBuff.toString());
+		//--- check and see whether this dataset is DIF writeable
+		DIFWriter difWriter = new DIFWriter();
+		StringBuffer sBuff = new StringBuffer();
+		Element dif = null;
 
-				dif = difWriter.writeOneRelaxedEntry(ds, sBuff);
-				addCoordSys = true;
-			}
+		if (difWriter.isDatasetUseable(ds, sBuff)) {
+			log.info("Yay! Dataset has DIF compatible metadata "+sBuff.toString());
 
-			//--- get the UUID assigned to the DIF record
-			String uuid = dif.getChild("Entry_ID", difNS).getText();
+			dif = difWriter.writeOneEntry(ds, sBuff);
 
-			boolean isCollection = ds.hasNestedDatasets();
-			log.info("Dataset is a collection dataset? "+isCollection);
-
-			//--- now convert DIF entry into an ISO entry using the appropriate
-			//--- difToIso converter (only schemas with a DIF converter are 
-			//--- supplied to the user for choice)
-			Element md = null;
-			if (isCollection) {
-				String difToIsoStyleSheet = schemaMan.getSchemaDir(params.outputSchemaOnCollectionsDIF) + Geonet.Path.DIF_STYLESHEETS + "/DIFToISO.xsl";
-				log.info("Transforming collection dataset to "+params.outputSchemaOnCollectionsDIF);
-				md = Xml.transform(dif, difToIsoStyleSheet);
-			} else {
-				String difToIsoStyleSheet = schemaMan.getSchemaDir(params.outputSchemaOnAtomicsDIF) + Geonet.Path.DIF_STYLESHEETS + "/DIFToISO.xsl";
-				log.info("Transforming atomic dataset to "+params.outputSchemaOnAtomicsDIF);
-				md = Xml.transform(dif, difToIsoStyleSheet);
-			}
+		} else {
+			log.info("Dataset does not have DIF compatible metadata so we will write a relaxed DIF entry\n"+sBuff.toString());
 
-			//--- if we don't have full set of DIF metadata then 
-			//--- if atomic dataset then check dataset for global attributes 
-			//--- and/or dump coordinate systems else
-			//--- if collection then check for ThreddsMetadata.Variables and
-			//--- create a netcdfInfo for addition to the ISO record
-			if (addCoordSys) { 
-				boolean globalAttributes = false;
-				if (!isCollection) { // open up atomic dataset for info
-					log.info("Opening dataset to get global attributes");
-					//--- if not a dataset collection then 
-					//--- open and check global attributes for metadata conventions
-					try {
-						NetcdfDataset ncD = NetcdfDataset.openDataset("thredds:"+ds.getCatalogUrl());
-						Attribute mdCon = ncD.findGlobalAttributeIgnoreCase("metadata_conventions");
-						if (mdCon != null) {
-							List<Attribute> ga = ncD.getGlobalAttributes(); 
-							for (Attribute att : ga ) {
-                                if(log.isDebugEnabled()) log.debug("Attribute found "+att.toString());
-								//--- TODO: Attach the attributes to the metadata node
-								//--- for conversion into the ISO record by an xslt
-							}
-						} else {
-                            if(log.isDebugEnabled()) log.debug("No global attribute with metadata conventions found");
+			dif = difWriter.writeOneRelaxedEntry(ds, sBuff);
+			addCoordSys = true;
+		}
+		metadata.source = dif;
+
+		//--- get the UUID assigned to the DIF record
+		metadata.uuid = dif.getChild("Entry_ID", difNS).getText();
+
+		boolean isCollection = ds.hasNestedDatasets();
+		log.info("Dataset is a collection dataset? "+isCollection);
+
+		//--- if we don't have full set of DIF metadata then 
+		//--- if atomic dataset then check dataset for global attributes 
+		//--- and/or dump coordinate systems else
+		//--- if collection then check for ThreddsMetadata.Variables and
+		//--- create a netcdfInfo for addition to the ISO record
+		if (addCoordSys) { 
+			boolean globalAttributes = false;
+			if (!isCollection) { // open up atomic dataset for info
+				log.info("Opening dataset to get global attributes");
+				//--- if not a dataset collection then 
+				//--- open and check global attributes for metadata conventions
+				try {
+					NetcdfDataset ncD = NetcdfDataset.openDataset("thredds:"+ds.getCatalogUrl());
+					Attribute mdCon = ncD.findGlobalAttributeIgnoreCase("metadata_conventions");
+					if (mdCon != null) {
+						List<Attribute> ga = ncD.getGlobalAttributes(); 
+						for (Attribute att : ga ) {
+                            if(log.isDebugEnabled()) log.debug("Attribute found "+att.toString());
+							//--- TODO: Attach the attributes to the metadata node
+							//--- for conversion into the ISO record by an xslt
 						}
-						ncD.close();
-					} catch (Exception e) {
-						log.info("Exception raised in netcdfDataset ops: "+e);
-						e.printStackTrace();
+					} else {
+                        if(log.isDebugEnabled()) log.debug("No global attribute with metadata conventions found");
 					}
+					ncD.close();
+				} catch (Exception e) {
+					log.info("Exception raised in netcdfDataset ops: "+e);
+					e.printStackTrace();
 				}
+			}
 
-				//--- if no metadata conventions then find the coordinate systems 
-				//--- and add these to the appropriate place in whatever ISO or ISO 
-				//--- profile we are using - MCP: mcp:dataParameters & gmd:keywords, 
-				//--- ISO: gmd:keywords
-				boolean foundNetcdfInfo = false;
-				if (!globalAttributes && !isCollection) {
-					log.info("No global attributes describing metadata so opening dataset to get coordinate systems");
-					try {
-						NetcdfDatasetInfo ncDI = new NetcdfDatasetInfo("thredds:"+ds.getCatalogUrl());
-						log.info("Coordinate systems builder is "+ncDI.getConventionUsed());
-						if (!ncDI.getConventionUsed().equals("None")) {
-							Document doc = ncDI.makeDocument();
-							Element coords = doc.detachRootElement();
-							log.info("Coordinate systems of dataset are: \n"+Xml.getString(coords));
-							setCoordsStyleSheet(isCollection);
-							addKeywordsAndDataParams(coords, md);
-							foundNetcdfInfo = true;
-						} else {
-                            if(log.isDebugEnabled()) log.debug("Coordinate system convention is not recognized");
-						}
-						ncDI.close();
-					} catch (Exception e) {
-						log.info("Exception raised in netcdfDatasetInfo ops: "+e);
-						e.printStackTrace();
+			//--- if no metadata conventions then find the coordinate systems 
+			//--- and add these to the appropriate place in whatever ISO or ISO 
+			//--- profile we are using - MCP: mcp:dataParameters & gmd:keywords, 
+			//--- ISO: gmd:keywords
+			boolean foundNetcdfInfo = false;
+			if (!globalAttributes && !isCollection) {
+				log.info("No global attributes describing metadata so opening dataset to get coordinate systems");
+				try {
+					NetcdfDatasetInfo ncDI = new NetcdfDatasetInfo("thredds:"+ds.getCatalogUrl());
+					log.info("Coordinate systems builder is "+ncDI.getConventionUsed());
+					if (!ncDI.getConventionUsed().equals("None")) {
+						Document doc = ncDI.makeDocument();
+						Element coords = doc.detachRootElement();
+						log.info("Coordinate systems of dataset are: \n"+Xml.getString(coords));
+						metadata.coords.add(coords);
+						foundNetcdfInfo = true;
+					} else {
+                        if(log.isDebugEnabled()) log.debug("Coordinate system convention is not recognized");
 					}
+					ncDI.close();
+				} catch (Exception e) {
+					log.info("Exception raised in netcdfDatasetInfo ops: "+e);
+					e.printStackTrace();
 				}
+			}
 
-				//--- finally - check and see whether we can extract variables from the
-				//--- ThreddsMetadata - we no longer care whether this is a collection
-				//--- or atomic
-				if (!globalAttributes && !foundNetcdfInfo) { 
-					//--- get ThreddsMetadata.Variables and create a netcdfDatasetInfo 
-					//--- document if possible
-					List<ThreddsMetadata.Variables> vsL = ds.getVariables();
-					if (vsL != null && vsL.size() > 0) {
-						for (ThreddsMetadata.Variables vs : vsL) {
-							String vHref = vs.getVocabHref();
-							URI    vUri  = vs.getVocabUri();
-							String vocab = vs.getVocabulary();
-							Element coords = new Element("netcdfDatasetInfo");
-							for (ThreddsMetadata.Variable v : vs.getVariableList()) {
-								Element varX = new Element("variable");	
-								varX.setAttribute("name",		v.getName());
-								varX.setAttribute("decl",		v.getDescription());
-								varX.setAttribute("units",	v.getUnits());
-								// - these three attributes are new but then there is no
-								// - xsd for this so we can add as we want!
-								varX.setAttribute("vocab",	    vocab);
-								varX.setAttribute("vocaburi", 	vUri.toString());
-								varX.setAttribute("vocabhref",	vHref);
-								coords.addContent(varX);
-							}
-							log.info("Coordinate systems from ThreddsMetadata are: \n"+Xml.getString(coords));
-							setCoordsStyleSheet(isCollection);
-							addKeywordsAndDataParams(coords, md);
+			//--- finally - check and see whether we can extract variables from the
+			//--- ThreddsMetadata - we no longer care whether this is a collection
+			//--- or atomic
+			if (!globalAttributes && !foundNetcdfInfo) { 
+				//--- get ThreddsMetadata.Variables and create a netcdfDatasetInfo 
+				//--- document if possible
+				List<ThreddsMetadata.Variables> vsL = ds.getVariables();
+				if (vsL != null && vsL.size() > 0) {
+					for (ThreddsMetadata.Variables vs : vsL) {
+						String vHref = vs.getVocabHref();
+						URI    vUri  = vs.getVocabUri();
+						String vocab = vs.getVocabulary();
+						Element coords = new Element("netcdfDatasetInfo");
+						for (ThreddsMetadata.Variable v : vs.getVariableList()) {
+							Element varX = new Element("variable");	
+							varX.setAttribute("name",		v.getName());
+							varX.setAttribute("decl",		v.getDescription());
+							varX.setAttribute("units",	v.getUnits());
+							// - these three attributes are new but then there is no
+							// - xsd for this so we can add as we want!
+							varX.setAttribute("vocab",	    vocab);
+							varX.setAttribute("vocaburi", 	vUri.toString());
+							varX.setAttribute("vocabhref",	vHref);
+							coords.addContent(varX);
 						}
+						log.info("Coordinate systems from ThreddsMetadata are: \n"+Xml.getString(coords));
+						metadata.coords.add(coords);
 					}
 				}
 			}
+		}
 
-			//--- write metadata
-			saveMetadata(md, uuid, getUri(ds));
+		return metadata;
+	}
 
-			//--- update totals
-			if (isCollection) {
-				result.collectionDatasetRecords ++;
-			} else {
-				result.atomicDatasetRecords ++;
-			}
-		} catch (Exception e) {
-				log.error("Thrown Exception "+e+" during dataset processing");
-				e.printStackTrace();
+	private DatasetMetadata transformDIFMetadata(InvDataset ds, DatasetMetadata metadata) throws Exception {
+		boolean isCollection = ds.hasNestedDatasets();
+
+		//--- now convert DIF entry into an ISO entry using the appropriate
+		//--- difToIso converter (only schemas with a DIF converter are 
+		//--- supplied to the user for choice)
+		if (isCollection) {
+			String difToIsoStyleSheet = schemaMan.getSchemaDir(params.outputSchemaOnCollectionsDIF) + Geonet.Path.DIF_STYLESHEETS + "/DIFToISO.xsl";
+			log.info("Transforming collection dataset to "+params.outputSchemaOnCollectionsDIF);
+			metadata.md = Xml.transform(metadata.source, difToIsoStyleSheet);
+		} else {
+			String difToIsoStyleSheet = schemaMan.getSchemaDir(params.outputSchemaOnAtomicsDIF) + Geonet.Path.DIF_STYLESHEETS + "/DIFToISO.xsl";
+			log.info("Transforming atomic dataset to "+params.outputSchemaOnAtomicsDIF);
+			metadata.md = Xml.transform(metadata.source, difToIsoStyleSheet);
+		}
+
+		//--- add the coordinate systems found as keywords and data parameters
+		for (Element coords : metadata.coords) {
+			addKeywordsAndDataParams(coords, metadata.md, isCollection);
+		}
+
+		return metadata;
+	}
+
+	private String saveDIFMetadata(InvDataset ds, DatasetMetadata metadata) throws Exception {
+		//--- write metadata
+		String id = insertMetadata(metadata.md, metadata.uuid, getUri(ds));
+
+		//--- update totals
+		if (ds.hasNestedDatasets()) {
+			result.collectionDatasetRecords ++;
+		} else {
+			result.atomicDatasetRecords ++;
 		}
+
+		return id;
 	}
 
 	//---------------------------------------------------------------------------
 	/** 
-	 * Create the coordinate stylesheet names that will be used to add 
-	 * gmd:keywords and mcp:DataParameters if the output schema requires.
+	 * Get the directory of the schema whose stylesheets add gmd:keywords and
+	 * mcp:DataParameters from coordinate systems
 	 *
 	 * @param	isCollection true if we are working with a collection dataset
 	 */
-	private void setCoordsStyleSheet(boolean isCollection) {
-
-		String schemaDir;
+	private String getCoordsSchemaDir(boolean isCollection) {
 		if (!isCollection) {
-			schemaDir = schemaMan.getSchemaDir(params.outputSchemaOnAtomicsDIF);
-		} else {
-			schemaDir = schemaMan.getSchemaDir(params.outputSchemaOnCollectionsDIF);
-		}
-
-		cdmCoordsToIsoKeywordsStyleSheet = schemaDir + Geonet.Path.DIF_STYLESHEETS + "/CDMCoords-to-ISO19139Keywords.xsl";
-
-		// -- FIXME: This is still schema dependent and needs to be improved
-		// -- What we wait upon is finalization of the new coverage data parameters
-		// -- metadata elements (inside MD_ContentInformation) in ISO19115/19139
-		if (schemaDir.contains("iso19139.mcp")) {
-			cdmCoordsToIsoMcpDataParametersStyleSheet = schemaDir + Geonet.Path.DIF_STYLESHEETS + "/CDMCoords-to-ISO19139MCPDataParameters.xsl";
+			return schemaMan.getSchemaDir(params.outputSchemaOnAtomicsDIF);
 		} else {
-			cdmCoordsToIsoMcpDataParametersStyleSheet = null;
+			return schemaMan.getSchemaDir(params.outputSchemaOnCollectionsDIF);
 		}
 	}
 
@@ -898,13 +1064,20 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	 *
 	 * @param	coords	the netcdfinfo document with coord systems embedded
 	 * @param	md		ISO metadata record to add keywords and data params to
+	 * @param	isCollection true if we are working with a collection dataset
 	 **/
 	
-	private void addKeywordsAndDataParams(Element coords, Element md) throws Exception {
-		Element keywords = Xml.transform(coords, cdmCoordsToIsoKeywordsStyleSheet);
+	private void addKeywordsAndDataParams(Element coords, Element md, boolean isCollection) throws Exception {
+		String schemaDir = getCoordsSchemaDir(isCollection);
+
+		Element keywords = Xml.transform(coords, schemaDir + Geonet.Path.DIF_STYLESHEETS + "/CDMCoords-to-ISO19139Keywords.xsl");
 		addKeywords(md, keywords);
-		if (cdmCoordsToIsoMcpDataParametersStyleSheet != null) {
-			Element dataParameters = Xml.transform(coords, cdmCoordsToIsoMcpDataParametersStyleSheet);
+
+		// -- FIXME: This is still schema dependent and needs to be improved
+		// -- What we wait upon is finalization of the new coverage data parameters
+		// -- metadata elements (inside MD_ContentInformation) in ISO19115/19139
+		if (schemaDir.contains("iso19139.mcp")) {
+			Element dataParameters = Xml.transform(coords, schemaDir + Geonet.Path.DIF_STYLESHEETS + "/CDMCoords-to-ISO19139MCPDataParameters.xsl");
 			log.info("mcp:DataParameters are: \n"+Xml.getString(dataParameters));
 			addDataParameters(md, dataParameters);
 		}
@@ -1323,9 +1496,6 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	private HarvestResult  result;
 	private String         hostUrl;
 	private HashSet<String> harvestUris = new HashSet<String>();
-	private String				 cdmCoordsToIsoKeywordsStyleSheet; 
-	private String				 cdmCoordsToIsoMcpDataParametersStyleSheet;
-	private String				 fragmentStylesheetDirectory;
 	private String	 			 metadataGetService;
 	private Map<String,ThreddsService> services = new HashMap<String, Harvester.ThreddsService>();
 	private InvCatalogImpl catalog;
@@ -1340,13 +1510,27 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 		public String ops;
 	};
 
+	/** The metadata of a dataset going through the harvest pipeline */
+	private static class DatasetMetadata {
+		/** true if the metadata are created from fragments */
+		public boolean fragments;
+		/** thredds/netcdf metadata collected for the dataset (DIF entry or fragments source) */
+		public Element source;
+		/** netcdfDatasetInfo documents to add as keywords and data parameters (DIF only) */
+		public List<Element> coords = new ArrayList<Element>();
+		/** uuid assigned to the DIF record */
+		public String uuid;
+		/** the ISO metadata or the fragments */
+		public Element md;
+	};
+
 	static private final Namespace difNS = Namespace.getNamespace("http://gcmd.gsfc.nasa.gov/Aboutus/xml/dif/");
 	static private final Namespace invCatalogNS = Namespace.getNamespace("http://www.unidata.ucar.edu/namespaces/thredds/InvCatalog/v1.0");
 	static private final Namespace gmd 	= Namespace.getNamespace("gmd", "http://www.isotc211.org/2005/gmd");
 	static private final Namespace srv 	= Namespace.getNamespace("srv", "http://www.isotc211.org/2005/srv");
 	static private final Namespace xlink = Namespace.getNamespace("xlink", "http://www.w3.org/1999/xlink");
 	
-	private List<HarvestError> errors = new LinkedList<HarvestError>();
+	private List<HarvestError> errors = Collections.synchronizedList(new LinkedList<HarvestError>());
 	@Override
 	public List<HarvestError> getErrors() {
 		return errors;
@@ -24,6 +24,7 @@
 package org.fao.geonet.kernel.harvest.harvester.thredds;
 
 import jeeves.server.context.ServiceContext;
+import org.apache.commons.io.FileUtils;
 import org.fao.geonet.Logger;
 import org.fao.geonet.domain.Source;
 import org.fao.geonet.exceptions.BadInputEx;
@@ -115,10 +116,21 @@ public class ThreddsHarvester extends AbstractHarvester<HarvestResult>
 		params = copy;
         super.setParams(params);
 
+		//--- the catalogs are harvested again with the new parameters
+		FileUtils.deleteQuietly(Harvester.getCatalogCacheDir(context, params.uuid));
     }
 
 	//---------------------------------------------------------------------------
 
+	protected void doDestroy() throws SQLException
+	{
+		super.doDestroy();
+
+		FileUtils.deleteQuietly(Harvester.getCatalogCacheDir(context, params.uuid));
+	}
+
+	//---------------------------------------------------------------------------
+
 	protected void storeNodeExtra(AbstractParams p, String path,
 											String siteId, String optionsId) throws SQLException
 	{
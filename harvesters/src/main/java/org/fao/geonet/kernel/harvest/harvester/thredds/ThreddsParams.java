@@ -162,6 +162,7 @@ public class ThreddsParams extends AbstractParams
 		return copy;
 	}
 	
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- Variables
@@ -32,11 +32,13 @@ import org.fao.geonet.exceptions.NoSchemaMatchesException;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.SchemaManager;
 import org.fao.geonet.kernel.harvest.BaseAligner;
+import org.fao.geonet.kernel.harvest.HarvestScheduler;
 import org.fao.geonet.kernel.harvest.harvester.*;
 import org.fao.geonet.repository.HarvesterDataRepository;
 import org.fao.geonet.repository.MetadataRepository;
 import org.fao.geonet.repository.OperationAllowedRepository;
 import org.fao.geonet.repository.Updater;
+import org.fao.geonet.util.Sha1Encoder;
 import org.fao.geonet.utils.Log;
 import org.fao.geonet.utils.Xml;
 import org.jdom.Element;
@@ -44,8 +46,11 @@ import org.jdom.JDOMException;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 //=============================================================================
@@ -112,10 +117,15 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult> {
 		localGroups= new GroupMapper(context);
 		localUris  = new UriMapper(context, params.uuid);
 
+		Set<String> paths = new HashSet<String>();
+		for (RemoteFile rf : files) {
+			paths.add(rf.getPath());
+		}
+
 		//-----------------------------------------------------------------------
 		//--- remove old metadata
 		for (final String uri : localUris.getUris()) {
-            if (!exists(files, uri)) {
+            if (!paths.contains(uri)) {
                 // only one metadata record created per uri by this harvester
                 String id = localUris.getRecords(uri).get(0).id;
                 if (log.isDebugEnabled()){
@@ -132,30 +142,87 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult> {
             }
 		}
 		//-----------------------------------------------------------------------
-		//--- insert/update new metadata
+		//--- insert/update new metadata: the files are retrieved by fetchThreads
+		//--- threads, checked by transformThreads threads and stored in this thread
 
-		for(RemoteFile rf : files) {
-			result.totalMetadata++;
-			List<RecordInfo> records = localUris.getRecords(rf.getPath());
-			if (records == null) {
-				addMetadata(rf);
-			} else {
-				// only one metadata record created per uri by this harvester 
-				updateMetadata(rf, records.get(0));
+		final ResourceValidators validators = new ResourceValidators(context.getBean(HarvesterDataRepository.class), params.uuid,
+				getValidatorsSignature());
+		validators.load();
+
+		result.totalMetadata += files.size();
+
+		HarvestPipeline<RemoteFile, RetrievedFile, RetrievedFile> pipeline =
+				new HarvestPipeline<RemoteFile, RetrievedFile, RetrievedFile>(params.name, log, dataMan);
+		pipeline.setThreads(params);
+		pipeline.setScheduler(context.getBean(HarvestScheduler.class));
+
+		pipeline.setFetcher(new HarvestPipeline.Stage<RemoteFile, RemoteFile, RetrievedFile>() {
+			@Override
+			public RetrievedFile process(RemoteFile rf, RemoteFile input) throws Exception {
+				return retrieveMetadata(rf, validators);
 			}
-		}
+		});
+		pipeline.setTransformer(new HarvestPipeline.Stage<RemoteFile, RetrievedFile, RetrievedFile>() {
+			@Override
+			public RetrievedFile process(RemoteFile rf, RetrievedFile file) throws Exception {
+				return checkMetadata(file);
+			}
+		});
+		pipeline.setStore(new HarvestPipeline.Stage<RemoteFile, RetrievedFile, String>() {
+			@Override
+			public String process(RemoteFile rf, RetrievedFile file) throws Exception {
+				return storeMetadata(file, validators);
+			}
+		});
+		pipeline.run(files, errors);
+
+		//--- forget the files which are no longer on the remote site
+		validators.retain(paths);
+
 		log.info("End of alignment for : "+ params.name);
 	}
 
 	//--------------------------------------------------------------------------
-	/** Returns true if the uri is present in the remote folder */
-	private boolean exists(List<RemoteFile> files, String uri) {
-		for(RemoteFile rf : files) {
-			if (uri.equals(rf.getPath())) {
-				return true;
-			}
+	/** Stores the metadata, or why it was skipped, according to what happened to the file */
+	private String storeMetadata(RetrievedFile file, ResourceValidators validators) throws Exception {
+		RemoteFile rf = file.rf;
+		switch (file.status) {
+			case NOT_MODIFIED:
+                if(log.isDebugEnabled()) log.debug("  - Metadata XML not changed for path : "+ rf.getPath());
+				result.unchangedMetadata++;
+				return null;
+			case DOES_NOT_VALIDATE:
+				log.warning("Skipping metadata that does not validate. Path is : "+ rf.getPath());
+				result.doesNotValidate++;
+				return null;
+			case UNKNOWN_SCHEMA:
+				log.warning("Skipping metadata with unknown schema. Path is : "+ rf.getPath());
+				result.unknownSchema++;
+				return null;
+			case BAD_FORMAT:
+				log.warning("Skipping metadata with bad XML format. Path is : "+ rf.getPath());
+				result.badFormat++;
+				return null;
+			case UNRETRIEVABLE:
+				result.unretrievable++;
+				return null;
+			case UNSUPPORTED:
+				log.warning("Skipping file the metadata cannot be built from. Path is : "+ rf.getPath());
+				result.unknownSchema++;
+				return null;
+			default:
+				String id;
+				if (file.record == null) {
+					id = addMetadata(rf, file.md, file.schema);
+				} else {
+					id = updateMetadata(rf, file.record, file.md, file.schema);
+				}
+				//--- the next harvest only retrieves the file again if it changed
+				if (id != null) {
+					validators.put(rf.getPath(), rf.getValidators());
+				}
+				return id;
 		}
-		return false;
 	}
 
 	//--------------------------------------------------------------------------
@@ -171,16 +238,9 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult> {
 	 * uuid with existent metadata, use a random one 4.- If we still don't have
 	 * a clear UUID, use a random one (backup plan)
 	 * 
+	 * @return the id of the metadata to index, null if it was not added
 	 **/
-	private void addMetadata(RemoteFile rf) throws Exception {
-		Element md = retrieveMetadata(rf);
-		if (md == null) {
-			return;
-		}
-		//--- schema handled check already done
-		String schema = dataMan.autodetectSchema(md);
-
-
+	private String addMetadata(RemoteFile rf, Element md, String schema) throws Exception {
         // 1.- Look for the file identifier on the metadata xml
         String uuid = dataMan.extractUUID(schema,  md);
 
@@ -211,14 +271,10 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult> {
                         log.error("  - Failed to set uuid for metadata with remote path : "
                                         + rf.getPath());
                         errors.add(new HarvestError(e, this.log));
-                        return;
+                        return null;
                 }
         }
 
-        log.debug("  - Adding metadata with remote path : " + rf.getPath());
-
-
-
         if(log.isDebugEnabled()) log.debug("  - Adding metadata with remote path : "+ rf.getPath());
 
 		//
@@ -248,42 +304,74 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult> {
             }
         });
 
-        dataMan.flush();
-
-        dataMan.indexMetadata(id, false);
 		result.addedMetadata++;
+		return id;
 	}
 	
 	//--------------------------------------------------------------------------
+	/**
+	 * Retrieves a remote file, unless the file did not change since the
+	 * metadata harvested from it was stored
+	 **/
+	private RetrievedFile retrieveMetadata(RemoteFile rf, ResourceValidators validators) {
+		// only one metadata record created per uri by this harvester
+		List<RecordInfo> records = localUris.getRecords(rf.getPath());
+		RetrievedFile file = new RetrievedFile(rf, records == null ? null : records.get(0));
+
+		if (!rf.isSupported()) {
+			file.status = Status.UNSUPPORTED;
+			return file;
+		}
+
+		//--- the validators of the file are only used if its metadata is still there
+		ResourceValidators.Entry harvested = file.record == null ? null : validators.get(rf.getPath());
+		if (file.record != null && !rf.isModified(file.record.changeDate, harvested)) {
+			file.status = Status.NOT_MODIFIED;
+			return file;
+		}
 
-	private Element retrieveMetadata(RemoteFile rf) {
 		try {
             if(log.isDebugEnabled()) log.debug("Getting remote file : "+ rf.getPath());
-			Element md = rf.getMetadata(schemaMan);
-            if(log.isDebugEnabled()) log.debug("Record got:\n"+ Xml.getString(md));
-
-			String schema = dataMan.autodetectSchema(md);
-			if (!params.validate || validates(schema, md)) {
-				return (Element) md.detach();
+			file.md = rf.getMetadata(schemaMan, harvested);
+			if (file.md == null) {
+				file.status = Status.NOT_MODIFIED;
+			} else {
+                if(log.isDebugEnabled()) log.debug("Record got:\n"+ Xml.getString(file.md));
 			}
-
-			log.warning("Skipping metadata that does not validate. Path is : "+ rf.getPath());
-			result.doesNotValidate++;
-		}
-		catch (NoSchemaMatchesException e) {
-				log.warning("Skipping metadata with unknown schema. Path is : "+ rf.getPath());
-				result.unknownSchema++;
 		}
 		catch(JDOMException e) {
-			log.warning("Skipping metadata with bad XML format. Path is : "+ rf.getPath());
-			result.badFormat++;
+			file.status = Status.BAD_FORMAT;
 		}
 		catch(Exception e) {
 			log.warning("Raised exception while getting metadata file : "+ e);
-			result.unretrievable++;
+			file.status = Status.UNRETRIEVABLE;
 		}
 		//--- we don't raise any exception here. Just try to go on
-		return null;
+		return file;
+	}
+
+	//--------------------------------------------------------------------------
+
+	private RetrievedFile checkMetadata(RetrievedFile file) {
+		if (file.md == null) {
+			return file;
+		}
+		try {
+			file.schema = dataMan.autodetectSchema(file.md);
+			if (!params.validate || validates(file.schema, file.md)) {
+				file.md = (Element) file.md.detach();
+			} else {
+				file.status = Status.DOES_NOT_VALIDATE;
+			}
+		}
+		catch (NoSchemaMatchesException e) {
+			file.status = Status.UNKNOWN_SCHEMA;
+		}
+		catch(Exception e) {
+			log.warning("Raised exception while checking metadata file : "+ e);
+			file.status = Status.UNRETRIEVABLE;
+		}
+		return file;
 	}
 
 	//--------------------------------------------------------------------------
@@ -298,63 +386,75 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult> {
 		}
 	}
 
+	//--------------------------------------------------------------------------
+	/**
+	 * The signature of the parameters which change the harvested metadata: the validators of the previous harvests
+	 * are not used if they changed, so that all the files are retrieved again.
+	 */
+	private String getValidatorsSignature() {
+		StringBuilder signature = new StringBuilder();
+		signature.append(params.url).append('|').append(params.subtype).append('|').append(params.validate)
+				.append('|').append(params.ownerId);
+		for (Privileges privileges : params.getPrivileges()) {
+			signature.append('|').append(privileges.getGroupId()).append(':');
+			for (Integer operation : privileges.getOperations()) {
+				signature.append(operation).append(',');
+			}
+		}
+		for (String category : params.getCategories()) {
+			signature.append('|').append(category);
+		}
+		return Sha1Encoder.encodeString(signature.toString());
+	}
+
 	//--------------------------------------------------------------------------
 	//---
 	//--- Private methods : updateMetadata
 	//---
 	//--------------------------------------------------------------------------
 
-	private void updateMetadata(RemoteFile rf, RecordInfo record) throws Exception {
-		if (!rf.isMoreRecentThan(record.changeDate)) {
-            if(log.isDebugEnabled()) log.debug("  - Metadata XML not changed for path : "+ rf.getPath());
-			result.unchangedMetadata++;
-		}
-		else {
-            if(log.isDebugEnabled()) log.debug("  - Updating local metadata for path : "+ rf.getPath());
-			Element md = retrieveMetadata(rf);
-			if (md == null) {
-				return;
-			}
-			
-			//--- set uuid inside metadata (on metadata add it's created a new uuid ignoring fileIdentifier uuid).
-            //--- In update we should use db uuid to update the xml uuid and keep in sych both.
-            try {
-                String schema = dataMan.autodetectSchema(md);
-                
-                //Update only if different
-                String uuid = dataMan.extractUUID(schema,  md);
-                if (!record.uuid.equals(uuid)) {
-                	md = dataMan.setUUID(schema, record.uuid, md);
-                }
-            } catch(Exception e) {
-                log.error("  - Failed to set uuid for metadata with remote path : "+ rf.getPath());
-                return;
+	/**
+	 * @return the id of the metadata to index, null if it was not updated
+	 **/
+	private String updateMetadata(RemoteFile rf, RecordInfo record, Element md, String schema) throws Exception {
+        if(log.isDebugEnabled()) log.debug("  - Updating local metadata for path : "+ rf.getPath());
+
+		//--- set uuid inside metadata (on metadata add it's created a new uuid ignoring fileIdentifier uuid).
+        //--- In update we should use db uuid to update the xml uuid and keep in sych both.
+        try {
+            //Update only if different
+            String uuid = dataMan.extractUUID(schema,  md);
+            if (!record.uuid.equals(uuid)) {
+            	md = dataMan.setUUID(schema, record.uuid, md);
             }
+        } catch(Exception e) {
+            log.error("  - Failed to set uuid for metadata with remote path : "+ rf.getPath());
+            return null;
+        }
 
-            //
-            // update metadata
-            //
-            boolean validate = false;
-            boolean ufo = false;
-            boolean index = false;
-            String language = context.getLanguage();
-            final Metadata metadata = dataMan.updateMetadata(context, record.id, md, validate, ufo, index, language,
-                    rf.getChangeDate().getDateAndTime(), false);
-
-            //--- the administrator could change privileges and categories using the
-			//--- web interface so we have to re-set both
-            OperationAllowedRepository repository = context.getBean(OperationAllowedRepository.class);
-            repository.deleteAllByIdAttribute(OperationAllowedId_.metadataId, Integer.parseInt(record.id));
-            addPrivileges(record.id, params.getPrivileges(), localGroups, dataMan, context, log);
-
-            metadata.getCategories().clear();
-            addCategories(metadata, params.getCategories(), localCateg, context, log, null);
-
-            dataMan.flush();
-
-            dataMan.indexMetadata(record.id, false);
-			result.updatedMetadata++;
-		}
+        //
+        // update metadata
+        //
+        boolean validate = false;
+        boolean ufo = false;
+        boolean index = false;
+        String language = context.getLanguage();
+        // In forWAF harvester, rf.getChangeDate() returns null
+        String changeDate = rf.getChangeDate() != null ? rf.getChangeDate().getDateAndTime() : new ISODate().getDateAndTime();
+        final Metadata metadata = dataMan.updateMetadata(context, record.id, md, validate, ufo, index, language,
+                changeDate, false);
+
+        //--- the administrator could change privileges and categories using the
+		//--- web interface so we have to re-set both
+        OperationAllowedRepository repository = context.getBean(OperationAllowedRepository.class);
+        repository.deleteAllByIdAttribute(OperationAllowedId_.metadataId, Integer.parseInt(record.id));
+        addPrivileges(record.id, params.getPrivileges(), localGroups, dataMan, context, log);
+
+        metadata.getCategories().clear();
+        addCategories(metadata, params.getCategories(), localCateg, context, log, null);
+
+		result.updatedMetadata++;
+		return record.id;
 	}
 
 	public List<HarvestError> getErrors() {
@@ -376,7 +476,25 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult> {
 	private UriMapper localUris;
 	private HarvestResult result;
 	private SchemaManager  schemaMan;
-    private List<HarvestError> errors = new LinkedList<HarvestError>();
+    private List<HarvestError> errors = Collections.synchronizedList(new LinkedList<HarvestError>());
+
+	/** What happened to a remote file */
+	private enum Status { RETRIEVED, NOT_MODIFIED, UNSUPPORTED, UNRETRIEVABLE, BAD_FORMAT, UNKNOWN_SCHEMA, DOES_NOT_VALIDATE }
+
+	/** A remote file going through the harvest pipeline */
+	private static class RetrievedFile {
+		final RemoteFile rf;
+		/** the metadata previously harvested from the file, null if none */
+		final RecordInfo record;
+		Status  status = Status.RETRIEVED;
+		Element md;
+		String  schema;
+
+		RetrievedFile(RemoteFile rf, RecordInfo record) {
+			this.rf     = rf;
+			this.record = record;
+		}
+	}
 }
 
 //=============================================================================
@@ -392,8 +510,21 @@ interface RemoteRetriever {
 interface RemoteFile {
 	public String  getPath();
 	public ISODate getChangeDate();
-	public Element getMetadata(SchemaManager  schemaMan) throws Exception;
-	public boolean isMoreRecentThan(String localDate);
+	/** False when no metadata can be built from the file, eg. the GetCapabilities document of an unknown service */
+	public boolean isSupported();
+	/**
+	 * @param harvested the validators of the version of the file the local metadata was harvested from, or null
+	 * @return the metadata or null if the file did not change since that version
+	 */
+	public Element getMetadata(SchemaManager  schemaMan, ResourceValidators.Entry harvested) throws Exception;
+	/**
+	 * Tells from the listing of the remote site if the file changed since the local metadata was harvested.
+	 *
+	 * @param harvested the validators of the version of the file the local metadata was harvested from, or null
+	 */
+	public boolean isModified(String localDate, ResourceValidators.Entry harvested);
+	/** The validators of the version of the file listed or retrieved, null if unknown */
+	public ResourceValidators.Entry getValidators();
 }
 
 //=============================================================================
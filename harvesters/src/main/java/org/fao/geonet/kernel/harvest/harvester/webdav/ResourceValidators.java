@@ -0,0 +1,116 @@
+//=============================================================================
+//===	Copyright (C) 2001-2012 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.harvest.harvester.webdav;
+
+import org.fao.geonet.kernel.harvest.harvester.HarvesterDataStore;
+import org.fao.geonet.repository.HarvesterDataRepository;
+
+import java.util.Set;
+
+//=============================================================================
+
+/**
+ * The ETag and Last-Modified of the remote files harvested by a WebDAV/WAF harvester, stored in a
+ * {@link HarvesterDataStore} so that the next harvest only retrieves the files which changed.  The validators are
+ * dropped when the parameters which change the harvested metadata were modified.
+ */
+class ResourceValidators {
+	private static final String KEY_PREFIX = "webdav:";
+
+	/**
+	 * The validators of one remote file.
+	 */
+	static class Entry {
+		final String etag;
+		final String lastModified;
+
+		Entry(String etag, String lastModified) {
+			this.etag         = etag;
+			this.lastModified = lastModified;
+		}
+
+		String toValue() {
+			// the ETag comes last as it may contain the separator
+			return (lastModified == null ? "" : lastModified) + "|" + (etag == null ? "" : etag);
+		}
+
+		static Entry parse(String value) {
+			String[] parts = value.split("\\|", 2);
+			if (parts.length != 2)
+				return null;
+
+			return new Entry(parts[1].length() == 0 ? null : parts[1], parts[0].length() == 0 ? null : parts[0]);
+		}
+	}
+
+	private final HarvesterDataStore store;
+
+	/**
+	 * @param repository the repository the validators are stored in.
+	 * @param harvesterUuid the uuid of the harvester.
+	 * @param signature the signature of the parameters of the harvester the validators are valid for.
+	 */
+	ResourceValidators(HarvesterDataRepository repository, String harvesterUuid, String signature) {
+		this.store = new HarvesterDataStore(repository, harvesterUuid, KEY_PREFIX, signature);
+	}
+
+	/**
+	 * Load the validators stored by the previous harvests, discarding them if the parameters changed.
+	 */
+	void load() {
+		store.load();
+	}
+
+	/**
+	 * Get the validators of the version of a file harvested by the previous harvests.
+	 *
+	 * @return the validators or null if unknown.
+	 */
+	Entry get(String path) {
+		String value = store.get(path);
+		return value == null ? null : Entry.parse(value);
+	}
+
+	/**
+	 * Store the validators of the version of a file just harvested, or remove the previous ones if the server did
+	 * not send any.
+	 */
+	void put(String path, Entry entry) {
+		String value = entry == null || (entry.etag == null && entry.lastModified == null) ? null : entry.toValue();
+
+		if (!store.put(path, value))
+			store.delete(path);
+	}
+
+	/**
+	 * Remove the validators of the files which are no longer on the remote site.
+	 *
+	 * @param paths the paths of the files on the remote site.
+	 */
+	void retain(Set<String> paths) {
+		store.retain(paths);
+	}
+}
+
+//=============================================================================
@@ -23,14 +23,21 @@
 
 package org.fao.geonet.kernel.harvest.harvester.webdav;
 
+import com.google.common.base.Function;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.kernel.SchemaManager;
 import org.fao.geonet.util.Sha1Encoder;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
 import org.fao.geonet.utils.Xml;
 import org.jdom.Element;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
 
-import java.net.URL;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -51,8 +58,11 @@ class WAFRemoteFile implements RemoteFile {
 	//---
 	//---------------------------------------------------------------------------
 
-	public WAFRemoteFile(String path) {
-		this.path = path;
+	public WAFRemoteFile(String path, GeonetHttpRequestFactory requestFactory,
+						 Function<HttpClientBuilder, Void> configurator) {
+		this.path           = path;
+		this.requestFactory = requestFactory;
+		this.configurator   = configurator;
 	}
 
 	//---------------------------------------------------------------------------
@@ -61,14 +71,61 @@ class WAFRemoteFile implements RemoteFile {
 	//---
 	//---------------------------------------------------------------------------
 
-	public Element getMetadata(SchemaManager  schemaMan) throws Exception {
+	/** True for the metadata files and for the GetCapabilities documents of a known service type */
+	public boolean isSupported() {
+        String type = WAFRetriever.getFileType(this.path);
+        if(WAFRetriever.type_GetCapabilities.equals(type))
+            return getServiceType(path) != null;
+        return WAFRetriever.type_xml.equals(type);
+	}
+
+	//---------------------------------------------------------------------------
+
+	public Element getMetadata(SchemaManager  schemaMan, ResourceValidators.Entry harvested) throws Exception {
         String type = WAFRetriever.getFileType(this.path);
         if(type.equals(WAFRetriever.type_GetCapabilities))
-            return getMdFromService(path, schemaMan);
-        else if(type.equals(WAFRetriever.type_xml))
-            return Xml.loadFile(new URL(path));
+            return getMdFromService(path, schemaMan, harvested);
         else
-            return null;
+            return load(path, harvested);
+	}
+
+	//---------------------------------------------------------------------------
+	/**
+	 * Parses the file as it is received, sending the validators of the version
+	 * harvested before in a conditional request.
+	 *
+	 * @return the file or null if the server answered 304 Not Modified
+	 */
+	private Element load(String url, ResourceValidators.Entry harvested) throws Exception
+	{
+		HttpGet req = new HttpGet(url);
+		if (harvested != null) {
+			if (harvested.etag != null)
+				req.setHeader("If-None-Match", harvested.etag);
+			if (harvested.lastModified != null)
+				req.setHeader("If-Modified-Since", harvested.lastModified);
+		}
+
+		ClientHttpResponse response = null;
+		try {
+			response = requestFactory.execute(req, configurator);
+
+			if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && harvested != null)
+				return null;
+
+			if (response.getStatusCode() != HttpStatus.OK)
+				throw new IOException("Request "+ url +" failed: "+ response.getRawStatusCode()
+						+" "+ response.getStatusText());
+
+			HttpHeaders headers = response.getHeaders();
+			validators = new ResourceValidators.Entry(headers.getETag(), headers.getFirst("Last-Modified"));
+
+			return Xml.loadStream(response.getBody());
+		} finally {
+			if (response != null)
+				response.close();
+			req.releaseConnection();
+		}
 	}
 
 
@@ -79,14 +136,15 @@ class WAFRemoteFile implements RemoteFile {
 	//---
 	//---------------------------------------------------------------------------	
 	
-	private Element getMdFromService(String url, SchemaManager  schemaMan) throws Exception
+	private Element getMdFromService(String url, SchemaManager  schemaMan, ResourceValidators.Entry harvested) throws Exception
 	{
 		Element el = null;
+		// the service type is known: the harvester skips the unsupported files
 		String styleSheet = getStyleSheet(url, schemaMan);
-		if(styleSheet == null) {
+        Element xml = load(url, harvested);
+        if(xml == null) {
             return null;
         }
-        Element xml = Xml.loadFile(new URL(url));
 
         // md5 the full capabilities URL
         String uuid = Sha1Encoder.encodeString (url); // is the service identifier
@@ -134,10 +192,17 @@ class WAFRemoteFile implements RemoteFile {
 	
 	//---------------------------------------------------------------------------
 
-	public boolean isMoreRecentThan(String localChangeDate) {
+	/** The listing of a WAF has no dates: the conditional request tells if the file changed */
+	public boolean isModified(String localChangeDate, ResourceValidators.Entry harvested) {
 		return true;
 	}
 
+	//---------------------------------------------------------------------------
+
+	public ResourceValidators.Entry getValidators() {
+		return validators;
+	}
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- Variables
@@ -145,6 +210,10 @@ class WAFRemoteFile implements RemoteFile {
 	//---------------------------------------------------------------------------
 	
 	private String path;
+	private final GeonetHttpRequestFactory requestFactory;
+	private final Function<HttpClientBuilder, Void> configurator;
+	/** the validators of the retrieved file, set by the pipeline thread which retrieved it */
+	private volatile ResourceValidators.Entry validators;
 	private static String outputSchema = "iso19139";
 	
 	public String getPath() {
@@ -23,8 +23,12 @@
 
 package org.fao.geonet.kernel.harvest.harvester.webdav;
 
+import com.google.common.base.Function;
 import jeeves.server.context.ServiceContext;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.fao.geonet.Logger;
+import org.fao.geonet.lib.Lib;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -42,9 +46,18 @@ class WAFRetriever implements RemoteRetriever {
 	//---
 	//--------------------------------------------------------------------------
 
-	public void init(Logger log, ServiceContext context, WebDavParams params) {
+	public void init(Logger log, final ServiceContext context, WebDavParams params) {
 		this.log    = log;
 		this.params = params;
+		this.requestFactory = context.getBean(GeonetHttpRequestFactory.class);
+		this.configurator   = new Function<HttpClientBuilder, Void>() {
+			@Override
+			public Void apply(HttpClientBuilder input) {
+				// set proxy from settings manager
+				Lib.net.setupProxy(context, input);
+				return null;
+			}
+		};
 	}
 
 	//---------------------------------------------------------------------------
@@ -87,7 +100,7 @@ class WAFRetriever implements RemoteRetriever {
                     retrieveFiles(url);
                 }
             } else {
-                files.add(new WAFRemoteFile(url));
+                files.add(new WAFRemoteFile(url, requestFactory, configurator));
             }
         }
 	}
@@ -119,6 +132,8 @@ class WAFRetriever implements RemoteRetriever {
 
 	private Logger         log;
 	private WebDavParams   params;
+	private GeonetHttpRequestFactory requestFactory;
+	private Function<HttpClientBuilder, Void> configurator;
 	private List<RemoteFile> files = new ArrayList<RemoteFile>();
 	
 	public static final String type_GetCapabilities = "GetCapabilities";
@@ -108,6 +108,7 @@ public class WebDavParams extends AbstractParams
 		return copy;
 	}
 
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- Variables
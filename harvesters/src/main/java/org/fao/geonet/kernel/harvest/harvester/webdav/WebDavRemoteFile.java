@@ -41,12 +41,14 @@ class WebDavRemoteFile implements RemoteFile {
 
     private String path;
     private ISODate changeDate;
+    private String etag;
 
 
     public WebDavRemoteFile(Sardine sardine, String baseURL, DavResource davResource) {
         this.sardine = sardine;
         path = baseURL + davResource.getPath();
         changeDate = new ISODate(davResource.getModified().getTime(), false);
+        etag = davResource.getEtag();
     }
 
     //---------------------------------------------------------------------------
@@ -65,7 +67,13 @@ class WebDavRemoteFile implements RemoteFile {
 
     //---------------------------------------------------------------------------
 
-    public Element getMetadata(SchemaManager schemaMan) throws Exception {
+    public boolean isSupported() {
+        return true;
+    }
+
+    //---------------------------------------------------------------------------
+
+    public Element getMetadata(SchemaManager schemaMan, ResourceValidators.Entry harvested) throws Exception {
         InputStream in = null;
         try {
             in = sardine.get(path);
@@ -77,12 +85,22 @@ class WebDavRemoteFile implements RemoteFile {
 
     //---------------------------------------------------------------------------
 
-    public boolean isMoreRecentThan(String localChangeDate) {
+    public boolean isModified(String localChangeDate, ResourceValidators.Entry harvested) {
+        //--- the ETag of the listing changes whenever the content does, even if the date does not
+        if (etag != null && harvested != null && harvested.etag != null) {
+            return !etag.equals(harvested.etag);
+        }
         ISODate remoteDate = changeDate;
         ISODate localDate = new ISODate(localChangeDate);
         //--- accept if remote date is greater than local date
         return (remoteDate.timeDifferenceInSeconds(localDate) > 0);
     }
+
+    //---------------------------------------------------------------------------
+
+    public ResourceValidators.Entry getValidators() {
+        return etag == null ? null : new ResourceValidators.Entry(etag, null);
+    }
 }
 
 //=============================================================================
\ No newline at end of file
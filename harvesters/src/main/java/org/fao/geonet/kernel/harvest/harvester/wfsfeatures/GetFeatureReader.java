@@ -0,0 +1,161 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.harvest.harvester.wfsfeatures;
+
+import org.fao.geonet.exceptions.BadServerResponseEx;
+import org.fao.geonet.utils.Xml;
+import org.fao.geonet.utils.XmlElementReader;
+import org.fao.geonet.utils.XmlRequest;
+import org.jdom.Element;
+import org.jdom.Namespace;
+
+import java.util.Arrays;
+import java.util.List;
+
+//=============================================================================
+
+/**
+ * Reads the features returned by a GetFeature request one at a time, while the response is downloaded, so that only
+ * the current feature is held in memory.
+ * <p/>
+ * When a page size is given the features are requested in pages using the startIndex and count (maxFeatures before
+ * WFS 2.0) attributes of the query, which the service must support (WFS 2.0 ResultPaging or a vendor extension).
+ * A service may return less features than requested (eg. it caps the features of a response): the next page starts
+ * after the features read and only an empty page ends the reading.  A service which ignores the paging attributes is
+ * detected when a page starts with the same feature as the previous one.
+ */
+class GetFeatureReader {
+	private static final List<Namespace> NAMESPACES = Arrays.asList(
+			Namespace.getNamespace("gml", "http://www.opengis.net/gml"),
+			Namespace.getNamespace("wfs", "http://www.opengis.net/wfs"),
+			Namespace.getNamespace("wfs20", "http://www.opengis.net/wfs/2.0"));
+
+	/** The features of GML 3 (WFS 1.1) and WFS 2.0 collections, the feature members of GML 2 (WFS 1.0) collections */
+	private static final String FEATURE_PATH = "gml:featureMembers/*|wfs:FeatureCollection/gml:featureMember|wfs20:member/*";
+
+	/**
+	 * Processes the features as they are read.
+	 */
+	interface FeatureHandler {
+		void handle(Element feature) throws Exception;
+	}
+
+	private final XmlRequest request;
+	private final Element query;
+	private final int pageSize;
+
+	/**
+	 * @param request the request posting the query to the service.
+	 * @param query the wfs:GetFeature query.
+	 * @param pageSize the number of features per request, 0 to get all the features in one response.
+	 */
+	GetFeatureReader(XmlRequest request, Element query, int pageSize) {
+		this.request  = request;
+		this.query    = query;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Pass the features returned by the service to the handler.
+	 *
+	 * @return the number of features read.
+	 */
+	int read(FeatureHandler handler) throws Exception {
+		if (pageSize <= 0) {
+			PageHandler page = new PageHandler(handler, null);
+			request.setRequest(query);
+			return request.executeStreaming(FEATURE_PATH, NAMESPACES, page);
+		}
+
+		String countAttribute = query.getAttributeValue("version", "").startsWith("2.") ? "count" : "maxFeatures";
+		String previousFirst = null;
+		int total = 0;
+		for (int startIndex = 0; ; ) {
+			Element pageQuery = (Element) query.clone();
+			pageQuery.setAttribute("startIndex", String.valueOf(startIndex));
+			pageQuery.setAttribute(countAttribute, String.valueOf(pageSize));
+
+			PageHandler page = new PageHandler(handler, previousFirst);
+			request.setRequest(pageQuery);
+			int read = request.executeStreaming(FEATURE_PATH, NAMESPACES, page);
+			if (page.repeated) {
+				throw new BadServerResponseEx("The service at "+ request.getHost() +" returned the same features for"
+						+ " startIndex "+ startIndex +": it does not support paging, harvest without page size");
+			}
+
+			if (read == 0) {
+				return total;
+			}
+			total += read;
+			startIndex += read;
+			previousFirst = page.first;
+		}
+	}
+
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Reads the features of one response.
+	 */
+	private static class PageHandler implements XmlRequest.ElementStreamHandler<Integer> {
+		private final FeatureHandler handler;
+		private final String previousFirst;
+
+		/** the first feature of the response, to detect a service returning the same page again */
+		String first;
+		boolean repeated;
+
+		PageHandler(FeatureHandler handler, String previousFirst) {
+			this.handler       = handler;
+			this.previousFirst = previousFirst;
+		}
+
+		public Integer handle(XmlElementReader reader) throws Exception {
+			int read = 0;
+			if (!reader.hasNext()) {
+				Element root = reader.getRootElement();
+				if (root != null && root.getName().endsWith("ExceptionReport")) {
+					throw new BadServerResponseEx("GetFeature request failed with an exception report");
+				}
+				return read;
+			}
+
+			while (reader.hasNext()) {
+				Element feature = reader.next();
+				if (read == 0) {
+					first = Xml.getString(feature);
+					if (first.equals(previousFirst)) {
+						repeated = true;
+						return read;
+					}
+				}
+				handler.handle(feature);
+				read++;
+			}
+			return read;
+		}
+	}
+}
+
+//=============================================================================
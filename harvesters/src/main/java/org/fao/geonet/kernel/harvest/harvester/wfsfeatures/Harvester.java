@@ -45,17 +45,12 @@ import org.fao.geonet.lib.Lib;
 import org.fao.geonet.repository.MetadataRepository;
 import org.fao.geonet.utils.GeonetHttpRequestFactory;
 import org.fao.geonet.utils.Xml;
-import org.fao.geonet.utils.XmlElementReader;
 import org.fao.geonet.utils.XmlRequest;
 import org.jdom.Element;
 import org.jdom.JDOMException;
-import org.jdom.Namespace;
 
 import javax.xml.stream.FactoryConfigurationError;
-import javax.xml.stream.XMLStreamException;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
@@ -211,11 +206,19 @@ class Harvester implements IHarvester<HarvestResult>
 		//--- harvest metadata and subtemplates from fragments using generic fragment harvester
 		FragmentHarvester fragmentHarvester = new FragmentHarvester(log, context, getFragmentHarvesterParams());
 
-		if (params.streamFeatures) {
-			harvestFeatures(wfsQuery, fragmentHarvester);
-		} else {
-			harvestResponse(wfsQuery, fragmentHarvester);
+		try {
+			if (params.streamFeatures) {
+				harvestFeatures(wfsQuery, fragmentHarvester);
+			} else {
+				harvestResponse(wfsQuery, fragmentHarvester);
+			}
+		} finally {
+			//--- index the last batch, even the metadata stored before a failure
+			fragmentHarvester.flush();
 		}
+
+		//--- only once all the features are harvested, as each feature only updates some of the metadata
+		deleteOrphanedMetadata(updatedMetadata);
     
 		return result;
 	}
@@ -253,41 +256,23 @@ class Harvester implements IHarvester<HarvestResult>
      * (reduces memory usage for large documents)
      */
 	
-	private void harvestFeatures(Element xmlQuery, FragmentHarvester fragmentHarvester)
+	private void harvestFeatures(Element xmlQuery, final FragmentHarvester fragmentHarvester)
             throws FactoryConfigurationError, Exception {
 		
-		XmlRequest req = context.getBean(GeonetHttpRequestFactory.class).createXmlRequest(params.url);
-		req.setRequest(xmlQuery);
+		XmlRequest req = context.getBean(GeonetHttpRequestFactory.class).createXmlRequest(new URL(params.url));
 		Lib.net.setupProxy(context, req);
-		
-		File tempFile = File.createTempFile("temp-", ".xml");
-
-		try {
-			// Read response into temporary file 
-			req.executeLarge(tempFile);
 
-	    	List<Namespace> namespaces = new ArrayList<Namespace>();
-	    	namespaces.add(Namespace.getNamespace("gml", "http://www.opengis.net/gml"));
-	    	
-	        XmlElementReader reader = new XmlElementReader(new FileInputStream(tempFile), "gml:featureMembers/*", namespaces);
-					if (!reader.hasNext()) {
-	    			namespaces.add(Namespace.getNamespace("wfs", "http://www.opengis.net/wfs"));
-						reader = new XmlElementReader(new FileInputStream(tempFile), "wfs:FeatureCollection/gml:featureMember", namespaces);
-					}
-	        
-	        while (reader.hasNext()) {
-						stylesheetDirectory = schemaMan.getSchemaDir(params.outputSchema) + Geonet.Path.WFS_STYLESHEETS;
-	    			Element records = Xml.transform(reader.next(), stylesheetDirectory + "/" + params.stylesheet, ssParams);
-	
-	    			harvest(records, fragmentHarvester);
-	        }
-		} finally {
-	        if (!tempFile.delete() && tempFile.exists()) {
-	            log.warning("Unable to delete tempFile: "+tempFile);
-	        }
+		stylesheetDirectory = schemaMan.getSchemaDir(params.outputSchema) + Geonet.Path.WFS_STYLESHEETS;
+		final String stylesheet = stylesheetDirectory + "/" + params.stylesheet;
 
-		}
-				
+		//--- the features are transformed and harvested while the response is downloaded
+		int features = new GetFeatureReader(req, xmlQuery, params.pageSize).read(new GetFeatureReader.FeatureHandler() {
+			public void handle(Element feature) throws Exception {
+				Element records = Xml.transform(feature, stylesheet, ssParams);
+				harvest(records, fragmentHarvester);
+			}
+		});
+		log.info("Harvested fragments from "+ features +" features");
     }
 
 	/** 
@@ -299,7 +284,7 @@ class Harvester implements IHarvester<HarvestResult>
 		
 	    HarvestSummary fragmentResult = fragmentHarvester.harvest(xml, params.url);
 
-			deleteOrphanedMetadata(fragmentResult.updatedMetadata);
+	    updatedMetadata.addAll(fragmentResult.updatedMetadata);
 	    	
 	    result.fragmentsReturned += fragmentResult.fragmentsReturned;
 	    result.fragmentsUnknownSchema += fragmentResult.fragmentsUnknownSchema;
@@ -391,6 +376,8 @@ class Harvester implements IHarvester<HarvestResult>
 	private String	 		metadataGetService;
 	private String	 		 stylesheetDirectory;
 	private Map<String,String> ssParams = new HashMap<String,String>();
+	/** uuids of the metadata and subtemplates harvested from the features */
+	private Set<String>    updatedMetadata = new HashSet<String>();
     /**
      * Contains a list of accumulated errors during the executing of this harvest.
      */
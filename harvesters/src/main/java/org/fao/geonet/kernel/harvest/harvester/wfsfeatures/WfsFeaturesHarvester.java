@@ -130,6 +130,7 @@ public class WfsFeaturesHarvester extends AbstractHarvester<HarvestResult>
 		settingMan.add("id:"+optionsId, "outputSchema",  params.outputSchema);
 		settingMan.add("id:"+optionsId, "stylesheet",  params.stylesheet);
 		settingMan.add("id:"+optionsId, "streamFeatures",  params.streamFeatures);
+		settingMan.add("id:"+optionsId, "pageSize",  params.pageSize);
 		settingMan.add("id:"+optionsId, "createSubtemplates",  params.createSubtemplates);
 		settingMan.add("id:"+optionsId, "templateId",  params.templateId);
 		settingMan.add("id:"+optionsId, "recordsCategory",  params.recordsCategory);
@@ -65,6 +65,7 @@ public class WfsFeaturesParams extends AbstractParams
 		outputSchema		= Util.getParam(opt, "outputSchema",  "");
 		stylesheet			= Util.getParam(opt, "stylesheet",  "");
 		streamFeatures		= Util.getParam(opt, "streamFeatures",  true);
+		pageSize			= Util.getParam(opt, "pageSize",  0);
 		createSubtemplates	= Util.getParam(opt, "createSubtemplates", true);
 		templateId			= Util.getParam(opt, "templateId",  "");
 		recordsCategory	= Util.getParam(opt, "recordsCategory",  "");
@@ -90,6 +91,7 @@ public class WfsFeaturesParams extends AbstractParams
 		outputSchema		= Util.getParam(opt,  "outputSchema",  "");
 		stylesheet			= Util.getParam(opt,  "stylesheet",  "");
 		streamFeatures		= Util.getParam(opt, "streamFeatures", streamFeatures);
+		pageSize			= Util.getParam(opt, "pageSize", pageSize);
 		createSubtemplates	= Util.getParam(opt, "createSubtemplates", createSubtemplates);
 		templateId			= Util.getParam(opt,  "templateId",  "");
 		recordsCategory = Util.getParam(opt,  "recordsCategory",  recordsCategory);
@@ -112,12 +114,15 @@ public class WfsFeaturesParams extends AbstractParams
 		copy.query		 		= query;
 		copy.outputSchema	= outputSchema;
 		copy.stylesheet		= stylesheet;
+		copy.streamFeatures	= streamFeatures;
+		copy.pageSize		= pageSize;
 		copy.createSubtemplates	= createSubtemplates;
 		copy.templateId		= templateId;
 		copy.recordsCategory    = recordsCategory;
 		return copy;
 	}
 
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- Variables
@@ -131,6 +136,8 @@ public class WfsFeaturesParams extends AbstractParams
 	public String outputSchema;
 	public String stylesheet;
 	public boolean streamFeatures;
+	/** number of features requested at a time when streaming features, 0 to request them all at once */
+	public int pageSize;
 	public boolean createSubtemplates;
 	public String templateId;
 	public String recordsCategory;
@@ -148,6 +148,7 @@ public class Z3950ConfigParams extends AbstractParams
 		}
 	}
 
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- Variables
@@ -0,0 +1,114 @@
+package org.fao.geonet.kernel.harvest;
+
+import org.fao.geonet.kernel.DataManager;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test {@link HarvestScheduler}.
+ */
+public class HarvestSchedulerTest {
+
+    @Test
+    public void testPriorityAndFairness() throws Exception {
+        final HarvestScheduler scheduler = new HarvestScheduler();
+        scheduler.setMaxConcurrentHarvests(1);
+
+        // "recent" has already been harvested, "never" has not
+        scheduler.release(scheduler.acquire("recent", null, 0));
+        HarvestScheduler.Ticket running = scheduler.acquire("first", null, 0);
+
+        final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> threads = new ArrayList<Thread>();
+        threads.add(startHarvest(scheduler, "recent", null, 0, started));
+        waitForWaiting(scheduler, 1);
+        threads.add(startHarvest(scheduler, "never", null, 0, started));
+        waitForWaiting(scheduler, 2);
+        threads.add(startHarvest(scheduler, "urgent", null, 5, started));
+        waitForWaiting(scheduler, 3);
+
+        scheduler.release(running);
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        assertEquals(Arrays.asList("urgent", "never", "recent"), started);
+        assertEquals(0, scheduler.getRunningCount());
+    }
+
+    @Test
+    public void testMaxConcurrentHarvestsPerHost() throws Exception {
+        final HarvestScheduler scheduler = new HarvestScheduler();
+        scheduler.setMaxConcurrentHarvestsPerHost(1);
+
+        HarvestScheduler.Ticket host1 = scheduler.acquire("a", "host1.org", 0);
+        // another host is not limited
+        HarvestScheduler.Ticket host2 = scheduler.acquire("b", "host2.org", 0);
+        assertEquals(2, scheduler.getRunningCount());
+
+        final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+        Thread thread = startHarvest(scheduler, "c", "HOST1.org", 0, started);
+        waitForWaiting(scheduler, 1);
+        assertTrue(started.isEmpty());
+
+        scheduler.release(host2);
+        assertEquals(1, scheduler.getWaitingCount());
+
+        scheduler.release(host1);
+        thread.join(10000);
+        assertEquals(Arrays.asList("c"), started);
+    }
+
+    @Test
+    public void testAwaitIndexCapacity() throws Exception {
+        DataManager dataMan = Mockito.mock(DataManager.class);
+        Mockito.when(dataMan.getIndexingCount()).thenReturn(10, 10, 2);
+
+        HarvestScheduler scheduler = new HarvestScheduler();
+        scheduler.setDataManager(dataMan);
+        scheduler.setMaxPendingIndexing(5);
+        scheduler.setIndexingPollInterval(1);
+
+        scheduler.awaitIndexCapacity();
+        Mockito.verify(dataMan, Mockito.times(3)).getIndexingCount();
+
+        // the wait is bounded
+        Mockito.when(dataMan.getIndexingCount()).thenReturn(10);
+        scheduler.setMaxIndexingWait(20);
+        scheduler.awaitIndexCapacity();
+    }
+
+    private Thread startHarvest(final HarvestScheduler scheduler, final String uuid, final String host, final int priority,
+                                final List<String> started) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    HarvestScheduler.Ticket ticket = scheduler.acquire(uuid, host, priority);
+                    started.add(uuid);
+                    scheduler.release(ticket);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private void waitForWaiting(HarvestScheduler scheduler, int waiting) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (scheduler.getWaitingCount() < waiting && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(waiting, scheduler.getWaitingCount());
+    }
+}
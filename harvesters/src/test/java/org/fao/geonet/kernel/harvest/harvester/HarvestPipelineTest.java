@@ -0,0 +1,87 @@
+package org.fao.geonet.kernel.harvest.harvester;
+
+import org.fao.geonet.Logger;
+import org.fao.geonet.kernel.DataManager;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyListOf;
+
+/**
+ * Test {@link HarvestPipeline}.
+ */
+public class HarvestPipelineTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRun() throws Exception {
+        final DataManager dataMan = Mockito.mock(DataManager.class);
+        final List<String> indexed = Collections.synchronizedList(new ArrayList<String>());
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                indexed.addAll((List<String>) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(dataMan).indexMetadata(anyListOf(String.class));
+
+        final List<Integer> stored = new ArrayList<Integer>();
+        List<Integer> refs = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            refs.add(i);
+        }
+
+        HarvestPipeline<Integer, String, String> pipeline =
+                new HarvestPipeline<Integer, String, String>("test", Mockito.mock(Logger.class), dataMan);
+        pipeline.setIndexBatchSize(7);
+        pipeline.setFetcher(new HarvestPipeline.Stage<Integer, Integer, String>() {
+            @Override
+            public String process(Integer ref, Integer input) throws Exception {
+                if (ref == 13) {
+                    throw new Exception("not found");
+                }
+                // drop the odd references
+                return ref % 2 == 0 ? "record" + ref : null;
+            }
+        });
+        pipeline.setTransformer(new HarvestPipeline.Stage<Integer, String, String>() {
+            @Override
+            public String process(Integer ref, String input) throws Exception {
+                return input.toUpperCase();
+            }
+        });
+        pipeline.setStore(new HarvestPipeline.Stage<Integer, String, String>() {
+            @Override
+            public String process(Integer ref, String input) throws Exception {
+                assertEquals("RECORD" + ref, input);
+                stored.add(ref);
+                // the records of the first ten do not have to be indexed
+                return ref < 10 ? null : String.valueOf(ref);
+            }
+        });
+
+        AbstractParams params = Mockito.mock(AbstractParams.class);
+        params.fetchThreads = 3;
+        params.transformThreads = 2;
+        params.indexThreads = 2;
+        pipeline.setThreads(params);
+
+        List<HarvestError> errors = new ArrayList<HarvestError>();
+        pipeline.run(refs, errors);
+
+        assertEquals(1, errors.size());
+        assertEquals("not found", errors.get(0).getDescription());
+        assertEquals(50, stored.size());
+        assertEquals(45, indexed.size());
+        Collections.sort(stored);
+        assertEquals(Arrays.asList(0, 2, 4), stored.subList(0, 3));
+    }
+}
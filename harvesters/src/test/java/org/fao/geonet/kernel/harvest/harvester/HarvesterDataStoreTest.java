@@ -0,0 +1,97 @@
+package org.fao.geonet.kernel.harvest.harvester;
+
+import org.fao.geonet.repository.HarvesterDataRepository;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test {@link HarvesterDataStore}.
+ */
+public class HarvesterDataStoreTest {
+    private static final String HARVESTER_UUID = "harvester";
+
+    @Test
+    public void testStoresAreSeparated() {
+        HarvesterDataRepository repository = HarvesterTestSupport.createHarvesterDataRepository(HARVESTER_UUID);
+        HarvesterDataStore first = new HarvesterDataStore(repository, HARVESTER_UUID, "first:", null);
+        HarvesterDataStore second = new HarvesterDataStore(repository, HARVESTER_UUID, "second:", "signature");
+        assertTrue(first.load());
+        assertFalse(second.load());
+
+        first.put("key", "first value");
+        second.put("key", "second value");
+
+        first = new HarvesterDataStore(repository, HARVESTER_UUID, "first:", null);
+        second = new HarvesterDataStore(repository, HARVESTER_UUID, "second:", "signature");
+        assertTrue(first.load());
+        assertTrue(second.load());
+        assertEquals("first value", first.get("key"));
+        assertEquals("second value", second.get("key"));
+
+        // the parameters of the harvester changed: only the values of the second store are discarded
+        second = new HarvesterDataStore(repository, HARVESTER_UUID, "second:", "other signature");
+        assertFalse(second.load());
+        assertNull(second.get("key"));
+        first.load();
+        assertEquals("first value", first.get("key"));
+    }
+
+    @Test
+    public void testLongKeysAndValues() {
+        HarvesterDataRepository repository = HarvesterTestSupport.createHarvesterDataRepository(HARVESTER_UUID);
+        HarvesterDataStore store = new HarvesterDataStore(repository, HARVESTER_UUID, "test:", null);
+        store.load();
+
+        String longKey = repeat('k', HarvesterDataStore.MAX_LENGTH);
+        String longValue = repeat('v', HarvesterDataStore.MAX_LENGTH + 1);
+        assertTrue(store.put(longKey, "value"));
+        assertEquals("value", store.get(longKey));
+
+        // a value too long keeps the previous one
+        assertFalse(store.put(longKey, longValue));
+        assertEquals("value", store.get(longKey));
+
+        assertTrue(store.put(longKey, null));
+        assertNull(store.get(longKey));
+    }
+
+    @Test
+    public void testPutAllAndRetain() {
+        HarvesterDataRepository repository = HarvesterTestSupport.createHarvesterDataRepository(HARVESTER_UUID);
+        HarvesterDataStore store = new HarvesterDataStore(repository, HARVESTER_UUID, "test:", "signature");
+        store.load();
+
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("a", "1");
+        values.put("b", "2");
+        values.put("c", "3");
+        store.putAll(values);
+        assertEquals(4, repository.findAllById_HarvesterUuid(HARVESTER_UUID).size());
+
+        store.retain(Arrays.asList("a", "c"));
+        assertEquals("1", store.get("a"));
+        assertNull(store.get("b"));
+        // the signature is kept
+        assertEquals(3, repository.findAllById_HarvesterUuid(HARVESTER_UUID).size());
+
+        store.retain(Collections.<String>emptyList());
+        store = new HarvesterDataStore(repository, HARVESTER_UUID, "test:", "signature");
+        assertTrue(store.load());
+        assertNull(store.get("a"));
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
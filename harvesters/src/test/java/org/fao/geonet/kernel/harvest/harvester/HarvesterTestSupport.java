@@ -0,0 +1,116 @@
+package org.fao.geonet.kernel.harvest.harvester;
+
+import com.google.common.base.Function;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.fao.geonet.domain.HarvesterData;
+import org.fao.geonet.repository.HarvesterDataRepository;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Support for the unit tests of the harvesters: an in-memory {@link HarvesterDataRepository} and a local http server
+ * standing for the harvested node.
+ */
+public final class HarvesterTestSupport {
+    /**
+     * A client configurator which leaves the client as is.
+     */
+    public static final Function<HttpClientBuilder, Void> NO_CONFIGURATION = new Function<HttpClientBuilder, Void>() {
+        @Override
+        public Void apply(HttpClientBuilder input) {
+            return null;
+        }
+    };
+
+    private HarvesterTestSupport() {
+    }
+
+    /**
+     * Create a repository keeping the data of a harvester in memory.
+     */
+    @SuppressWarnings("unchecked")
+    public static HarvesterDataRepository createHarvesterDataRepository(String harvesterUuid) {
+        final List<HarvesterData> data = Collections.synchronizedList(new ArrayList<HarvesterData>());
+        HarvesterDataRepository repository = Mockito.mock(HarvesterDataRepository.class);
+        Mockito.when(repository.findAllById_HarvesterUuid(harvesterUuid)).thenAnswer(new Answer<List<HarvesterData>>() {
+            @Override
+            public List<HarvesterData> answer(InvocationOnMock invocation) throws Throwable {
+                synchronized (data) {
+                    return new ArrayList<HarvesterData>(data);
+                }
+            }
+        });
+        Mockito.when(repository.save(Matchers.any(HarvesterData.class))).thenAnswer(new Answer<HarvesterData>() {
+            @Override
+            public HarvesterData answer(InvocationOnMock invocation) throws Throwable {
+                HarvesterData saved = (HarvesterData) invocation.getArguments()[0];
+                add(data, saved);
+                return saved;
+            }
+        });
+        Mockito.when(repository.save(Matchers.anyListOf(HarvesterData.class))).thenAnswer(new Answer<List<HarvesterData>>() {
+            @Override
+            public List<HarvesterData> answer(InvocationOnMock invocation) throws Throwable {
+                List<HarvesterData> saved = new ArrayList<HarvesterData>((List<HarvesterData>) invocation.getArguments()[0]);
+                for (HarvesterData entity : saved) {
+                    add(data, entity);
+                }
+                return saved;
+            }
+        });
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                data.remove(invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(repository).delete(Matchers.any(HarvesterData.class));
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                data.removeAll((Collection<HarvesterData>) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(repository).delete(Matchers.anyCollectionOf(HarvesterData.class));
+        return repository;
+    }
+
+    /**
+     * Start a server on a free port of localhost.
+     *
+     * @param path the path the handler responds to.
+     * @return the started server, to be stopped by the test.
+     */
+    public static HttpServer startHttpServer(String path, HttpHandler handler) throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext(path, handler);
+        httpServer.start();
+        return httpServer;
+    }
+
+    /**
+     * Get the url of a path of a server started by {@link #startHttpServer(String, HttpHandler)}.
+     */
+    public static String getUrl(HttpServer httpServer, String path) {
+        return "http://localhost:" + httpServer.getAddress().getPort() + path;
+    }
+
+    private static void add(List<HarvesterData> data, HarvesterData entity) {
+        synchronized (data) {
+            if (!data.contains(entity)) {
+                data.add(entity);
+            }
+        }
+    }
+}
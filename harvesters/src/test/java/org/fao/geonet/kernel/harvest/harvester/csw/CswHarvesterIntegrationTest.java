@@ -37,12 +37,20 @@ public class CswHarvesterIntegrationTest extends AbstractHarvesterIntegrationTes
         final MockXmlRequest cswServerRequest = new MockXmlRequest(HOST, PORT, PROTOCOL);
         cswServerRequest.when(CAPABILITIES_URL)
                 .thenReturn(fileStream("capabilities.xml"));
-        final String queryString = "?request=GetRecordById&service=CSW&version=2.0.2&outputSchema=http://www.isotc211" +
-                         ".org/2005/gmd&elementSetName=full&id=";
-        cswServerRequest.when(REQUEST+queryString+"7e926fbf-00fb-4ff5-a99e-c8576027c4e7")
-                .thenReturn(fileStream("GetRecordById-7e926fbf-00fb-4ff5-a99e-c8576027c4e7.xml"));
-        cswServerRequest.when(REQUEST+queryString+"da165110-88fd-11da-a88f-000d939bc5d8")
-                .thenReturn(fileStream("GetRecordById-da165110-88fd-11da-a88f-000d939bc5d8.xml"));
+        mockSearchRequests(cswServerRequest);
+
+        bean.registerRequest(true, HOST, PORT, PROTOCOL, cswServerRequest);
+        bean.registerRequest(true, null, 80, PROTOCOL, cswServerRequest);
+    }
+
+    /**
+     * Register the requests made to search the records: by default one page of full records.
+     */
+    protected void mockSearchRequests(MockXmlRequest cswServerRequest) {
+        mockGetRecords(cswServerRequest, "full", "getRecordsFull.xml");
+    }
+
+    protected void mockGetRecords(MockXmlRequest cswServerRequest, final String elementSetName, String responseFile) {
         cswServerRequest.when(new Predicate<HttpRequestBase>(){
             @Override
             public boolean apply(@Nullable HttpRequestBase input) {
@@ -62,16 +70,12 @@ public class CswHarvesterIntegrationTest extends AbstractHarvesterIntegrationTes
                 final Element queryEl = xml.getChild("Query", Csw.NAMESPACE_CSW);
                 final String typeNames = queryEl.getAttributeValue("typeNames");
                 final boolean correctTypeNames = typeNames.contains("gmd:MD_Metadata") && typeNames.contains("csw:Record");
-                final boolean isSummary = queryEl.getChild("ElementSetName", Csw.NAMESPACE_CSW).getText().equals("summary");
+                final boolean correctElementSet = queryEl.getChild("ElementSetName", Csw.NAMESPACE_CSW).getText().equals(elementSetName);
                 final boolean noQueryFilter = queryEl.getChildren().size() == 1;
 
-                return isGetRecords && correctTypeNames && isSummary && noQueryFilter;
+                return isGetRecords && correctTypeNames && correctElementSet && noQueryFilter;
             }
-        }).thenReturn(fileStream("getRecords.xml"));
-
-
-        bean.registerRequest(true, HOST, PORT, PROTOCOL, cswServerRequest);
-        bean.registerRequest(true, null, 80, PROTOCOL, cswServerRequest);
+        }).thenReturn(fileStream(responseFile));
     }
 
     protected void customizeParams(Element params) {
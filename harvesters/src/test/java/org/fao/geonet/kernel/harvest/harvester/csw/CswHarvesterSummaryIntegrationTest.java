@@ -0,0 +1,21 @@
+package org.fao.geonet.kernel.harvest.harvester.csw;
+
+import org.fao.geonet.utils.MockXmlRequest;
+
+/**
+ * Integration Test for the Csw Harvester class when the remote node does not return full records with GetRecords:
+ * the records are then retrieved one by one with GetRecordById.
+ */
+public class CswHarvesterSummaryIntegrationTest extends CswHarvesterIntegrationTest {
+
+    @Override
+    protected void mockSearchRequests(MockXmlRequest cswServerRequest) {
+        final String queryString = "?request=GetRecordById&service=CSW&version=2.0.2&outputSchema=http://www.isotc211" +
+                         ".org/2005/gmd&elementSetName=full&id=";
+        cswServerRequest.when(REQUEST+queryString+"7e926fbf-00fb-4ff5-a99e-c8576027c4e7")
+                .thenReturn(fileStream("GetRecordById-7e926fbf-00fb-4ff5-a99e-c8576027c4e7.xml"));
+        cswServerRequest.when(REQUEST+queryString+"da165110-88fd-11da-a88f-000d939bc5d8")
+                .thenReturn(fileStream("GetRecordById-da165110-88fd-11da-a88f-000d939bc5d8.xml"));
+        mockGetRecords(cswServerRequest, "summary", "getRecords.xml");
+    }
+}
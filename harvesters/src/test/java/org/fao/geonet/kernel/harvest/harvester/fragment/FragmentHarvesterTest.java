@@ -0,0 +1,154 @@
+package org.fao.geonet.kernel.harvest.harvester.fragment;
+
+import com.google.common.base.Optional;
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.GeonetContext;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.domain.Group;
+import org.fao.geonet.domain.MetadataCategory;
+import org.fao.geonet.kernel.DataManager;
+import org.fao.geonet.kernel.harvest.harvester.Privileges;
+import org.fao.geonet.kernel.setting.SettingInfo;
+import org.fao.geonet.repository.GroupRepository;
+import org.fao.geonet.repository.MetadataCategoryRepository;
+import org.fao.geonet.repository.MetadataRepository;
+import org.fao.geonet.utils.Log;
+import org.jdom.Element;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+
+/**
+ * Test the batches of metadata stored and indexed by {@link FragmentHarvester}.
+ */
+public class FragmentHarvesterTest {
+    private DataManager dataMan;
+    private ServiceContext context;
+    private PlatformTransactionManager transactionManager;
+
+    @Before
+    public void setUp() throws Exception {
+        dataMan = Mockito.mock(DataManager.class);
+        final AtomicInteger ids = new AtomicInteger();
+        Mockito.when(dataMan.insertMetadata(Matchers.any(ServiceContext.class), anyString(), Matchers.any(Element.class),
+                anyString(), anyInt(), anyString(), anyString(), anyString(), anyString(), anyString(), anyString(),
+                anyString(), anyBoolean(), anyBoolean())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                return String.valueOf(ids.incrementAndGet());
+            }
+        });
+
+        GeonetContext gc = Mockito.mock(GeonetContext.class);
+        Mockito.when(gc.getBean(DataManager.class)).thenReturn(dataMan);
+        Map<String, Object> contexts = new HashMap<String, Object>();
+        contexts.put(Geonet.CONTEXT_NAME, gc);
+
+        SettingInfo settingInfo = Mockito.mock(SettingInfo.class);
+        Mockito.when(settingInfo.getSiteUrl()).thenReturn("http://localhost:8080");
+        MetadataCategoryRepository categoryRepository = Mockito.mock(MetadataCategoryRepository.class);
+        Mockito.when(categoryRepository.findAll()).thenReturn(Collections.<MetadataCategory>emptyList());
+        GroupRepository groupRepository = Mockito.mock(GroupRepository.class);
+        Mockito.when(groupRepository.findAll()).thenReturn(Collections.<Group>emptyList());
+
+        ConfigurableApplicationContext applicationContext = Mockito.mock(ConfigurableApplicationContext.class);
+        Mockito.when(applicationContext.getBean(SettingInfo.class)).thenReturn(settingInfo);
+        Mockito.when(applicationContext.getBean(MetadataCategoryRepository.class)).thenReturn(categoryRepository);
+        Mockito.when(applicationContext.getBean(GroupRepository.class)).thenReturn(groupRepository);
+        Mockito.when(applicationContext.getBean(MetadataRepository.class)).thenReturn(Mockito.mock(MetadataRepository.class));
+
+        transactionManager = Mockito.mock(PlatformTransactionManager.class);
+        TransactionStatus transaction = Mockito.mock(TransactionStatus.class);
+        Mockito.when(transaction.isNewTransaction()).thenReturn(true);
+        Mockito.when(transactionManager.getTransaction(Matchers.any(TransactionDefinition.class))).thenReturn(transaction);
+        Mockito.when(applicationContext.getBean(PlatformTransactionManager.class)).thenReturn(transactionManager);
+
+        context = new ServiceContext("harvester", applicationContext, contexts, null);
+        context.setBaseUrl("geonetwork");
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        FragmentHarvester harvester = new FragmentHarvester(Log.createLogger("harvester"), context, params(2));
+
+        FragmentHarvester.HarvestSummary summary = harvester.harvest(records("a", "b", "c"), "http://localhost/wfs");
+        assertEquals(3, summary.fragmentsAdded);
+
+        // each batch is stored in its own transaction, the first one is indexed once it is committed
+        Mockito.verify(transactionManager, Mockito.times(2)).commit(Matchers.any(TransactionStatus.class));
+        Mockito.verify(dataMan, Mockito.times(2)).flush();
+        Mockito.verify(dataMan).indexMetadata(Arrays.asList("1", "2"));
+        Mockito.verify(dataMan, Mockito.times(3)).setHarvestedExt(anyInt(), Matchers.eq("harvester"),
+                Matchers.eq(Optional.of("http://localhost/wfs")));
+
+        // the harvest is over: the last batch is indexed
+        harvester.flush();
+        Mockito.verify(dataMan).indexMetadata(Arrays.asList("3"));
+
+        // nothing left
+        harvester.flush();
+        Mockito.verify(dataMan, Mockito.times(2)).indexMetadata(Matchers.anyListOf(String.class));
+    }
+
+    @Test
+    public void testFailedBatchIsNotIndexed() throws Exception {
+        FragmentHarvester harvester = new FragmentHarvester(Log.createLogger("harvester"), context, params(2));
+        Mockito.doNothing().doThrow(new IllegalStateException("constraint violation")).when(dataMan).flush();
+
+        try {
+            harvester.harvest(records("a", "b", "c"), "http://localhost/wfs");
+            fail("the second batch should fail");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        Mockito.verify(transactionManager).commit(Matchers.any(TransactionStatus.class));
+        Mockito.verify(transactionManager).rollback(Matchers.any(TransactionStatus.class));
+
+        // only the committed batch is indexed
+        harvester.flush();
+        Mockito.verify(dataMan).indexMetadata(Arrays.asList("1", "2"));
+        Mockito.verify(dataMan, Mockito.times(1)).indexMetadata(Matchers.anyListOf(String.class));
+    }
+
+    private static FragmentHarvester.FragmentParams params(int batchSize) {
+        FragmentHarvester.FragmentParams params = new FragmentHarvester.FragmentParams();
+        params.uuid = "harvester";
+        params.owner = "1";
+        params.outputSchema = "iso19139";
+        params.createSubtemplates = true;
+        params.privileges = Collections.<Privileges>emptyList();
+        params.categories = Collections.<String>emptyList();
+        params.batchSize = batchSize;
+        return params;
+    }
+
+    private static Element records(String... uuids) {
+        Element records = new Element("records");
+        for (String uuid : uuids) {
+            Element fragment = new Element("fragment").setAttribute("id", "contactinfo").setAttribute("uuid", uuid)
+                    .setAttribute("title", "Contact " + uuid)
+                    .addContent(new Element("CI_ResponsibleParty", "gmd", "http://www.isotc211.org/2005/gmd"));
+            records.addContent(new Element("record").addContent(fragment));
+        }
+        return records;
+    }
+}
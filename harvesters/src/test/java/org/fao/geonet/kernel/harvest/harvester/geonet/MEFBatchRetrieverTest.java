@@ -0,0 +1,192 @@
+package org.fao.geonet.kernel.harvest.harvester.geonet;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.fao.geonet.kernel.harvest.harvester.HarvesterTestSupport;
+import org.fao.geonet.kernel.harvest.harvester.RecordInfo;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
+import org.fao.geonet.utils.Log;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the retrieval of the MEF files of a batch of records from a stub GeoNetwork node.
+ */
+public class MEFBatchRetrieverTest {
+    private HttpServer httpServer;
+    private GeonetHttpRequestFactory requestFactory;
+    private MEFBatchRetriever retriever;
+
+    /** the uuids of each mef.export request */
+    private final List<List<String>> requests = Collections.synchronizedList(new ArrayList<List<String>>());
+    private final Set<String> removed = Collections.synchronizedSet(new HashSet<String>());
+    private volatile boolean onlyFirstUuid;
+
+    private final List<String> retrieved = new ArrayList<String>();
+    private final MEFBatchRetriever.VisitorFactory factory = new MEFBatchRetriever.VisitorFactory() {
+        @Override
+        public MEFBatchRetriever.RecordVisitor create(Map<String, RecordInfo> records) {
+            return new MEFBatchRetriever.RecordVisitor(records) {
+                @Override
+                protected void handleRecord(RecordInfo ri, Element info, int index) throws Exception {
+                    retrieved.add(ri.uuid);
+                }
+
+                public void handleMetadata(Element md, int index) throws Exception {
+                }
+
+                public void handleMetadataFiles(File[] files, Element info, int index) throws Exception {
+                }
+
+                public void handleFeatureCat(Element md, int index) throws Exception {
+                }
+
+                public void handlePublicFile(String file, String changeDate, InputStream is, int index) throws IOException {
+                }
+
+                public void handlePrivateFile(String file, String changeDate, InputStream is, int index) throws IOException {
+                }
+            };
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        httpServer = HarvesterTestSupport.startHttpServer("/geonetwork/srv/en/mef.export", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                List<String> uuids = new ArrayList<String>();
+                for (String param : exchange.getRequestURI().getRawQuery().split("&")) {
+                    if (param.startsWith("uuid=")) {
+                        uuids.add(URLDecoder.decode(param.substring("uuid=".length()), "UTF-8"));
+                    }
+                }
+                requests.add(uuids);
+
+                List<String> exported = new ArrayList<String>();
+                for (String uuid : onlyFirstUuid ? uuids.subList(0, 1) : uuids) {
+                    if (!removed.contains(uuid)) {
+                        exported.add(uuid);
+                    }
+                }
+                byte[] response = createMEF(exported);
+                exchange.getResponseHeaders().add("Content-Type", "application/zip");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        requestFactory = new GeonetHttpRequestFactory();
+        retriever = new MEFBatchRetriever(Log.createLogger("harvester"),
+                requestFactory.createXmlRequest(new URL(HarvesterTestSupport.getUrl(httpServer, "/geonetwork"))),
+                "/geonetwork", false);
+    }
+
+    @After
+    public void tearDown() {
+        requestFactory.shutdown();
+        httpServer.stop(0);
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        Set<String> unretrievable = retriever.retrieve(batch("a", "b", "c"), factory);
+
+        assertTrue(unretrievable.isEmpty());
+        assertEquals(Arrays.asList("a", "b", "c"), retrieved);
+        assertEquals(1, requests.size());
+        assertFalse(retriever.isSingleRecordMEF());
+    }
+
+    @Test
+    public void testRemovedRecordsDoNotSwitchToSingleRecords() throws Exception {
+        removed.add("b");
+        removed.add("c");
+
+        Set<String> unretrievable = retriever.retrieve(batch("a", "b", "c"), factory);
+
+        // one record returned out of three, but the other ones really are missing
+        assertEquals(new HashSet<String>(Arrays.asList("b", "c")), unretrievable);
+        assertEquals(Arrays.asList("a"), retrieved);
+        assertEquals(3, requests.size());
+        assertFalse(retriever.isSingleRecordMEF());
+
+        removed.clear();
+        retriever.retrieve(batch("d", "e"), factory);
+        assertEquals(4, requests.size());
+        assertEquals(Arrays.asList("d", "e"), requests.get(3));
+    }
+
+    @Test
+    public void testNodeIgnoringExtraUuids() throws Exception {
+        onlyFirstUuid = true;
+
+        Set<String> unretrievable = retriever.retrieve(batch("a", "b", "c"), factory);
+
+        assertTrue(unretrievable.isEmpty());
+        assertEquals(Arrays.asList("a", "b", "c"), retrieved);
+        // the batch, then the missing records one by one
+        assertEquals(3, requests.size());
+        assertEquals(Arrays.asList("b"), requests.get(1));
+        assertTrue(retriever.isSingleRecordMEF());
+
+        // the next batches are directly retrieved one by one
+        retriever.retrieve(batch("d", "e"), factory);
+        assertEquals(5, requests.size());
+        assertEquals(Arrays.asList("d"), requests.get(3));
+        assertEquals(Arrays.asList("e"), requests.get(4));
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), retrieved);
+    }
+
+    private static Map<String, RecordInfo> batch(String... uuids) {
+        Map<String, RecordInfo> batch = new LinkedHashMap<String, RecordInfo>();
+        for (String uuid : uuids) {
+            batch.put(uuid, new RecordInfo(uuid, "2014-01-01T00:00:00"));
+        }
+        return batch;
+    }
+
+    private static byte[] createMEF(List<String> uuids) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(out);
+        for (String uuid : uuids) {
+            zip.putNextEntry(new ZipEntry(uuid + "/metadata/metadata.xml"));
+            zip.write(Xml.getString(new Element("metadata").setText(uuid)).getBytes("UTF-8"));
+            zip.closeEntry();
+
+            Element info = new Element("info").addContent(new Element("general").addContent(new Element("uuid").setText(uuid)))
+                    .addContent(new Element("public")).addContent(new Element("private"));
+            zip.putNextEntry(new ZipEntry(uuid + "/info.xml"));
+            zip.write(Xml.getString(info).getBytes("UTF-8"));
+            zip.closeEntry();
+        }
+        zip.close();
+        return out.toByteArray();
+    }
+}
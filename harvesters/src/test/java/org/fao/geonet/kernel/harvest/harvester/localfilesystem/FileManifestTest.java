@@ -0,0 +1,61 @@
+package org.fao.geonet.kernel.harvest.harvester.localfilesystem;
+
+import org.fao.geonet.domain.HarvesterData;
+import org.fao.geonet.kernel.harvest.harvester.HarvesterTestSupport;
+import org.fao.geonet.repository.HarvesterDataRepository;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test {@link FileManifest}.
+ */
+public class FileManifestTest {
+    private static final String HARVESTER_UUID = "harvester";
+    private static final File ROOT = new File("/harvested");
+    private static final File FILE_1 = new File(ROOT, "a/md1.xml");
+    private static final File FILE_2 = new File(ROOT, "md2.xml");
+
+    @Test
+    public void testSaveAndLoad() {
+        HarvesterDataRepository repository = HarvesterTestSupport.createHarvesterDataRepository(HARVESTER_UUID);
+
+        FileManifest manifest = new FileManifest(repository, HARVESTER_UUID, ROOT, "signature");
+        manifest.load();
+        assertNull(manifest.get(FILE_1));
+
+        manifest.put(FILE_1, new FileManifest.Entry(10, 1000, "hash1", "1"));
+        manifest.put(FILE_2, new FileManifest.Entry(20, 2000, "hash2", "2"));
+        manifest.save(Arrays.asList(FILE_1, FILE_2));
+        // the two files and the signature
+        assertEquals(3, repository.findAllById_HarvesterUuid(HARVESTER_UUID).size());
+
+        // next harvest: md2.xml was deleted
+        manifest = new FileManifest(repository, HARVESTER_UUID, ROOT, "signature");
+        manifest.load();
+
+        FileManifest.Entry entry = manifest.get(FILE_1);
+        assertNotNull(entry);
+        assertEquals(10, entry.size);
+        assertEquals(1000, entry.lastModified);
+        assertEquals("hash1", entry.hash);
+        assertEquals("1", entry.metadataId);
+
+        manifest.save(Arrays.asList(FILE_1));
+        assertEquals(2, repository.findAllById_HarvesterUuid(HARVESTER_UUID).size());
+        for (HarvesterData data : repository.findAllById_HarvesterUuid(HARVESTER_UUID)) {
+            assertFalse(data.getId().getKey().endsWith("md2.xml"));
+        }
+
+        // the parameters of the harvester changed
+        manifest = new FileManifest(repository, HARVESTER_UUID, ROOT, "other signature");
+        manifest.load();
+        assertNull(manifest.get(FILE_1));
+    }
+}
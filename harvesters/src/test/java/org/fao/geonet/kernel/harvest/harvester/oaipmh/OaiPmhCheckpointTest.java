@@ -0,0 +1,75 @@
+package org.fao.geonet.kernel.harvest.harvester.oaipmh;
+
+import org.fao.geonet.domain.ISODate;
+import org.fao.geonet.kernel.harvest.harvester.HarvesterDataStore;
+import org.fao.geonet.kernel.harvest.harvester.HarvesterTestSupport;
+import org.fao.geonet.repository.HarvesterDataRepository;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test {@link OaiPmhCheckpoint}.
+ */
+public class OaiPmhCheckpointTest {
+    private static final String HARVESTER_UUID = "harvester";
+
+    @Test
+    public void testResumeAndComplete() {
+        HarvesterDataRepository repository = HarvesterTestSupport.createHarvesterDataRepository(HARVESTER_UUID);
+
+        OaiPmhCheckpoint checkpoint = new OaiPmhCheckpoint(repository, HARVESTER_UUID, "signature");
+        checkpoint.load();
+        assertNull(checkpoint.getPosition(0));
+        assertNull(checkpoint.getHighWaterMark(0));
+
+        ISODate started = new ISODate("2014-01-02T10:00:00");
+        checkpoint.savePosition(0, new OaiPmhCheckpoint.Position("ListRecords", started, "token|2"));
+
+        // the harvest stopped: the next one resumes the search
+        checkpoint = new OaiPmhCheckpoint(repository, HARVESTER_UUID, "signature");
+        checkpoint.load();
+        OaiPmhCheckpoint.Position position = checkpoint.getPosition(0);
+        assertEquals("ListRecords", position.verb);
+        assertEquals("token|2", position.token);
+        assertEquals(started, position.started);
+
+        checkpoint.complete(0, position.started);
+        assertNull(checkpoint.getPosition(0));
+        assertEquals(started, checkpoint.getHighWaterMark(0));
+
+        // the searches changed
+        checkpoint = new OaiPmhCheckpoint(repository, HARVESTER_UUID, "other signature");
+        checkpoint.load();
+        assertNull(checkpoint.getHighWaterMark(0));
+        assertEquals(1, repository.findAllById_HarvesterUuid(HARVESTER_UUID).size());
+    }
+
+    @Test
+    public void testLongResumptionToken() {
+        HarvesterDataRepository repository = HarvesterTestSupport.createHarvesterDataRepository(HARVESTER_UUID);
+        OaiPmhCheckpoint checkpoint = new OaiPmhCheckpoint(repository, HARVESTER_UUID, "signature");
+        checkpoint.load();
+
+        StringBuilder token = new StringBuilder();
+        while (token.length() < 3 * HarvesterDataStore.MAX_LENGTH) {
+            token.append("token|").append(token.length());
+        }
+        ISODate started = new ISODate("2014-01-02T10:00:00");
+        checkpoint.savePosition(0, new OaiPmhCheckpoint.Position("ListRecords", started, token.toString()));
+
+        checkpoint = new OaiPmhCheckpoint(repository, HARVESTER_UUID, "signature");
+        checkpoint.load();
+        assertEquals(token.toString(), checkpoint.getPosition(0).token);
+
+        // a shorter token replaces all the parts of the long one
+        checkpoint.savePosition(0, new OaiPmhCheckpoint.Position("ListRecords", started, "token|2"));
+        assertEquals("token|2", checkpoint.getPosition(0).token);
+        assertEquals(2, repository.findAllById_HarvesterUuid(HARVESTER_UUID).size());
+
+        checkpoint.clearPosition(0);
+        assertNull(checkpoint.getPosition(0));
+        assertEquals(1, repository.findAllById_HarvesterUuid(HARVESTER_UUID).size());
+    }
+}
@@ -0,0 +1,248 @@
+package org.fao.geonet.kernel.harvest.harvester.oaipmh;
+
+import com.google.common.base.Predicate;
+import jeeves.server.context.ServiceContext;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.fao.geonet.kernel.harvest.AbstractHarvesterIntegrationTest;
+import org.fao.geonet.kernel.harvest.MockRequestFactoryGeonet;
+import org.fao.geonet.kernel.harvest.harvester.AbstractHarvester;
+import org.fao.geonet.utils.MockXmlRequest;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Integration Test for the OAI-PMH Harvester class: a search listed in two pages, resumed when interrupted and
+ * requested incrementally.
+ */
+public class OaiPmhHarvesterIntegrationTest extends AbstractHarvesterIntegrationTest {
+    private static final String HOST = "localhost";
+    private static final int PORT = 8080;
+    private static final String PROTOCOL = "http";
+    public static final String URL = PROTOCOL + "://" + HOST + ":" + PORT + "/oai";
+    private static final String RESPONSE_DATE = "2014-03-01T10:00:00Z";
+    private static final Namespace OAI_PMH_NS = Namespace.getNamespace("http://www.openarchives.org/OAI/2.0/");
+    private static final Namespace OAI_DC_NS = Namespace.getNamespace("oai_dc", "http://www.openarchives.org/OAI/2.0/oai_dc/");
+    private static final Namespace DC_NS = Namespace.getNamespace("dc", "http://purl.org/dc/elements/1.1/");
+    private static final Namespace XSI_NS = Namespace.getNamespace("xsi", "http://www.w3.org/2001/XMLSchema-instance");
+
+    /** the query of each request sent to the node */
+    private final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+    private volatile boolean failSecondPage;
+    private volatile boolean failRecordB;
+
+    public OaiPmhHarvesterIntegrationTest() {
+        super("oaipmh");
+    }
+
+    protected void mockHttpRequests(MockRequestFactoryGeonet bean) {
+        final MockXmlRequest oaiRequest = new MockXmlRequest(HOST, PORT, PROTOCOL);
+        mockListRecords(oaiRequest);
+
+        bean.registerRequest(true, null, 80, PROTOCOL, oaiRequest);
+    }
+
+    /**
+     * The records a and b are listed in two pages.
+     */
+    private void mockListRecords(MockXmlRequest oaiRequest) {
+        oaiRequest.when(query("verb=ListRecords", "resumptionToken=page2")).thenReturn(new Callable<ClientHttpResponse>() {
+            @Override
+            public ClientHttpResponse call() throws Exception {
+                if (failSecondPage) {
+                    throw new IOException("Connection reset");
+                }
+                return response(new Element("ListRecords", OAI_PMH_NS).addContent(record("b"))).call();
+            }
+        });
+        oaiRequest.when(query("verb=ListRecords", "from=")).thenReturn(
+                response(new Element("error", OAI_PMH_NS).setAttribute("code", "noRecordsMatch").setText("No records changed")));
+        oaiRequest.when(query("verb=ListRecords")).thenReturn(
+                response(new Element("ListRecords", OAI_PMH_NS).addContent(record("a"))
+                        .addContent(new Element("resumptionToken", OAI_PMH_NS).setText("page2"))));
+    }
+
+    protected void customizeParams(Element params) {
+        params.getChild("site").addContent(new Element("url").setText(URL));
+        params.getChild("options").addContent(new Element("incremental").setText("true"));
+        params.addContent(new Element("searches").addContent(new Element("search")
+                .addContent(new Element("prefix").setText("oai_dc"))));
+    }
+
+    @Override
+    protected int getExpectedAdded() {
+        return 2;
+    }
+
+    @Override
+    protected int getExpectedTotalFound() {
+        return 2;
+    }
+
+    @Test
+    public void testInterruptedSearchIsResumed() throws Exception {
+        final MockXmlRequest oaiRequest = new MockXmlRequest(HOST, PORT, PROTOCOL);
+        mockListRecords(oaiRequest);
+        _requestFactory.registerRequest(true, null, 80, PROTOCOL, oaiRequest);
+        AbstractHarvester harvester = createHarvester();
+
+        // the second page cannot be retrieved: the first one is stored
+        failSecondPage = true;
+        harvester.invoke();
+        assertEqualsText("1", harvester.getResult(), "added");
+
+        // the search is resumed with the token of the second page
+        failSecondPage = false;
+        queries.clear();
+        harvester.invoke();
+        assertEqualsText("1", harvester.getResult(), "added");
+        assertEquals(1, queries.size());
+        assertTrue(queries.get(0), queries.get(0).contains("resumptionToken=page2"));
+
+        // the search completed: only the records changed since it started are requested
+        queries.clear();
+        harvester.invoke();
+        assertEqualsText("0", harvester.getResult(), "added");
+        assertEquals(1, queries.size());
+        assertTrue(queries.get(0), queries.get(0).contains("from=" + RESPONSE_DATE.substring(0, 10)));
+    }
+
+    @Test
+    public void testSearchIsRestartedWhenItCannotBeResumed() throws Exception {
+        final MockXmlRequest oaiRequest = new MockXmlRequest(HOST, PORT, PROTOCOL);
+        mockListRecords(oaiRequest);
+        _requestFactory.registerRequest(true, null, 80, PROTOCOL, oaiRequest);
+        AbstractHarvester harvester = createHarvester();
+
+        failSecondPage = true;
+        harvester.invoke();
+        assertEqualsText("1", harvester.getResult(), "added");
+
+        // resuming with the token of the second page fails again: the search is restarted from the first page
+        queries.clear();
+        harvester.invoke();
+        assertTrue(queries.size() >= 2);
+        assertTrue(queries.get(0), queries.get(0).contains("resumptionToken=page2"));
+        assertFalse(queries.get(1), queries.get(1).contains("resumptionToken="));
+    }
+
+    @Test
+    public void testHighWaterMarkNotAdvancedOnErrors() throws Exception {
+        final MockXmlRequest oaiRequest = new MockXmlRequest(HOST, PORT, PROTOCOL);
+        // ListRecords is not supported: the records are listed with ListIdentifiers and retrieved one by one
+        oaiRequest.when(query("verb=ListRecords")).thenReturn(new Callable<ClientHttpResponse>() {
+            @Override
+            public ClientHttpResponse call() throws Exception {
+                throw new IOException("ListRecords not supported");
+            }
+        });
+        oaiRequest.when(query("verb=ListIdentifiers")).thenReturn(
+                response(new Element("ListIdentifiers", OAI_PMH_NS).addContent(header("a")).addContent(header("b"))));
+        oaiRequest.when(query("verb=GetRecord", "identifier=a")).thenReturn(
+                response(new Element("GetRecord", OAI_PMH_NS).addContent(record("a"))));
+        oaiRequest.when(query("verb=GetRecord", "identifier=b")).thenReturn(new Callable<ClientHttpResponse>() {
+            @Override
+            public ClientHttpResponse call() throws Exception {
+                if (failRecordB) {
+                    throw new IOException("Connection reset");
+                }
+                return response(new Element("GetRecord", OAI_PMH_NS).addContent(record("b"))).call();
+            }
+        });
+        _requestFactory.registerRequest(true, null, 80, PROTOCOL, oaiRequest);
+        AbstractHarvester harvester = createHarvester();
+
+        failRecordB = true;
+        harvester.invoke();
+        assertEqualsText("1", harvester.getResult(), "added");
+        assertEqualsText("1", harvester.getResult(), "unretrievable");
+
+        // the record which could not be retrieved is listed again
+        failRecordB = false;
+        queries.clear();
+        harvester.invoke();
+        assertEqualsText("1", harvester.getResult(), "added");
+        for (String query : queries) {
+            assertFalse(query, query.contains("from="));
+        }
+    }
+
+    private AbstractHarvester createHarvester() throws Exception {
+        final ServiceContext context = createServiceContext();
+        loginAsAdmin(context);
+
+        Element params = createHarvesterParams("oaipmh");
+        customizeParams(params);
+        final String harvesterUuid = _harvestManager.addHarvesterReturnUUID(params);
+        AbstractHarvester harvester = _harvestManager.getHarvester(harvesterUuid);
+        harvester.init(params, context);
+        return harvester;
+    }
+
+    /**
+     * Match the GET requests whose query contains all the parts and record their query.
+     */
+    private Predicate<HttpRequestBase> query(final String... parts) {
+        return new Predicate<HttpRequestBase>() {
+            @Override
+            public boolean apply(@Nullable HttpRequestBase input) {
+                if (input == null || input.getURI().getQuery() == null) {
+                    return false;
+                }
+                final String query = input.getURI().getQuery();
+                for (String part : parts) {
+                    if (!query.contains(part)) {
+                        return false;
+                    }
+                }
+                queries.add(query);
+                return true;
+            }
+        };
+    }
+
+    private static Callable<ClientHttpResponse> response(Element verb) {
+        final Element response = new Element("OAI-PMH", OAI_PMH_NS)
+                .setAttribute("schemaLocation", "http://www.openarchives.org/OAI/2.0/ http://www.openarchives.org/OAI/2.0/OAI-PMH.xsd", XSI_NS)
+                .addContent(new Element("responseDate", OAI_PMH_NS).setText(RESPONSE_DATE))
+                .addContent(new Element("request", OAI_PMH_NS).setText(URL))
+                .addContent(verb);
+        return new Callable<ClientHttpResponse>() {
+            @Override
+            public ClientHttpResponse call() throws Exception {
+                return new MockClientHttpResponse(Xml.getString(response).getBytes("UTF-8"), HttpStatus.OK);
+            }
+        };
+    }
+
+    private static Element header(String id) {
+        return new Element("header", OAI_PMH_NS)
+                .addContent(new Element("identifier", OAI_PMH_NS).setText("oai:test:" + id))
+                .addContent(new Element("datestamp", OAI_PMH_NS).setText("2014-01-01T00:00:00Z"));
+    }
+
+    private static Element record(String id) {
+        Element dc = new Element("dc", OAI_DC_NS)
+                .setAttribute("schemaLocation", "http://www.openarchives.org/OAI/2.0/oai_dc/ http://www.openarchives.org/OAI/2.0/oai_dc.xsd", XSI_NS)
+                .addContent(new Element("title", DC_NS).setText("Record " + id))
+                .addContent(new Element("identifier", DC_NS).setText("oai:test:" + id));
+        return new Element("record", OAI_PMH_NS)
+                .addContent(header(id))
+                .addContent(new Element("metadata", OAI_PMH_NS).addContent(dc));
+    }
+}
@@ -0,0 +1,132 @@
+package org.fao.geonet.kernel.harvest.harvester.ogcwxs;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.fao.geonet.kernel.harvest.harvester.HarvesterTestSupport;
+import org.fao.geonet.repository.HarvesterDataRepository;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
+import org.jdom.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test {@link CapabilitiesFetcher} with a WMS stub.
+ */
+public class CapabilitiesFetcherTest {
+    private static final String HARVESTER_UUID = "harvester";
+
+    private HttpServer httpServer;
+    private String url;
+    private GeonetHttpRequestFactory requestFactory;
+    private HarvesterDataRepository repository;
+
+    private volatile String capabilities = "<WMT_MS_Capabilities version=\"1.1.1\"><Capability/></WMT_MS_Capabilities>";
+    private volatile String etag;
+    private volatile int requests;
+    private volatile int notModified;
+
+    @Before
+    public void setUp() throws Exception {
+        httpServer = HarvesterTestSupport.startHttpServer("/wms", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests++;
+                if (etag != null) {
+                    exchange.getResponseHeaders().add("ETag", etag);
+                    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        notModified++;
+                        exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+                        exchange.close();
+                        return;
+                    }
+                }
+                byte[] response = capabilities.getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "application/vnd.ogc.wms_xml");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        url = HarvesterTestSupport.getUrl(httpServer, "/wms?SERVICE=WMS&REQUEST=GetCapabilities");
+        requestFactory = new GeonetHttpRequestFactory();
+        repository = HarvesterTestSupport.createHarvesterDataRepository(HARVESTER_UUID);
+    }
+
+    @After
+    public void tearDown() {
+        requestFactory.shutdown();
+        httpServer.stop(0);
+    }
+
+    @Test
+    public void testConditionalRequest() throws Exception {
+        etag = "\"1\"";
+
+        CapabilitiesFetcher fetcher = newFetcher("signature");
+        assertNotNull(fetcher.fetch(url, HarvesterTestSupport.NO_CONFIGURATION));
+        fetcher.commit();
+
+        // the service answers 304
+        fetcher = newFetcher("signature");
+        assertNull(fetcher.fetch(url, HarvesterTestSupport.NO_CONFIGURATION));
+        assertEquals(1, notModified);
+
+        // the service changed
+        etag = "\"2\"";
+        capabilities = "<WMT_MS_Capabilities version=\"1.1.1\"><Capability><Layer/></Capability></WMT_MS_Capabilities>";
+        fetcher = newFetcher("signature");
+        Element document = fetcher.fetch(url, HarvesterTestSupport.NO_CONFIGURATION);
+        assertNotNull(document);
+        assertEquals(1, document.getChild("Capability").getChildren().size());
+    }
+
+    @Test
+    public void testServiceWithoutValidators() throws Exception {
+        CapabilitiesFetcher fetcher = newFetcher("signature");
+        assertNotNull(fetcher.fetch(url, HarvesterTestSupport.NO_CONFIGURATION));
+        fetcher.commit();
+
+        // same document
+        fetcher = newFetcher("signature");
+        assertNull(fetcher.fetch(url, HarvesterTestSupport.NO_CONFIGURATION));
+        assertEquals(2, requests);
+
+        // the parameters of the harvester changed
+        fetcher = newFetcher("other signature");
+        assertNotNull(fetcher.fetch(url, HarvesterTestSupport.NO_CONFIGURATION));
+    }
+
+    @Test
+    public void testFailedHarvestIsNotSkipped() throws Exception {
+        etag = "\"1\"";
+
+        CapabilitiesFetcher fetcher = newFetcher("signature");
+        assertNotNull(fetcher.fetch(url, HarvesterTestSupport.NO_CONFIGURATION));
+        fetcher.commit();
+
+        // the next harvest starts then fails before commit
+        fetcher = newFetcher("signature");
+        fetcher.invalidate();
+        assertNotNull(fetcher.fetch(url, HarvesterTestSupport.NO_CONFIGURATION));
+        fetcher.invalidate();
+
+        fetcher = newFetcher("signature");
+        assertNotNull(fetcher.fetch(url, HarvesterTestSupport.NO_CONFIGURATION));
+        assertEquals(0, notModified);
+    }
+
+    private CapabilitiesFetcher newFetcher(String signature) {
+        CapabilitiesFetcher fetcher = new CapabilitiesFetcher(requestFactory, repository, HARVESTER_UUID, signature);
+        fetcher.load();
+        return fetcher;
+    }
+}
@@ -0,0 +1,62 @@
+package org.fao.geonet.kernel.harvest.harvester.ogcwxs;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test {@link HostRequestLimiter}.
+ */
+public class HostRequestLimiterTest {
+
+    @Test
+    public void testNoLimit() throws Exception {
+        HostRequestLimiter limiter = new HostRequestLimiter(0);
+        assertNull(limiter.acquire("http://localhost/wms"));
+        limiter.release(null);
+    }
+
+    @Test
+    public void testInvalidUrlIsNotLimited() throws Exception {
+        HostRequestLimiter limiter = new HostRequestLimiter(1);
+        assertNull(limiter.acquire("not an url"));
+        assertNull(limiter.acquire("not an url"));
+    }
+
+    @Test
+    public void testRequestsPerHost() throws Exception {
+        final HostRequestLimiter limiter = new HostRequestLimiter(2);
+        assertEquals("example.org", limiter.acquire("http://example.org/wms"));
+        assertEquals("example.org", limiter.acquire("http://EXAMPLE.org/md.xml"));
+
+        // the other hosts are not limited by the requests to example.org
+        String other = limiter.acquire("http://localhost/wms");
+        limiter.release(other);
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    limiter.release(limiter.acquire("http://example.org/wms"));
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    // the test fails on the latch
+                }
+            }
+        });
+        thread.start();
+
+        // the third request to the host waits for one of the first two
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        limiter.release("example.org");
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        thread.join();
+    }
+}
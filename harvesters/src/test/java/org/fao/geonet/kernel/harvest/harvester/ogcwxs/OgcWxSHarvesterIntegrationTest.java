@@ -0,0 +1,75 @@
+package org.fao.geonet.kernel.harvest.harvester.ogcwxs;
+
+import org.apache.commons.io.IOUtils;
+import org.fao.geonet.kernel.harvest.AbstractHarvesterIntegrationTest;
+import org.fao.geonet.kernel.harvest.MockCloseableHttpResponse;
+import org.fao.geonet.kernel.harvest.MockRequestFactoryGeonet;
+import org.fao.geonet.kernel.harvest.harvester.AbstractHarvester;
+import org.fao.geonet.repository.MetadataRepository;
+import org.fao.geonet.repository.specification.MetadataSpecs;
+import org.jdom.Element;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.net.URI;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Integration Test for the OGC WxS Harvester class: the layers of a WMS stub are processed by the layer pipeline.
+ */
+public class OgcWxSHarvesterIntegrationTest extends AbstractHarvesterIntegrationTest {
+    public static final String URL = "http://localhost:8080/wms";
+    public static final String CAPABILITIES_URL = URL + "?SERVICE=WMS&VERSION=1.1.1&REQUEST=GetCapabilities";
+
+    @Autowired
+    private MetadataRepository _metadataRepository;
+
+    public OgcWxSHarvesterIntegrationTest() {
+        super("ogcwxs");
+    }
+
+    protected void mockHttpRequests(MockRequestFactoryGeonet bean) throws Exception {
+        final byte[] capabilities = IOUtils.toByteArray(fileStream("wms-capabilities.xml"));
+        bean.registerRequest(true, new URI(CAPABILITIES_URL), new MockCloseableHttpResponse(200, "OK", capabilities));
+    }
+
+    protected void customizeParams(Element params) {
+        params.getChild("site")
+                .addContent(new Element("url").setText(URL))
+                .addContent(new Element("ogctype").setText("WMS1.1.1"));
+        params.getChild("options")
+                .addContent(new Element("outputSchema").setText("iso19139"))
+                .addContent(new Element("lang").setText("eng"))
+                .addContent(new Element("useLayer").setText("true"))
+                .addContent(new Element("createThumbnails").setText("false"))
+                .addContent(new Element("fetchThreads").setText("2"))
+                .addContent(new Element("transformThreads").setText("2"));
+    }
+
+    /**
+     * The service record.
+     */
+    @Override
+    protected int getExpectedAdded() {
+        return 1;
+    }
+
+    /**
+     * The service and the two layers: the layer listed twice is stored once.
+     */
+    @Override
+    protected int getExpectedTotalFound() {
+        return 3;
+    }
+
+    @Override
+    protected void performExtraAssertions(AbstractHarvester harvester) {
+        assertEquals(3, _metadataRepository.count(MetadataSpecs.isHarvested(true)));
+
+        // the GetCapabilities document did not change: the metadata are kept
+        harvester.invoke();
+        assertEquals("0", harvester.getResult().getChildText("added"));
+        assertEquals("3", harvester.getResult().getChildText("unchanged"));
+        assertEquals(3, _metadataRepository.count(MetadataSpecs.isHarvested(true)));
+    }
+}
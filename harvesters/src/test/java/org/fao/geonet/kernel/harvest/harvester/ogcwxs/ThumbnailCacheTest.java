@@ -0,0 +1,67 @@
+package org.fao.geonet.kernel.harvest.harvester.ogcwxs;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test {@link ThumbnailCache}.
+ */
+public class ThumbnailCacheTest {
+    private static final String LAYER_1 = "http://localhost/wms?REQUEST=GetMap&LAYERS=roads&BBOX=0,0,10,10";
+    private static final String LAYER_2 = "http://localhost/wms?REQUEST=GetMap&LAYERS=rivers&BBOX=0,0,10,10";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        File directory = new File(folder.getRoot(), "thumbnails");
+        ThumbnailCache cache = new ThumbnailCache(directory);
+        assertNull(cache.get(LAYER_1));
+
+        File image = cache.put(LAYER_1, new ByteArrayInputStream(new byte[] {1, 2, 3}));
+        assertTrue(image.isFile());
+        assertEquals(image, cache.get(LAYER_1));
+        assertEquals(3, FileUtils.readFileToByteArray(image).length);
+
+        // an image downloaded again replaces the cached one
+        image = cache.put(LAYER_1, new ByteArrayInputStream(new byte[] {4, 5}));
+        assertEquals(2, FileUtils.readFileToByteArray(image).length);
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void testPurgeRemovesUnusedImages() throws Exception {
+        File directory = folder.newFolder("thumbnails");
+        ThumbnailCache cache = new ThumbnailCache(directory);
+        File image1 = cache.put(LAYER_1, new ByteArrayInputStream(new byte[] {1}));
+        File image2 = cache.put(LAYER_2, new ByteArrayInputStream(new byte[] {2}));
+        cache.purge();
+        assertTrue(image1.isFile());
+        assertTrue(image2.isFile());
+
+        // the next harvest only uses the first layer: the bounding box of the second one changed
+        cache = new ThumbnailCache(directory);
+        assertNotNull(cache.get(LAYER_1));
+        cache.purge();
+        assertTrue(image1.isFile());
+        assertFalse(image2.exists());
+    }
+
+    @Test
+    public void testPurgeWithoutDirectory() {
+        // no image was ever downloaded for the harvester
+        new ThumbnailCache(new File(folder.getRoot(), "missing")).purge();
+    }
+}
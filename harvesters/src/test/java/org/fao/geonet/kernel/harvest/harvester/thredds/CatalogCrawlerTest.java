@@ -0,0 +1,163 @@
+package org.fao.geonet.kernel.harvest.harvester.thredds;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.fao.geonet.kernel.harvest.harvester.HarvesterTestSupport;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
+import org.fao.geonet.utils.Log;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test {@link CatalogCrawler} with THREDDS catalogs served by a local server.
+ */
+public class CatalogCrawlerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer httpServer;
+    private String baseUrl;
+    private GeonetHttpRequestFactory requestFactory;
+    private CatalogCache cache;
+
+    private final ConcurrentMap<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        httpServer = HarvesterTestSupport.startHttpServer("/thredds/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                requests.putIfAbsent(name, new AtomicInteger());
+                requests.get(name).incrementAndGet();
+
+                InputStream in = CatalogCrawlerTest.class.getResourceAsStream(name);
+                if (in == null) {
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_FOUND, -1);
+                    exchange.close();
+                    return;
+                }
+                try {
+                    String etag = "\"" + name + "\"";
+                    exchange.getResponseHeaders().add("ETag", etag);
+                    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        notModified.incrementAndGet();
+                        exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+                        return;
+                    }
+                    byte[] response = IOUtils.toByteArray(in);
+                    exchange.getResponseHeaders().add("Content-Type", "application/xml");
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+                    exchange.getResponseBody().write(response);
+                } finally {
+                    IOUtils.closeQuietly(in);
+                    exchange.close();
+                }
+            }
+        });
+        baseUrl = HarvesterTestSupport.getUrl(httpServer, "/thredds/");
+        requestFactory = new GeonetHttpRequestFactory();
+        cache = new CatalogCache(folder.newFolder("catalogs"));
+        cache.load();
+    }
+
+    @After
+    public void tearDown() {
+        requestFactory.shutdown();
+        httpServer.stop(0);
+    }
+
+    @Test
+    public void testCrawlReferencedCatalogs() throws Exception {
+        CatalogCrawler crawler = newCrawler(CatalogCrawler.DEFAULT_MAX_FRONTIER);
+        List<String> crawled = crawl(crawler, "catalog.xml");
+
+        assertEquals(3, crawled.size());
+        assertTrue(crawled.contains(baseUrl + "sub1.xml"));
+        assertTrue(crawled.contains(baseUrl + "sub2.xml"));
+        assertTrue(crawler.isComplete());
+
+        // the catalogs referenced several times, or referencing the root catalog, are only crawled once
+        assertEquals(1, requests.get("catalog.xml").get());
+        assertEquals(1, requests.get("sub1.xml").get());
+        assertEquals(1, requests.get("sub2.xml").get());
+    }
+
+    @Test
+    public void testUnchangedCatalogs() throws Exception {
+        crawl(newCrawler(CatalogCrawler.DEFAULT_MAX_FRONTIER), "catalog.xml");
+
+        // the harvest failed: the catalogs are retrieved again
+        cache.load();
+        crawl(newCrawler(CatalogCrawler.DEFAULT_MAX_FRONTIER), "catalog.xml");
+        assertEquals(0, notModified.get());
+        cache.commit(true);
+
+        cache.load();
+        CatalogCrawler crawler = newCrawler(CatalogCrawler.DEFAULT_MAX_FRONTIER);
+        CatalogCrawler.CrawledCatalog root = crawler.start(baseUrl + "catalog.xml");
+        assertTrue(root.unchanged);
+        assertEquals("Test catalog", root.catalog.getName());
+        CatalogCrawler.CrawledCatalog catalog;
+        while ((catalog = crawler.next()) != null) {
+            assertTrue(catalog.unchanged);
+        }
+        assertEquals(3, notModified.get());
+    }
+
+    @Test
+    public void testIncompleteCrawl() throws Exception {
+        // the frontier is full
+        CatalogCrawler crawler = newCrawler(1);
+        List<String> crawled = crawl(crawler, "catalog.xml");
+        assertFalse(crawler.isComplete());
+        assertTrue(crawled.contains(baseUrl + "sub1.xml"));
+
+        // a referenced catalog cannot be retrieved
+        crawler = newCrawler(CatalogCrawler.DEFAULT_MAX_FRONTIER);
+        crawled = crawl(crawler, "broken.xml");
+        assertEquals(2, crawled.size());
+        assertFalse(crawler.isComplete());
+    }
+
+    private CatalogCrawler newCrawler(int maxFrontier) {
+        return new CatalogCrawler(requestFactory, HarvesterTestSupport.NO_CONFIGURATION, cache, Log.createLogger("Test"), 2, maxFrontier);
+    }
+
+    private List<String> crawl(CatalogCrawler crawler, String root) throws Exception {
+        List<String> crawled = Collections.synchronizedList(new ArrayList<String>());
+        try {
+            crawled.add(crawler.start(baseUrl + root).url);
+            CatalogCrawler.CrawledCatalog catalog;
+            while ((catalog = crawler.next()) != null) {
+                crawled.add(catalog.url);
+            }
+            assertNull(crawler.next());
+        } finally {
+            crawler.shutdown();
+        }
+        return crawled;
+    }
+}
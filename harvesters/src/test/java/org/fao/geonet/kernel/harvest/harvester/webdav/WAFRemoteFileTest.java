@@ -0,0 +1,129 @@
+package org.fao.geonet.kernel.harvest.harvester.webdav;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.fao.geonet.kernel.harvest.harvester.HarvesterTestSupport;
+import org.fao.geonet.repository.HarvesterDataRepository;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
+import org.jdom.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the conditional retrieval of {@link WAFRemoteFile} with the validators stored by {@link ResourceValidators}.
+ */
+public class WAFRemoteFileTest {
+    private static final String HARVESTER_UUID = "harvester";
+    private static final String SIGNATURE = "signature";
+
+    private HttpServer httpServer;
+    private String url;
+    private GeonetHttpRequestFactory requestFactory;
+
+    private volatile String metadata = "<metadata><title>first</title></metadata>";
+    private volatile String etag = "\"1\"";
+    private volatile int notModified;
+
+    @Before
+    public void setUp() throws Exception {
+        httpServer = HarvesterTestSupport.startHttpServer("/waf/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("ETag", etag);
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified++;
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] response = metadata.getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "application/xml");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        url = HarvesterTestSupport.getUrl(httpServer, "/waf/metadata.xml");
+        requestFactory = new GeonetHttpRequestFactory();
+    }
+
+    @After
+    public void tearDown() {
+        requestFactory.shutdown();
+        httpServer.stop(0);
+    }
+
+    @Test
+    public void testConditionalRequest() throws Exception {
+        HarvesterDataRepository repository = HarvesterTestSupport.createHarvesterDataRepository(HARVESTER_UUID);
+
+        ResourceValidators validators = new ResourceValidators(repository, HARVESTER_UUID, SIGNATURE);
+        validators.load();
+        WAFRemoteFile file = new WAFRemoteFile(url, requestFactory, HarvesterTestSupport.NO_CONFIGURATION);
+        Element md = file.getMetadata(null, validators.get(url));
+        assertEquals("first", md.getChildText("title"));
+        validators.put(url, file.getValidators());
+
+        // the next harvest: the file did not change
+        validators = new ResourceValidators(repository, HARVESTER_UUID, SIGNATURE);
+        validators.load();
+        assertEquals("\"1\"", validators.get(url).etag);
+        file = new WAFRemoteFile(url, requestFactory, HarvesterTestSupport.NO_CONFIGURATION);
+        assertNull(file.getMetadata(null, validators.get(url)));
+        assertEquals(1, notModified);
+
+        // the file changed
+        etag = "\"2\"";
+        metadata = "<metadata><title>second</title></metadata>";
+        md = file.getMetadata(null, validators.get(url));
+        assertNotNull(md);
+        assertEquals("second", md.getChildText("title"));
+        assertEquals("\"2\"", file.getValidators().etag);
+
+        // the file was removed from the WAF
+        validators.retain(Collections.<String>emptySet());
+        assertNull(validators.get(url));
+        // only the signature is left
+        assertEquals(1, repository.findAllById_HarvesterUuid(HARVESTER_UUID).size());
+    }
+
+    @Test
+    public void testValidatorsDroppedWhenParametersChange() throws Exception {
+        HarvesterDataRepository repository = HarvesterTestSupport.createHarvesterDataRepository(HARVESTER_UUID);
+
+        ResourceValidators validators = new ResourceValidators(repository, HARVESTER_UUID, SIGNATURE);
+        validators.load();
+        WAFRemoteFile file = new WAFRemoteFile(url, requestFactory, HarvesterTestSupport.NO_CONFIGURATION);
+        assertNotNull(file.getMetadata(null, validators.get(url)));
+        validators.put(url, file.getValidators());
+
+        // eg. the privileges changed: the file is retrieved again so that its metadata is updated
+        validators = new ResourceValidators(repository, HARVESTER_UUID, "other signature");
+        validators.load();
+        assertNull(validators.get(url));
+        assertNotNull(file.getMetadata(null, validators.get(url)));
+        assertEquals(0, notModified);
+    }
+
+    @Test
+    public void testUnknownServiceTypeIsNotSupported() {
+        String waf = HarvesterTestSupport.getUrl(httpServer, "/waf/");
+        assertTrue(new WAFRemoteFile(url, requestFactory, HarvesterTestSupport.NO_CONFIGURATION).isSupported());
+        assertTrue(new WAFRemoteFile(waf + "wms?SERVICE=WMS&REQUEST=GetCapabilities", requestFactory,
+                HarvesterTestSupport.NO_CONFIGURATION).isSupported());
+        assertFalse(new WAFRemoteFile(waf + "sos?SERVICE=SOS&REQUEST=GetCapabilities", requestFactory,
+                HarvesterTestSupport.NO_CONFIGURATION).isSupported());
+    }
+}
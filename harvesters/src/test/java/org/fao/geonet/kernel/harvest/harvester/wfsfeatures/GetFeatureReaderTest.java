@@ -0,0 +1,169 @@
+package org.fao.geonet.kernel.harvest.harvester.wfsfeatures;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.fao.geonet.exceptions.BadServerResponseEx;
+import org.fao.geonet.kernel.harvest.harvester.HarvesterTestSupport;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
+import org.fao.geonet.utils.Xml;
+import org.jdom.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Test {@link GetFeatureReader} with a WFS stub returning a large feature collection.
+ */
+public class GetFeatureReaderTest {
+    private static final int FEATURES = 100000;
+    private static final Pattern START_INDEX = Pattern.compile("startIndex=\"(\\d+)\"");
+    private static final Pattern COUNT = Pattern.compile("count=\"(\\d+)\"");
+
+    private HttpServer httpServer;
+    private GeonetHttpRequestFactory requestFactory;
+    private URL url;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile boolean supportsPaging = true;
+    /** the maximum number of features of a response, 0 for no limit */
+    private volatile int maxFeatures;
+
+    @Before
+    public void setUp() throws Exception {
+        httpServer = HarvesterTestSupport.startHttpServer("/wfs", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                String query = IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+                boolean wfs20 = query.contains("version=\"2.0.0\"");
+
+                int start = 0;
+                int end = FEATURES;
+                Matcher startIndex = START_INDEX.matcher(query);
+                Matcher count = COUNT.matcher(query);
+                if (supportsPaging && startIndex.find() && count.find()) {
+                    start = Integer.parseInt(startIndex.group(1));
+                    end = Math.min(FEATURES, start + Integer.parseInt(count.group(1)));
+                }
+                if (maxFeatures > 0) {
+                    end = Math.min(end, start + maxFeatures);
+                }
+
+                // the collection is written while it is generated
+                exchange.getResponseHeaders().add("Content-Type", "text/xml; subtype=gml/3.1.1");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+                Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), "UTF-8"));
+                try {
+                    if (wfs20) {
+                        out.write("<wfs:FeatureCollection xmlns:wfs=\"http://www.opengis.net/wfs/2.0\""
+                                  + " xmlns:gml=\"http://www.opengis.net/gml/3.2\" xmlns:app=\"http://www.deegree.org/app\">");
+                    } else {
+                        out.write("<wfs:FeatureCollection xmlns:wfs=\"http://www.opengis.net/wfs\""
+                                  + " xmlns:gml=\"http://www.opengis.net/gml\" xmlns:app=\"http://www.deegree.org/app\">"
+                                  + "<gml:featureMembers>");
+                    }
+                    for (int i = start; i < end; i++) {
+                        out.write(wfs20 ? "<wfs:member>" : "");
+                        out.write("<app:parcel gml:id=\"parcel." + i + "\"><app:cadastral_id>" + i
+                                  + "</app:cadastral_id></app:parcel>");
+                        out.write(wfs20 ? "</wfs:member>" : "");
+                    }
+                    out.write(wfs20 ? "</wfs:FeatureCollection>" : "</gml:featureMembers></wfs:FeatureCollection>");
+                } finally {
+                    out.close();
+                    exchange.close();
+                }
+            }
+        });
+        url = new URL(HarvesterTestSupport.getUrl(httpServer, "/wfs"));
+        requestFactory = new GeonetHttpRequestFactory();
+    }
+
+    @After
+    public void tearDown() {
+        requestFactory.shutdown();
+        httpServer.stop(0);
+    }
+
+    @Test
+    public void testStreamFeatures() throws Exception {
+        CountingHandler handler = new CountingHandler();
+        int read = new GetFeatureReader(requestFactory.createXmlRequest(url), getFeature("1.1.0"), 0).read(handler);
+
+        assertEquals(FEATURES, read);
+        assertEquals(FEATURES, handler.count);
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testPagedFeatures() throws Exception {
+        CountingHandler handler = new CountingHandler();
+        int read = new GetFeatureReader(requestFactory.createXmlRequest(url), getFeature("2.0.0"), 30000).read(handler);
+
+        assertEquals(FEATURES, read);
+        assertEquals(FEATURES, handler.count);
+        // the last page is empty
+        assertEquals(5, requests.get());
+    }
+
+    @Test
+    public void testServiceCappingThePages() throws Exception {
+        maxFeatures = 25000;
+        CountingHandler handler = new CountingHandler();
+        int read = new GetFeatureReader(requestFactory.createXmlRequest(url), getFeature("2.0.0"), 30000).read(handler);
+
+        // each page starts after the features actually returned
+        assertEquals(FEATURES, read);
+        assertEquals(FEATURES, handler.count);
+        assertEquals(5, requests.get());
+    }
+
+    @Test
+    public void testServiceWithoutPaging() throws Exception {
+        supportsPaging = false;
+        CountingHandler handler = new CountingHandler();
+        try {
+            new GetFeatureReader(requestFactory.createXmlRequest(url), getFeature("2.0.0"), 30000).read(handler);
+            fail("the service returns all the features on each page");
+        } catch (BadServerResponseEx e) {
+            // the features of the first page are read only once
+            assertEquals(FEATURES, handler.count);
+            assertEquals(2, requests.get());
+        }
+    }
+
+    private static Element getFeature(String version) throws Exception {
+        return Xml.loadString("<wfs:GetFeature xmlns:wfs=\"http://www.opengis.net/wfs\" service=\"WFS\" version=\"" + version
+                              + "\"><wfs:Query xmlns:app=\"http://www.deegree.org/app\" typeName=\"app:parcel\"/></wfs:GetFeature>",
+                false);
+    }
+
+    /**
+     * Only counts the features, checking that they are read in order.
+     */
+    private static class CountingHandler implements GetFeatureReader.FeatureHandler {
+        int count;
+
+        @Override
+        public void handle(Element feature) throws Exception {
+            assertEquals("parcel", feature.getName());
+            assertEquals(String.valueOf(count), feature.getChildText("cadastral_id", feature.getNamespace()));
+            count++;
+        }
+    }
+}
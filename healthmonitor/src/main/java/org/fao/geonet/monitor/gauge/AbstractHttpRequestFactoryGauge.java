@@ -0,0 +1,35 @@
+package org.fao.geonet.monitor.gauge;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import jeeves.monitor.MetricsFactory;
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
+
+/**
+ * Abstract super class for the Gauges that report the usage of the {@link GeonetHttpRequestFactory} http client.
+ */
+public abstract class AbstractHttpRequestFactoryGauge<T> implements MetricsFactory<Gauge<T>> {
+    private final String name;
+
+    protected abstract T valueImpl(GeonetHttpRequestFactory requestFactory);
+    protected abstract T defaultValue();
+
+    protected AbstractHttpRequestFactoryGauge(String name) {
+        this.name = name;
+    }
+
+    public Gauge<T> create(MetricsRegistry metricsRegistry, final ServiceContext context) {
+        return metricsRegistry.newGauge(GeonetHttpRequestFactory.class, name, new Gauge<T>() {
+            @Override
+            public T value() {
+                try {
+                    T val = valueImpl(context.getBean(GeonetHttpRequestFactory.class));
+                    return val == null ? defaultValue() : val;
+                } catch (Exception e) {
+                    return defaultValue();
+                }
+            }
+        });
+    }
+}
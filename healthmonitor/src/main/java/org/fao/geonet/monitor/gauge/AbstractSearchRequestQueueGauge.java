@@ -0,0 +1,35 @@
+package org.fao.geonet.monitor.gauge;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import jeeves.monitor.MetricsFactory;
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.kernel.search.log.SearchRequestQueue;
+
+/**
+ * Abstract super class for the Gauges that report the state of the queue of search requests waiting to be logged in the
+ * database.
+ */
+public abstract class AbstractSearchRequestQueueGauge<T> implements MetricsFactory<Gauge<T>> {
+    private final String name;
+
+    protected abstract T valueImpl(SearchRequestQueue queue);
+    protected abstract T defaultValue();
+
+    protected AbstractSearchRequestQueueGauge(String name) {
+        this.name = name;
+    }
+
+    public Gauge<T> create(MetricsRegistry metricsRegistry, final ServiceContext context) {
+        return metricsRegistry.newGauge(SearchRequestQueue.class, name, new Gauge<T>() {
+            @Override
+            public T value() {
+                try {
+                    return valueImpl(context.getBean(SearchRequestQueue.class));
+                } catch (Exception e) {
+                    return defaultValue();
+                }
+            }
+        });
+    }
+}
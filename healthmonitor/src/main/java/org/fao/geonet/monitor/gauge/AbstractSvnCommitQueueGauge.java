@@ -0,0 +1,40 @@
+package org.fao.geonet.monitor.gauge;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import jeeves.monitor.MetricsFactory;
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.kernel.SvnCommitQueue;
+import org.fao.geonet.kernel.SvnManager;
+
+/**
+ * Abstract super class for the Gauges that report the state of the subversion commit queue.  If metadata versioning is
+ * not enabled the default value is reported.
+ */
+public abstract class AbstractSvnCommitQueueGauge<T> implements MetricsFactory<Gauge<T>> {
+    private final String name;
+
+    protected abstract T valueImpl(SvnCommitQueue queue);
+    protected abstract T defaultValue();
+
+    protected AbstractSvnCommitQueueGauge(String name) {
+        this.name = name;
+    }
+
+    public Gauge<T> create(MetricsRegistry metricsRegistry, final ServiceContext context) {
+        return metricsRegistry.newGauge(SvnManager.class, name, new Gauge<T>() {
+            @Override
+            public T value() {
+                try {
+                    SvnCommitQueue queue = context.getBean(SvnManager.class).getCommitQueue();
+                    if (queue == null) {
+                        return defaultValue();
+                    }
+                    return valueImpl(queue);
+                } catch (Exception e) {
+                    return defaultValue();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,22 @@
+package org.fao.geonet.monitor.gauge;
+
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
+
+/**
+ * Gauge that gets the number of remote requests that failed with a connection error since startup.
+ */
+public class HttpRequestFactoryFailedRequestsGauge extends AbstractHttpRequestFactoryGauge<Long> {
+    public HttpRequestFactoryFailedRequestsGauge() {
+        super("Failed_Requests");
+    }
+
+    @Override
+    protected Long valueImpl(GeonetHttpRequestFactory requestFactory) {
+        return requestFactory.getFailedRequests();
+    }
+
+    @Override
+    protected Long defaultValue() {
+        return 0L;
+    }
+}
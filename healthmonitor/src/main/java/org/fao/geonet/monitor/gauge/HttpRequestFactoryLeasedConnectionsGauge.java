@@ -0,0 +1,24 @@
+package org.fao.geonet.monitor.gauge;
+
+import org.apache.http.pool.PoolStats;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
+
+/**
+ * Gauge that gets the number of pooled http connections currently used by remote requests.
+ */
+public class HttpRequestFactoryLeasedConnectionsGauge extends AbstractHttpRequestFactoryGauge<Integer> {
+    public HttpRequestFactoryLeasedConnectionsGauge() {
+        super("Leased_Connections");
+    }
+
+    @Override
+    protected Integer valueImpl(GeonetHttpRequestFactory requestFactory) {
+        PoolStats stats = requestFactory.getConnectionPoolStats();
+        return stats == null ? null : stats.getLeased();
+    }
+
+    @Override
+    protected Integer defaultValue() {
+        return 0;
+    }
+}
@@ -0,0 +1,24 @@
+package org.fao.geonet.monitor.gauge;
+
+import org.apache.http.pool.PoolStats;
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
+
+/**
+ * Gauge that gets the number of remote requests waiting for a free http connection in the pool.
+ */
+public class HttpRequestFactoryPendingConnectionsGauge extends AbstractHttpRequestFactoryGauge<Integer> {
+    public HttpRequestFactoryPendingConnectionsGauge() {
+        super("Pending_Connections");
+    }
+
+    @Override
+    protected Integer valueImpl(GeonetHttpRequestFactory requestFactory) {
+        PoolStats stats = requestFactory.getConnectionPoolStats();
+        return stats == null ? null : stats.getPending();
+    }
+
+    @Override
+    protected Integer defaultValue() {
+        return 0;
+    }
+}
@@ -0,0 +1,22 @@
+package org.fao.geonet.monitor.gauge;
+
+import org.fao.geonet.utils.GeonetHttpRequestFactory;
+
+/**
+ * Gauge that gets the number of remote requests executed since startup.
+ */
+public class HttpRequestFactoryRequestsGauge extends AbstractHttpRequestFactoryGauge<Long> {
+    public HttpRequestFactoryRequestsGauge() {
+        super("Executed_Requests");
+    }
+
+    @Override
+    protected Long valueImpl(GeonetHttpRequestFactory requestFactory) {
+        return requestFactory.getExecutedRequests();
+    }
+
+    @Override
+    protected Long defaultValue() {
+        return 0L;
+    }
+}
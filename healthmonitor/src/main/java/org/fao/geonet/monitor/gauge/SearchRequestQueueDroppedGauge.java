@@ -0,0 +1,22 @@
+package org.fao.geonet.monitor.gauge;
+
+import org.fao.geonet.kernel.search.log.SearchRequestQueue;
+
+/**
+ * Gauge that gets the number of searches that were not logged because the search log queue was full.
+ */
+public class SearchRequestQueueDroppedGauge extends AbstractSearchRequestQueueGauge<Long> {
+    public SearchRequestQueueDroppedGauge() {
+        super("Searches_Dropped_From_Log");
+    }
+
+    @Override
+    protected Long valueImpl(SearchRequestQueue queue) {
+        return queue.getDropped() + queue.getFailed();
+    }
+
+    @Override
+    protected Long defaultValue() {
+        return 0L;
+    }
+}
@@ -0,0 +1,22 @@
+package org.fao.geonet.monitor.gauge;
+
+import org.fao.geonet.kernel.search.log.SearchRequestQueue;
+
+/**
+ * Gauge that gets the number of searches waiting to be logged in the database.
+ */
+public class SearchRequestQueueSizeGauge extends AbstractSearchRequestQueueGauge<Integer> {
+    public SearchRequestQueueSizeGauge() {
+        super("Searches_Waiting_To_Be_Logged");
+    }
+
+    @Override
+    protected Integer valueImpl(SearchRequestQueue queue) {
+        return queue.getSize();
+    }
+
+    @Override
+    protected Integer defaultValue() {
+        return 0;
+    }
+}
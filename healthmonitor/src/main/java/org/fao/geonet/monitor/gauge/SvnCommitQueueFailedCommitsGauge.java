@@ -0,0 +1,22 @@
+package org.fao.geonet.monitor.gauge;
+
+import org.fao.geonet.kernel.SvnCommitQueue;
+
+/**
+ * Gauge that gets the number of batches of metadata changes that failed to be committed to the subversion repository.
+ */
+public class SvnCommitQueueFailedCommitsGauge extends AbstractSvnCommitQueueGauge<Long> {
+    public SvnCommitQueueFailedCommitsGauge() {
+        super("Failed_Commits");
+    }
+
+    @Override
+    protected Long valueImpl(SvnCommitQueue queue) {
+        return queue.getFailedCommits();
+    }
+
+    @Override
+    protected Long defaultValue() {
+        return 0L;
+    }
+}
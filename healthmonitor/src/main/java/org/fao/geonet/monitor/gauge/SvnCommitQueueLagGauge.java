@@ -0,0 +1,23 @@
+package org.fao.geonet.monitor.gauge;
+
+import org.fao.geonet.kernel.SvnCommitQueue;
+
+/**
+ * Gauge that gets how long (in milliseconds) the oldest metadata change has been waiting to be committed to the
+ * subversion repository.
+ */
+public class SvnCommitQueueLagGauge extends AbstractSvnCommitQueueGauge<Long> {
+    public SvnCommitQueueLagGauge() {
+        super("Commit_Queue_Lag_Millis");
+    }
+
+    @Override
+    protected Long valueImpl(SvnCommitQueue queue) {
+        return queue.getLag();
+    }
+
+    @Override
+    protected Long defaultValue() {
+        return 0L;
+    }
+}
@@ -0,0 +1,22 @@
+package org.fao.geonet.monitor.gauge;
+
+import org.fao.geonet.kernel.SvnCommitQueue;
+
+/**
+ * Gauge that gets the number of metadata whose changes are waiting to be committed to the subversion repository.
+ */
+public class SvnCommitQueuePendingGauge extends AbstractSvnCommitQueueGauge<Integer> {
+    public SvnCommitQueuePendingGauge() {
+        super("Pending_Metadata_In_Commit_Queue");
+    }
+
+    @Override
+    protected Integer valueImpl(SvnCommitQueue queue) {
+        return queue.getPendingCount();
+    }
+
+    @Override
+    protected Integer defaultValue() {
+        return 0;
+    }
+}
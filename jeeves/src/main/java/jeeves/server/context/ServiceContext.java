@@ -150,6 +150,20 @@ public class ServiceContext extends BasicContext {
         }
 	}
 
+    /**
+     * Run the task once the servlet is initialized (see {@link JeevesServlet#runWhenInitialized(Runnable)}).  The
+     * task is run right away if Jeeves is not running in a servlet container.
+     *
+     * @param task the task to run.
+     */
+    public void runWhenServletInitialized(Runnable task) {
+        if (_servlet != null) {
+            _servlet.runWhenInitialized(task);
+        } else {
+            task.run();
+        }
+    }
+
 	//--------------------------------------------------------------------------
 
 	public void setLanguage(final String lang)    { _language = lang;    }
@@ -26,6 +26,8 @@ package jeeves.server.sources.http;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletContext;
@@ -61,7 +63,8 @@ public class JeevesServlet extends HttpServlet
     private static final long serialVersionUID = 1L;
 	public static final String USER_SESSION_ATTRIBUTE_KEY = Jeeves.Elem.SESSION;
     public static final String NODES_INIT_PARAM = "nodes";
-    private boolean initialized = false;
+    private volatile boolean initialized = false;
+    private final List<Runnable> initializationListeners = new ArrayList<Runnable>();
 
     //---------------------------------------------------------------------------
 	//---
@@ -86,7 +89,19 @@ public class JeevesServlet extends HttpServlet
             }
         }
 
-        initialized = true;
+        List<Runnable> listeners;
+        synchronized (initializationListeners) {
+            initialized = true;
+            listeners = new ArrayList<Runnable>(initializationListeners);
+            initializationListeners.clear();
+        }
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                Log.error(Log.ENGINE, "Error running servlet initialization listener: " + e.getMessage(), e);
+            }
+        }
         } catch (Throwable e) {
             JeevesEngine.handleStartupError(e);
         }
@@ -222,6 +237,23 @@ public class JeevesServlet extends HttpServlet
 	}
 
 	public boolean isInitialized() { return initialized; }
+
+    /**
+     * Run the task once the servlet is initialized: right away if it already is, otherwise in the thread initializing
+     * the servlet, after all the nodes have been initialized.  The task should only hand over the work to another
+     * thread.
+     *
+     * @param task the task to run.
+     */
+    public void runWhenInitialized(Runnable task) {
+        synchronized (initializationListeners) {
+            if (!initialized) {
+                initializationListeners.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
 }
 
 //=============================================================================
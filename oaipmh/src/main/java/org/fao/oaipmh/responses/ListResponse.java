@@ -103,6 +103,17 @@ public abstract class ListResponse extends AbstractResponse
 		return createObject(iterator.next());
 	}
 	
+	/**
+	 * Return true if all the elements of the last page received have been read: the next call to {@link #next()}
+	 * requests the next page with the resumption token.
+	 */
+	public boolean isEndOfPage()
+	{
+		return !iterator.hasNext();
+	}
+
+	//---------------------------------------------------------------------------
+
 	public abstract int getSize();
 
 	//---------------------------------------------------------------------------
@@ -108,12 +108,15 @@ public class Record
 
 		this.header = new Header(header);
 
-		//--- store metadata
+		//--- store metadata (deleted records don't have any)
 
-		List<Element> list = mdata.getChildren();
+		if (mdata != null)
+		{
+			List<Element> list = mdata.getChildren();
 
-		if (list.size() != 0)
-			metadata = list.get(0);
+			if (list.size() != 0)
+				metadata = list.get(0);
+		}
 
 		//--- add about information
 
@@ -23,6 +23,8 @@
 
 package org.fao.geonet.services.mef;
 
+import jeeves.TransactionAspect;
+import jeeves.TransactionTask;
 import jeeves.constants.Jeeves;
 import jeeves.interfaces.Service;
 import jeeves.server.ServiceConfig;
@@ -42,7 +44,10 @@ import org.fao.geonet.kernel.mef.MEFLib.Version;
 import org.fao.geonet.kernel.search.MetaSearcher;
 import org.fao.geonet.kernel.search.SearchManager;
 import org.jdom.Element;
+import org.springframework.transaction.TransactionStatus;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 
 /**
@@ -65,7 +70,8 @@ public class Export implements Service {
 	 *            Service input parameters:
 	 *            <ul>
 	 *            <li>uuid: Required for MEF1. Optional for MEF2, Current
-	 *            selection is used</li>
+	 *            selection is used. For MEF2 the parameter can be repeated to
+	 *            export several records (eg. a batch of harvested records)</li>
 	 *            <li>format: One of {@link Format}</li>
 	 *            <li>skipUuid: Does not add uuid and site information for
 	 *            information file.
@@ -102,24 +108,12 @@ public class Export implements Service {
         Log.info(Geonet.MEF, "Current record(s) in selection: " + uuids.size());
         uuidsBeforeExp.addAll(uuids);
 
-        // If provided uuid, export the metadata record only
+        // If provided uuid(s), export the metadata record(s) only
         if (uuid != null) {
             SelectionManager.getManager(session).close(SelectionManager.SELECTION_METADATA);
 
-            SelectionManager.getManager(session).addSelection(
-                    SelectionManager.SELECTION_METADATA, uuid);
-
-            uuids = selectionManger
-                    .getSelection(SelectionManager.SELECTION_METADATA);
-        }
-
-
-        // If provided uuid, export the metadata record only
-        if (uuid != null) {
-            SelectionManager.getManager(session).close(SelectionManager.SELECTION_METADATA);
-
-            SelectionManager.getManager(session).addSelection(
-                    SelectionManager.SELECTION_METADATA, uuid);
+            SelectionManager.getManager(session).addAllSelection(
+                    SelectionManager.SELECTION_METADATA, getUuidParams(params));
 
             uuids = selectionManger
                     .getSelection(SelectionManager.SELECTION_METADATA);
@@ -177,11 +171,12 @@ public class Export implements Service {
 
 			uuids = selectionManger
 					.getSelection(SelectionManager.SELECTION_METADATA);
-			Log.info(Geonet.MEF, "Building MEF2 file with " + uuids.size()
+			Log.info(Geonet.MEF, "Streaming MEF2 file with " + uuids.size()
 					+ " records.");
 
-			file = MEFLib
-					.doMEF2Export(context, uuids, format, false, stylePath, resolveXlink, removeXlinkAttribute);
+			// the records are written straight to the response once the
+			// selection is restored, see MEF2Writer
+			uuids = new LinkedHashSet<String>(uuids);
 		}
 
 		// -- Reset selection manager
@@ -189,10 +184,65 @@ public class Export implements Service {
 		selectionManger.addAllSelection(SelectionManager.SELECTION_METADATA,
 				uuidsBeforeExp);
 
-		String fname = String.valueOf(Calendar.getInstance().getTimeInMillis());
+		String fname = "export-" + format + "-" + Calendar.getInstance().getTimeInMillis() + ".zip";
+
+		if (file == null) {
+			return BinaryFile.encode(200, new MEF2Writer(context, uuids, format, resolveXlink, removeXlinkAttribute),
+					fname, "application/zip");
+		}
+		return BinaryFile.encode(200, file, fname, true);
+	}
+
+	/**
+	 * Write the MEF2 file to the response output stream, in a read only
+	 * transaction since the service transaction is over when the response is
+	 * written.
+	 */
+	private class MEF2Writer implements BinaryFile.StreamWriter {
+		private final ServiceContext context;
+		private final Set<String> uuids;
+		private final String format;
+		private final boolean resolveXlink;
+		private final boolean removeXlinkAttribute;
+
+		private MEF2Writer(ServiceContext context, Set<String> uuids, String format, boolean resolveXlink,
+				boolean removeXlinkAttribute) {
+			this.context = context;
+			this.uuids = uuids;
+			this.format = format;
+			this.resolveXlink = resolveXlink;
+			this.removeXlinkAttribute = removeXlinkAttribute;
+		}
+
+		public void write(final OutputStream output) throws IOException {
+			try {
+				TransactionAspect.runInTransaction("mef.export", context.getApplicationContext(),
+						TransactionAspect.TransactionRequirement.CREATE_ONLY_WHEN_NEEDED,
+						TransactionAspect.CommitBehavior.ONLY_COMMIT_NEWLY_CREATED_TRANSACTIONS, true,
+						new TransactionTask<Void>() {
+							@Override
+							public Void doInTransaction(TransactionStatus transaction) throws Throwable {
+								MEFLib.doMEF2Export(context, uuids, format, false, stylePath, resolveXlink,
+										removeXlinkAttribute, output);
+								return null;
+							}
+						});
+			} catch (RuntimeException e) {
+				Log.error(Geonet.MEF, "Error writing MEF2 file: " + e.getMessage(), e);
+				throw new IOException("Error writing MEF2 file: " + e.getMessage(), e);
+			}
+		}
+	}
 
-		return BinaryFile.encode(200, file, "export-" + format + "-" + fname
-				+ ".zip", true);
+	/**
+	 * Get the values of the uuid parameters, in request order.
+	 */
+	private Set<String> getUuidParams(Element params) {
+		Set<String> uuids = new LinkedHashSet<String>();
+		for (Object o : params.getChildren("uuid")) {
+			uuids.add(((Element) o).getTextTrim());
+		}
+		return uuids;
 	}
 
 	/**
@@ -5,8 +5,10 @@ import jeeves.server.context.ServiceContext;
 import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.domain.Pair;
 import org.fao.geonet.domain.statistic.SearchRequest;
+import org.fao.geonet.domain.statistic.SearchRequestDayStat;
 import org.fao.geonet.domain.statistic.SearchRequest_;
 import org.fao.geonet.repository.statistic.PathSpec;
+import org.fao.geonet.repository.statistic.SearchRequestDayStatRepository;
 import org.fao.geonet.repository.statistic.SearchRequestRepository;
 import org.fao.geonet.utils.Log;
 import org.fao.geonet.utils.Xml;
@@ -64,10 +66,13 @@ public class LastMonthSummary extends NotInReadOnlyModeService {
 
         Specifications<SearchRequest> lastMonthSpec = where(isMoreRecentThanOrEqualTo(monthAgoIsoDate));
         final Specifications<SearchRequest> isNotAutogenerated = lastMonthSpec.and(isAutogenerated(false));
-        final Specifications<SearchRequest> isAutogenerated = lastMonthSpec.and(isAutogenerated(true));
 
-        int totalCount = (int) searchRequestRepository.count(isNotAutogenerated);
-        int noHit = (int) searchRequestRepository.count(isAutogenerated);
+        // the counts are read from the daily rollups of the search requests log
+        final SearchRequestDayStat lastMonthTotals = context.getBean(SearchRequestDayStatRepository.class)
+                .getTotals(null, monthAgoIsoDate);
+
+        int totalCount = lastMonthTotals.getRequests() - lastMonthTotals.getAutogeneratedRequests();
+        int noHit = lastMonthTotals.getAutogeneratedRequests();
 
         Element noHitsElement = new Element("lastMonthSummary")
                 .addContent(new Element("record")
@@ -81,31 +86,15 @@ public class LastMonthSummary extends NotInReadOnlyModeService {
 		
 		Element meanSearchElement = new Element("meanSearchLastMonth").setText("" + Math.round((double)totalCount/(double)numberOfDay));
 
-		int autogeneratedCount = (int) searchRequestRepository.count(lastMonthSpec.and(isAutogenerated(true)));
+		int autogeneratedCount = lastMonthTotals.getAutogeneratedRequests();
 
 		Element autogeneratedElement = new Element("autogenerated").setText(autogeneratedCount+"");
 
 		// simple/advanced searches
 
-        final List<Pair<Boolean, Integer>> hitSummary =
-                searchRequestRepository.getHitSummary(lastMonthSpec, new PathSpec<SearchRequest, Boolean>() {
-            @Override
-            public Path<Boolean> getPath(Root<SearchRequest> root) {
-                return root.get(SearchRequest_.simple);
-            }
-        }, org.springframework.data.domain.Sort.Direction.DESC);
-
-        // fixme: heavy code to deal with one or two results in the SQL
-		Element advancedSearchElement = new Element("advanced").setText("0");
-		Element simpleSearchElement = new Element("simple").setText("0");
-
-        for (Pair<Boolean, Integer> summary : hitSummary) {
-            if (summary.one()) {
-                simpleSearchElement.setText("" + summary.two());
-            } else {
-                advancedSearchElement.setText("" + summary.two());
-            }
-        }
+		Element advancedSearchElement = new Element("advanced").setText(""
+                + (lastMonthTotals.getRequests() - lastMonthTotals.getSimpleRequests()));
+		Element simpleSearchElement = new Element("simple").setText("" + lastMonthTotals.getSimpleRequests());
 
         final List<Pair<String, Integer>> metadataTypeSummary = searchRequestRepository.getHitSummary(isNotAutogenerated ,
                 new PathSpec<SearchRequest, String>() {
@@ -4,9 +4,9 @@ import jeeves.constants.Jeeves;
 import jeeves.server.ServiceConfig;
 import jeeves.server.context.ServiceContext;
 import org.fao.geonet.domain.Pair;
-import org.fao.geonet.domain.statistic.SearchRequestParam;
-import org.fao.geonet.repository.specification.SearchRequestParamSpecs;
-import org.fao.geonet.repository.statistic.SearchRequestParamRepository;
+import org.fao.geonet.domain.statistic.SearchTermStat;
+import org.fao.geonet.repository.specification.SearchTermStatSpecs;
+import org.fao.geonet.repository.statistic.SearchTermStatRepository;
 import org.fao.geonet.services.NotInReadOnlyModeService;
 import org.jdom.Element;
 import org.springframework.data.jpa.domain.Specification;
@@ -54,11 +54,11 @@ public class MostSearchedCategory extends NotInReadOnlyModeService {
 
         final List<Pair<String,Integer>> termTextToRequestCount;
         if (luceneTermFields.isEmpty()) {
-            termTextToRequestCount = context.getBean(SearchRequestParamRepository.class)
-                    .getTermTextToRequestCount(maxHits);
+            termTextToRequestCount = context.getBean(SearchTermStatRepository.class)
+                    .getTermTextToRequestCount(maxHits, null);
         } else {
-            Specification<SearchRequestParam> spec = SearchRequestParamSpecs.hasTermFieldIn(luceneTermFields);
-            termTextToRequestCount = context.getBean(SearchRequestParamRepository.class)
+            Specification<SearchTermStat> spec = SearchTermStatSpecs.hasTermFieldIn(luceneTermFields);
+            termTextToRequestCount = context.getBean(SearchTermStatRepository.class)
                 .getTermTextToRequestCount(maxHits, spec);
         }
 
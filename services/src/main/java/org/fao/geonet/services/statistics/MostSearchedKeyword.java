@@ -3,7 +3,7 @@ package org.fao.geonet.services.statistics;
 import jeeves.server.ServiceConfig;
 import jeeves.server.context.ServiceContext;
 import org.fao.geonet.domain.Pair;
-import org.fao.geonet.repository.statistic.SearchRequestParamRepository;
+import org.fao.geonet.repository.statistic.SearchTermStatRepository;
 import org.fao.geonet.utils.Log;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.services.NotInReadOnlyModeService;
@@ -38,9 +38,9 @@ public class MostSearchedKeyword extends NotInReadOnlyModeService {
     @Override
 	public Element serviceSpecificExec(Element params, ServiceContext context) throws Exception {
 
-        final SearchRequestParamRepository repository = context.getBean(SearchRequestParamRepository.class);
+        final SearchTermStatRepository repository = context.getBean(SearchTermStatRepository.class);
 
-        final List<Pair<String, Integer>> termTextToRequestCount = repository.getTermTextToRequestCount(maxHits);
+        final List<Pair<String, Integer>> termTextToRequestCount = repository.getTermTextToRequestCount(maxHits, null);
         if (termTextToRequestCount.isEmpty()) {
             return new  Element("mostSearchedKeyword");
         } else {
@@ -31,9 +31,10 @@ import jeeves.server.ServiceConfig;
 import jeeves.server.context.ServiceContext;
 import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.domain.Pair;
-import org.fao.geonet.domain.statistic.SearchRequest_;
+import org.fao.geonet.domain.statistic.SearchRequestDayStat;
 import org.fao.geonet.repository.specification.SearchRequestSpecs;
 import org.fao.geonet.repository.statistic.DateInterval;
+import org.fao.geonet.repository.statistic.SearchRequestDayStatRepository;
 import org.fao.geonet.repository.statistic.SearchRequestRepository;
 import org.fao.geonet.Util;
 
@@ -80,6 +81,7 @@ public class RequestsByDateStatistics extends NotInReadOnlyModeService {
 
         Element elResp = new Element(Jeeves.Elem.RESPONSE);
         final SearchRequestRepository requestRepository = context.getBean(SearchRequestRepository.class);
+        final SearchRequestDayStatRepository dayStatRepository = context.getBean(SearchRequestDayStatRepository.class);
 
         try {
             dateFrom = new ISODate(dateFromParam);
@@ -87,16 +89,16 @@ public class RequestsByDateStatistics extends NotInReadOnlyModeService {
 
             // TODO : if ByServiceType
             if (byType) {
-                final List<String> serviceTypes = requestRepository.selectAllDistinctAttributes(SearchRequest_
-                        .service);
+                final List<String> serviceTypes = dayStatRepository.getServices();
                 for (String serviceType : serviceTypes) {
-                    Element results = buildQuery(requestRepository, serviceType, dateFrom, dateTo, graphicType);
+                    Element results = buildQuery(requestRepository, dayStatRepository, serviceType, dateFrom, dateTo,
+                            graphicType);
 
                     results.setAttribute("service", serviceType);
                     elResp.addContent(results);
                 }
             } else {
-                Element results = buildQuery(requestRepository, null, dateFrom, dateTo, graphicType);
+                Element results = buildQuery(requestRepository, dayStatRepository, null, dateFrom, dateTo, graphicType);
                 elResp.addContent(results);
             }
 
@@ -106,11 +108,11 @@ public class RequestsByDateStatistics extends NotInReadOnlyModeService {
             elResp.setAttribute("error", e.getMessage());
         }
 
-        final ISODate oldestRequestDate = requestRepository.getOldestRequestDate();
+        final ISODate oldestRequestDate = dayStatRepository.getOldestDay();
         SearchStatistics.addSingleDBValueToElement(elResp,
                 oldestRequestDate,
                 "dateMin", "min");
-        final ISODate mostRecentRequestDate = requestRepository.getMostRecentRequestDate();
+        final ISODate mostRecentRequestDate = dayStatRepository.getMostRecentDay();
         SearchStatistics.addSingleDBValueToElement(elResp,
                 mostRecentRequestDate ,
                 "dateMax", "max");
@@ -118,12 +120,21 @@ public class RequestsByDateStatistics extends NotInReadOnlyModeService {
         return elResp;
     }
 
-    public Element buildQuery(SearchRequestRepository requestRepository, String service, ISODate dateFrom,
-                                                       ISODate dateTo, String graphicType) {
+    /**
+     * Count the requests by date.  The counts by day, month or year are read from the daily rollups, the counts by hour
+     * from the search requests log.
+     */
+    public Element buildQuery(SearchRequestRepository requestRepository, SearchRequestDayStatRepository dayStatRepository,
+                              String service, ISODate dateFrom, ISODate dateTo, String graphicType) {
 
         DateInterval dateInterval = this.queryFragments.get(graphicType);
-        final List<Pair<DateInterval, Integer>> requestDateToRequestCountBetween = requestRepository
-                .getRequestDateToRequestCountBetween(dateInterval, dateFrom, dateTo, SearchRequestSpecs.hasService(service));
+        final List<Pair<DateInterval, Integer>> requestDateToRequestCountBetween;
+        if (dateInterval.getSubstringEnd() <= SearchRequestDayStat.DAY_LENGTH) {
+            requestDateToRequestCountBetween = dayStatRepository.getRequestCountBetween(dateInterval, dateFrom, dateTo, service);
+        } else {
+            requestDateToRequestCountBetween = requestRepository.getRequestDateToRequestCountBetween(dateInterval, dateFrom,
+                    dateTo, SearchRequestSpecs.hasService(service));
+        }
 
         Element results = new Element("requests");
         for (Pair<DateInterval, Integer> entry : requestDateToRequestCountBetween) {
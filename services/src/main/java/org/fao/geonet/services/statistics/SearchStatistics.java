@@ -28,8 +28,9 @@ import jeeves.server.context.ServiceContext;
 import org.fao.geonet.Util;
 import org.fao.geonet.domain.ISODate;
 import org.fao.geonet.domain.Metadata;
+import org.fao.geonet.domain.statistic.SearchRequestDayStat;
 import org.fao.geonet.repository.MetadataRepository;
-import org.fao.geonet.repository.statistic.SearchRequestRepository;
+import org.fao.geonet.repository.statistic.SearchRequestDayStatRepository;
 import org.fao.geonet.services.NotInReadOnlyModeService;
 import org.jdom.Element;
 import org.joda.time.DateTime;
@@ -39,10 +40,7 @@ import org.springframework.data.jpa.domain.Specification;
 
 import java.sql.SQLException;
 
-import static org.fao.geonet.repository.specification.SearchRequestSpecs.hasHits;
-import static org.fao.geonet.repository.specification.SearchRequestSpecs.hasService;
 import static org.fao.geonet.repository.statistic.MetadataStatisticSpec.StandardSpecs.popularitySum;
-import static org.springframework.data.jpa.domain.Specifications.where;
 
 /**
  * Service to get core metrics for a service:
@@ -77,10 +75,11 @@ public class SearchStatistics extends NotInReadOnlyModeService {
         String service = Util.getParam(params, SERVICE_PARAM);
         Element response = new Element("response");
 
-        final SearchRequestRepository requestRepository = context.getBean(SearchRequestRepository.class);
+        // read from the daily rollups of the search requests log
+        final SearchRequestDayStatRepository dayStatRepository = context.getBean(SearchRequestDayStatRepository.class);
 
-        ISODate begin = requestRepository.getOldestRequestDate();
-        ISODate end = requestRepository.getMostRecentRequestDate();
+        ISODate begin = dayStatRepository.getOldestDay();
+        ISODate end = dayStatRepository.getMostRecentDay();
         if (begin == null || end == null) {
             return response;    // No stats available.
         }
@@ -94,8 +93,10 @@ public class SearchStatistics extends NotInReadOnlyModeService {
         response.addContent(new Element("activity_months").setText(months + ""));
 
 
+        final SearchRequestDayStat totals = dayStatRepository.getTotals(service, null);
+
         // Total number of searches
-        long total = requestRepository.count(hasService(service));
+        long total = totals.getRequests();
         addSingleDBValueToElement(response, total, "total_searches", "total");
 
         // Average searches by day
@@ -117,7 +118,7 @@ public class SearchStatistics extends NotInReadOnlyModeService {
         addSingleDBValueToElement(response, viewsByMonth, "avg_views_by_month", "avg");
 
         // Number of search with no hits
-        long noHits = requestRepository.count(where(hasService(service)).and(hasHits(0)));
+        long noHits = totals.getNoHitRequests();
         addSingleDBValueToElement(response, noHits, "total_searches_with_no_hits", "total");
 
         return response;
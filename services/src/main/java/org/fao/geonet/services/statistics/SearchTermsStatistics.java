@@ -26,9 +26,9 @@ import jeeves.server.ServiceConfig;
 import jeeves.server.context.ServiceContext;
 import org.fao.geonet.Util;
 import org.fao.geonet.domain.Pair;
-import org.fao.geonet.domain.statistic.SearchRequestParam;
-import org.fao.geonet.repository.specification.SearchRequestParamSpecs;
-import org.fao.geonet.repository.statistic.SearchRequestParamRepository;
+import org.fao.geonet.domain.statistic.SearchTermStat;
+import org.fao.geonet.repository.specification.SearchTermStatSpecs;
+import org.fao.geonet.repository.statistic.SearchTermStatRepository;
 import org.fao.geonet.services.NotInReadOnlyModeService;
 import org.jdom.Element;
 import org.springframework.data.jpa.domain.Specification;
@@ -56,13 +56,13 @@ public class SearchTermsStatistics extends NotInReadOnlyModeService {
         String service = Util.getParam(params, SERVICE_PARAM, "");
         int limit = Util.getParam(params, LIMIT_PARAM, DEFAULT_LIMIT);
 
-        final SearchRequestParamRepository paramRepository = context.getBean(SearchRequestParamRepository.class);
-        Specification<SearchRequestParam> specification = SearchRequestParamSpecs.hasTermField(field);
+        final SearchTermStatRepository termStatRepository = context.getBean(SearchTermStatRepository.class);
+        Specification<SearchTermStat> specification = SearchTermStatSpecs.hasTermField(field);
         if (!service.equals("")) {
-            specification = Specifications.where(specification).and(SearchRequestParamSpecs.hasService(service));
+            specification = Specifications.where(specification).and(SearchTermStatSpecs.hasService(service));
         }
 
-        final List<Pair<String, Integer>> termTextToRequestCount = paramRepository.getTermTextToRequestCount(limit,
+        final List<Pair<String, Integer>> termTextToRequestCount = termStatRepository.getTermTextToRequestCount(limit,
                 specification);
         return toElement(termTextToRequestCount);
     }
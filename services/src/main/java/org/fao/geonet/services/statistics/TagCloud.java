@@ -5,7 +5,7 @@ import jeeves.interfaces.Service;
 import jeeves.server.ServiceConfig;
 import jeeves.server.context.ServiceContext;
 import org.fao.geonet.domain.Pair;
-import org.fao.geonet.repository.statistic.SearchRequestParamRepository;
+import org.fao.geonet.repository.statistic.SearchTermStatRepository;
 import org.jdom.Element;
 
 import java.util.List;
@@ -42,7 +42,7 @@ public class TagCloud implements Service {
      * returning the URL of the file to get.
      */
     public Element exec(Element params, ServiceContext context) throws Exception {
-        final List<Pair<String, Integer>> tagCloudSummary = context.getBean(SearchRequestParamRepository.class).getTermTextToRequestCount(limit);
+        final List<Pair<String, Integer>> tagCloudSummary = context.getBean(SearchTermStatRepository.class).getTermTextToRequestCount(limit, null);
 
 
         Element response = new Element("tagcloud");
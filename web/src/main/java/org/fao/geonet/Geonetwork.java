@@ -41,6 +41,7 @@ import org.fao.geonet.kernel.metadata.StatusActions;
 import org.fao.geonet.kernel.oaipmh.OaiPmhDispatcher;
 import org.fao.geonet.kernel.search.LuceneConfig;
 import org.fao.geonet.kernel.search.SearchManager;
+import org.fao.geonet.kernel.search.log.SearchStatisticsAggregator;
 import org.fao.geonet.kernel.search.spatial.SpatialIndexWriter;
 import org.fao.geonet.kernel.setting.SettingInfo;
 import org.fao.geonet.kernel.setting.SettingManager;
@@ -53,6 +54,7 @@ import org.fao.geonet.resources.Resources;
 import org.fao.geonet.kernel.thumbnail.ThumbnailMaker;
 import org.fao.geonet.services.util.z3950.Repositories;
 import org.fao.geonet.services.util.z3950.Server;
+import org.fao.geonet.util.StartupOrchestrator;
 import org.fao.geonet.util.ThreadPool;
 import org.fao.geonet.util.ThreadUtils;
 import org.fao.geonet.utils.Log;
@@ -86,6 +88,7 @@ import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This is the main class, it handles http connections and inits the system.
@@ -98,6 +101,12 @@ public class Geonetwork implements ApplicationHandler {
     private ThreadPool threadPool;
     private String FS = File.separator;
     private ConfigurableApplicationContext _applicationContext;
+    /** true once the index is synchronized and the harvesters are started, before that the node stays read-only */
+    private final AtomicBoolean _readWriteStarted = new AtomicBoolean(false);
+    private volatile Thread _readWriteStartup;
+
+    private static final int READ_WRITE_STARTUP_ATTEMPTS = 5;
+    private static final int READ_WRITE_STARTUP_RETRY_DELAY_SECONDS = 30;
 
     //---------------------------------------------------------------------------
     //---
@@ -141,7 +150,7 @@ public class Geonetwork implements ApplicationHandler {
         // Get main service config handler
         @SuppressWarnings("unchecked")
         List<Element> serviceConfigElems = config.getChildren();
-        ServiceConfig handlerConfig = new ServiceConfig(serviceConfigElems);
+        final ServiceConfig handlerConfig = new ServiceConfig(serviceConfigElems);
 
         // Init configuration directory
         final GeonetworkDataDirectory dataDirectory = _applicationContext.getBean(GeonetworkDataDirectory.class);
@@ -149,9 +158,9 @@ public class Geonetwork implements ApplicationHandler {
 
         // Get config handler properties
         String systemDataDir = handlerConfig.getMandatoryValue(Geonet.Config.SYSTEM_DATA_DIR);
-        String thesauriDir = handlerConfig.getMandatoryValue(Geonet.Config.CODELIST_DIR);
-        String luceneDir = handlerConfig.getMandatoryValue(Geonet.Config.LUCENE_DIR);
-        String luceneConfigXmlFile = handlerConfig.getMandatoryValue(Geonet.Config.LUCENE_CONFIG);
+        final String thesauriDir = handlerConfig.getMandatoryValue(Geonet.Config.CODELIST_DIR);
+        final String luceneDir = handlerConfig.getMandatoryValue(Geonet.Config.LUCENE_DIR);
+        final String luceneConfigXmlFile = handlerConfig.getMandatoryValue(Geonet.Config.LUCENE_CONFIG);
 
         logger.info("Data directory: " + systemDataDir);
 
@@ -182,7 +191,7 @@ public class Geonetwork implements ApplicationHandler {
 
         logger.info("  - Setting manager...");
 
-        SettingManager settingMan = this._applicationContext.getBean(SettingManager.class);
+        final SettingManager settingMan = this._applicationContext.getBean(SettingManager.class);
 
         //--- initialize ThreadUtils with setting manager and rm props
         final DataSource dataSource = context.getBean(DataSource.class);
@@ -198,143 +207,144 @@ public class Geonetwork implements ApplicationHandler {
 
 
         //------------------------------------------------------------------------
-        //--- initialize Z39.50
-
-        logger.info("  - Z39.50...");
-
-        boolean z3950Enable = settingMan.getValueAsBool("system/z3950/enable", false);
-        String z3950port = settingMan.getValue("system/z3950/port");
-
-        logger.info("     - Z39.50 is enabled: " + z3950Enable);
-        if (z3950Enable) {
-            // build Z3950 repositories file first from template
-            URL url = getClass().getClassLoader().getResource(Geonet.File.JZKITCONFIG_TEMPLATE);
-
-            if (Repositories.build(url, context)) {
-                logger.info("     Repositories file built from template.");
-
-                try {
-                    ConfigurableApplicationContext appContext = context.getApplicationContext();
+        //--- initialize the subsystems, the independent ones in parallel
 
-                    // to have access to the GN context in spring-managed objects
-                    ContextContainer cc = (ContextContainer) appContext.getBean("ContextGateway");
-                    cc.setSrvctx(context);
+        final ServiceContext startupContext = context;
+        final SchemaManager schemaMan = _applicationContext.getBean(SchemaManager.class);
+        final SvnManager svnManager = _applicationContext.getBean(SvnManager.class);
+        final XmlSerializer xmlSerializer = _applicationContext.getBean(XmlSerializer.class);
+        final DataManager dataMan = _applicationContext.getBean(DataManager.class);
+        searchMan = _applicationContext.getBean(SearchManager.class);
 
-                    if (!z3950Enable) {
-                        logger.info("     Server is Disabled.");
-                    } else {
-                        logger.info("     Server is Enabled.");
+        StartupOrchestrator startup = new StartupOrchestrator("geonetwork-startup",
+                Math.max(2, Runtime.getRuntime().availableProcessors()));
 
-                        Server.init(z3950port, appContext);
-                    }
-                } catch (Exception e) {
-                    logger.error("     Repositories file init FAILED - Z3950 server disabled and Z3950 client services (remote search, " +
-                                 "harvesting) may not work. Error is:" + e.getMessage());
-                    e.printStackTrace();
-                }
-
-            } else {
-                logger.error("     Repositories file builder FAILED - Z3950 server disabled and Z3950 client services (remote search, " +
-                             "harvesting) may not work.");
+        startup.addPhase("Z39.50", new StartupOrchestrator.Phase() {
+            public void run() throws Exception {
+                initZ3950(startupContext, settingMan);
             }
-        }
+        });
+
         //------------------------------------------------------------------------
         //--- initialize SchemaManager
 
-        logger.info("  - Schema manager...");
-
-        String schemaPluginsDir = dataDirectory.getSchemaPluginsDir().getAbsolutePath();
-        String schemaCatalogueFile = dataDirectory.getConfigDir()+File.separator+Geonet.File.SCHEMA_PLUGINS_CATALOG;
-        boolean createOrUpdateSchemaCatalog = handlerConfig.getMandatoryValue(Geonet.Config.SCHEMA_PLUGINS_CATALOG_UPDATE).equals("true");
-        logger.info("			- Schema plugins directory: " + schemaPluginsDir);
-        logger.info("			- Schema Catalog File     : " + schemaCatalogueFile);
-        SchemaManager schemaMan = _applicationContext.getBean(SchemaManager.class);
-        schemaMan.configure(_applicationContext, appPath, Resources.locateResourcesDir(context), schemaCatalogueFile,
-                schemaPluginsDir, context.getLanguage(), handlerConfig.getMandatoryValue(Geonet.Config.PREFERRED_SCHEMA),
-                createOrUpdateSchemaCatalog);
+        startup.addPhase("Schema manager", new StartupOrchestrator.Phase() {
+            public void run() throws Exception {
+                String schemaPluginsDir = dataDirectory.getSchemaPluginsDir().getAbsolutePath();
+                String schemaCatalogueFile = dataDirectory.getConfigDir() + File.separator + Geonet.File.SCHEMA_PLUGINS_CATALOG;
+                boolean createOrUpdateSchemaCatalog = handlerConfig.getMandatoryValue(Geonet.Config.SCHEMA_PLUGINS_CATALOG_UPDATE)
+                        .equals("true");
+                logger.info("			- Schema plugins directory: " + schemaPluginsDir);
+                logger.info("			- Schema Catalog File     : " + schemaCatalogueFile);
+                schemaMan.configure(_applicationContext, appPath, Resources.locateResourcesDir(startupContext), schemaCatalogueFile,
+                        schemaPluginsDir, startupContext.getLanguage(), handlerConfig.getMandatoryValue(Geonet.Config.PREFERRED_SCHEMA),
+                        createOrUpdateSchemaCatalog);
+            }
+        });
 
         //------------------------------------------------------------------------
         //--- initialize search and editing
 
-        logger.info("  - Search...");
-
-        boolean logSpatialObject = "true".equalsIgnoreCase(handlerConfig.getMandatoryValue(Geonet.Config.STAT_LOG_SPATIAL_OBJECTS));
-        boolean logAsynch = "true".equalsIgnoreCase(handlerConfig.getMandatoryValue(Geonet.Config.STAT_LOG_ASYNCH));
-        logger.info("  - Log spatial object: " + logSpatialObject);
-        logger.info("  - Log in asynch mode: " + logAsynch);
-
-        String luceneTermsToExclude = "";
-        luceneTermsToExclude = handlerConfig.getMandatoryValue(Geonet.Config.STAT_LUCENE_TERMS_EXCLUDE);
+        startup.addPhase("Lucene configuration and spatial datastore", new StartupOrchestrator.Phase() {
+            public void run() throws Exception {
+                LuceneConfig lc = _applicationContext.getBean(LuceneConfig.class);
+                lc.configure(luceneConfigXmlFile);
+                logger.info("  - Lucene configuration is:");
+                logger.info(lc.toString());
 
-        LuceneConfig lc = _applicationContext.getBean(LuceneConfig.class);
-        lc.configure(luceneConfigXmlFile);
-        logger.info("  - Lucene configuration is:");
-        logger.info(lc.toString());
-
-        try {
-            _applicationContext.getBean(DataStore.class);
-        } catch (NoSuchBeanDefinitionException e) {
-            DataStore dataStore = createShapefileDatastore(luceneDir);
-            _applicationContext.getBeanFactory().registerSingleton("dataStore", dataStore);
-            //--- no datastore for spatial indexing means that we can't continue
-            if (dataStore == null) {
-                throw new IllegalArgumentException("GeoTools datastore creation failed - check logs for more info/exceptions");
+                try {
+                    _applicationContext.getBean(DataStore.class);
+                } catch (NoSuchBeanDefinitionException e) {
+                    DataStore dataStore = createShapefileDatastore(luceneDir);
+                    //--- no datastore for spatial indexing means that we can't continue
+                    if (dataStore == null) {
+                        throw new IllegalArgumentException("GeoTools datastore creation failed - check logs for more info/exceptions");
+                    }
+                    _applicationContext.getBeanFactory().registerSingleton("dataStore", dataStore);
+                }
             }
-        }
+        });
 
-        String maxWritesInTransactionStr = handlerConfig.getMandatoryValue(Geonet.Config.MAX_WRITES_IN_TRANSACTION);
-        int maxWritesInTransaction = SpatialIndexWriter.MAX_WRITES_IN_TRANSACTION;
-        try {
-            maxWritesInTransaction = Integer.parseInt(maxWritesInTransactionStr);
-        } catch (NumberFormatException nfe) {
-            logger.error("Invalid config parameter: maximum number of writes to spatial index in a transaction (maxWritesInTransaction)"
-                         + ", Using " + maxWritesInTransaction + " instead.");
-            nfe.printStackTrace();
-        }
+        startup.addPhase("Search", new StartupOrchestrator.Phase() {
+            public void run() throws Exception {
+                boolean logSpatialObject = "true".equalsIgnoreCase(handlerConfig.getMandatoryValue(Geonet.Config.STAT_LOG_SPATIAL_OBJECTS));
+                boolean logAsynch = "true".equalsIgnoreCase(handlerConfig.getMandatoryValue(Geonet.Config.STAT_LOG_ASYNCH));
+                logger.info("  - Log spatial object: " + logSpatialObject);
+                logger.info("  - Log in asynch mode: " + logAsynch);
 
-        SettingInfo settingInfo = context.getBean(SettingInfo.class);
-        searchMan = _applicationContext.getBean(SearchManager.class);
-        searchMan.init(logAsynch,
-                logSpatialObject, luceneTermsToExclude,
-                maxWritesInTransaction);
+                String luceneTermsToExclude = handlerConfig.getMandatoryValue(Geonet.Config.STAT_LUCENE_TERMS_EXCLUDE);
 
+                String maxWritesInTransactionStr = handlerConfig.getMandatoryValue(Geonet.Config.MAX_WRITES_IN_TRANSACTION);
+                int maxWritesInTransaction = SpatialIndexWriter.MAX_WRITES_IN_TRANSACTION;
+                try {
+                    maxWritesInTransaction = Integer.parseInt(maxWritesInTransactionStr);
+                } catch (NumberFormatException nfe) {
+                    logger.error("Invalid config parameter: maximum number of writes to spatial index in a transaction (maxWritesInTransaction)"
+                                 + ", Using " + maxWritesInTransaction + " instead.");
+                    nfe.printStackTrace();
+                }
 
-        // if the validator exists the proxyCallbackURL needs to have the external host and
-        // servlet name added so that the cas knows where to send the validation notice
-        ServerBeanPropertyUpdater.updateURL(settingInfo.getSiteUrl(true) + baseURL, _applicationContext);
-
-        //------------------------------------------------------------------------
-        //--- extract intranet ip/mask and initialize AccessManager
-
-        logger.info("  - Access manager...");
+                searchMan.init(logAsynch,
+                        logSpatialObject, luceneTermsToExclude,
+                        maxWritesInTransaction);
+            }
+        }, "Schema manager", "Lucene configuration and spatial datastore");
 
         //------------------------------------------------------------------------
-        //--- get edit params and initialize DataManager
-
-        logger.info("  - Xml serializer and Data manager...");
-
-        SvnManager svnManager = _applicationContext.getBean(SvnManager.class);
-        XmlSerializer xmlSerializer = _applicationContext.getBean(XmlSerializer.class);
-
-        if (xmlSerializer instanceof XmlSerializerSvn && svnManager != null) {
-            svnManager.setContext(context);
-            String subversionPath = dataDirectory.getMetadataRevisionDir().getCanonicalPath();
-            svnManager.setSubversionPath(subversionPath);
-            svnManager.init();
-        }
+        //--- get edit params and initialize the Xml serializer
+
+        startup.addPhase("Xml serializer", new StartupOrchestrator.Phase() {
+            public void run() throws Exception {
+                if (xmlSerializer instanceof XmlSerializerSvn && svnManager != null) {
+                    svnManager.setContext(startupContext);
+                    String subversionPath = dataDirectory.getMetadataRevisionDir().getCanonicalPath();
+                    svnManager.setSubversionPath(subversionPath);
+                    svnManager.init();
+                }
+            }
+        });
 
         /**
          * Initialize language detector
          */
-        LanguageDetector.init(appPath + _applicationContext.getBean(Geonet.Config.LANGUAGE_PROFILES_DIR, String.class));
+        startup.addPhase("Language detector", new StartupOrchestrator.Phase() {
+            public void run() throws Exception {
+                LanguageDetector.init(appPath + _applicationContext.getBean(Geonet.Config.LANGUAGE_PROFILES_DIR, String.class));
+            }
+        });
 
         //------------------------------------------------------------------------
         //--- Initialize thesaurus
 
-        logger.info("  - Thesaurus...");
+        startup.addPhase("Thesaurus", new StartupOrchestrator.Phase() {
+            public void run() throws Exception {
+                _applicationContext.getBean(ThesaurusManager.class).init(startupContext, appPath, thesauriDir);
+            }
+        });
+
+        startup.addPhase("Thumbnail maker", new StartupOrchestrator.Phase() {
+            public void run() throws Exception {
+                _applicationContext.getBean(ThumbnailMaker.class).init(startupContext);
+            }
+        });
+
+        //------------------------------------------------------------------------
+        //--- initialize the Data manager, the index is synchronized with the
+        //--- database once the servlet is up
 
-        _applicationContext.getBean(ThesaurusManager.class).init(context, appPath, thesauriDir);
+        startup.addPhase("Data manager", new StartupOrchestrator.Phase() {
+            public void run() throws Exception {
+                dataMan.init(startupContext);
+            }
+        }, "Schema manager", "Search", "Xml serializer", "Thesaurus");
+
+        startup.run();
+
+        SettingInfo settingInfo = context.getBean(SettingInfo.class);
 
+        // if the validator exists the proxyCallbackURL needs to have the external host and
+        // servlet name added so that the cas knows where to send the validation notice
+        ServerBeanPropertyUpdater.updateURL(settingInfo.getSiteUrl(true) + baseURL, _applicationContext);
 
         //------------------------------------------------------------------------
         //--- initialize catalogue services for the web
@@ -344,7 +354,8 @@ public class Geonetwork implements ApplicationHandler {
         OaiPmhDispatcher oaipmhDis = new OaiPmhDispatcher(settingMan, schemaMan);
 
 
-        GeonetContext gnContext = new GeonetContext(_applicationContext, false, statusActionsClass, threadPool);
+        // read-only (search) until the index is synchronized and the harvesters are started
+        final GeonetContext gnContext = new GeonetContext(_applicationContext, true, statusActionsClass, threadPool);
 
         //------------------------------------------------------------------------
         //--- return application context
@@ -353,11 +364,6 @@ public class Geonetwork implements ApplicationHandler {
         beanFactory.registerSingleton("oaipmhDisatcher", oaipmhDis);
 
 
-        _applicationContext.getBean(DataManager.class).init(context, false);
-        _applicationContext.getBean(HarvestManager.class).init(context, gnContext.isReadOnly());
-
-        _applicationContext.getBean(ThumbnailMaker.class).init(context);
-
         logger.info("Site ID is : " + settingMan.getSiteId());
 
         // Creates a default site logo, only if the logo image doesn't exists
@@ -384,6 +390,33 @@ public class Geonetwork implements ApplicationHandler {
             pi.setProxyInfo(proxyHost, Integer.valueOf(proxyPort), username, password);
         }
 
+        //------------------------------------------------------------------------
+        //--- once the servlet is up, synchronize the index with the database
+        //--- and start the harvesters, then switch to read-write mode
+
+        context.runWhenServletInitialized(new Runnable() {
+            public void run() {
+                Thread thread = new Thread(new Runnable() {
+                    public void run() {
+                        startupContext.setAsThreadLocal();
+                        startReadWriteMode(startupContext, gnContext, handlerConfig);
+                    }
+                }, "geonetwork-startup-read-write");
+                thread.setDaemon(true);
+                _readWriteStartup = thread;
+                thread.start();
+            }
+        });
+        return gnContext;
+    }
+
+    /**
+     * Synchronize the index with the database, start the harvesters and leave the read-only mode the node started in.
+     * Runs in the background after the servlet initialization so that search is served in the meantime.  A failed step is
+     * retried <code>READ_WRITE_STARTUP_ATTEMPTS</code> times; the database heartbeat (when enabled) is started anyway
+     * but only switches to read-write mode once the startup completed.
+     */
+    private void startReadWriteMode(ServiceContext context, final GeonetContext gnContext, ServiceConfig handlerConfig) {
         //
         // db heartbeat configuration -- for failover to readonly database
         //
@@ -392,9 +425,110 @@ public class Geonetwork implements ApplicationHandler {
             Integer dbHeartBeatInitialDelay = Integer.parseInt(handlerConfig.getValue(Geonet.Config.DB_HEARTBEAT_INITIALDELAYSECONDS,
                     "5"));
             Integer dbHeartBeatFixedDelay = Integer.parseInt(handlerConfig.getValue(Geonet.Config.DB_HEARTBEAT_FIXEDDELAYSECONDS, "60"));
-            createDBHeartBeat(gnContext, dbHeartBeatInitialDelay, dbHeartBeatFixedDelay);
+            try {
+                createDBHeartBeat(gnContext, dbHeartBeatInitialDelay, dbHeartBeatFixedDelay);
+            } catch (SchedulerException e) {
+                logger.error("Unable to create the DB heartbeat: " + e.getMessage());
+                logger.error("  Stack     : " + Util.getStackTrace(e));
+            }
+        }
+
+        final ServiceContext startupContext = context;
+        final AtomicBoolean indexSynchronized = new AtomicBoolean(false);
+        final AtomicBoolean harvestersStarted = new AtomicBoolean(false);
+        for (int attempt = 1; ; attempt++) {
+            // only the steps which did not succeed yet are run again
+            StartupOrchestrator startup = new StartupOrchestrator("geonetwork-startup-read-write", 1);
+            if (!indexSynchronized.get()) {
+                startup.addPhase("Index synchronization", new StartupOrchestrator.Phase() {
+                    public void run() throws Exception {
+                        _applicationContext.getBean(DataManager.class).synchronizeIndex(startupContext, false);
+                        indexSynchronized.set(true);
+                    }
+                });
+            }
+            startup.addPhase("Harvest manager", new StartupOrchestrator.Phase() {
+                public void run() throws Exception {
+                    if (indexSynchronized.get()) {
+                        // the harvesters start in the read-only mode of the node and leave it with the node
+                        _applicationContext.getBean(HarvestManager.class).init(startupContext, gnContext.isReadOnly());
+                        harvestersStarted.set(true);
+                    }
+                }
+            }, indexSynchronized.get() ? new String[0] : new String[]{"Index synchronization"});
+
+            try {
+                startup.run();
+                if (harvestersStarted.get()) {
+                    break;
+                }
+            } catch (Exception e) {
+                logger.error("Startup of the read-write mode failed (attempt " + attempt + " of " + READ_WRITE_STARTUP_ATTEMPTS
+                             + "): " + e.getMessage());
+                logger.error("  Stack     : " + Util.getStackTrace(e));
+            }
+
+            if (attempt >= READ_WRITE_STARTUP_ATTEMPTS) {
+                logger.fatal("Startup of the read-write mode failed " + READ_WRITE_STARTUP_ATTEMPTS + " times, GeoNetwork remains "
+                             + "in read-only mode: only search is available until it is restarted");
+                return;
+            }
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(READ_WRITE_STARTUP_RETRY_DELAY_SECONDS * attempt));
+            } catch (InterruptedException e) {
+                // stopping
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        _readWriteStarted.set(true);
+        gnContext.setReadOnly(false);
+        _applicationContext.getBean(HarvestManager.class).setReadOnly(false);
+        logger.info("GeoNetwork is in read-write mode");
+
+        _applicationContext.getBean(SearchStatisticsAggregator.class).start();
+    }
+
+    private void initZ3950(ServiceContext context, SettingManager settingMan) throws Exception {
+        logger.info("  - Z39.50...");
+
+        boolean z3950Enable = settingMan.getValueAsBool("system/z3950/enable", false);
+        String z3950port = settingMan.getValue("system/z3950/port");
+
+        logger.info("     - Z39.50 is enabled: " + z3950Enable);
+        if (z3950Enable) {
+            // build Z3950 repositories file first from template
+            URL url = getClass().getClassLoader().getResource(Geonet.File.JZKITCONFIG_TEMPLATE);
+
+            if (Repositories.build(url, context)) {
+                logger.info("     Repositories file built from template.");
+
+                try {
+                    ConfigurableApplicationContext appContext = context.getApplicationContext();
+
+                    // to have access to the GN context in spring-managed objects
+                    ContextContainer cc = (ContextContainer) appContext.getBean("ContextGateway");
+                    cc.setSrvctx(context);
+
+                    if (!z3950Enable) {
+                        logger.info("     Server is Disabled.");
+                    } else {
+                        logger.info("     Server is Enabled.");
+
+                        Server.init(z3950port, appContext);
+                    }
+                } catch (Exception e) {
+                    logger.error("     Repositories file init FAILED - Z3950 server disabled and Z3950 client services (remote search, " +
+                                 "harvesting) may not work. Error is:" + e.getMessage());
+                    e.printStackTrace();
+                }
+
+            } else {
+                logger.error("     Repositories file builder FAILED - Z3950 server disabled and Z3950 client services (remote search, " +
+                             "harvesting) may not work.");
+            }
         }
-        return gnContext;
     }
 
     private void importDatabaseData(final ServiceContext context) {
@@ -442,7 +576,10 @@ public class Geonetwork implements ApplicationHandler {
                     logger.debug("DBHeartBeat: GN is read-only ? " + readOnly);
                     boolean canWrite = checkDBWrite();
                     HarvestManager hm = gc.getBean(HarvestManager.class);
-                    if (readOnly && canWrite) {
+                    if (readOnly && canWrite && !_readWriteStarted.get()) {
+                        logger.info("GeoNetwork can write to the database but the startup of the read-write mode did not "
+                                    + "complete, it remains in read-only mode");
+                    } else if (readOnly && canWrite) {
                         logger.warning("GeoNetwork can write to the database, switching to read-write mode");
                         readOnly = false;
                         gc.setReadOnly(readOnly);
@@ -539,6 +676,11 @@ public class Geonetwork implements ApplicationHandler {
     public void stop() {
         logger.info("Stopping geonetwork...");
 
+        Thread readWriteStartup = _readWriteStartup;
+        if (readWriteStartup != null) {
+            readWriteStartup.interrupt();
+        }
+
         logger.info("shutting down CSW HarvestResponse executionService");
         CswHarvesterResponseExecutionService.getExecutionService().shutdownNow();
 
@@ -573,6 +715,9 @@ public class Geonetwork implements ApplicationHandler {
         logger.info("  - Harvest Manager...");
         _applicationContext.getBean(HarvestManager.class).shutdown();
 
+        logger.info("  - Subversion commit queue...");
+        _applicationContext.getBean(SvnManager.class).shutdown();
+
         logger.info("  - Z39.50...");
         Server.end();
     }
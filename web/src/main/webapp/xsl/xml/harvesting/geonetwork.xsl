@@ -14,6 +14,7 @@
 		<host><xsl:value-of    select="host/value" /></host>
 	    <createRemoteCategory><xsl:value-of select="createRemoteCategory/value"/></createRemoteCategory>
 	    <mefFormatFull><xsl:value-of select="mefFormatFull"/></mefFormatFull>
+	    <mefBatchSize><xsl:value-of select="mefBatchSize/value"/></mefBatchSize>
 		<xslfilter><xsl:value-of select="xslfilter"/></xslfilter>
 	</xsl:template>
 
@@ -19,6 +19,7 @@
 
 	<xsl:template match="*" mode="options">
 		<validate><xsl:value-of  select="validate/value" /></validate>
+		<incremental><xsl:value-of  select="incremental/value" /></incremental>
 	</xsl:template>
 
 	<!-- ============================================================================================= -->
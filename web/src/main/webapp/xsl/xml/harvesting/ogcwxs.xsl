@@ -26,6 +26,7 @@
 		<useLayerMd><xsl:value-of  select="useLayerMd/value" /></useLayerMd>
 		<datasetCategory><xsl:value-of  select="datasetCategory/value" /></datasetCategory>
 		<outputSchema><xsl:value-of  select="outputSchema/value" /></outputSchema>
+		<maxRequestsPerHost><xsl:value-of  select="maxRequestsPerHost/value" /></maxRequestsPerHost>
 	</xsl:template>
 
 	<!-- ============================================================================================= -->
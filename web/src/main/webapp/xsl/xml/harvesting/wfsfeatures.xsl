@@ -23,6 +23,7 @@
 		<outputSchema><xsl:value-of  select="outputSchema/value" /></outputSchema>
 		<stylesheet><xsl:value-of  select="stylesheet/value" /></stylesheet>
 		<streamFeatures><xsl:value-of select="streamFeatures" /></streamFeatures>
+		<pageSize><xsl:value-of select="pageSize/value" /></pageSize>
 		<createSubtemplates><xsl:value-of select="createSubtemplates" /></createSubtemplates>
 		<templateId><xsl:value-of  select="templateId/value" /></templateId>
 		<recordsCategory><xsl:value-of  select="recordsCategory/value" /></recordsCategory>